@@ -1,46 +1,106 @@
 package aQute.lib.persistentmap;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.ref.SoftReference;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
 import java.util.AbstractMap;
 import java.util.AbstractSet;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
 
 import aQute.lib.io.IO;
 import aQute.lib.json.JSONCodec;
 import aQute.lib.strings.Strings;
 
 /**
- * Implements a low performance but easy to use map that is backed on a
- * directory. All objects are stored as JSON objects and therefore should be
- * DTOs. Each key is a file name and the contents is the value encoded in JSON.
- * The PersistentMap will attempt to lock the directory. This is a
- * non-concurrent implementation so you must ensure it is only used in a single
- * thread. It cannot of course also not share the data directory.
+ * Implements a map that is backed on a directory. All objects are stored as
+ * JSON objects and therefore should be DTOs.
+ * <p>
+ * The entries are appended to a log file in the directory. Each record holds
+ * the key, the time it was written and the value encoded in JSON and is
+ * protected by a CRC so a torn write at the end of the log is detected and
+ * dropped when the log is opened. An in memory index maps each key to the
+ * offset of its latest record. When the log holds more obsolete records than
+ * live ones it is compacted into a new log.
+ * <p>
+ * Any number of threads can read the map while a single thread at a time
+ * writes to it. Writes are serialized across processes with a lock on the
+ * directory and pick up the records appended by other processes, but a map
+ * does not see the writes of other processes until it writes itself.
+ * <p>
+ * A directory in the older layout, with a file per key in the {@code data}
+ * directory, is migrated into the log when the map is first used.
  */
 public class PersistentMap<V> extends AbstractMap<String, V> implements Closeable {
 
-	private static final char			ESCAPE	= '~';
-	final static JSONCodec				codec	= new JSONCodec();
-	final File							dir;
-	final File							data;
-	final RandomAccessFile				lockFile;
-	final Map<String, SoftReference<V>>	cache	= new HashMap<>();
-	boolean								inited	= false;
-	boolean								closed	= false;
-
-	Type								type;
+	private static final char				ESCAPE		= '~';
+	private static final int				MAGIC		= 0x42504D4C;
+	private static final int				FORMAT		= 1;
+	private static final int				HEADER		= 8;
+	private static final int				RECORD		= 8;
+	private static final byte				PUT			= 1;
+	private static final byte				REMOVE		= 2;
+	private static final byte				CLEAR		= 3;
+	/**
+	 * Appended to a log just before it is replaced by its compacted version
+	 * so other processes know they must reopen the log.
+	 */
+	private static final byte				MOVED		= 4;
+	static long								COMPACT_MIN	= 1L << 20;
+
+	final static JSONCodec					codec		= new JSONCodec();
+	final File								dir;
+	final File								data;
+	final File								log;
+	final RandomAccessFile					lockFile;
+	final Map<String, Slot<V>>				index		= new ConcurrentHashMap<>();
+	final ReentrantLock						writer		= new ReentrantLock();
+	final ReadWriteLock						channelLock	= new ReentrantReadWriteLock();
+	FileChannel								channel;
+	long									end;
+	long									live;
+	volatile boolean						inited		= false;
+	volatile boolean						closed		= false;
+
+	Type									type;
+
+	/**
+	 * The location of the latest record of a key.
+	 */
+	static final class Slot<V> {
+		final long				offset;
+		final int				length;
+		final long				time;
+		volatile SoftReference<V>	value;
+
+		Slot(long offset, int length, long time, SoftReference<V> value) {
+			this.offset = offset;
+			this.length = length;
+			this.time = time;
+			this.value = value;
+		}
+	}
 
 	public PersistentMap(File dir, Type type) throws Exception {
 		this.dir = dir;
@@ -54,20 +114,8 @@ public class PersistentMap<V> extends AbstractMap<String, V> implements Closeabl
 
 		File f = new File(dir, "lock");
 		lockFile = new RandomAccessFile(f, "rw");
-
-		FileLock lock = lock();
-		try {
-			data = new File(dir, "data").getAbsoluteFile();
-			IO.mkdirs(data);
-			if (!dir.isDirectory())
-				throw new IllegalArgumentException("PersistentMap cannot create data directory " + dir);
-
-			if (!data.canWrite())
-				throw new IllegalArgumentException("PersistentMap cannot write data directory " + data);
-		} finally {
-			unlock(lock);
-		}
-
+		data = new File(dir, "data").getAbsoluteFile();
+		log = new File(dir, "map.log").getAbsoluteFile();
 	}
 
 	public PersistentMap(File dir, Class<V> type) throws Exception {
@@ -85,30 +133,33 @@ public class PersistentMap<V> extends AbstractMap<String, V> implements Closeabl
 	}
 
 	void init() {
-		if (inited)
-			return;
-
 		if (closed)
 			throw new IllegalStateException("PersistentMap " + dir + " is already closed");
 
+		if (inited)
+			return;
+
+		writer.lock();
 		try {
-			inited = true;
+			if (inited)
+				return;
 			FileLock lock = lock();
 			try {
-				for (File file : data.listFiles()) {
-					String name = Strings.unescape(file.getName(), ESCAPE)
-						.orElse(null);
-					if (name != null)
-						cache.put(name, null);
-
-				}
+				open();
+				if (data.isDirectory())
+					migrate();
+				if (shouldCompact())
+					compact();
 			} finally {
 				unlock(lock);
 			}
+			inited = true;
 		} catch (RuntimeException e) {
 			throw e;
 		} catch (Exception e) {
 			throw new RuntimeException(e);
+		} finally {
+			writer.unlock();
 		}
 	}
 
@@ -119,68 +170,119 @@ public class PersistentMap<V> extends AbstractMap<String, V> implements Closeabl
 			@Override
 			public int size() {
 				init();
-				return cache.size();
+				return index.size();
 			}
 
 			@Override
 			public Iterator<java.util.Map.Entry<String, V>> iterator() {
 				init();
 				return new Iterator<Map.Entry<String, V>>() {
-					Iterator<java.util.Map.Entry<String, SoftReference<V>>>	it	= cache.entrySet()
+					Iterator<String>	it	= index.keySet()
 						.iterator();
-					java.util.Map.Entry<String, SoftReference<V>>			entry;
+					String				key;
+					V					next;
+					String				nextKey;
 
 					@Override
 					public boolean hasNext() {
-						return it.hasNext();
+						while (nextKey == null && it.hasNext()) {
+							String k = it.next();
+							V v = get(k);
+							if (v != null || index.containsKey(k)) {
+								nextKey = k;
+								next = v;
+							}
+						}
+						return nextKey != null;
 					}
 
 					@Override
-					@SuppressWarnings("unchecked")
 					public java.util.Map.Entry<String, V> next() {
-						try {
-							entry = it.next();
-							SoftReference<V> ref = entry.getValue();
-							V value = null;
-							if (ref != null)
-								value = ref.get();
-
-							if (value == null) {
-								File file = keyToFile(entry.getKey());
-								value = (V) codec.dec()
-									.from(file)
-									.get(type);
-								entry.setValue(new SoftReference<>(value));
+						if (!hasNext())
+							throw new NoSuchElementException();
+						key = nextKey;
+						final String k = nextKey;
+						final V v = next;
+						nextKey = null;
+						next = null;
+						return new Map.Entry<String, V>() {
+
+							@Override
+							public String getKey() {
+								return k;
+							}
+
+							@Override
+							public V getValue() {
+								return v;
+							}
+
+							@Override
+							public V setValue(V value) {
+								return put(k, value);
 							}
+						};
+					}
+
+					@Override
+					public void remove() {
+						if (key == null)
+							throw new IllegalStateException();
+						PersistentMap.this.remove(key);
+						key = null;
+					}
+				};
+			}
+		};
+	}
 
-							final V v = value;
+	@Override
+	public Set<String> keySet() {
+		return new AbstractSet<String>() {
+
+			@Override
+			public int size() {
+				init();
+				return index.size();
+			}
 
-							return new Map.Entry<String, V>() {
+			@Override
+			public boolean contains(Object o) {
+				return containsKey(o);
+			}
 
-								@Override
-								public String getKey() {
-									return entry.getKey();
-								}
+			@Override
+			public boolean remove(Object o) {
+				if (!containsKey(o))
+					return false;
+				PersistentMap.this.remove(o);
+				return true;
+			}
 
-								@Override
-								public V getValue() {
-									return v;
-								}
+			@Override
+			public Iterator<String> iterator() {
+				init();
+				return new Iterator<String>() {
+					Iterator<String>	it	= index.keySet()
+						.iterator();
+					String				key;
 
-								@Override
-								public V setValue(V value) {
-									return put(entry.getKey(), value);
-								}
-							};
-						} catch (Exception e) {
-							e.printStackTrace();
-							throw new RuntimeException(e);
-						}
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+
+					@Override
+					public String next() {
+						return key = it.next();
 					}
 
 					@Override
 					public void remove() {
-						PersistentMap.this.remove(entry.getKey());
+						if (key == null)
+							throw new IllegalStateException();
+						PersistentMap.this.remove(key);
+						key = null;
 					}
 				};
 			}
@@ -188,25 +290,22 @@ public class PersistentMap<V> extends AbstractMap<String, V> implements Closeabl
 	}
 
 	@Override
-	public V put(String key, V value) {
+	public int size() {
 		init();
-		try {
-			V old = null;
-			SoftReference<V> ref = cache.get(key);
-			if (ref != null)
-				old = ref.get();
+		return index.size();
+	}
 
-			FileLock lock = lock();
-			try {
-				File file = keyToFile(key);
-				codec.enc()
-					.to(file)
-					.put(value);
-				cache.put(key, new SoftReference<>(value));
-				return old;
-			} finally {
-				unlock(lock);
-			}
+	@Override
+	public boolean containsKey(Object key) {
+		init();
+		return index.containsKey(key);
+	}
+
+	@Override
+	public V get(Object key) {
+		init();
+		try {
+			return value(key);
 		} catch (RuntimeException e) {
 			throw e;
 		} catch (Exception e) {
@@ -214,46 +313,60 @@ public class PersistentMap<V> extends AbstractMap<String, V> implements Closeabl
 		}
 	}
 
-	private FileLock lock() throws IOException, InterruptedException {
-		int count = 400;
-		while (true)
+	@Override
+	public V put(String key, V value) {
+		init();
+		try {
+			byte[] json = codec.enc()
+				.put(value)
+				.toString()
+				.getBytes(UTF_8);
+			writer.lock();
 			try {
-				FileLock lock = lockFile.getChannel()
-					.lock();
-				if (!lock.isValid()) {
-					System.err.println("Ouch, got invalid lock " + dir + " " + Thread.currentThread()
-						.getName());
-					return null;
+				FileLock lock = lock();
+				try {
+					sync();
+					V previous = value(key);
+					append(PUT, key, System.currentTimeMillis(), json, new SoftReference<>(value));
+					return previous;
+				} finally {
+					unlock(lock);
 				}
-				return lock;
-			} catch (OverlappingFileLockException e) {
-				if (count-- > 0)
-					TimeUnit.MILLISECONDS.sleep(5);
-				else
-					throw new RuntimeException("Could not obtain lock");
+			} finally {
+				writer.unlock();
 			}
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
 	}
 
-	private void unlock(FileLock lock) throws IOException {
-		if (lock == null || !lock.isValid()) {
-			System.err.println("Ouch, invalid lock was used " + dir + " " + Thread.currentThread()
-				.getName());
-			return;
-		}
-		lock.release();
+	@Override
+	public V remove(Object key) {
+		if (key instanceof String s)
+			return remove(s);
+		return null;
 	}
 
 	public V remove(String key) {
+		init();
 		try {
-			init();
-			FileLock lock = lock();
+			writer.lock();
 			try {
-				File file = keyToFile(key);
-				IO.deleteWithException(file);
-				return cache.remove(key)
-					.get();
+				FileLock lock = lock();
+				try {
+					sync();
+					if (!index.containsKey(key))
+						return null;
+					V previous = value(key);
+					append(REMOVE, key, System.currentTimeMillis(), null, null);
+					return previous;
+				} finally {
+					unlock(lock);
+				}
 			} finally {
-				unlock(lock);
+				writer.unlock();
 			}
 		} catch (RuntimeException e) {
 			throw e;
@@ -266,13 +379,19 @@ public class PersistentMap<V> extends AbstractMap<String, V> implements Closeabl
 	public void clear() {
 		init();
 		try {
-			FileLock lock = lock();
+			writer.lock();
 			try {
-				IO.deleteWithException(data);
-				cache.clear();
-				IO.mkdirs(data);
+				FileLock lock = lock();
+				try {
+					sync();
+					append(CLEAR, "", System.currentTimeMillis(), null, null);
+					if (shouldCompact())
+						compact();
+				} finally {
+					unlock(lock);
+				}
 			} finally {
-				unlock(lock);
+				writer.unlock();
 			}
 		} catch (RuntimeException e) {
 			throw e;
@@ -281,17 +400,51 @@ public class PersistentMap<V> extends AbstractMap<String, V> implements Closeabl
 		}
 	}
 
-	@Override
-	public Set<String> keySet() {
+	/**
+	 * Remove the entries that were written before the given time.
+	 *
+	 * @param whenOlder the time in milliseconds since the epoch
+	 */
+	public void clear(long whenOlder) {
 		init();
-		return cache.keySet();
+		try {
+			writer.lock();
+			try {
+				FileLock lock = lock();
+				try {
+					sync();
+					long now = System.currentTimeMillis();
+					for (Map.Entry<String, Slot<V>> e : index.entrySet()) {
+						if (e.getValue().time < whenOlder)
+							append(REMOVE, e.getKey(), now, null, null);
+					}
+				} finally {
+					unlock(lock);
+				}
+			} finally {
+				writer.unlock();
+			}
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	@Override
 	public void close() throws IOException {
-		lockFile.close();
-		closed = true;
-		inited = false;
+		writer.lock();
+		try {
+			if (closed)
+				return;
+			closed = true;
+			inited = false;
+			index.clear();
+			IO.close(channel);
+			lockFile.close();
+		} finally {
+			writer.unlock();
+		}
 	}
 
 	@Override
@@ -299,33 +452,323 @@ public class PersistentMap<V> extends AbstractMap<String, V> implements Closeabl
 		return "PersistentMap[" + dir + "] " + super.toString();
 	}
 
-	public void clear(long whenOlder) {
-		init();
+	/**
+	 * Rewrite the log with only the latest record of each key.
+	 */
+	void compact() throws IOException {
+		channelLock.writeLock()
+			.lock();
 		try {
-			FileLock lock = lock();
-			try {
-				for (File f : data.listFiles()) {
-					if (f.lastModified() < whenOlder)
-						IO.deleteWithException(f);
+			File tmp = IO.createTempFile(dir, "map", ".log");
+			Map<String, Slot<V>> compacted = new ConcurrentHashMap<>();
+			long position = HEADER;
+			try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+				out.write(header(), 0);
+				for (Map.Entry<String, Slot<V>> e : index.entrySet()) {
+					Slot<V> slot = e.getValue();
+					ByteBuffer record = read(slot.offset, slot.length);
+					while (record.hasRemaining()) {
+						position += out.write(record, position);
+					}
+					compacted.put(e.getKey(),
+						new Slot<>(position - slot.length, slot.length, slot.time, slot.value));
 				}
-				cache.clear();
-			} finally {
-				unlock(lock);
+				out.force(false);
 			}
-		} catch (RuntimeException e) {
-			throw e;
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+			// tell the other processes that this log is obsolete
+			ByteBuffer moved = record(MOVED, "", 0L, null);
+			channel.write(moved, end);
+			IO.close(channel);
+			IO.rename(tmp, log);
+			channel = FileChannel.open(log.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			index.clear();
+			index.putAll(compacted);
+			end = position;
+			live = position - HEADER;
+		} finally {
+			channelLock.writeLock()
+				.unlock();
+		}
+	}
+
+	private boolean shouldCompact() {
+		long obsolete = end - HEADER - live;
+		return obsolete > COMPACT_MIN && obsolete > live;
+	}
+
+	/**
+	 * Open the log and read the index. A log that does not start with a valid
+	 * header is started afresh.
+	 */
+	private void open() throws IOException {
+		channelLock.writeLock()
+			.lock();
+		try {
+			reopen();
+		} finally {
+			channelLock.writeLock()
+				.unlock();
+		}
+	}
+
+	private void reopen() throws IOException {
+		IO.close(channel);
+		channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+			StandardOpenOption.WRITE);
+		index.clear();
+		live = 0L;
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		if (channel.read(header, 0) != HEADER || header.getInt(0) != MAGIC || header.getInt(4) != FORMAT) {
+			channel.truncate(0);
+			channel.write(header(), 0);
+			end = HEADER;
+			return;
+		}
+		end = HEADER;
+		scan();
+	}
+
+	/**
+	 * Pick up the records appended by other processes.
+	 */
+	private void sync() throws IOException {
+		if (channel.size() != end) {
+			scan();
+		}
+	}
+
+	/**
+	 * Read the records from the current end of the log. A truncated or
+	 * corrupt record ends the log and is cut off.
+	 */
+	private void scan() throws IOException {
+		long size = channel.size();
+		ByteBuffer head = ByteBuffer.allocate(RECORD);
+		while (end + RECORD <= size) {
+			head.clear();
+			if (!readFully(head, end))
+				break;
+			int length = head.getInt(0);
+			int crc = head.getInt(4);
+			if (length <= 0 || end + RECORD + length > size)
+				break;
+			ByteBuffer payload = ByteBuffer.allocate(length);
+			if (!readFully(payload, end + RECORD) || crc(payload.array()) != crc)
+				break;
+			payload.flip();
+			byte op = payload.get();
+			if (op < PUT || op > MOVED)
+				break;
+			long time = payload.getLong();
+			String key = string(payload);
+			int recordLength = RECORD + length;
+			switch (op) {
+				case PUT -> {
+					Slot<V> old = index.put(key, new Slot<>(end, recordLength, time, null));
+					if (old != null)
+						live -= old.length;
+					live += recordLength;
+				}
+				case REMOVE -> {
+					Slot<V> old = index.remove(key);
+					if (old != null)
+						live -= old.length;
+				}
+				case CLEAR -> {
+					index.clear();
+					live = 0L;
+				}
+				case MOVED -> {
+					// the log was compacted by another process
+					open();
+					return;
+				}
+				default -> {}
+			}
+			end += recordLength;
+		}
+		if (end < channel.size()) {
+			channel.truncate(end);
+		}
+	}
+
+	private void migrate() throws Exception {
+		File[] files = data.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String key = Strings.unescape(file.getName(), ESCAPE)
+					.orElse(null);
+				if (key != null && file.isFile()) {
+					append(PUT, key, file.lastModified(), IO.read(file), null);
+				}
+			}
+		}
+		channel.force(false);
+		IO.delete(data);
+	}
+
+	private void append(byte op, String key, long time, byte[] json, SoftReference<V> value) throws IOException {
+		ByteBuffer record = record(op, key, time, json);
+		int length = record.remaining();
+		long offset = end;
+		while (record.hasRemaining()) {
+			offset += channel.write(record, offset);
+		}
+		switch (op) {
+			case PUT -> {
+				Slot<V> old = index.put(key, new Slot<>(end, length, time, value));
+				if (old != null)
+					live -= old.length;
+				live += length;
+			}
+			case REMOVE -> {
+				Slot<V> old = index.remove(key);
+				if (old != null)
+					live -= old.length;
+			}
+			case CLEAR -> {
+				index.clear();
+				live = 0L;
+			}
+			default -> {}
+		}
+		end = offset;
+		if (op != CLEAR && shouldCompact())
+			compact();
+	}
+
+	private static ByteBuffer record(byte op, String key, long time, byte[] json) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		DataOutputStream dout = new DataOutputStream(bout);
+		dout.writeInt(0);
+		dout.writeInt(0);
+		dout.writeByte(op);
+		dout.writeLong(time);
+		byte[] k = key.getBytes(UTF_8);
+		dout.writeInt(k.length);
+		dout.write(k);
+		if (json != null) {
+			dout.writeInt(json.length);
+			dout.write(json);
+		}
+		dout.flush();
+		ByteBuffer record = ByteBuffer.wrap(bout.toByteArray());
+		int length = record.capacity() - RECORD;
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), RECORD, length);
+		record.putInt(0, length);
+		record.putInt(4, (int) crc.getValue());
+		return record;
+	}
+
+	private static ByteBuffer header() {
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC)
+			.putInt(FORMAT)
+			.flip();
+		return header;
+	}
+
+	/**
+	 * Return the value of a key, decoding it from the log when it is not in
+	 * memory. The slot is looked up under the read lock since a compaction
+	 * moves the records.
+	 */
+	@SuppressWarnings("unchecked")
+	private V value(Object key) throws Exception {
+		Slot<V> slot = index.get(key);
+		if (slot == null)
+			return null;
+		SoftReference<V> ref = slot.value;
+		V value = ref == null ? null : ref.get();
+		if (value != null)
+			return value;
+
+		ByteBuffer record;
+		channelLock.readLock()
+			.lock();
+		try {
+			slot = index.get(key);
+			if (slot == null)
+				return null;
+			record = read(slot.offset, slot.length);
+		} finally {
+			channelLock.readLock()
+				.unlock();
+		}
+		int crc = record.getInt(4);
+		if (crc(record.array(), RECORD, slot.length - RECORD) != crc)
+			throw new IOException("PersistentMap " + dir + " has a corrupt record at " + slot.offset);
+		record.position(RECORD + 1 + Long.BYTES);
+		string(record);
+		int length = record.getInt();
+		value = (V) codec.dec()
+			.from(new String(record.array(), record.position(), length, UTF_8))
+			.get(type);
+		slot.value = new SoftReference<>(value);
+		return value;
+	}
+
+	private ByteBuffer read(long offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		if (!readFully(buffer, offset))
+			throw new EOFException("PersistentMap " + dir + " is truncated at " + offset);
+		buffer.flip();
+		return buffer;
+	}
+
+	private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = channel.read(buffer, position + buffer.position());
+			if (n < 0)
+				return false;
 		}
+		return true;
+	}
+
+	private static String string(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		String s = new String(buffer.array(), buffer.position(), length, UTF_8);
+		buffer.position(buffer.position() + length);
+		return s;
+	}
+
+	private static int crc(byte[] bytes) {
+		return crc(bytes, 0, bytes.length);
 	}
 
-	private File keyToFile(String key) {
-		String escaped = Strings.escape(key, Pattern.compile("[\\\\/$:><\"|?*~]"), '~');
-		if (escaped.equals(".."))
-			escaped = "~002D.";
-		else if (escaped.equals("."))
-			escaped = "~002D";
+	private static int crc(byte[] bytes, int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+		return (int) crc.getValue();
+	}
+
+	private FileLock lock() throws IOException, InterruptedException {
+		int count = 400;
+		while (true)
+			try {
+				FileLock lock = lockFile.getChannel()
+					.lock();
+				if (!lock.isValid()) {
+					System.err.println("Ouch, got invalid lock " + dir + " " + Thread.currentThread()
+						.getName());
+					return null;
+				}
+				return lock;
+			} catch (OverlappingFileLockException e) {
+				if (count-- > 0)
+					TimeUnit.MILLISECONDS.sleep(5);
+				else
+					throw new RuntimeException("Could not obtain lock");
+			}
+	}
 
-		return new File(data, escaped);
+	private void unlock(FileLock lock) throws IOException {
+		if (lock == null || !lock.isValid()) {
+			System.err.println("Ouch, invalid lock was used " + dir + " " + Thread.currentThread()
+				.getName());
+			return;
+		}
+		lock.release();
 	}
 }
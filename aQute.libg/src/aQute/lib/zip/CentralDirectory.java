@@ -0,0 +1,264 @@
+package aQute.lib.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.ZipException;
+
+/**
+ * The central directory of a zip file. The headers are read from the buffer
+ * when asked for, only their positions are kept.
+ */
+final class CentralDirectory {
+	final static int			LOCSIG			= 0x04034b50;
+	final static int			LOCHDR			= 30;
+	private final static int	CENSIG			= 0x02014b50;
+	private final static int	ENDSIG			= 0x06054b50;
+	private final static int	ZIP64_ENDSIG	= 0x06064b50;
+	private final static int	ZIP64_LOCSIG	= 0x07064b50;
+	private final static int	CENHDR			= 46;
+	private final static int	ENDHDR			= 22;
+	private final static int	ZIP64_LOCHDR	= 20;
+	private final static long	ZIP64_MAGICVAL	= 0xFFFFFFFFL;
+	private final static int	EXTID_ZIP64		= 0x0001;
+
+	interface Reader {
+		ByteBuffer read(long position, int length) throws IOException;
+	}
+
+	/**
+	 * The offset of the zip file in the file, data prepended to the zip file
+	 * shifts all offsets.
+	 */
+	final long			base;
+	final ByteBuffer	cen;
+	final int[]			positions;
+
+	private CentralDirectory(long base, ByteBuffer cen, int[] positions) {
+		this.base = base;
+		this.cen = cen;
+		this.positions = positions;
+	}
+
+	static CentralDirectory read(Reader reader, long fileSize, Object source) throws IOException {
+		int tail = (int) Math.min(fileSize, ENDHDR + 0xFFFF + ZIP64_LOCHDR);
+		ByteBuffer end = order(reader.read(fileSize - tail, tail));
+		int pos = -1;
+		for (int i = tail - ENDHDR; i >= 0; i--) {
+			if (end.getInt(i) == ENDSIG) {
+				pos = i;
+				break;
+			}
+		}
+		if (pos < 0) {
+			throw new ZipException("zip END header not found in " + source);
+		}
+		long count = end.getShort(pos + 10) & 0xFFFF;
+		long cenSize = end.getInt(pos + 12) & ZIP64_MAGICVAL;
+		long cenOffset = end.getInt(pos + 16) & ZIP64_MAGICVAL;
+		long endPosition = fileSize - tail + pos;
+		if (pos >= ZIP64_LOCHDR && end.getInt(pos - ZIP64_LOCHDR) == ZIP64_LOCSIG) {
+			long end64 = end.getLong(pos - ZIP64_LOCHDR + 8);
+			endPosition = end64;
+			ByteBuffer zip64 = order(reader.read(end64, 56));
+			if (zip64.getInt(0) != ZIP64_ENDSIG) {
+				throw new ZipException("invalid zip64 END header in " + source);
+			}
+			count = zip64.getLong(32);
+			cenSize = zip64.getLong(40);
+			cenOffset = zip64.getLong(48);
+		}
+		long base = endPosition - cenSize - cenOffset;
+		if (cenSize > Integer.MAX_VALUE || base < 0L || count > Integer.MAX_VALUE) {
+			throw new ZipException("invalid central directory in " + source);
+		}
+		ByteBuffer cen = order(reader.read(base + cenOffset, (int) cenSize));
+		// the count can be truncated, the headers tell the real count
+		int[] positions = new int[(int) Math.min(Math.max(count, 16), cenSize / CENHDR)];
+		int n = 0;
+		int p = 0;
+		while (p + CENHDR <= cen.limit()) {
+			if (cen.getInt(p) != CENSIG) {
+				throw new ZipException("invalid central directory header in " + source);
+			}
+			int next = p + CENHDR + nameLength(cen, p) + (cen.getShort(p + 30) & 0xFFFF)
+				+ (cen.getShort(p + 32) & 0xFFFF);
+			if (next > cen.limit()) {
+				throw new ZipException("invalid central directory header in " + source);
+			}
+			if (n == positions.length) {
+				positions = Arrays.copyOf(positions, n * 2);
+			}
+			positions[n++] = p;
+			p = next;
+		}
+		if (n != positions.length) {
+			positions = Arrays.copyOf(positions, n);
+		}
+		return new CentralDirectory(base, cen, positions);
+	}
+
+	private static ByteBuffer order(ByteBuffer bb) {
+		return bb.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static int nameLength(ByteBuffer cen, int p) {
+		return cen.getShort(p + 28) & 0xFFFF;
+	}
+
+	int flag(int p) {
+		return cen.getShort(p + 8) & 0xFFFF;
+	}
+
+	int method(int p) {
+		return cen.getShort(p + 10) & 0xFFFF;
+	}
+
+	long dostime(int p) {
+		return cen.getInt(p + 12) & ZIP64_MAGICVAL;
+	}
+
+	long crc(int p) {
+		return cen.getInt(p + 16) & ZIP64_MAGICVAL;
+	}
+
+	long compressedSize(int p) {
+		long csize = cen.getInt(p + 20) & ZIP64_MAGICVAL;
+		if (csize == ZIP64_MAGICVAL) {
+			return zip64(p, 1);
+		}
+		return csize;
+	}
+
+	long size(int p) {
+		long size = cen.getInt(p + 24) & ZIP64_MAGICVAL;
+		if (size == ZIP64_MAGICVAL) {
+			return zip64(p, 0);
+		}
+		return size;
+	}
+
+	/**
+	 * The offset of the local header in the file.
+	 */
+	long offset(int p) {
+		long offset = cen.getInt(p + 42) & ZIP64_MAGICVAL;
+		if (offset == ZIP64_MAGICVAL) {
+			offset = zip64(p, 2);
+		}
+		return base + offset;
+	}
+
+	int nameLength(int p) {
+		return nameLength(cen, p);
+	}
+
+	/**
+	 * Answer if the name of the header at the given position has the given
+	 * UTF-8 bytes.
+	 */
+	boolean nameEquals(int p, byte[] name) {
+		if (nameLength(p) != name.length) {
+			return false;
+		}
+		for (int i = 0, n = p + CENHDR; i < name.length; i++, n++) {
+			if (cen.get(n) != name[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	int nameHash(int p) {
+		int h = 0;
+		for (int i = p + CENHDR, end = i + nameLength(p); i < end; i++) {
+			h = 31 * h + cen.get(i);
+		}
+		return h;
+	}
+
+	static int nameHash(byte[] name) {
+		int h = 0;
+		for (byte b : name) {
+			h = 31 * h + b;
+		}
+		return h;
+	}
+
+	byte[] nameBytes(int p) {
+		byte[] name = new byte[nameLength(p)];
+		cen.get(p + CENHDR, name);
+		return name;
+	}
+
+	String name(int p) {
+		return new String(nameBytes(p), UTF_8);
+	}
+
+	boolean isDirectory(int p) {
+		int length = nameLength(p);
+		return length > 0 && cen.get(p + CENHDR + length - 1) == '/';
+	}
+
+	byte[] extra(int p) {
+		int elen = cen.getShort(p + 30) & 0xFFFF;
+		if (elen == 0) {
+			return null;
+		}
+		byte[] extra = new byte[elen];
+		cen.get(p + CENHDR + nameLength(p), extra);
+		return extra;
+	}
+
+	/**
+	 * Read a value from the zip64 extra field. The field only holds the values
+	 * that do not fit in the header, in the order size, compressed size and
+	 * offset.
+	 */
+	private long zip64(int p, int which) {
+		int e = p + CENHDR + nameLength(p);
+		int end = e + (cen.getShort(p + 30) & 0xFFFF);
+		while (e + 4 <= end) {
+			int tag = cen.getShort(e) & 0xFFFF;
+			int sz = cen.getShort(e + 2) & 0xFFFF;
+			if (tag == EXTID_ZIP64) {
+				int f = e + 4;
+				int fend = Math.min(f + sz, end);
+				for (int i = 0; i <= which; i++) {
+					boolean present = switch (i) {
+						case 0 -> (cen.getInt(p + 24) & ZIP64_MAGICVAL) == ZIP64_MAGICVAL;
+						case 1 -> (cen.getInt(p + 20) & ZIP64_MAGICVAL) == ZIP64_MAGICVAL;
+						default -> (cen.getInt(p + 42) & ZIP64_MAGICVAL) == ZIP64_MAGICVAL;
+					};
+					if (present) {
+						if (f + 8 > fend) {
+							break;
+						}
+						if (i == which) {
+							return cen.getLong(f);
+						}
+						f += 8;
+					}
+				}
+				break;
+			}
+			e += 4 + sz;
+		}
+		return ZIP64_MAGICVAL;
+	}
+
+	/**
+	 * Answer the position of the data of the entry in the file, the local
+	 * header is read to skip its variable length fields.
+	 */
+	static long dataPosition(Reader reader, long offset, Object entry) throws IOException {
+		ByteBuffer loc = order(reader.read(offset, LOCHDR));
+		if (loc.getInt(0) != LOCSIG) {
+			throw new ZipException("invalid local header for " + entry);
+		}
+		return offset + LOCHDR + (loc.getShort(26) & 0xFFFF) + (loc.getShort(28) & 0xFFFF);
+	}
+}
@@ -0,0 +1,327 @@
+package aQute.lib.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import aQute.lib.io.ByteBufferInputStream;
+
+/**
+ * A zip file that is mapped in memory. Opening the file only records the
+ * position of the headers in the central directory, the headers are decoded
+ * when an entry is asked for. The central directory and the data stay in the
+ * mapped memory, outside the heap.
+ * <p>
+ * The data of a stored entry is answered as a slice of the mapped memory
+ * without copying. The data of a deflated entry is inflated when asked for.
+ * <p>
+ * Files larger than 2GB cannot be mapped. The mapping is released when it is
+ * garbage collected, on Windows the file cannot be deleted until then. Reading
+ * is thread safe.
+ */
+public class MappedZipFile implements Closeable {
+
+	/**
+	 * An entry in the central directory.
+	 */
+	public final class Entry {
+		private final int	position;
+		private String		name;
+
+		Entry(int index) {
+			this.position = cd.positions[index];
+		}
+
+		public String getName() {
+			String n = name;
+			if (n == null) {
+				name = n = cd.name(position);
+			}
+			return n;
+		}
+
+		public int getMethod() {
+			return cd.method(position);
+		}
+
+		public long getCrc() {
+			return cd.crc(position);
+		}
+
+		public long getCompressedSize() {
+			return cd.compressedSize(position);
+		}
+
+		public long getSize() {
+			return cd.size(position);
+		}
+
+		public boolean isDirectory() {
+			return cd.isDirectory(position);
+		}
+
+		public boolean isEncrypted() {
+			return (cd.flag(position) & 1) != 0;
+		}
+
+		public byte[] getExtra() {
+			return cd.extra(position);
+		}
+
+		/**
+		 * Answer a zip entry with the same values as the entry a
+		 * {@link java.util.zip.ZipFile} would answer.
+		 */
+		public ZipEntry toZipEntry() {
+			ZipEntry entry = new ZipEntry(getName());
+			entry.setMethod(getMethod());
+			entry.setCrc(getCrc());
+			entry.setSize(getSize());
+			entry.setCompressedSize(getCompressedSize());
+			entry.setTime(dosToJavaTime(cd.dostime(position)));
+			byte[] extra = getExtra();
+			if (extra != null) {
+				entry.setExtra(extra);
+			}
+			return entry;
+		}
+
+		@Override
+		public String toString() {
+			return getName();
+		}
+	}
+
+	private final Path				path;
+	private final ByteBuffer		map;
+	private final CentralDirectory	cd;
+	/**
+	 * Open addressing hash table of the entry indexes plus one, by the hash
+	 * of the UTF-8 bytes of the name.
+	 */
+	private final int[]				table;
+
+	public MappedZipFile(Path path) throws IOException {
+		this.path = path;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new ZipException("zip file too large to map " + path);
+			}
+			this.map = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+		}
+		this.cd = CentralDirectory.read(this::slice, map.capacity(), path);
+		int n = cd.positions.length;
+		this.table = new int[Integer.highestOneBit(Math.max(n, 1) * 2 - 1) << 1];
+		int mask = table.length - 1;
+		for (int i = 0; i < n; i++) {
+			int p = cd.positions[i];
+			int slot = spread(cd.nameHash(p)) & mask;
+			while (table[slot] != 0) {
+				// like ZipFile, the first entry with a name wins
+				if (cd.nameEquals(p, cd.nameBytes(cd.positions[table[slot] - 1]))) {
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if (table[slot] == 0) {
+				table[slot] = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * Answer the number of entries.
+	 */
+	public int size() {
+		return cd.positions.length;
+	}
+
+	/**
+	 * Answer the entries in the order of the central directory.
+	 */
+	public List<Entry> entries() {
+		return new AbstractList<>() {
+			@Override
+			public Entry get(int index) {
+				return new Entry(index);
+			}
+
+			@Override
+			public int size() {
+				return MappedZipFile.this.size();
+			}
+		};
+	}
+
+	/**
+	 * Answer the entry with the given name or null.
+	 */
+	public Entry getEntry(String name) {
+		byte[] bytes = name.getBytes(UTF_8);
+		int mask = table.length - 1;
+		for (int slot = spread(CentralDirectory.nameHash(bytes)) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int index = table[slot] - 1;
+			if (cd.nameEquals(cd.positions[index], bytes)) {
+				return new Entry(index);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Answer the data of the entry as it is stored in the zip file. The answer
+	 * is a read only slice of the mapped memory.
+	 */
+	public ByteBuffer getCompressedData(Entry entry) throws IOException {
+		long start = CentralDirectory.dataPosition(this::slice, cd.offset(entry.position), entry + " in " + path);
+		return slice(start, checkedSize(entry.getCompressedSize(), entry));
+	}
+
+	/**
+	 * Answer the uncompressed data of the entry. The data of a stored entry is
+	 * a read only slice of the mapped memory, the data of a deflated entry is
+	 * inflated into a new buffer.
+	 */
+	public ByteBuffer getData(Entry entry) throws IOException {
+		ByteBuffer data = getCompressedData(entry);
+		switch (entry.getMethod()) {
+			case ZipEntry.STORED :
+				return data;
+			case ZipEntry.DEFLATED :
+				return inflate(data, checkedSize(entry.getSize(), entry), entry);
+			default :
+				throw new ZipException("unsupported compression method " + entry.getMethod() + " for " + entry);
+		}
+	}
+
+	/**
+	 * Answer a stream of the uncompressed data of the entry. A deflated entry is
+	 * inflated while it is read.
+	 */
+	public InputStream getInputStream(Entry entry) throws IOException {
+		ByteBuffer data = getCompressedData(entry);
+		switch (entry.getMethod()) {
+			case ZipEntry.STORED :
+				return new ByteBufferInputStream(data);
+			case ZipEntry.DEFLATED :
+				return new InflaterInputStream(new ByteBufferInputStream(data), new Inflater(true)) {
+					private boolean	closed;
+					private boolean	eof;
+
+					/**
+					 * Like ZipFile, give the inflater a dummy byte at the end
+					 * of the data as some versions of zlib need it.
+					 */
+					@Override
+					protected void fill() throws IOException {
+						if (eof) {
+							throw new EOFException("unexpected end of deflated data for " + entry + " in " + path);
+						}
+						len = in.read(buf, 0, buf.length);
+						if (len == -1) {
+							buf[0] = 0;
+							len = 1;
+							eof = true;
+						}
+						inf.setInput(buf, 0, len);
+					}
+
+					@Override
+					public void close() throws IOException {
+						if (!closed) {
+							closed = true;
+							inf.end();
+							super.close();
+						}
+					}
+				};
+			default :
+				throw new ZipException("unsupported compression method " + entry.getMethod() + " for " + entry);
+		}
+	}
+
+	private ByteBuffer inflate(ByteBuffer data, int size, Entry entry) throws IOException {
+		ByteBuffer result = ByteBuffer.allocate(size);
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(data);
+			while (result.hasRemaining() && !inflater.finished()) {
+				if (inflater.inflate(result) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new EOFException("unexpected end of deflated data for " + entry + " in " + path);
+				}
+			}
+			if (result.hasRemaining()) {
+				throw new ZipException("invalid entry size for " + entry + " in " + path);
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException(e.getMessage() + " for " + entry + " in " + path);
+		} finally {
+			inflater.end();
+		}
+		return result.flip();
+	}
+
+	private int checkedSize(long size, Entry entry) throws ZipException {
+		if (size < 0L || size > Integer.MAX_VALUE) {
+			throw new ZipException("invalid entry size for " + entry + " in " + path);
+		}
+		return (int) size;
+	}
+
+	private ByteBuffer slice(long position, int length) throws IOException {
+		if (position < 0L || position + length > map.capacity()) {
+			throw new EOFException("unexpected end of " + path);
+		}
+		return map.slice((int) position, length)
+			.asReadOnlyBuffer();
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Convert a DOS time like ZipFile does, out of range fields overflow into
+	 * the next field.
+	 */
+	private static long dosToJavaTime(long dostime) {
+		LocalDateTime ldt = LocalDateTime.of((int) (((dostime >> 25) & 0x7f) + 1980), 1, 1, 0, 0)
+			.plusMonths(((dostime >> 21) & 0x0f) - 1)
+			.plusDays(((dostime >> 16) & 0x1f) - 1)
+			.plusHours((dostime >> 11) & 0x1f)
+			.plusMinutes((dostime >> 5) & 0x3f)
+			.plusSeconds((dostime << 1) & 0x3e);
+		return ldt.atZone(ZoneId.systemDefault())
+			.toInstant()
+			.toEpochMilli();
+	}
+
+	/**
+	 * The mapping cannot be released explicitly, it is released when it is
+	 * garbage collected.
+	 */
+	@Override
+	public void close() {}
+
+	@Override
+	public String toString() {
+		return path.toString();
+	}
+}
@@ -0,0 +1,315 @@
+package aQute.lib.zip;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
+
+import aQute.bnd.exceptions.Exceptions;
+import aQute.lib.io.ByteBufferOutputStream;
+
+/**
+ * A zip writer that deflates entries on other threads. The data of an entry
+ * is buffered until the entry is closed and then deflated by a worker while the
+ * next entries are written. Entries larger than the chunk size are split in
+ * chunks that are deflated concurrently, each chunk is primed with the end of
+ * the previous chunk as dictionary, like pigz does.
+ * <p>
+ * The compressed entries are written to the output stream in the order they
+ * were put, on the calling thread. The output is the same for the same input
+ * but it can differ from the output of {@link ZipWriter} for entries larger
+ * than the chunk size.
+ */
+public class ParallelZipWriter extends ZipWriter {
+	public final static int		DEFAULT_CHUNK_SIZE	= 1 << 20;
+	private final static int	DICTIONARY_SIZE		= 32 * 1024;
+
+	/**
+	 * An entry waiting to be written.
+	 */
+	private final static class Pending {
+		final ZipEntry			entry;
+		final Promise<Deflated>	deflated;
+		final int				workers;
+
+		Pending(ZipEntry entry, Promise<Deflated> deflated, int workers) {
+			this.entry = entry;
+			this.deflated = deflated;
+			this.workers = workers;
+		}
+	}
+
+	private final static class Deflated {
+		final long			crc;
+		final ByteBuffer	data;
+
+		Deflated(long crc, ByteBuffer data) {
+			this.crc = crc;
+			this.data = data;
+		}
+	}
+
+	private final PromiseFactory		promiseFactory;
+	private final int					parallelism;
+	private final int					chunkSize;
+	private final Deque<Pending>		pending		= new ArrayDeque<>();
+	private int							method		= ZipEntry.DEFLATED;
+	private int							level		= Deflater.DEFAULT_COMPRESSION;
+	private int							inflight;
+	private ZipEntry					current;
+	private ByteBufferOutputStream		buffer;
+
+	/**
+	 * Create a parallel zip writer.
+	 *
+	 * @param out the output stream to write to
+	 * @param jar if true, the first entry is marked as the first entry of a jar
+	 *            file
+	 * @param promiseFactory the promise factory whose executor runs the
+	 *            workers
+	 * @param parallelism the maximum number of concurrent workers
+	 */
+	public ParallelZipWriter(OutputStream out, boolean jar, PromiseFactory promiseFactory, int parallelism) {
+		this(out, jar, promiseFactory, parallelism, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Create a parallel zip writer.
+	 *
+	 * @param out the output stream to write to
+	 * @param jar if true, the first entry is marked as the first entry of a jar
+	 *            file
+	 * @param promiseFactory the promise factory whose executor runs the
+	 *            workers
+	 * @param parallelism the maximum number of concurrent workers
+	 * @param chunkSize entries larger than this are deflated in chunks of this
+	 *            size
+	 */
+	public ParallelZipWriter(OutputStream out, boolean jar, PromiseFactory promiseFactory, int parallelism,
+		int chunkSize) {
+		super(out, jar);
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		}
+		if (chunkSize < DICTIONARY_SIZE) {
+			throw new IllegalArgumentException("chunk size must be at least " + DICTIONARY_SIZE + ": " + chunkSize);
+		}
+		this.promiseFactory = requireNonNull(promiseFactory);
+		this.parallelism = parallelism;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public void setMethod(int method) {
+		super.setMethod(method);
+		this.method = method;
+	}
+
+	@Override
+	public void setLevel(int level) {
+		super.setLevel(level);
+		this.level = level;
+	}
+
+	@Override
+	public void putNextEntry(ZipEntry e) throws IOException {
+		if (current != null) {
+			closeEntry();
+		}
+		current = requireNonNull(e);
+		buffer = new ByteBufferOutputStream();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (current == null) {
+			throw new ZipException("no current ZIP entry");
+		}
+		buffer.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (current == null) {
+			throw new ZipException("no current ZIP entry");
+		}
+		buffer.write(b, off, len);
+	}
+
+	@Override
+	public void closeEntry() throws IOException {
+		ZipEntry e = current;
+		if (e == null) {
+			return;
+		}
+		current = null;
+		ByteBuffer data = buffer.toByteBuffer();
+		buffer = null;
+		int m = e.getMethod() == -1 ? method : e.getMethod();
+		if (m == ZipEntry.STORED) {
+			CRC32 crc = new CRC32();
+			crc.update(data.duplicate());
+			if (e.getCrc() != -1 && e.getCrc() != crc.getValue()) {
+				throw new ZipException("invalid entry CRC-32 for " + e.getName());
+			}
+			e.setMethod(ZipEntry.STORED);
+			e.setCrc(crc.getValue());
+			e.setSize(data.remaining());
+			e.setCompressedSize(data.remaining());
+			add(new Pending(e, promiseFactory.resolved(new Deflated(crc.getValue(), data)), 0));
+			return;
+		}
+		e.setMethod(ZipEntry.DEFLATED);
+		e.setSize(data.remaining());
+		long chunks = Math.max(1L, (data.remaining() + (long) chunkSize - 1L) / chunkSize);
+		int workers = (int) Math.min(parallelism, chunks);
+		while (!pending.isEmpty() && inflight + workers > 2 * parallelism) {
+			writePending();
+		}
+		add(new Pending(e, deflate(data, (int) chunks, workers), workers));
+	}
+
+	/**
+	 * The raw entry is written after the entries that are still being
+	 * deflated.
+	 */
+	@Override
+	public void putRawEntry(ZipEntry e, ByteBuffer data) throws IOException {
+		if (current != null) {
+			closeEntry();
+		}
+		if (e.getCrc() == -1) {
+			throw new ZipException("raw entry missing size or crc-32");
+		}
+		add(new Pending(e, promiseFactory.resolved(new Deflated(e.getCrc(), data)), 0));
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if (current != null) {
+			closeEntry();
+		}
+		while (!pending.isEmpty()) {
+			writePending();
+		}
+		super.finish();
+	}
+
+	private void add(Pending p) {
+		pending.addLast(p);
+		inflight += p.workers;
+	}
+
+	private void writePending() throws IOException {
+		Pending p = pending.removeFirst();
+		inflight -= p.workers;
+		Deflated deflated;
+		try {
+			deflated = p.deflated.getValue();
+		} catch (InvocationTargetException e) {
+			throw Exceptions.duck(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread()
+				.interrupt();
+			throw new InterruptedIOException("interrupted writing " + p.entry.getName());
+		}
+		p.entry.setCrc(deflated.crc);
+		p.entry.setCompressedSize(deflated.data.remaining());
+		super.putRawEntry(p.entry, deflated.data);
+	}
+
+	private Promise<Deflated> deflate(ByteBuffer data, int chunks, int workers) {
+		ByteBuffer[] deflated = new ByteBuffer[chunks];
+		CRC32 crc = new CRC32();
+		// the last job calculates the CRC-32 of the whole entry
+		int jobs = chunks == 1 ? 1 : chunks + 1;
+		AtomicInteger next = new AtomicInteger();
+		Callable<Void> worker = () -> {
+			for (int job; (job = next.getAndIncrement()) < jobs;) {
+				if (job < chunks) {
+					deflated[job] = deflateChunk(data, job);
+				}
+				if (job == jobs - 1) {
+					crc.update(data.duplicate());
+				}
+			}
+			return null;
+		};
+		List<Promise<Void>> promises = new ArrayList<>(workers);
+		for (int i = 0; i < workers; i++) {
+			promises.add(promiseFactory.submit(worker));
+		}
+		return promiseFactory.all(promises)
+			.map(v -> new Deflated(crc.getValue(), concat(deflated)));
+	}
+
+	/**
+	 * Deflate a chunk of the data. All but the last chunk end with a sync
+	 * flush so that the deflated chunks can be concatenated into a single
+	 * deflate stream.
+	 */
+	private ByteBuffer deflateChunk(ByteBuffer data, int chunk) {
+		int start = data.position() + chunk * chunkSize;
+		int end = Math.min(start + chunkSize, data.limit());
+		boolean last = end == data.limit();
+		Deflater deflater = new Deflater(level, true);
+		try {
+			if (chunk > 0) {
+				deflater.setDictionary(data.duplicate()
+					.limit(start)
+					.position(start - DICTIONARY_SIZE));
+			}
+			deflater.setInput(data.duplicate()
+				.limit(end)
+				.position(start));
+			ByteBufferOutputStream out = new ByteBufferOutputStream(Math.max(64, (end - start) / 2));
+			byte[] b = new byte[8192];
+			if (last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					out.write(b, 0, deflater.deflate(b));
+				}
+			} else {
+				int n;
+				do {
+					n = deflater.deflate(b, 0, b.length, Deflater.SYNC_FLUSH);
+					out.write(b, 0, n);
+				} while (n == b.length);
+			}
+			return out.toByteBuffer();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static ByteBuffer concat(ByteBuffer[] buffers) {
+		if (buffers.length == 1) {
+			return buffers[0];
+		}
+		int size = 0;
+		for (ByteBuffer bb : buffers) {
+			size += bb.remaining();
+		}
+		ByteBuffer result = ByteBuffer.allocate(size);
+		for (ByteBuffer bb : buffers) {
+			result.put(bb.duplicate());
+		}
+		return result.flip();
+	}
+}
@@ -0,0 +1,149 @@
+package aQute.lib.zip;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Read the entries of a zip file as they are stored, that is, without
+ * inflating them. This allows copying the compressed bytes of an entry to
+ * another zip file with {@link ZipWriter#putRawEntry(ZipEntry, ByteBuffer)}.
+ * <p>
+ * Only the central directory is read when opening the file, the local headers
+ * are read when the data of an entry is requested. Reading is thread safe.
+ */
+public class RawZipFile implements Closeable {
+	/**
+	 * An entry in the central directory.
+	 */
+	public static final class Entry {
+		private final String	name;
+		private final int		flag;
+		private final int		method;
+		private final long		crc;
+		private final long		csize;
+		private final long		size;
+		private final long		offset;
+
+		Entry(String name, int flag, int method, long crc, long csize, long size, long offset) {
+			this.name = name;
+			this.flag = flag;
+			this.method = method;
+			this.crc = crc;
+			this.csize = csize;
+			this.size = size;
+			this.offset = offset;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getMethod() {
+			return method;
+		}
+
+		public long getCrc() {
+			return crc;
+		}
+
+		public long getCompressedSize() {
+			return csize;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public boolean isEncrypted() {
+			return (flag & 1) != 0;
+		}
+
+		/**
+		 * Answer if this entry describes the same data as the given entry of a
+		 * {@link java.util.zip.ZipFile}.
+		 */
+		public boolean matches(ZipEntry entry) {
+			return name.equals(entry.getName()) && method == entry.getMethod() && crc == entry.getCrc()
+				&& csize == entry.getCompressedSize() && size == entry.getSize();
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private final Path					path;
+	private final FileChannel			channel;
+	private final Map<String, Entry>	entries;
+
+	public RawZipFile(Path path) throws IOException {
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			this.entries = readCentralDirectory();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Answer the entry with the given name or null.
+	 */
+	public Entry getEntry(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * Answer the data of the entry as it is stored in the zip file.
+	 */
+	public ByteBuffer readCompressed(Entry entry) throws IOException {
+		if (entry.csize > Integer.MAX_VALUE) {
+			throw new ZipException("entry too large " + entry.name + " in " + path);
+		}
+		long start = CentralDirectory.dataPosition(this::read, entry.offset, entry.name + " in " + path);
+		return read(start, (int) entry.csize);
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer bb = ByteBuffer.allocate(length);
+		while (bb.hasRemaining()) {
+			if (channel.read(bb, position + bb.position()) < 0) {
+				throw new EOFException("unexpected end of " + path);
+			}
+		}
+		bb.flip();
+		return bb;
+	}
+
+	private Map<String, Entry> readCentralDirectory() throws IOException {
+		CentralDirectory cd = CentralDirectory.read(this::read, channel.size(), path);
+		Map<String, Entry> result = new HashMap<>(cd.positions.length * 4 / 3 + 1);
+		for (int p : cd.positions) {
+			String name = cd.name(p);
+			result.putIfAbsent(name, new Entry(name, cd.flag(p), cd.method(p), cd.crc(p), cd.compressedSize(p),
+				cd.size(p), cd.offset(p)));
+		}
+		return result;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return path.toString();
+	}
+}
@@ -0,0 +1,649 @@
+package aQute.lib.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A zip writer that writes the same format as {@link java.util.zip.ZipOutputStream}
+ * and {@link java.util.jar.JarOutputStream} but can also copy entries that are
+ * already compressed, see {@link #putRawEntry(ZipEntry, ByteBuffer)}. This
+ * avoids inflating and deflating again entries that are copied unchanged from
+ * another zip file.
+ * <p>
+ * Entries are written with {@link #putNextEntry(ZipEntry)}, the write methods
+ * and {@link #closeEntry()} like with a ZipOutputStream. Entry names are
+ * encoded in UTF-8.
+ */
+public class ZipWriter extends OutputStream {
+	private final static int	LOCSIG				= 0x04034b50;
+	private final static int	EXTSIG				= 0x08074b50;
+	private final static int	CENSIG				= 0x02014b50;
+	private final static int	ENDSIG				= 0x06054b50;
+	private final static int	ZIP64_ENDSIG		= 0x06064b50;
+	private final static int	ZIP64_LOCSIG		= 0x07064b50;
+	private final static int	ZIP64_ENDHDR		= 56;
+	private final static long	ZIP64_MAGICVAL		= 0xFFFFFFFFL;
+	private final static int	ZIP64_MAGICCOUNT	= 0xFFFF;
+	private final static int	EXTID_ZIP64			= 0x0001;
+	private final static int	EXTID_EXTT			= 0x5455;
+	private final static int	EXTT_FLAG_LMT		= 0x1;
+	private final static int	JAR_MAGIC			= 0xCAFE;
+	private final static int	DATA_DESCRIPTOR		= 0x08;
+	private final static int	USE_UTF8			= 0x800;
+	private final static long	DOSTIME_BEFORE_1980	= (1 << 21) | (1 << 16);
+
+	/**
+	 * An entry that was written, kept for the central directory.
+	 */
+	private final static class Entry {
+		final byte[]	name;
+		final byte[]	extra;
+		final int		method;
+		final int		flag;
+		final long		dostime;
+		final long		unixtime;
+		final long		offset;
+		long			crc;
+		long			csize;
+		long			size;
+
+		Entry(byte[] name, byte[] extra, int method, int flag, long time, long offset) {
+			this.name = name;
+			this.extra = extra;
+			this.method = method;
+			this.flag = flag;
+			this.offset = offset;
+			LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+			int year = ldt.getYear();
+			this.dostime = dosTime(ldt);
+			// like ZipEntry, keep times outside the DOS range in an extended
+			// timestamp
+			long seconds = Math.floorDiv(time, 1000L);
+			this.unixtime = ((year < 1980 || year > 2099) && seconds >= Integer.MIN_VALUE
+				&& seconds <= Integer.MAX_VALUE) ? seconds : -1L;
+		}
+
+		int version() {
+			return method == ZipEntry.STORED ? 10 : 20;
+		}
+
+		boolean hasExtendedTime() {
+			return unixtime != -1L;
+		}
+	}
+
+	private final OutputStream	out;
+	private final boolean		jar;
+	private final List<Entry>	entries		= new ArrayList<>();
+	private final Set<String>	names		= new HashSet<>();
+	private final byte[]		scratch		= new byte[8];
+	private final byte[]		buffer		= new byte[8192];
+	private final CRC32			crc			= new CRC32();
+	private final Deflater		deflater	= new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	private int					method		= ZipEntry.DEFLATED;
+	private long				written;
+	private Entry				current;
+	private long				currentSize;
+	private boolean				finished;
+	private boolean				closed;
+
+	/**
+	 * Create a zip writer.
+	 *
+	 * @param out the output stream to write to
+	 * @param jar if true, the first entry is marked as the first entry of a jar
+	 *            file like {@link java.util.jar.JarOutputStream} does
+	 */
+	public ZipWriter(OutputStream out, boolean jar) {
+		this.out = requireNonNull(out);
+		this.jar = jar;
+	}
+
+	/**
+	 * Set the default compression method for entries that do not specify a
+	 * method.
+	 *
+	 * @param method {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}
+	 */
+	public void setMethod(int method) {
+		if (method != ZipEntry.DEFLATED && method != ZipEntry.STORED) {
+			throw new IllegalArgumentException("invalid compression method");
+		}
+		this.method = method;
+	}
+
+	/**
+	 * Set the compression level for deflated entries.
+	 */
+	public void setLevel(int level) {
+		deflater.setLevel(level);
+	}
+
+	/**
+	 * Begin writing a new entry. A stored entry must have its size and CRC-32
+	 * set. The previous entry is closed if still open.
+	 */
+	public void putNextEntry(ZipEntry e) throws IOException {
+		ensureOpen();
+		if (current != null) {
+			closeEntry();
+		}
+		int m = e.getMethod() == -1 ? method : e.getMethod();
+		int flag = USE_UTF8;
+		switch (m) {
+			case ZipEntry.DEFLATED :
+				if (e.getSize() == -1 || e.getCompressedSize() == -1 || e.getCrc() == -1) {
+					flag |= DATA_DESCRIPTOR;
+				}
+				break;
+			case ZipEntry.STORED :
+				if (e.getSize() == -1) {
+					throw new ZipException("STORED entry missing size");
+				}
+				if (e.getCrc() == -1) {
+					throw new ZipException("STORED entry missing crc-32");
+				}
+				if (e.getCompressedSize() != -1 && e.getCompressedSize() != e.getSize()) {
+					throw new ZipException("STORED entry where compressed != uncompressed size");
+				}
+				break;
+			default :
+				throw new ZipException("unsupported compression method");
+		}
+		current = begin(e, m, flag);
+		if ((flag & DATA_DESCRIPTOR) == 0) {
+			current.crc = e.getCrc();
+			current.size = e.getSize();
+			current.csize = m == ZipEntry.STORED ? e.getSize() : e.getCompressedSize();
+		}
+		writeLOC(current);
+		currentSize = 0L;
+		crc.reset();
+	}
+
+	/**
+	 * Write an entry with data that is already compressed with the method of
+	 * the entry. The entry must have its method, size, compressed size and
+	 * CRC-32 set, the compressed size must be the number of remaining bytes in
+	 * the data. The data is copied as is.
+	 */
+	public void putRawEntry(ZipEntry e, ByteBuffer data) throws IOException {
+		ensureOpen();
+		if (current != null) {
+			closeEntry();
+		}
+		int m = e.getMethod();
+		if (m != ZipEntry.DEFLATED && m != ZipEntry.STORED) {
+			throw new ZipException("unsupported compression method");
+		}
+		if (e.getSize() == -1 || e.getCrc() == -1) {
+			throw new ZipException("raw entry missing size or crc-32");
+		}
+		if (e.getCompressedSize() != data.remaining()
+			|| (m == ZipEntry.STORED && e.getCompressedSize() != e.getSize())) {
+			throw new ZipException("raw entry compressed size does not match the data");
+		}
+		Entry entry = begin(e, m, USE_UTF8);
+		entry.crc = e.getCrc();
+		entry.size = e.getSize();
+		entry.csize = e.getCompressedSize();
+		writeLOC(entry);
+		ByteBuffer bb = data.duplicate();
+		if (bb.hasArray()) {
+			writeBytes(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+		} else {
+			while (bb.hasRemaining()) {
+				int n = Math.min(buffer.length, bb.remaining());
+				bb.get(buffer, 0, n);
+				writeBytes(buffer, 0, n);
+			}
+		}
+		entries.add(entry);
+	}
+
+	private Entry begin(ZipEntry e, int m, int flag) throws ZipException {
+		String name = e.getName();
+		if (!names.add(name)) {
+			throw new ZipException("duplicate entry: " + name);
+		}
+		byte[] extra = e.getExtra();
+		if (jar && entries.isEmpty() && !hasMagic(extra)) {
+			byte[] magic = new byte[(extra == null ? 0 : extra.length) + 4];
+			set16(magic, 0, JAR_MAGIC);
+			if (extra != null) {
+				System.arraycopy(extra, 0, magic, 4, extra.length);
+			}
+			extra = magic;
+		}
+		long time = e.getTime();
+		if (time == -1L) {
+			time = System.currentTimeMillis();
+		}
+		return new Entry(name.getBytes(UTF_8), extra, m, flag, time, written);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		scratch[0] = (byte) b;
+		write(scratch, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (off < 0 || len < 0 || off > b.length - len) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (current == null) {
+			throw new ZipException("no current ZIP entry");
+		}
+		if (len == 0) {
+			return;
+		}
+		if (current.method == ZipEntry.DEFLATED) {
+			deflater.setInput(b, off, len);
+			while (!deflater.needsInput()) {
+				deflate();
+			}
+		} else {
+			currentSize += len;
+			if (currentSize > current.size) {
+				throw new ZipException("attempt to write past end of STORED entry");
+			}
+			writeBytes(b, off, len);
+		}
+		crc.update(b, off, len);
+	}
+
+	private void deflate() throws IOException {
+		int n = deflater.deflate(buffer, 0, buffer.length);
+		if (n > 0) {
+			writeBytes(buffer, 0, n);
+		}
+	}
+
+	/**
+	 * Close the current entry.
+	 */
+	public void closeEntry() throws IOException {
+		ensureOpen();
+		Entry e = current;
+		if (e == null) {
+			return;
+		}
+		current = null;
+		if (e.method == ZipEntry.DEFLATED) {
+			deflater.finish();
+			while (!deflater.finished()) {
+				deflate();
+			}
+			long size = deflater.getBytesRead();
+			long csize = deflater.getBytesWritten();
+			deflater.reset();
+			if ((e.flag & DATA_DESCRIPTOR) == 0) {
+				check(e, size, csize);
+			} else {
+				e.size = size;
+				e.csize = csize;
+				e.crc = crc.getValue();
+				writeEXT(e);
+			}
+		} else {
+			check(e, currentSize, currentSize);
+		}
+		entries.add(e);
+	}
+
+	private void check(Entry e, long size, long csize) throws ZipException {
+		if (e.size != size) {
+			throw new ZipException(
+				"invalid entry size (expected " + e.size + " but got " + size + " bytes)");
+		}
+		if (e.csize != csize) {
+			throw new ZipException(
+				"invalid entry compressed size (expected " + e.csize + " but got " + csize + " bytes)");
+		}
+		if (e.crc != crc.getValue()) {
+			throw new ZipException("invalid entry CRC-32 (expected 0x" + Long.toHexString(e.crc) + " but got 0x"
+				+ Long.toHexString(crc.getValue()) + ")");
+		}
+	}
+
+	/**
+	 * Finish writing the zip file without closing the underlying stream.
+	 */
+	public void finish() throws IOException {
+		ensureOpen();
+		if (finished) {
+			return;
+		}
+		if (current != null) {
+			closeEntry();
+		}
+		long offset = written;
+		for (Entry e : entries) {
+			writeCEN(e);
+		}
+		writeEND(offset, written - offset);
+		finished = true;
+		deflater.end();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			try {
+				finish();
+			} finally {
+				closed = true;
+				deflater.end();
+				out.close();
+			}
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	private void writeLOC(Entry e) throws IOException {
+		int elen = getExtraLen(e.extra);
+		boolean hasZip64 = false;
+		writeInt(LOCSIG);
+		if ((e.flag & DATA_DESCRIPTOR) == DATA_DESCRIPTOR) {
+			writeShort(e.version());
+			writeShort(e.flag);
+			writeShort(e.method);
+			writeInt(e.dostime);
+			writeInt(0);
+			writeInt(0);
+			writeInt(0);
+		} else {
+			hasZip64 = e.csize >= ZIP64_MAGICVAL || e.size >= ZIP64_MAGICVAL;
+			writeShort(hasZip64 ? 45 : e.version());
+			writeShort(e.flag);
+			writeShort(e.method);
+			writeInt(e.dostime);
+			writeInt(e.crc);
+			if (hasZip64) {
+				writeInt(ZIP64_MAGICVAL);
+				writeInt(ZIP64_MAGICVAL);
+				elen += 20;
+			} else {
+				writeInt(e.csize);
+				writeInt(e.size);
+			}
+		}
+		writeShort(e.name.length);
+		if (e.hasExtendedTime()) {
+			elen += 9;
+		}
+		writeShort(elen);
+		writeBytes(e.name, 0, e.name.length);
+		if (hasZip64) {
+			writeShort(EXTID_ZIP64);
+			writeShort(16);
+			writeLong(e.size);
+			writeLong(e.csize);
+		}
+		if (e.hasExtendedTime()) {
+			writeShort(EXTID_EXTT);
+			writeShort(5);
+			writeByte(EXTT_FLAG_LMT);
+			writeInt(e.unixtime);
+		}
+		writeExtra(e.extra);
+	}
+
+	private void writeEXT(Entry e) throws IOException {
+		writeInt(EXTSIG);
+		writeInt(e.crc);
+		if (e.csize >= ZIP64_MAGICVAL || e.size >= ZIP64_MAGICVAL) {
+			writeLong(e.csize);
+			writeLong(e.size);
+		} else {
+			writeInt(e.csize);
+			writeInt(e.size);
+		}
+	}
+
+	private void writeCEN(Entry e) throws IOException {
+		long csize = e.csize;
+		long size = e.size;
+		long offset = e.offset;
+		int elenZIP64 = 0;
+		if (e.csize >= ZIP64_MAGICVAL) {
+			csize = ZIP64_MAGICVAL;
+			elenZIP64 += 8;
+		}
+		if (e.size >= ZIP64_MAGICVAL) {
+			size = ZIP64_MAGICVAL;
+			elenZIP64 += 8;
+		}
+		if (e.offset >= ZIP64_MAGICVAL) {
+			offset = ZIP64_MAGICVAL;
+			elenZIP64 += 8;
+		}
+		boolean hasZip64 = elenZIP64 > 0;
+		writeInt(CENSIG);
+		int version = hasZip64 ? 45 : e.version();
+		writeShort(version); // version made by
+		writeShort(version); // version needed to extract
+		writeShort(e.flag);
+		writeShort(e.method);
+		writeInt(e.dostime);
+		writeInt(e.crc);
+		writeInt(csize);
+		writeInt(size);
+		writeShort(e.name.length);
+		int elen = getExtraLen(e.extra);
+		if (hasZip64) {
+			elen += elenZIP64 + 4;
+		}
+		if (e.hasExtendedTime()) {
+			elen += 9;
+		}
+		writeShort(elen);
+		writeShort(0); // comment length
+		writeShort(0); // starting disk number
+		writeShort(0); // internal file attributes
+		writeInt(0); // external file attributes
+		writeInt(offset);
+		writeBytes(e.name, 0, e.name.length);
+		if (hasZip64) {
+			writeShort(EXTID_ZIP64);
+			writeShort(elenZIP64);
+			if (size == ZIP64_MAGICVAL) {
+				writeLong(e.size);
+			}
+			if (csize == ZIP64_MAGICVAL) {
+				writeLong(e.csize);
+			}
+			if (offset == ZIP64_MAGICVAL) {
+				writeLong(e.offset);
+			}
+		}
+		if (e.hasExtendedTime()) {
+			writeShort(EXTID_EXTT);
+			writeShort(5);
+			writeByte(EXTT_FLAG_LMT);
+			writeInt(e.unixtime);
+		}
+		writeExtra(e.extra);
+	}
+
+	private void writeEND(long off, long len) throws IOException {
+		boolean hasZip64 = false;
+		long xlen = len;
+		long xoff = off;
+		if (xlen >= ZIP64_MAGICVAL) {
+			xlen = ZIP64_MAGICVAL;
+			hasZip64 = true;
+		}
+		if (xoff >= ZIP64_MAGICVAL) {
+			xoff = ZIP64_MAGICVAL;
+			hasZip64 = true;
+		}
+		int count = entries.size();
+		if (count >= ZIP64_MAGICCOUNT) {
+			count = ZIP64_MAGICCOUNT;
+			hasZip64 = true;
+		}
+		if (hasZip64) {
+			long off64 = written;
+			writeInt(ZIP64_ENDSIG);
+			writeLong(ZIP64_ENDHDR - 12);
+			writeShort(45);
+			writeShort(45);
+			writeInt(0);
+			writeInt(0);
+			writeLong(entries.size());
+			writeLong(entries.size());
+			writeLong(len);
+			writeLong(off);
+
+			writeInt(ZIP64_LOCSIG);
+			writeInt(0);
+			writeLong(off64);
+			writeInt(1);
+		}
+		writeInt(ENDSIG);
+		writeShort(0);
+		writeShort(0);
+		writeShort(count);
+		writeShort(count);
+		writeInt(xlen);
+		writeInt(xoff);
+		writeShort(0); // comment length
+	}
+
+	/**
+	 * The length of the extra data without the zip64 and extended timestamp
+	 * fields, they are written from the entry.
+	 */
+	private static int getExtraLen(byte[] extra) {
+		if (extra == null) {
+			return 0;
+		}
+		int skipped = 0;
+		int len = extra.length;
+		int off = 0;
+		while (off + 4 <= len) {
+			int tag = get16(extra, off);
+			int sz = get16(extra, off + 2);
+			if (off + 4 + sz > len) {
+				break;
+			}
+			if (tag == EXTID_EXTT || tag == EXTID_ZIP64) {
+				skipped += sz + 4;
+			}
+			off += sz + 4;
+		}
+		return len - skipped;
+	}
+
+	private void writeExtra(byte[] extra) throws IOException {
+		if (extra == null) {
+			return;
+		}
+		int len = extra.length;
+		int off = 0;
+		while (off + 4 <= len) {
+			int tag = get16(extra, off);
+			int sz = get16(extra, off + 2);
+			if (off + 4 + sz > len) {
+				break;
+			}
+			if (tag != EXTID_EXTT && tag != EXTID_ZIP64) {
+				writeBytes(extra, off, sz + 4);
+			}
+			off += sz + 4;
+		}
+		if (off < len) {
+			writeBytes(extra, off, len - off);
+		}
+	}
+
+	private static boolean hasMagic(byte[] extra) {
+		if (extra == null) {
+			return false;
+		}
+		for (int off = 0; off + 4 <= extra.length; off += get16(extra, off + 2) + 4) {
+			if (get16(extra, off) == JAR_MAGIC) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long dosTime(LocalDateTime ldt) {
+		int year = ldt.getYear() - 1980;
+		if (year < 0) {
+			return DOSTIME_BEFORE_1980;
+		}
+		return (year << 25 | ldt.getMonthValue() << 21 | ldt.getDayOfMonth() << 16 | ldt.getHour() << 11
+			| ldt.getMinute() << 5 | ldt.getSecond() >> 1) & 0xffffffffL;
+	}
+
+	private static int get16(byte[] b, int off) {
+		return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+	}
+
+	private static void set16(byte[] b, int off, int value) {
+		b[off] = (byte) value;
+		b[off + 1] = (byte) (value >> 8);
+	}
+
+	private void writeByte(int v) throws IOException {
+		out.write(v & 0xff);
+		written += 1;
+	}
+
+	private void writeShort(int v) throws IOException {
+		scratch[0] = (byte) v;
+		scratch[1] = (byte) (v >>> 8);
+		writeBytes(scratch, 0, 2);
+	}
+
+	private void writeInt(long v) throws IOException {
+		scratch[0] = (byte) v;
+		scratch[1] = (byte) (v >>> 8);
+		scratch[2] = (byte) (v >>> 16);
+		scratch[3] = (byte) (v >>> 24);
+		writeBytes(scratch, 0, 4);
+	}
+
+	private void writeLong(long v) throws IOException {
+		for (int i = 0; i < 8; i++) {
+			scratch[i] = (byte) (v >>> (i * 8));
+		}
+		writeBytes(scratch, 0, 8);
+	}
+
+	private void writeBytes(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		written += len;
+	}
+}
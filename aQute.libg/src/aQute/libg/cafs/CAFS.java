@@ -7,10 +7,12 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.DataInput;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.security.DigestInputStream;
@@ -18,7 +20,10 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
@@ -37,6 +42,11 @@ import aQute.libg.cryptography.SHA1;
  * naming scheme. An added advantage is that it is always easy to verify you get
  * the right stuff. The SHA-1 Content Addressable File Store is the core
  * underlying idea in Git.
+ * <p>
+ * The store is thread safe. The offsets of the entries are kept in a concurrent
+ * map that is loaded from the index file, so reads use positional reads on the
+ * store file and do not block each other. Appends are serialized by a single
+ * writer lock, which also guards the index file.
  */
 public class CAFS implements Closeable, Iterable<SHA1> {
 	final static byte[]	CAFS;
@@ -53,10 +63,12 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 		+ 2												// header checksum
 	;
 
-	final File			home;
-	Index				index;
-	RandomAccessFile	store;
-	FileChannel			channel;
+	final File				home;
+	final ReentrantLock		writer	= new ReentrantLock();
+	final Map<SHA1, Long>	offsets	= new ConcurrentHashMap<>();
+	Index					index;
+	RandomAccessFile		store;
+	FileChannel				channel;
 
 	static {
 		try {
@@ -99,7 +111,40 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 		store.seek(0);
 		if (!verifySignature(store, CAFS))
 			throw new IllegalArgumentException("Not a valid signature: CAFS at start of file");
+		load(index);
+	}
+
+	/**
+	 * Load the offsets from the index. The root of the index holds a sentinel
+	 * key that points before the first entry.
+	 */
+	private void load(Index index) throws Exception {
+		offsets.clear();
+		for (byte[] key : index) {
+			long offset = index.search(key);
+			if (offset >= 0x100)
+				offsets.put(new SHA1(key), offset);
+		}
+	}
 
+	/**
+	 * Find the offset of an entry. An entry missing from the map can have been
+	 * added to the index by another process.
+	 */
+	private long offset(SHA1 sha1) throws Exception {
+		Long offset = offsets.get(sha1);
+		if (offset != null)
+			return offset;
+		writer.lock();
+		try {
+			long search = index.search(sha1.digest());
+			if (search < 0x100)
+				return -1;
+			offsets.put(sha1, search);
+			return search;
+		} finally {
+			writer.unlock();
+		}
 	}
 
 	/**
@@ -118,14 +163,20 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 		ByteArrayOutputStream bout = new ByteArrayOutputStream();
 		DeflaterOutputStream dout = new DeflaterOutputStream(bout, deflater);
 		copy(din, dout);
+		dout.finish();
 
-		synchronized (store) {
-			// First check if it already exists
-			SHA1 sha1 = new SHA1(md.digest());
+		// First check if it already exists
+		SHA1 sha1 = new SHA1(md.digest());
+		if (offsets.containsKey(sha1))
+			return sha1;
 
+		writer.lock();
+		try {
 			long search = index.search(sha1.digest());
-			if (search > 0)
+			if (search >= 0x100) {
+				offsets.put(sha1, search);
 				return sha1;
+			}
 
 			byte[] compressed = bout.toByteArray();
 
@@ -153,14 +204,16 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 					lock.release();
 				}
 				int totalLength = deflater.getTotalIn();
-				store.seek(insertPoint);
-				update(sha1.digest(), compressed, totalLength);
+				update(insertPoint, sha1.digest(), compressed, totalLength);
 				index.insert(sha1.digest(), insertPoint);
+				offsets.put(sha1, insertPoint);
 				return sha1;
 			} finally {
 				if (lock != null)
 					lock.release();
 			}
+		} finally {
+			writer.unlock();
 		}
 	}
 
@@ -172,48 +225,52 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 	 * @throws Exception
 	 */
 	public InputStream read(final SHA1 sha1) throws Exception {
-		synchronized (store) {
-			long offset = index.search(sha1.digest());
-			if (offset < 0)
-				return null;
-
-			byte[] readSha1;
-			byte[] buffer;
-			store.seek(offset);
-			if (!verifySignature(store, CAFE))
-				throw new IllegalArgumentException("No signature");
-
-			int flags = store.readInt();
-			int compressedLength = store.readInt();
-			int uncompressedLength = store.readInt();
-			readSha1 = new byte[KEYLENGTH];
-			store.read(readSha1);
-			SHA1 rsha1 = new SHA1(readSha1);
-
-			if (!sha1.equals(rsha1))
-				throw new IOException("SHA-1 read and asked mismatch: " + sha1 + " " + rsha1);
-
-			short crc = store.readShort(); // Read CRC
-			if (crc != checksum(flags, compressedLength, uncompressedLength, readSha1))
-				throw new IllegalArgumentException("Invalid header checksum: " + sha1);
-
-			buffer = new byte[compressedLength];
-			store.readFully(buffer);
-			return getSha1Stream(sha1, buffer, uncompressedLength);
+		long offset = offset(sha1);
+		if (offset < 0)
+			return null;
+
+		ByteBuffer header = ByteBuffer.allocate(HEADERLENGTH);
+		readFully(header, offset);
+		byte[] signature = new byte[CAFE.length];
+		header.get(signature);
+		if (!Arrays.equals(signature, CAFE))
+			throw new IllegalArgumentException("No signature");
+
+		int flags = header.getInt();
+		int compressedLength = header.getInt();
+		int uncompressedLength = header.getInt();
+		byte[] readSha1 = new byte[KEYLENGTH];
+		header.get(readSha1);
+		SHA1 rsha1 = new SHA1(readSha1);
+
+		if (!sha1.equals(rsha1))
+			throw new IOException("SHA-1 read and asked mismatch: " + sha1 + " " + rsha1);
+
+		short crc = header.getShort(); // Read CRC
+		if (crc != checksum(flags, compressedLength, uncompressedLength, readSha1))
+			throw new IllegalArgumentException("Invalid header checksum: " + sha1);
+
+		ByteBuffer buffer = ByteBuffer.allocate(compressedLength);
+		readFully(buffer, offset + HEADERLENGTH);
+		return getSha1Stream(sha1, buffer.array(), uncompressedLength);
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException("Store file is truncated at " + position);
 		}
+		buffer.flip();
 	}
 
 	public boolean exists(byte[] sha1) throws Exception {
-		return index.search(sha1) >= 0;
+		return offset(new SHA1(sha1)) >= 0;
 	}
 
 	public void reindex() throws Exception {
-		long length;
-		synchronized (store) {
-			length = store.length();
-			if (length < 0x100)
-				throw new IllegalArgumentException("Store file is too small, need to be at least 256 bytes: " + store);
-		}
+		long length = channel.size();
+		if (length < 0x100)
+			throw new IllegalArgumentException("Store file is too small, need to be at least 256 bytes: " + store);
 
 		try (RandomAccessFile in = new RandomAccessFile(new File(home, STOREFILE), "r")) {
 			byte[] signature = new byte[4];
@@ -231,23 +288,31 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 				index.insert(sha1.digest(), entry);
 			}
 
-			synchronized (store) {
+			writer.lock();
+			try {
 				index.close();
+				this.index.close();
 				File indexFile = new File(home, INDEXFILE);
 				IO.rename(ixf, indexFile);
 				this.index = new Index(indexFile, KEYLENGTH);
+				load(this.index);
+			} finally {
+				writer.unlock();
 			}
 		}
 	}
 
 	@Override
 	public void close() throws IOException {
-		synchronized (store) {
+		writer.lock();
+		try {
 			try {
 				store.close();
 			} finally {
 				index.close();
 			}
+		} finally {
+			writer.unlock();
 		}
 	}
 
@@ -257,12 +322,14 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 		if (!Arrays.equals(CAFE, signature))
 			throw new IllegalArgumentException("File is corrupted: " + in);
 
-		/* int flags = */in.readInt();
+		int flags = in.readInt();
 		int compressedSize = in.readInt();
 		int uncompressedSize = in.readInt();
 		byte[] key = new byte[KEYLENGTH];
 		in.readFully(key);
 		SHA1 sha1 = new SHA1(key);
+		if (in.readShort() != checksum(flags, compressedSize, uncompressedSize, key))
+			throw new IllegalArgumentException("Invalid header checksum: " + sha1);
 
 		byte[] buffer = new byte[compressedSize];
 		in.readFully(buffer);
@@ -334,23 +401,27 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 	}
 
 	/**
-	 * Update a record in the store, assuming the store is at the right
-	 * position.
+	 * Write a record to the store at the given position.
 	 *
+	 * @param position The position of the record
 	 * @param sha1 The checksum
 	 * @param compressed The compressed length
 	 * @param totalLength The uncompressed length
 	 * @throws IOException The exception
 	 */
-	private void update(byte[] sha1, byte[] compressed, int totalLength) throws IOException {
-		// System.err.println("pos: " + store.getFilePointer());
-		store.write(CAFE); // 00-03 Signature
-		store.writeInt(0); // 04-07 Flags for the future
-		store.writeInt(compressed.length); // 08-11 Length deflated data
-		store.writeInt(totalLength); // 12-15 Length
-		store.write(sha1); // 16-35
-		store.writeShort(checksum(0, compressed.length, totalLength, sha1));
-		store.write(compressed);
+	private void update(long position, byte[] sha1, byte[] compressed, int totalLength) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(HEADERLENGTH + compressed.length);
+		record.put(CAFE); // 00-03 Signature
+		record.putInt(0); // 04-07 Flags for the future
+		record.putInt(compressed.length); // 08-11 Length deflated data
+		record.putInt(totalLength); // 12-15 Length
+		record.put(sha1); // 16-35
+		record.putShort(checksum(0, compressed.length, totalLength, sha1));
+		record.put(compressed);
+		record.flip();
+		while (record.hasRemaining()) {
+			channel.write(record, position + record.position());
+		}
 		channel.force(false);
 	}
 
@@ -380,39 +451,36 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 
 			@Override
 			public boolean hasNext() {
-				synchronized (store) {
-					try {
-						return position < store.length();
-					} catch (IOException e) {
-						throw new RuntimeException(e);
-					}
+				try {
+					return position < channel.size();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
 				}
 			}
 
 			@Override
 			public SHA1 next() {
-				synchronized (store) {
-					try {
-						store.seek(position);
-						byte[] signature = new byte[4];
-						store.readFully(signature);
-						if (!Arrays.equals(CAFE, signature))
-							throw new IllegalArgumentException("No signature");
-
-						int flags = store.readInt();
-						int compressedLength = store.readInt();
-						int totalLength = store.readInt();
-						byte[] sha1 = new byte[KEYLENGTH];
-						store.readFully(sha1);
-						short crc = store.readShort();
-						if (crc != checksum(flags, compressedLength, totalLength, sha1))
-							throw new IllegalArgumentException("Header checksum fails");
-
-						position += HEADERLENGTH + compressedLength;
-						return new SHA1(sha1);
-					} catch (IOException e) {
-						throw new RuntimeException(e);
-					}
+				try {
+					ByteBuffer header = ByteBuffer.allocate(HEADERLENGTH);
+					readFully(header, position);
+					byte[] signature = new byte[CAFE.length];
+					header.get(signature);
+					if (!Arrays.equals(CAFE, signature))
+						throw new IllegalArgumentException("No signature");
+
+					int flags = header.getInt();
+					int compressedLength = header.getInt();
+					int totalLength = header.getInt();
+					byte[] sha1 = new byte[KEYLENGTH];
+					header.get(sha1);
+					short crc = header.getShort();
+					if (crc != checksum(flags, compressedLength, totalLength, sha1))
+						throw new IllegalArgumentException("Header checksum fails");
+
+					position += HEADERLENGTH + compressedLength;
+					return new SHA1(sha1);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
 				}
 			}
 
@@ -424,8 +492,6 @@ public class CAFS implements Closeable, Iterable<SHA1> {
 	}
 
 	public boolean isEmpty() throws IOException {
-		synchronized (store) {
-			return store.getFilePointer() <= 256;
-		}
+		return channel.size() <= 256;
 	}
 }
@@ -0,0 +1,110 @@
+package aQute.libg.filelock;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An exclusive lock on a file that is held through the operating system, so
+ * it excludes other processes as well as other threads of this process that
+ * use their own LockFile for the same file. A LockFile must not be shared
+ * between threads.
+ * <p>
+ * The file is created when it does not exist and is not deleted when the lock
+ * is released.
+ */
+public class LockFile implements Closeable {
+	final File		file;
+	FileChannel		channel;
+	FileLock		lock;
+
+	public LockFile(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Lock the file, waiting until it is released by its current holder or
+	 * the timeout expires.
+	 *
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return {@code true} if the lock is held, {@code false} if the timeout
+	 *         expired
+	 */
+	public boolean lock(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+		if (lock != null) {
+			return true;
+		}
+		File parent = file.getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		final long startNanos = System.nanoTime();
+		final long timeoutNanos = unit.toNanos(timeout);
+		try {
+			while (true) {
+				try {
+					lock = channel.tryLock();
+				} catch (OverlappingFileLockException e) {
+					// held by another channel of this process
+					lock = null;
+				}
+				if (lock != null) {
+					return true;
+				}
+				if ((System.nanoTime() - startNanos) >= timeoutNanos) {
+					release();
+					return false;
+				}
+				Thread.sleep(50L);
+			}
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			release();
+			throw e;
+		}
+	}
+
+	public boolean isLocked() {
+		return lock != null;
+	}
+
+	/**
+	 * Release the lock if it is held.
+	 */
+	public void release() {
+		FileLock lock = this.lock;
+		FileChannel channel = this.channel;
+		this.lock = null;
+		this.channel = null;
+		try {
+			if (lock != null) {
+				lock.release();
+			}
+		} catch (IOException e) {
+			// the channel is closed below, which releases the lock
+		}
+		try {
+			if (channel != null) {
+				channel.close();
+			}
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	@Override
+	public void close() {
+		release();
+	}
+
+	@Override
+	public String toString() {
+		return "LockFile [file=" + file + ", locked=" + isLocked() + "]";
+	}
+}
@@ -1,13 +1,22 @@
 package aQute.lib.persistentmap;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Test;
 
@@ -136,4 +145,159 @@ public class PersistentMapTest {
 			IO.delete(tmp);
 		}
 	}
+
+	@Test
+	public void testMigrateDirectoryLayout() throws Exception {
+		File tmp = new File("tmp");
+		IO.delete(tmp);
+		try {
+			File dir = new File(tmp, "migrate");
+			File data = new File(dir, "data");
+			IO.mkdirs(data);
+			IO.store("\"def\"", new File(data, "abc"));
+			IO.store("\"xyz\"", new File(data, "a~002Fb"));
+
+			try (PersistentMap<String> pm = new PersistentMap<>(dir, String.class)) {
+				assertEquals(2, pm.size());
+				assertEquals("def", pm.get("abc"));
+				assertEquals("xyz", pm.get("a/b"));
+				assertFalse(data.exists());
+			}
+			try (PersistentMap<String> pm = new PersistentMap<>(dir, String.class)) {
+				assertEquals("def", pm.get("abc"));
+				assertEquals("xyz", pm.get("a/b"));
+			}
+		} finally {
+			IO.delete(tmp);
+		}
+	}
+
+	@Test
+	public void testTornWrite() throws Exception {
+		File tmp = new File("tmp");
+		IO.delete(tmp);
+		try {
+			File dir = new File(tmp, "torn");
+			try (PersistentMap<String> pm = new PersistentMap<>(dir, String.class)) {
+				pm.put("a", "1");
+				pm.put("b", "2");
+			}
+			File log = new File(dir, "map.log");
+			long length = log.length();
+			try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+				raf.setLength(length - 3);
+			}
+			try (PersistentMap<String> pm = new PersistentMap<>(dir, String.class)) {
+				assertEquals("1", pm.get("a"));
+				assertNull(pm.get("b"));
+				pm.put("c", "3");
+			}
+			try (PersistentMap<String> pm = new PersistentMap<>(dir, String.class)) {
+				assertEquals(Set.of("a", "c"), new HashSet<>(pm.keySet()));
+			}
+		} finally {
+			IO.delete(tmp);
+		}
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		File tmp = new File("tmp");
+		IO.delete(tmp);
+		long compactMin = PersistentMap.COMPACT_MIN;
+		PersistentMap.COMPACT_MIN = 1024;
+		try {
+			File dir = new File(tmp, "compact");
+			File log = new File(dir, "map.log");
+			try (PersistentMap<String> pm = new PersistentMap<>(dir, String.class)) {
+				for (int i = 0; i < 1000; i++) {
+					pm.put("key" + (i % 10), "value" + i);
+				}
+				assertTrue(log.length() < 4096, "log was not compacted " + log.length());
+				for (int i = 0; i < 10; i++) {
+					assertEquals("value" + (990 + i), pm.get("key" + i));
+				}
+				pm.remove("key0");
+				pm.clear(Long.MIN_VALUE);
+				assertEquals(9, pm.size());
+			}
+			try (PersistentMap<String> pm = new PersistentMap<>(dir, String.class)) {
+				assertEquals(9, pm.size());
+				assertEquals("value999", pm.get("key9"));
+				pm.clear(Long.MAX_VALUE);
+				assertEquals(0, pm.size());
+			}
+		} finally {
+			PersistentMap.COMPACT_MIN = compactMin;
+			IO.delete(tmp);
+		}
+	}
+
+	@Test
+	public void testConcurrentReaders() throws Exception {
+		File tmp = new File("tmp");
+		IO.delete(tmp);
+		long compactMin = PersistentMap.COMPACT_MIN;
+		PersistentMap.COMPACT_MIN = 4096;
+		try (PersistentMap<String> pm = new PersistentMap<>(new File(tmp, "concurrent"), String.class)) {
+			for (int i = 0; i < 100; i++) {
+				pm.put("key" + i, "0");
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				List<Future<?>> readers = new ArrayList<>();
+				for (int r = 0; r < 4; r++) {
+					readers.add(executor.submit(() -> {
+						for (int n = 0; n < 2000; n++) {
+							String value = pm.get("key" + (n % 100));
+							assertNotNull(value);
+							Integer.parseInt(value);
+						}
+						return null;
+					}));
+				}
+				for (int i = 0; i < 2000; i++) {
+					pm.put("key" + (i % 100), Integer.toString(i));
+				}
+				for (Future<?> reader : readers) {
+					reader.get();
+				}
+			} finally {
+				executor.shutdown();
+			}
+		} finally {
+			PersistentMap.COMPACT_MIN = compactMin;
+			IO.delete(tmp);
+		}
+	}
+
+	/**
+	 * Puts and gets 100k entries across a reopen of the map.
+	 */
+	@Test
+	public void testManyEntries() throws Exception {
+		File tmp = new File("tmp");
+		IO.delete(tmp);
+		try {
+			File dir = new File(tmp, "many");
+			try (PersistentMap<X> pm = new PersistentMap<>(dir, X.class)) {
+				for (int i = 0; i < 100_000; i++) {
+					X x = new X();
+					x.abc = "abc" + i;
+					x.def = i;
+					pm.put("key" + i, x);
+				}
+			}
+			try (PersistentMap<X> pm = new PersistentMap<>(dir, X.class)) {
+				assertEquals(100_000, pm.size());
+				for (int i = 0; i < 100_000; i++) {
+					X x = pm.get("key" + i);
+					assertEquals(i, x.def);
+					assertEquals("abc" + i, x.abc);
+				}
+			}
+		} finally {
+			IO.delete(tmp);
+		}
+	}
 }
@@ -0,0 +1,126 @@
+package aQute.lib.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+import aQute.lib.io.IO;
+
+public class MappedZipFileTest {
+	@InjectTemporaryDirectory
+	File tmp;
+
+	@Test
+	public void testSameAsZipFile() throws Exception {
+		File file = new File(tmp, "test.zip");
+		try (OutputStream out = IO.outputStream(file)) {
+			write(out);
+		}
+		assertSameAsZipFile(file);
+	}
+
+	@Test
+	public void testPrependedData() throws Exception {
+		File file = new File(tmp, "test.zip");
+		try (OutputStream out = IO.outputStream(file)) {
+			out.write("#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(UTF_8));
+			write(out);
+		}
+		assertSameAsZipFile(file);
+	}
+
+	@Test
+	public void testStoredDataIsNotCopied() throws Exception {
+		File file = new File(tmp, "test.zip");
+		try (OutputStream out = IO.outputStream(file)) {
+			write(out);
+		}
+		try (MappedZipFile zip = new MappedZipFile(file.toPath())) {
+			MappedZipFile.Entry stored = zip.getEntry("stored.txt");
+			assertThat(stored.getMethod()).isEqualTo(ZipEntry.STORED);
+			ByteBuffer data = zip.getData(stored);
+			assertThat(data.isDirect()).isTrue();
+			assertThat(data.isReadOnly()).isTrue();
+			assertThat(zip.getEntry("missing")).isNull();
+			assertThat(zip.getEntry("dir/")
+				.isDirectory()).isTrue();
+		}
+	}
+
+	private void assertSameAsZipFile(File file) throws Exception {
+		try (ZipFile expected = new ZipFile(file); MappedZipFile actual = new MappedZipFile(file.toPath())) {
+			List<? extends ZipEntry> entries = Collections.list(expected.entries());
+			assertThat(actual.size()).isEqualTo(entries.size());
+			List<String> names = new ArrayList<>();
+			for (MappedZipFile.Entry entry : actual.entries()) {
+				names.add(entry.getName());
+			}
+			assertThat(names).containsExactlyElementsOf(entries.stream()
+				.map(ZipEntry::getName)
+				.toList());
+			for (ZipEntry e : entries) {
+				MappedZipFile.Entry entry = actual.getEntry(e.getName());
+				assertThat(entry).as(e.getName())
+					.isNotNull();
+				assertThat(entry.isDirectory()).isEqualTo(e.isDirectory());
+				ZipEntry z = entry.toZipEntry();
+				assertThat(z.getTime()).as(e.getName())
+					.isEqualTo(e.getTime());
+				assertThat(z.getMethod()).isEqualTo(e.getMethod());
+				assertThat(z.getCrc()).isEqualTo(e.getCrc());
+				assertThat(z.getSize()).isEqualTo(e.getSize());
+				assertThat(z.getCompressedSize()).isEqualTo(e.getCompressedSize());
+				assertThat(z.getExtra()).isEqualTo(e.getExtra());
+
+				byte[] data = IO.read(expected.getInputStream(e));
+				assertThat(IO.read(actual.getData(entry))).isEqualTo(data);
+				try (InputStream in = actual.getInputStream(entry)) {
+					assertThat(in.readAllBytes()).isEqualTo(data);
+				}
+			}
+		}
+	}
+
+	private static void write(OutputStream out) throws Exception {
+		ZipOutputStream zout = new ZipOutputStream(out);
+		ZipEntry dir = new ZipEntry("dir/");
+		dir.setTime(1_600_000_000_000L);
+		zout.putNextEntry(dir);
+		for (int i = 0; i < 100; i++) {
+			ZipEntry e = new ZipEntry("dir/file" + i + ".txt");
+			e.setTime(1_600_000_000_000L + i * 2000L);
+			zout.putNextEntry(e);
+			zout.write(("content " + i).repeat(i * 10)
+				.getBytes(UTF_8));
+		}
+		byte[] data = "stored".getBytes(UTF_8);
+		ZipEntry stored = new ZipEntry("stored.txt");
+		stored.setMethod(ZipEntry.STORED);
+		stored.setSize(data.length);
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		stored.setCrc(crc.getValue());
+		zout.putNextEntry(stored);
+		zout.write(data);
+		// outside the DOS time range, kept in an extended timestamp
+		ZipEntry old = new ZipEntry("été.txt");
+		old.setTime(0L);
+		zout.putNextEntry(old);
+		zout.write("old".getBytes(UTF_8));
+		zout.finish();
+	}
+}
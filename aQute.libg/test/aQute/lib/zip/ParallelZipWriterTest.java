@@ -0,0 +1,159 @@
+package aQute.lib.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.util.promise.PromiseFactory;
+
+public class ParallelZipWriterTest {
+	static final int	CHUNK	= 64 * 1024;
+	ExecutorService		executor;
+	PromiseFactory		promiseFactory;
+
+	@BeforeEach
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+		promiseFactory = new PromiseFactory(executor);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testEntriesInOrder() throws Exception {
+		Map<String, byte[]> contents = contents();
+		byte[] zip = write(contents, 4);
+
+		try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(zip))) {
+			List<String> names = new ArrayList<>();
+			for (ZipEntry entry; (entry = zin.getNextEntry()) != null;) {
+				names.add(entry.getName());
+				assertThat(zin.readAllBytes()).as(entry.getName())
+					.isEqualTo(contents.get(entry.getName()));
+			}
+			assertThat(names).containsExactlyElementsOf(contents.keySet());
+		}
+	}
+
+	@Test
+	public void testChunkedEntry() throws Exception {
+		Map<String, byte[]> contents = contents();
+		byte[] zip = write(contents, 4);
+		try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(zip))) {
+			for (ZipEntry entry; (entry = zin.getNextEntry()) != null;) {
+				if (entry.getName()
+					.equals("large.bin")) {
+					assertThat(entry.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+					assertThat(entry.getCompressedSize()).isLessThan(entry.getSize());
+					assertThat(entry.getSize()).isGreaterThan(4L * CHUNK);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testDeterministic() throws Exception {
+		Map<String, byte[]> contents = contents();
+		assertThat(write(contents, 4)).isEqualTo(write(contents, 4))
+			.isEqualTo(write(contents, 1));
+	}
+
+	@Test
+	public void testSmallEntriesSameAsZipWriter() throws Exception {
+		Map<String, byte[]> contents = new LinkedHashMap<>();
+		contents.put("META-INF/", new byte[0]);
+		contents.put("a.txt", "Hello World".getBytes(UTF_8));
+		contents.put("b.txt", "Hello World".repeat(100)
+			.getBytes(UTF_8));
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		try (ZipWriter zout = new ZipWriter(expected, true)) {
+			for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+				zout.putRawEntry(deflated(e.getKey(), e.getValue()), ByteBuffer.wrap(deflate(e.getValue())));
+			}
+		}
+		assertThat(write(contents, 2)).isEqualTo(expected.toByteArray());
+	}
+
+	private byte[] write(Map<String, byte[]> contents, int parallelism) throws Exception {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		try (ParallelZipWriter zout = new ParallelZipWriter(bout, true, promiseFactory, parallelism, CHUNK)) {
+			for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+				ZipEntry entry = new ZipEntry(e.getKey());
+				entry.setTime(1_600_000_000_000L);
+				zout.putNextEntry(entry);
+				zout.write(e.getValue());
+				zout.closeEntry();
+			}
+		}
+		return bout.toByteArray();
+	}
+
+	private static ZipEntry deflated(String name, byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		ZipEntry entry = new ZipEntry(name);
+		entry.setTime(1_600_000_000_000L);
+		entry.setMethod(ZipEntry.DEFLATED);
+		entry.setSize(data.length);
+		entry.setCrc(crc.getValue());
+		entry.setCompressedSize(deflate(data).length);
+		return entry;
+	}
+
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] b = new byte[8192];
+			while (!deflater.finished()) {
+				out.write(b, 0, deflater.deflate(b));
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static Map<String, byte[]> contents() {
+		Random random = new Random(42);
+		Map<String, byte[]> contents = new LinkedHashMap<>();
+		contents.put("META-INF/", new byte[0]);
+		contents.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\r\n\r\n".getBytes(UTF_8));
+		for (int i = 0; i < 50; i++) {
+			contents.put("p/file" + i + ".txt", ("content " + i + " ").repeat(random.nextInt(2000))
+				.getBytes(UTF_8));
+		}
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 5 * CHUNK + 123) {
+			sb.append("line ")
+				.append(random.nextInt(1000))
+				.append('\n');
+		}
+		contents.put("large.bin", sb.toString()
+			.getBytes(UTF_8));
+		contents.put("z.txt", "last".getBytes(UTF_8));
+		return contents;
+	}
+}
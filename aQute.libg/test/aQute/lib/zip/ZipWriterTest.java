@@ -0,0 +1,203 @@
+package aQute.lib.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+import aQute.lib.io.IO;
+
+public class ZipWriterTest {
+	@InjectTemporaryDirectory
+	File tmp;
+
+	interface Writer {
+		void putNextEntry(ZipEntry e) throws IOException;
+
+		void write(byte[] b) throws IOException;
+	}
+
+	static final long TIME = 1_600_000_000_000L;
+
+	@Test
+	public void testSameAsJarOutputStream() throws Exception {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		try (JarOutputStream jout = new JarOutputStream(expected)) {
+			entries(new Writer() {
+				@Override
+				public void putNextEntry(ZipEntry e) throws IOException {
+					jout.putNextEntry(e);
+				}
+
+				@Override
+				public void write(byte[] b) throws IOException {
+					jout.write(b);
+				}
+			});
+		}
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		try (ZipWriter zout = new ZipWriter(actual, true)) {
+			entries(new Writer() {
+				@Override
+				public void putNextEntry(ZipEntry e) throws IOException {
+					zout.putNextEntry(e);
+				}
+
+				@Override
+				public void write(byte[] b) throws IOException {
+					zout.write(b);
+				}
+			});
+		}
+		assertThat(actual.toByteArray()).isEqualTo(expected.toByteArray());
+	}
+
+	@Test
+	public void testSameAsZipOutputStream() throws Exception {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		try (ZipOutputStream zout = new ZipOutputStream(expected)) {
+			zout.setMethod(ZipEntry.STORED);
+			zout.putNextEntry(stored("a.txt", "stored".getBytes(UTF_8)));
+			zout.write("stored".getBytes(UTF_8));
+		}
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		try (ZipWriter zout = new ZipWriter(actual, false)) {
+			zout.setMethod(ZipEntry.STORED);
+			zout.putNextEntry(stored("a.txt", "stored".getBytes(UTF_8)));
+			zout.write("stored".getBytes(UTF_8));
+		}
+		assertThat(actual.toByteArray()).isEqualTo(expected.toByteArray());
+	}
+
+	@Test
+	public void testRawCopy() throws Exception {
+		File source = new File(tmp, "source.jar");
+		Map<String, byte[]> contents = new LinkedHashMap<>();
+		try (OutputStream out = IO.outputStream(source); JarOutputStream jout = new JarOutputStream(out)) {
+			for (int i = 0; i < 10; i++) {
+				String name = "p/file" + i + ".txt";
+				byte[] data = ("content " + i + " ").repeat(100 * i + 1)
+					.getBytes(UTF_8);
+				contents.put(name, data);
+				ZipEntry e = new ZipEntry(name);
+				e.setTime(TIME);
+				jout.putNextEntry(e);
+				jout.write(data);
+			}
+		}
+
+		File target = new File(tmp, "target.jar");
+		try (ZipFile zip = new ZipFile(source); RawZipFile raw = new RawZipFile(source.toPath());
+			OutputStream out = IO.outputStream(target); ZipWriter zout = new ZipWriter(out, true)) {
+			for (String name : contents.keySet()) {
+				ZipEntry entry = zip.getEntry(name);
+				RawZipFile.Entry rawEntry = raw.getEntry(name);
+				assertThat(rawEntry).isNotNull();
+				assertThat(rawEntry.matches(entry)).isTrue();
+				assertThat(rawEntry.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+				ByteBuffer data = raw.readCompressed(rawEntry);
+				assertThat(data.remaining()).isEqualTo(entry.getCompressedSize());
+				ZipEntry copy = new ZipEntry(name);
+				copy.setTime(TIME);
+				copy.setMethod(ZipEntry.DEFLATED);
+				copy.setCrc(rawEntry.getCrc());
+				copy.setSize(rawEntry.getSize());
+				copy.setCompressedSize(rawEntry.getCompressedSize());
+				zout.putRawEntry(copy, data);
+			}
+			assertThat(raw.getEntry("missing")).isNull();
+		}
+
+		try (ZipFile zip = new ZipFile(target)) {
+			for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+				ZipEntry entry = zip.getEntry(e.getKey());
+				assertThat(entry.getTime()).isEqualTo(TIME);
+				assertThat(IO.read(zip.getInputStream(entry))).isEqualTo(e.getValue());
+			}
+		}
+		try (JarInputStream jin = new JarInputStream(IO.stream(target))) {
+			int n = 0;
+			for (ZipEntry entry; (entry = jin.getNextEntry()) != null; n++) {
+				assertThat(jin.readAllBytes()).isEqualTo(contents.get(entry.getName()));
+			}
+			assertThat(n).isEqualTo(contents.size());
+		}
+	}
+
+	@Test
+	public void testRawEntryMismatch() throws Exception {
+		try (ZipWriter zout = new ZipWriter(new ByteArrayOutputStream(), false)) {
+			ZipEntry e = new ZipEntry("a");
+			e.setMethod(ZipEntry.DEFLATED);
+			e.setCrc(0L);
+			e.setSize(10L);
+			e.setCompressedSize(5L);
+			assertThatExceptionOfType(ZipException.class).isThrownBy(() -> zout.putRawEntry(e, ByteBuffer.allocate(4)));
+		}
+	}
+
+	@Test
+	public void testDuplicateEntry() throws Exception {
+		try (ZipWriter zout = new ZipWriter(new ByteArrayOutputStream(), false)) {
+			zout.putNextEntry(new ZipEntry("a"));
+			assertThatExceptionOfType(ZipException.class).isThrownBy(() -> zout.putNextEntry(new ZipEntry("a")));
+		}
+	}
+
+	private void entries(Writer w) throws IOException {
+		ZipEntry dir = new ZipEntry("META-INF/");
+		dir.setTime(TIME);
+		dir.setMethod(ZipEntry.STORED);
+		dir.setSize(0L);
+		dir.setCrc(0L);
+		w.putNextEntry(dir);
+
+		ZipEntry streamed = new ZipEntry("META-INF/MANIFEST.MF");
+		streamed.setTime(TIME);
+		w.putNextEntry(streamed);
+		w.write("Manifest-Version: 1.0\r\n\r\n".getBytes(UTF_8));
+
+		byte[] data = "stored data".getBytes(UTF_8);
+		w.putNextEntry(stored("a/stored.txt", data));
+		w.write(data);
+
+		// times outside of the DOS range are kept in an extended timestamp
+		ZipEntry old = new ZipEntry("a/old.txt");
+		old.setTime(0L);
+		w.putNextEntry(old);
+		w.write("old".getBytes(UTF_8));
+
+		ZipEntry unicode = new ZipEntry("a/été.txt");
+		unicode.setTime(TIME);
+		w.putNextEntry(unicode);
+		w.write(new byte[1000]);
+	}
+
+	private static ZipEntry stored(String name, byte[] data) {
+		ZipEntry e = new ZipEntry(name);
+		e.setTime(TIME);
+		e.setMethod(ZipEntry.STORED);
+		e.setSize(data.length);
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		e.setCrc(crc.getValue());
+		return e;
+	}
+}
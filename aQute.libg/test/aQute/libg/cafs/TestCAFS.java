@@ -1,78 +1,125 @@
 package aQute.libg.cafs;
 
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+import aQute.lib.io.IO;
+import aQute.libg.cryptography.SHA1;
 
 public class TestCAFS {
-	File tmp;
 
-	@BeforeEach
-	public void setUp() throws Exception {
-		tmp = new File(System.getProperty("java.io.tmpdir"));
-		assertTrue(tmp.isDirectory());
+	@Test
+	public void testSimple(@InjectTemporaryDirectory
+	File tmp) throws Exception {
+		File dir = new File(tmp, "cafs");
+		SHA1 sha1;
+		SHA1 sha2;
+		try (CAFS cafs = new CAFS(dir, true)) {
+			assertThat(cafs.isEmpty()).isTrue();
+			byte[] file1 = IO.read(getClass().getResourceAsStream("file1.txt"));
+			sha1 = cafs.write(new ByteArrayInputStream(file1));
+			assertThat(sha1).isEqualTo(SHA1.digest(file1));
+
+			SHA1 sha1_1 = cafs.write(getClass().getResourceAsStream("file1-1.txt"));
+			assertThat(sha1_1).isEqualTo(sha1);
+
+			sha2 = cafs.write(getClass().getResourceAsStream("file2.txt"));
+			assertThat(sha2).isNotEqualTo(sha1);
+			assertThat(cafs.isEmpty()).isFalse();
+			assertThat(cafs).containsExactly(sha1, sha2);
+
+			try (InputStream in = cafs.read(sha1)) {
+				assertThat(IO.read(in)).isEqualTo(file1);
+			}
+			assertThat(cafs.read(SHA1.digest(new byte[1]))).isNull();
+			assertThat(cafs.exists(sha2.digest())).isTrue();
+			assertThat(cafs.exists(new byte[20])).isFalse();
+		}
+
+		// Close out db and reopen it again.
+		try (CAFS cafs = new CAFS(dir, false)) {
+			assertThat(cafs).containsExactly(sha1, sha2);
+			assertThat(cafs.exists(sha1.digest())).isTrue();
+			try (InputStream in = cafs.read(sha2)) {
+				assertThat(SHA1.digest(in)).isEqualTo(sha2);
+			}
+			cafs.reindex();
+			assertThat(cafs.exists(sha2.digest())).isTrue();
+		}
 	}
 
-	@Test
-	public void testX() {}
+	/**
+	 * Read the store from a growing number of threads while another thread
+	 * appends to it.
+	 */
+	@ParameterizedTest
+	@ValueSource(ints = {
+		1, 2, 8, 32
+	})
+	public void testConcurrentReaders(int readers, @InjectTemporaryDirectory
+	File tmp) throws Exception {
+		try (CAFS cafs = new CAFS(new File(tmp, "cafs"), true)) {
+			List<SHA1> keys = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				keys.add(cafs.write(new ByteArrayInputStream(content(i))));
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				futures.add(executor.submit(() -> {
+					for (int i = 200; i < 400; i++) {
+						cafs.write(new ByteArrayInputStream(content(i)));
+					}
+					return null;
+				}));
+				for (int r = 0; r < readers; r++) {
+					int reader = r;
+					futures.add(executor.submit(() -> {
+						for (int n = 0; n < 1000; n++) {
+							int i = (n * 7 + reader) % keys.size();
+							try (InputStream in = cafs.read(keys.get(i))) {
+								assertThat(IO.read(in)).isEqualTo(content(i));
+							}
+						}
+						return null;
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} finally {
+				executor.shutdown();
+			}
+			Set<SHA1> all = new HashSet<>();
+			cafs.forEach(all::add);
+			assertThat(all).hasSize(400);
+		}
+	}
 
-	// @Test
-	// public void testSimple() throws Exception {
-	// File dir = new File(tmp, getClass().getName() +
-	// System.currentTimeMillis());
-	// CAFS cafs = new CAFS(dir, true);
-	// MessageDigest digester = MessageDigest.getInstance("SHA-1");
-	//
-	// DigestInputStream dis = new
-	// DigestInputStream(getClass().getResourceAsStream(
-	// "file1.txt"), digester);
-	// SHA1 sha1 = cafs.write(dis);
-	//
-	// assertEquals(new SHA1(digester.digest()), sha1);
-	//
-	// digester.reset();
-	// dis = new
-	// DigestInputStream(getClass().getResourceAsStream("file1-1.txt"),
-	// digester);
-	//
-	// SHA1 sha1_1 = cafs.write(dis);
-	// assertEquals(sha1, sha1_1);
-	// assertEquals( new SHA1(digester.digest()), sha1_1);
-	//
-	// SHA1 sha2 = cafs.write(getClass().getResourceAsStream("file2.txt"));
-	//
-	// assertFalse( sha1.equals(sha2));
-	//
-	// int n = 0;
-	// for (SHA1 key : cafs) {
-	// assertTrue(sha1.equals(key) || sha2.equals(key));
-	// System.err.println(n++ + ": " + key);
-	// InputStream in = cafs.read(key);
-	// assertNotNull(in);
-	// String s = IO.collect(in, "UTF-8");
-	// byte[] b = s.getBytes("UTF-8");
-	// MessageDigest md = MessageDigest.getInstance("SHA1");
-	// md.update(b);
-	// assertEquals(key, new SHA1(md.digest()));
-	// }
-	//
-	// // Close out db and reopen it again.
-	// cafs.close();
-	// cafs = new CAFS(dir, false);
-	//
-	// for (SHA1 key : cafs) {
-	// assertTrue(sha1.equals(key) || sha2.equals(key));
-	// }
-	//
-	// InputStream in = cafs.read(sha2);
-	// assertNotNull(in);
-	// SHA1 rsha2 = SHA1.getDigester().from(in);
-	//
-	// assertEquals(sha2, rsha2);
-	//
-	// cafs.close();
-	// }
+	private static byte[] content(int i) {
+		StringBuilder sb = new StringBuilder();
+		for (int j = 0; j < 100; j++) {
+			sb.append(i)
+				.append(':')
+				.append(j)
+				.append('\n');
+		}
+		return sb.toString()
+			.getBytes();
+	}
 }
@@ -0,0 +1,45 @@
+package aQute.libg.filelock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+
+public class LockFileTest {
+	@InjectTemporaryDirectory
+	File tmp;
+
+	@Test
+	public void testExclusive() throws Exception {
+		File file = new File(tmp, "sub/entry.lock");
+		try (LockFile first = new LockFile(file)) {
+			assertThat(first.lock(1, TimeUnit.SECONDS)).isTrue();
+			assertThat(file).isFile();
+
+			// held by another channel
+			try (LockFile second = new LockFile(file)) {
+				assertThat(second.lock(100, TimeUnit.MILLISECONDS)).isFalse();
+				assertThat(second.isLocked()).isFalse();
+			}
+
+			CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+				try (LockFile third = new LockFile(file)) {
+					return third.lock(5, TimeUnit.SECONDS);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+			Thread.sleep(200);
+			assertThat(waiting).isNotDone();
+			first.release();
+			assertThat(first.isLocked()).isFalse();
+			assertThat(waiting.get(5, TimeUnit.SECONDS)).isTrue();
+		}
+		assertThat(file).isFile();
+	}
+}
@@ -74,6 +74,9 @@ import aQute.bnd.build.Project;
 import aQute.bnd.build.ProjectBuilder;
 import aQute.bnd.build.ProjectLauncher;
 import aQute.bnd.build.ProjectLauncher.LiveCoding;
+import aQute.bnd.build.ProjectScheduler;
+import aQute.bnd.build.ProjectScheduler.Report;
+import aQute.bnd.build.ProjectScheduler.Timing;
 import aQute.bnd.build.ProjectTester;
 import aQute.bnd.build.Run;
 import aQute.bnd.build.Workspace;
@@ -944,6 +947,32 @@ public class bnd extends Processor {
 		}
 	}
 
+	/**
+	 * Run on the projects and their dependencies concurrently, a project is
+	 * started when all the projects it depends on are done. The reports are
+	 * printed afterwards in build order.
+	 */
+	public void perProjectParallel(ProjectWorkspaceOptions opts, int jobs, boolean timing, PerProject run)
+		throws Exception {
+		List<Project> projects = getFilteredProjects(opts);
+		if (projects.isEmpty()) {
+			return;
+		}
+		ProjectScheduler scheduler = new ProjectScheduler(projects.get(0)
+			.getWorkspace());
+		if (jobs > 0) {
+			scheduler.parallelism(jobs);
+		}
+		Report report = scheduler.run(projects, run::doit);
+		for (Timing t : report.getTimings()) {
+			Project p = t.getProject();
+			getInfo(p, p + ": ");
+		}
+		if (timing) {
+			out.println(report);
+		}
+	}
+
 	private List<Project> getFilteredProjects(ProjectWorkspaceOptions opts) throws Exception {
 		List<Project> projects = new ArrayList<>();
 
@@ -978,11 +1007,23 @@ public class bnd extends Processor {
 
 		@Description("Force non-incremental")
 		boolean force();
+
+		@Description("Build projects that do not depend on each other concurrently")
+		boolean parallel();
+
+		@Description("The maximum number of projects built at the same time with --parallel. The default depends on the number of processors and the available memory")
+		int jobs();
+
+		@Description("Print the build time of each project and the critical path with --parallel")
+		boolean timing();
 	}
 
 	@Description("Build a project. This will create the jars defined in the bnd.bnd and sub-builders.")
 	public void _build(final buildoptions opts) throws Exception {
-
+		if (opts.parallel()) {
+			perProjectParallel(opts, opts.jobs(), opts.timing(), p -> p.build(opts.test()));
+			return;
+		}
 		perProject(opts, p -> p.build(opts.test()));
 	}
 
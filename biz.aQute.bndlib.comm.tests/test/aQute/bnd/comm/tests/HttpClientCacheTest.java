@@ -1,5 +1,6 @@
 package aQute.bnd.comm.tests;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -9,13 +10,18 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.osgi.util.promise.Promise;
 
 import aQute.bnd.http.HttpClient;
+import aQute.bnd.http.URLCache;
 import aQute.bnd.service.url.State;
 import aQute.bnd.service.url.TaggedData;
 import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
@@ -58,8 +64,17 @@ public class HttpClientCacheTest {
 			rsp.content = etag != null ? etag.getBytes(StandardCharsets.UTF_8) : new byte[0];
 			return;
 		}
+
+		@SuppressWarnings("unused")
+		public void _slowetag(Request rq, Response rsp) throws Exception {
+			downloads.incrementAndGet();
+			Thread.sleep(500);
+			_testetag(rq, rsp);
+		}
 	}
 
+	final AtomicInteger downloads = new AtomicInteger();
+
 	@BeforeEach
 	public void setUp() throws Exception {
 		cache = IO.getFile(tmp, "cache");
@@ -189,4 +204,103 @@ public class HttpClientCacheTest {
 		}
 	}
 
+
+	@Test
+	public void testConcurrentRequestsShareDownload() throws Exception {
+		try (HttpClient a = new HttpClient(); HttpClient b = new HttpClient()) {
+			a.setCache(cache);
+			b.setCache(cache);
+			etag = "1234";
+			URI uri = httpServer.getBaseURI("slowetag");
+			long coalesced = HttpClient.getCoalescedDownloads();
+
+			List<Promise<TaggedData>> promises = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				promises.add(((i % 2) == 0 ? a : b).build()
+					.useCache()
+					.asTag()
+					.async(uri));
+			}
+			int updated = 0;
+			for (Promise<TaggedData> promise : promises) {
+				TaggedData tag = promise.getValue();
+				assertEquals("1234", tag.getTag());
+				if (tag.getState() == State.UPDATED) {
+					updated++;
+				} else {
+					assertEquals(State.UNMODIFIED, tag.getState());
+				}
+			}
+			assertEquals(1, updated);
+			assertEquals(1, downloads.get());
+			assertThat(HttpClient.getCoalescedDownloads() - coalesced).isEqualTo(9);
+
+			File file = a.getCacheFileFor(uri);
+			assertEquals("1234", IO.collect(file));
+			assertThat(file.getParentFile()
+				.list()).noneMatch(name -> name.endsWith(".tmp"));
+		}
+	}
+
+	@Test
+	public void testStaleWhileRevalidate() throws Exception {
+		try (HttpClient client = new HttpClient()) {
+			client.setCache(cache);
+			etag = "1234";
+			URI uri = httpServer.getBaseURI("testetag");
+			assertEquals("1234", client.build()
+				.useCache()
+				.asString()
+				.go(uri));
+
+			etag = "5678";
+			Thread.sleep(20);
+			assertEquals("1234", client.build()
+				.useCache(1)
+				.staleWhileRevalidate()
+				.asString()
+				.go(uri), "the stale entry is answered");
+
+			File file = client.getCacheFileFor(uri);
+			long deadline = System.currentTimeMillis() + 10_000;
+			while (!"5678".equals(IO.collect(file)) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			assertEquals("5678", client.build()
+				.useCache(100_000)
+				.asString()
+				.go(uri), "the entry was checked in the background");
+		}
+	}
+
+	@Test
+	public void testCacheEntriesLockedAcrossCaches() throws Exception {
+		try (HttpClient a = new HttpClient(); HttpClient b = new HttpClient()) {
+			a.setCache(cache);
+			b.setCache(cache);
+			URI uri = httpServer.getBaseURI("testetag");
+
+			URLCache.Info info = a.cache()
+				.get(uri);
+			Promise<Boolean> other;
+			try {
+				other = b.promiseFactory()
+					.submit(() -> {
+						try (URLCache.Info i = b.cache()
+							.get(uri)) {
+							return i.isPresent();
+						}
+					});
+				Thread.sleep(200);
+				assertFalse(other.isDone(), "the entry is locked by the other cache");
+				info.update(IO.stream("1234"), "1234", 0);
+			} finally {
+				info.close();
+			}
+			assertTrue(other.getValue(), "the other cache sees the update");
+
+			File lock = new File(cache, "shas/" + URLCache.toName(uri) + ".content.lock");
+			assertThat(lock).isFile();
+		}
+	}
 }
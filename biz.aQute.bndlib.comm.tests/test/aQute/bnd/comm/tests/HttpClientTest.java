@@ -2,6 +2,7 @@ package aQute.bnd.comm.tests;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -16,10 +17,13 @@ import java.net.URLConnection;
 import java.nio.ByteBuffer;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -98,6 +102,10 @@ public class HttpClientTest {
 			x = n.decrementAndGet();
 		}
 
+		public void _large(Request rq, Response rsp, int size) {
+			rsp.content = new byte[size];
+		}
+
 		volatile boolean firstTimeout = true;
 
 		public void _readtimeout(Request rq, Response rsp, int stage) throws InterruptedException {
@@ -191,6 +199,84 @@ public class HttpClientTest {
 		}
 	}
 
+	@Test
+	public void testLimitConnectionsPerHost() throws Exception {
+		try (HttpClient client = new HttpClient()) {
+			client.maxConnectionsPerHost(1);
+			testParallel(client, 1);
+			client.maxConnectionsPerHost(3);
+			testParallel(client, 3);
+		}
+	}
+
+	@Test
+	public void testHostIsHeldUntilBodyIsClosed() throws Exception {
+		try (HttpClient client = new HttpClient()) {
+			client.maxConnectionsPerHost(1);
+			TaggedData first = client.build()
+				.asTag()
+				.go(httpServer.getBaseURI("large/16000000"));
+			assertThat(first.getResponseCode()).isEqualTo(200);
+			CompletableFuture<TaggedData> second = CompletableFuture.supplyAsync(() -> {
+				try {
+					return client.build()
+						.asTag()
+						.go(httpServer.getBaseURI("get/foo"));
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+			assertThatExceptionOfType(TimeoutException.class).isThrownBy(() -> second.get(1, TimeUnit.SECONDS));
+
+			first.close();
+			try (TaggedData tag = second.get(10, TimeUnit.SECONDS)) {
+				assertThat(tag.getResponseCode()).isEqualTo(200);
+			}
+		}
+	}
+
+	@Test
+	public void testPooledAndUnpooled() throws Exception {
+		try (HttpClient client = new HttpClient()) {
+			String pooled = client.build()
+				.get(String.class)
+				.go(httpServer.getBaseURI("gzip"));
+			client.pooled(false);
+			String unpooled = client.build()
+				.get(String.class)
+				.go(httpServer.getBaseURI("gzip"));
+			assertThat(pooled).isNotEmpty()
+				.isEqualTo(unpooled);
+		}
+	}
+
+	@Test
+	public void testFetchAll(@InjectTemporaryDirectory
+	File tmp) throws Exception {
+		try (HttpClient client = new HttpClient()) {
+			client.setCache(tmp);
+			Map<URI, File> files = new LinkedHashMap<>();
+			for (int n = 0; n < 50; n++) {
+				files.put(httpServer.getBaseURI("etag/" + n + "/0"), null);
+			}
+			File target = new File(tmp, "target");
+			files.put(httpServer.getBaseURI("etag/target/0"), target);
+			files.put(httpServer.getBaseURI("status/404"), null);
+
+			Map<URI, State> states = client.fetchAll(files, -1)
+				.getValue();
+			assertThat(states).hasSize(52);
+			assertThat(states.values()).containsOnly(State.UPDATED, State.NOT_FOUND);
+			assertThat(states).containsEntry(httpServer.getBaseURI("status/404"), State.NOT_FOUND);
+			assertThat(target).hasContent("target");
+			assertThat(IO.collect(client.getCacheFileFor(httpServer.getBaseURI("etag/7/0")))).isEqualTo("7");
+
+			states = client.fetchAll(files, -1)
+				.getValue();
+			assertThat(states.values()).containsOnly(State.UNMODIFIED, State.NOT_FOUND);
+		}
+	}
+
 	private void testParallel(HttpClient client, int max) {
 		List<CompletableFuture<TaggedData>> fs = new ArrayList<>();
 		for (int n = 0; n < 10; n++) {
@@ -0,0 +1,165 @@
+package aQute.bnd.build;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+import aQute.lib.io.IO;
+
+public class BuildCacheTest {
+	@InjectTemporaryDirectory
+	File tmp;
+
+	@Test
+	public void testSharedCache() throws Exception {
+		File cache = new File(tmp, "cache");
+		try (Workspace ws1 = workspace("ws1", IO.absolutePath(cache));
+			Workspace ws2 = workspace("ws2", IO.absolutePath(cache))) {
+			File[] a1 = build(ws1, "a");
+			File[] b1 = build(ws1, "b");
+			assertThat(ws1.getBuildCache()
+				.misses()).isEqualTo(2);
+			assertThat(ws1.getBuildCache()
+				.hits()).isZero();
+
+			// a checkout in another directory restores from the cache
+			File[] a2 = build(ws2, "a");
+			File[] b2 = build(ws2, "b");
+			assertThat(ws2.getBuildCache()
+				.hits()).isEqualTo(2);
+			assertThat(ws2.getBuildCache()
+				.misses()).isZero();
+			assertThat(IO.read(a2[0])).isEqualTo(IO.read(a1[0]));
+			assertThat(IO.read(b2[0])).isEqualTo(IO.read(b1[0]));
+
+			Project b = ws2.getProject("b");
+			assertThat(b2[0]).isEqualTo(new File(b.getTarget(), "b.jar"));
+			assertThat(b.getBuildFiles(false)).containsExactly(b2);
+			assertThat(b.getVersions()).containsKey("b");
+			assertThat(b.isStale()).isFalse();
+			try (Jar jar = new Jar(b2[0])) {
+				assertThat(jar.getResource("b.txt")).isNotNull();
+			}
+		}
+	}
+
+	@Test
+	public void testChangedInputs() throws Exception {
+		try (Workspace ws = workspace("ws", "true")) {
+			build(ws, "a");
+			build(ws, "b");
+			assertThat(ws.getBuildCache()
+				.misses()).isEqualTo(2);
+
+			clean(ws, "a");
+			clean(ws, "b");
+			build(ws, "a");
+			build(ws, "b");
+			assertThat(ws.getBuildCache()
+				.hits()).isEqualTo(2);
+
+			// a changed resource of the upstream project
+			IO.store("changed", new File(tmp, "ws/a/a.txt"));
+			clean(ws, "a");
+			clean(ws, "b");
+			build(ws, "a");
+			build(ws, "b");
+			assertThat(ws.getBuildCache()
+				.hits()).isEqualTo(2);
+			assertThat(ws.getBuildCache()
+				.misses()).isEqualTo(4);
+		}
+	}
+
+	@Test
+	public void testExternalResources() throws Exception {
+		try (Workspace ws = workspace("ws", "true")) {
+			IO.store("1", IO.getFile(IO.mkdirs(new File(tmp, "ws/cnf/ext")), "c.txt"));
+			IO.store("1", IO.getFile(IO.mkdirs(new File(tmp, "ext")), "d.txt"));
+			project(ws.getBase(), "c", "-includeresource: ${workspace}/cnf/ext, d.txt="
+				+ IO.absolutePath(new File(tmp, "ext/d.txt")) + "\n");
+			project(ws.getBase(), "d", "-includeresource: d.txt;cmd='echo d'\n");
+			ws.refreshProjects();
+
+			build(ws, "c");
+			clean(ws, "c");
+			build(ws, "c");
+			assertThat(ws.getBuildCache()
+				.hits()).isEqualTo(1);
+
+			// a changed file outside the project
+			IO.store("2", new File(tmp, "ext/d.txt"));
+			clean(ws, "c");
+			File[] c = build(ws, "c");
+			assertThat(ws.getBuildCache()
+				.hits()).isEqualTo(1);
+			try (Jar jar = new Jar(c[0])) {
+				assertThat(IO.collect(jar.getResource("d.txt")
+					.openInputStream())).isEqualTo("2");
+			}
+
+			// a changed file in a directory outside the project
+			IO.store("2", new File(tmp, "ws/cnf/ext/c.txt"));
+			clean(ws, "c");
+			build(ws, "c");
+			assertThat(ws.getBuildCache()
+				.hits()).isEqualTo(1);
+			assertThat(ws.getBuildCache()
+				.misses()).isEqualTo(3);
+
+			// a command output is not cached
+			Project d = ws.getProject("d");
+			try (ProjectBuilder builder = d.getBuilder(null)) {
+				assertThat(ws.getBuildCache()
+					.key(d, builder, false)).isNull();
+			}
+		}
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		try (Workspace ws = workspace("ws", "true;maxsize=0")) {
+			build(ws, "a");
+			clean(ws, "a");
+			build(ws, "a");
+			assertThat(ws.getBuildCache()
+				.hits()).isZero();
+			assertThat(ws.getBuildCache()
+				.misses()).isEqualTo(2);
+		}
+	}
+
+	private Workspace workspace(String name, String buildcache) throws Exception {
+		File base = new File(tmp, name);
+		IO.mkdirs(new File(base, "cnf"));
+		IO.store(Constants.BUILDCACHE + ": " + buildcache + "\n", new File(base, "cnf/build.bnd"));
+		project(base, "a", "-includeresource: a.txt\n");
+		IO.store("a", new File(base, "a/a.txt"));
+		project(base, "b", "-dependson: a\n-includeresource: b.txt;literal='b'\n");
+		return new Workspace(base);
+	}
+
+	private static void project(File base, String name, String bnd) throws Exception {
+		File dir = new File(base, name);
+		IO.mkdirs(dir);
+		IO.store("-resourceonly: true\n" + bnd, new File(dir, "bnd.bnd"));
+	}
+
+	private static File[] build(Workspace ws, String name) throws Exception {
+		Project project = ws.getProject(name);
+		File[] files = project.build();
+		assertThat(project.check()).isTrue();
+		assertThat(files).hasSize(1);
+		return files;
+	}
+
+	private static void clean(Workspace ws, String name) throws Exception {
+		ws.getProject(name)
+			.clean();
+	}
+}
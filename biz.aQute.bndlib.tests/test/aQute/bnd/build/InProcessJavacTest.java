@@ -0,0 +1,187 @@
+package aQute.bnd.build;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+import aQute.lib.io.IO;
+
+public class InProcessJavacTest {
+	@InjectTemporaryDirectory
+	File		tmp;
+	Workspace	ws;
+	Project		project;
+	File		src;
+	File		bin;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		IO.mkdirs(new File(tmp, "cnf"));
+		IO.store("", new File(tmp, "cnf/build.bnd"));
+		src = IO.mkdirs(new File(tmp, "p/src/a"));
+		bin = new File(tmp, "p/bin/a");
+		IO.store("""
+			javac.source=17
+			javac.target=17
+			javac.inprocess=true
+			src=src
+			bin=bin
+			target=generated
+			""", new File(tmp, "p/bnd.bnd"));
+		source("A", "public class A { public int value() { return 1; } }");
+		source("B", "public class B { public int value() { return new A().value(); } }");
+		source("C", "public class C { public String name() { return \"c\"; } }");
+		ws = Workspace.getWorkspace(tmp);
+		project = ws.getProject("p");
+	}
+
+	@AfterEach
+	public void tearDown() {
+		IO.close(ws);
+	}
+
+	@Test
+	public void testIncremental() throws Exception {
+		compile();
+		assertThat(bin.list()).containsExactlyInAnyOrder("A.class", "B.class", "C.class");
+
+		// nothing changed
+		assertThat(compile()).isEmpty();
+
+		// a change in the implementation only recompiles the source
+		source("C", "public class C { public String name() { return \"cc\"; } }");
+		assertThat(compile()).containsExactly("C.class");
+		source("A", "public class A { public int value() { return 2; } }");
+		assertThat(compile()).containsExactly("A.class");
+
+		// a change in the API also recompiles the users
+		source("A", "public class A { public int value() { return 2; } public void x() {} }");
+		assertThat(compile()).containsExactly("A.class", "B.class");
+
+		// a removed source takes its classes along
+		IO.delete(new File(src, "C.java"));
+		assertThat(compile()).isEmpty();
+		assertThat(bin.list()).containsExactlyInAnyOrder("A.class", "B.class");
+
+		// a removed class file is compiled again
+		IO.delete(new File(bin, "B.class"));
+		assertThat(compile()).containsExactly("B.class");
+	}
+
+	@Test
+	public void testAnnotations() throws Exception {
+		source("ProviderType",
+			"@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.CLASS) public @interface ProviderType {}");
+		source("Version",
+			"@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.CLASS) public @interface Version { String value(); }");
+		IO.store("@Version(\"1.0.0\") package a;", new File(src, "package-info.java"));
+		compile();
+		String api = InProcessJavac.analyze(new File(bin, "A.class")).api;
+		String packageApi = InProcessJavac.analyze(new File(bin, "package-info.class")).api;
+
+		// a flipped annotation changes the API and recompiles the users
+		source("A", "@ProviderType public class A { public int value() { return 1; } }");
+		assertThat(compile()).containsExactly("A.class", "B.class");
+		assertThat(InProcessJavac.analyze(new File(bin, "A.class")).api).isNotEqualTo(api);
+
+		// an annotation element value of a package
+		File packageInfo = new File(src, "package-info.java");
+		IO.store("@Version(\"1.1.0\") package a;", packageInfo);
+		packageInfo.setLastModified(packageInfo.lastModified() + 2000);
+		compile();
+		assertThat(InProcessJavac.analyze(new File(bin, "package-info.class")).api).isNotEqualTo(packageApi);
+	}
+
+	@Test
+	public void testConstantsRecompileAll() throws Exception {
+		source("K", "public class K { public static final int V = 1; }");
+		source("C", "public class C { public int name() { return K.V; } }");
+		compile();
+		source("K", "public class K { public static final int V = 2; }");
+		assertThat(compile()).containsExactly("A.class", "B.class", "C.class", "K.class");
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		compile();
+		source("B", "public class B { public int value() { return new A().missing(); } }");
+		project.compile(false);
+		assertThat(project.getErrors()).anyMatch(e -> e.contains("javac failed"));
+		assertThat(new File(tmp, "p/generated/javac-src.state")).doesNotExist();
+
+		project.clear();
+		source("B", "public class B { public int value() { return new A().value(); } }");
+		assertThat(compile()).containsExactly("A.class", "B.class", "C.class");
+	}
+
+	@Test
+	public void testFailedMainSkipsTests() throws Exception {
+		IO.store("package a; public class T { B b; }", new File(IO.mkdirs(new File(tmp, "p/test/a")), "T.java"));
+		source("B", "public class B { public int value() { return new A().missing(); } }");
+		project.compile(true);
+		assertThat(project.getErrors()).hasSize(1);
+		assertThat(project.getTestOutput()).doesNotExist();
+	}
+
+	@Test
+	public void testWarnings() throws Exception {
+		source("C", "public class C { public Integer name() { return new Integer(1); } }");
+		project.compile(false);
+		assertThat(project.getErrors()).isEmpty();
+		assertThat(project.getWarnings()).anyMatch(w -> w.startsWith("javac") && w.contains("C.java"));
+	}
+
+	private void source(String name, String body) throws Exception {
+		File file = new File(src, name + ".java");
+		long modified = file.lastModified();
+		IO.store("package a; " + body, file);
+		// make sure the change is visible on file systems with a coarse clock
+		if (file.lastModified() <= modified) {
+			file.setLastModified(modified + 2000);
+		}
+	}
+
+	/**
+	 * Give all class files an old time stamp so rewritten ones stand out.
+	 */
+	private Map<String, Long> resetStamps() {
+		Map<String, Long> stamps = new TreeMap<>();
+		String[] names = bin.list();
+		if (names != null) {
+			for (String name : names) {
+				File file = new File(bin, name);
+				file.setLastModified(1000L);
+				stamps.put(name, file.lastModified());
+			}
+		}
+		return stamps;
+	}
+
+	/**
+	 * Compile and return the class files that were written.
+	 */
+	private Set<String> compile() throws Exception {
+		Map<String, Long> before = resetStamps();
+		project.compile(false);
+		assertThat(project.check()).isTrue();
+		Map<String, Long> after = new TreeMap<>();
+		String[] names = bin.list();
+		if (names != null) {
+			for (String name : names) {
+				after.put(name, new File(bin, name).lastModified());
+			}
+		}
+		after.entrySet()
+			.removeIf(e -> e.getValue()
+				.equals(before.get(e.getKey())));
+		return after.keySet();
+	}
+}
@@ -0,0 +1,154 @@
+package aQute.bnd.build;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import aQute.bnd.build.ProjectScheduler.Report;
+import aQute.bnd.build.ProjectScheduler.Timing;
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+import aQute.lib.io.IO;
+
+public class ProjectSchedulerTest {
+	@InjectTemporaryDirectory
+	File		tmp;
+	Workspace	ws;
+
+	/**
+	 * d depends on b and c, b depends on a
+	 */
+	@BeforeEach
+	public void setUp() throws Exception {
+		IO.mkdirs(new File(tmp, "cnf"));
+		IO.store("", new File(tmp, "cnf/build.bnd"));
+		project("a", "");
+		project("b", "-dependson: a");
+		project("c", "");
+		project("d", "-dependson: b, c");
+		ws = Workspace.getWorkspace(tmp);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		IO.close(ws);
+	}
+
+	@Test
+	public void testDependenciesFirst() throws Exception {
+		List<String> events = new CopyOnWriteArrayList<>();
+		Report report = new ProjectScheduler(ws).parallelism(4)
+			.run(Arrays.asList(ws.getProject("d")), p -> {
+				events.add("start " + p.getName());
+				Thread.sleep(20);
+				events.add("end " + p.getName());
+			});
+
+		assertThat(events).hasSize(8);
+		assertThat(events.indexOf("end a")).isLessThan(events.indexOf("start b"));
+		assertThat(events.indexOf("end b")).isLessThan(events.indexOf("start d"));
+		assertThat(events.indexOf("end c")).isLessThan(events.indexOf("start d"));
+
+		assertThat(report.getTimings()).extracting(t -> t.getProject()
+			.getName())
+			.containsExactlyInAnyOrder("a", "b", "c", "d");
+		assertThat(report.getCriticalPath()).extracting(Timing::toString)
+			.containsExactly("a", "b", "d");
+		Timing d = report.getTiming(ws.getProject("d"));
+		assertThat(d.getCriticalPredecessor()).isEqualTo(ws.getProject("b"));
+		assertThat(d.getCriticalPath()).isGreaterThanOrEqualTo(60L);
+		assertThat(report.getElapsed()).isGreaterThanOrEqualTo(d.getCriticalPath());
+		assertThat(report.toString()).contains("critical path [a, b, d]");
+	}
+
+	@Test
+	public void testIndependentProjectsRunConcurrently() throws Exception {
+		CountDownLatch both = new CountDownLatch(2);
+		List<String> concurrent = new CopyOnWriteArrayList<>();
+		new ProjectScheduler(ws).parallelism(2)
+			.run(Arrays.asList(ws.getProject("a"), ws.getProject("c")), p -> {
+				both.countDown();
+				if (both.await(10, TimeUnit.SECONDS)) {
+					concurrent.add(p.getName());
+				}
+			});
+		assertThat(concurrent).containsExactlyInAnyOrder("a", "c");
+	}
+
+	@Test
+	public void testSerial() throws Exception {
+		List<String> order = new CopyOnWriteArrayList<>();
+		new ProjectScheduler(ws).parallelism(1)
+			.run(ws.getAllProjects(), p -> order.add(p.getName()));
+		assertThat(order).containsExactlyElementsOf(ws.getBuildOrder()
+			.stream()
+			.map(Project::getName)
+			.collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testFailureSkipsDependents() throws Exception {
+		List<String> run = new CopyOnWriteArrayList<>();
+		Report report = new ProjectScheduler(ws).parallelism(4)
+			.run(ws.getAllProjects(), p -> {
+				run.add(p.getName());
+				if (p.getName()
+					.equals("a")) {
+					throw new IllegalStateException("broken");
+				}
+			});
+		assertThat(run).containsExactlyInAnyOrder("a", "c");
+		assertThat(report.getTiming(ws.getProject("a"))
+			.isFailed()).isTrue();
+		assertThat(report.getTiming(ws.getProject("c"))
+			.isFailed()).isFalse();
+		assertThat(report.getTiming(ws.getProject("b"))
+			.isSkipped()).isTrue();
+		assertThat(report.getTiming(ws.getProject("d"))
+			.isSkipped()).isTrue();
+		assertThat(ws.getProject("a")
+			.getErrors()).anyMatch(e -> e.contains("broken"));
+		assertThat(ws.getProject("d")
+			.getErrors()).anyMatch(e -> e.contains("Not run because dependency a failed"));
+	}
+
+	@Test
+	public void testErrorFailsRun() throws Exception {
+		List<String> run = new CopyOnWriteArrayList<>();
+		assertTimeoutPreemptively(Duration.ofSeconds(30),
+			() -> assertThatExceptionOfType(StackOverflowError.class)
+				.isThrownBy(() -> new ProjectScheduler(ws).parallelism(4)
+					.run(ws.getAllProjects(), p -> {
+						run.add(p.getName());
+						if (p.getName()
+							.equals("a")) {
+							throw new StackOverflowError("broken");
+						}
+					})));
+		assertThat(run).contains("a")
+			.doesNotContain("b", "d");
+	}
+
+	@Test
+	public void testParallelism() throws Exception {
+		assertThat(ProjectScheduler.defaultParallelism()).isPositive();
+		assertThatIllegalArgumentException().isThrownBy(() -> new ProjectScheduler(ws).parallelism(0));
+	}
+
+	private void project(String name, String bnd) throws Exception {
+		IO.store(bnd, IO.getFile(IO.mkdirs(new File(tmp, name)), Project.BNDFILE));
+	}
+}
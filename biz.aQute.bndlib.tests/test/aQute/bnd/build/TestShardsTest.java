@@ -0,0 +1,133 @@
+package aQute.bnd.build;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+import aQute.lib.io.IO;
+
+public class TestShardsTest {
+	@InjectTemporaryDirectory
+	File tmp;
+
+	@Test
+	public void testPartition() {
+		Map<String, List<String>> classes = new LinkedHashMap<>();
+		classes.put("a.A", List.of("a.A"));
+		classes.put("a.B", List.of("a.B:testOne", "a.B:testTwo"));
+		classes.put("a.C", List.of("a.C"));
+		classes.put("a.D", List.of("a.D"));
+		classes.put("a.E", List.of("a.E"));
+		Map<String, Double> timings = new HashMap<>();
+		timings.put("a.A", 10.0);
+		timings.put("a.B", 6.0);
+		timings.put("a.C", 4.0);
+		// a.D and a.E count as the average of 6.67
+
+		List<List<String>> partition = TestShards.partition(classes, timings, 2);
+		assertThat(partition).containsExactly(List.of("a.A", "a.B:testOne", "a.B:testTwo"),
+			List.of("a.D", "a.E", "a.C"));
+
+		assertThat(TestShards.partition(classes, timings, 8)).hasSize(5);
+		assertThat(TestShards.className("a.B:testOne")).isEqualTo("a.B");
+		assertThat(TestShards.className("a.B#testOne")).isEqualTo("a.B");
+	}
+
+	@Test
+	public void testStorage() throws Exception {
+		IO.mkdirs(new File(tmp, "cnf"));
+		IO.store("", new File(tmp, "cnf/build.bnd"));
+		IO.mkdirs(new File(tmp, "p"));
+		IO.store("-runstorage: fw\n", new File(tmp, "p/bnd.bnd"));
+		IO.mkdirs(new File(tmp, "q"));
+		IO.store("-runkeep: true\n", new File(tmp, "q/bnd.bnd"));
+		IO.mkdirs(new File(tmp, "r"));
+		IO.store("", new File(tmp, "r/bnd.bnd"));
+		try (Workspace ws = new Workspace(tmp)) {
+			Project p = ws.getProject("p");
+			ProjectLauncher launcher0 = launcher(p);
+			ProjectLauncher launcher1 = launcher(p);
+			TestShards.storage(launcher0, 0);
+			TestShards.storage(launcher1, 1);
+			assertThat(launcher0.getStorageDir()).isEqualTo(new File(tmp, "p/fw/shard-0"));
+			assertThat(launcher1.getStorageDir()).isEqualTo(new File(tmp, "p/fw/shard-1"));
+
+			// kept after an update from the project
+			launcher1.update();
+			assertThat(launcher1.getStorageDir()).isEqualTo(new File(tmp, "p/fw/shard-1"));
+
+			Project q = ws.getProject("q");
+			ProjectLauncher kept = launcher(q);
+			TestShards.storage(kept, 1);
+			assertThat(kept.getStorageDir()).isEqualTo(IO.getFile(q.getTarget(), "test-storage/shard-1"));
+
+			// a temporary directory for every framework
+			ProjectLauncher temporary = launcher(ws.getProject("r"));
+			TestShards.storage(temporary, 1);
+			assertThat(temporary.getStorageDir()).isNull();
+		}
+	}
+
+	private static ProjectLauncher launcher(Project project) throws Exception {
+		ProjectLauncher launcher = new JUnitLauncher(project);
+		launcher.updateFromProject();
+		return launcher;
+	}
+
+	@Test
+	public void testMerge() throws Exception {
+		File reportDir = new File(tmp, "test-reports");
+		File shard0 = new File(reportDir, "shard-0");
+		File shard1 = new File(reportDir, "shard-1");
+		IO.mkdirs(shard0);
+		IO.mkdirs(shard1);
+		IO.store("""
+			<?xml version="1.0" encoding="UTF-8"?>
+			<testsuite name="test" tests="2" skipped="0" failures="1" errors="0" time="1.5">
+			<properties><property name="p" value="0"/></properties>
+			<testcase name="one" classname="a.A" time="1.0"/>
+			<testcase name="two" classname="a.A" time="0.5"><failure message="x"/></testcase>
+			</testsuite>
+			""", IO.getFile(shard0, "TEST-test-1.0.0.xml"));
+		IO.store("""
+			<?xml version="1.0" encoding="UTF-8"?>
+			<testsuite name="test" tests="1" skipped="1" failures="0" errors="1" time="2.25">
+			<properties><property name="p" value="1"/></properties>
+			<testcase name="three" classname="a.B" time="2.25"><error message="y"/></testcase>
+			</testsuite>
+			""", IO.getFile(shard1, "TEST-test-1.0.0.xml"));
+		IO.store("""
+			<?xml version="1.0" encoding="UTF-8"?>
+			<testsuite name="test.run" tests="1" failures="0" errors="0" time="0.1">
+			<testcase name="four" classname="a.C" time="0.1"/>
+			</testsuite>
+			""", IO.getFile(shard1, "TEST-shard-1.xml"));
+
+		Map<String, Double> timings = new HashMap<>();
+		timings.put("a.D", 3.0);
+		TestShards.merge(reportDir, List.of(shard0, shard1), timings);
+
+		assertThat(timings).containsEntry("a.A", 1.5)
+			.containsEntry("a.B", 2.25)
+			.containsEntry("a.C", 0.1)
+			.containsEntry("a.D", 3.0);
+
+		String merged = IO.collect(new File(reportDir, "TEST-test-1.0.0.xml"));
+		assertThat(merged).contains("tests=\"3\"", "skipped=\"1\"", "failures=\"1\"", "errors=\"1\"", "time=\"3.750\"",
+			"name=\"one\"", "name=\"two\"", "name=\"three\"", "<failure", "<error");
+		assertThat(merged).contains("value=\"0\"")
+			.doesNotContain("value=\"1\"");
+		assertThat(new File(reportDir, "TEST-test-reports.xml")).isFile();
+
+		File timingsFile = new File(tmp, TestShards.TIMINGS);
+		TestShards.saveTimings(timingsFile, timings);
+		assertThat(TestShards.loadTimings(timingsFile)).isEqualTo(timings);
+	}
+}
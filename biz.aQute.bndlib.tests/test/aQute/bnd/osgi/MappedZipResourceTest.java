@@ -0,0 +1,74 @@
+package aQute.bnd.osgi;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import aQute.lib.io.IO;
+import aQute.lib.zip.MappedZipFile;
+
+public class MappedZipResourceTest {
+
+	@Test
+	public void testSameAsZipResource() throws Exception {
+		for (String name : new String[] {
+			"jar/asm.jar", "jar/osgi.jar", "jar/ds.jar"
+		}) {
+			File file = IO.getFile(name);
+			try (Jar jar = new Jar(file); MappedZipFile zip = new MappedZipFile(file.toPath())) {
+				int n = 0;
+				for (MappedZipFile.Entry entry : zip.entries()) {
+					if (entry.isDirectory()) {
+						continue;
+					}
+					n++;
+					Resource expected = jar.getResource(entry.getName());
+					Resource actual = new MappedZipResource(zip, entry);
+					assertThat(expected).as(entry.getName())
+						.isNotNull();
+					assertThat(actual.size()).isEqualTo(expected.size());
+					assertThat(actual.lastModified()).isEqualTo(expected.lastModified());
+					assertThat(actual.getExtra()).isEqualTo(expected.getExtra());
+					assertThat(IO.read(actual.openInputStream())).isEqualTo(IO.read(expected.openInputStream()));
+					assertThat(IO.read(actual.buffer())).isEqualTo(IO.read(expected.buffer()));
+				}
+				assertThat(n).isEqualTo(jar.getResources()
+					.size());
+			}
+		}
+	}
+
+	@Test
+	public void testCopyToJar() throws Exception {
+		File file = IO.getFile("jar/asm.jar");
+		try (MappedZipFile zip = new MappedZipFile(file.toPath()); Jar jar = new Jar("copy")) {
+			for (MappedZipFile.Entry entry : zip.entries()) {
+				if (!entry.isDirectory()) {
+					jar.putResource(entry.getName(), new MappedZipResource(zip, entry));
+				}
+			}
+			ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			jar.write(bout);
+			try (Jar original = new Jar(file);
+				ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(bout.toByteArray()))) {
+				Map<String, Resource> resources = original.getResources();
+				for (ZipEntry entry; (entry = zin.getNextEntry()) != null;) {
+					if (entry.isDirectory() || entry.getName()
+						.equals("META-INF/MANIFEST.MF")) {
+						continue;
+					}
+					assertThat(zin.readAllBytes()).as(entry.getName())
+						.isEqualTo(IO.read(resources.get(entry.getName())
+							.openInputStream()));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package aQute.bnd.osgi.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.osgi.About;
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+import aQute.lib.io.IO;
+
+public class BinaryResourceIndexTest {
+
+	@Test
+	public void testRoundTrip(@InjectTemporaryDirectory
+	File tmp) throws Exception {
+		File xml = index(tmp);
+		List<Resource> parsed = XMLResourceParser.getResources(xml);
+		assertThat(parsed).hasSizeGreaterThan(1);
+
+		File binary = new File(tmp, "index.bin");
+		String key = BinaryResourceIndex.key(xml, xml.toURI());
+		BinaryResourceIndex.write(parsed, key, binary);
+
+		List<Resource> read = BinaryResourceIndex.read(binary, key);
+		assertThat(read).hasSameSizeAs(parsed);
+		assertThat(toXML(read)).isEqualTo(toXML(parsed));
+		assertThat(read.get(1)).isSameAs(read.get(1));
+
+		assertThat(BinaryResourceIndex.read(binary, key + "x")).isNull();
+		assertThat(BinaryResourceIndex.read(new File(tmp, "missing.bin"), key)).isNull();
+
+		IO.store("garbage", binary);
+		assertThat(BinaryResourceIndex.read(binary, key)).isNull();
+	}
+
+	@Test
+	public void testGetResourcesCachesParse(@InjectTemporaryDirectory
+	File tmp) throws Exception {
+		File xml = index(tmp);
+		File binary = new File(tmp, "index.bin");
+		AtomicInteger parses = new AtomicInteger();
+
+		List<Resource> first = BinaryResourceIndex.getResources(xml, xml.toURI(), binary, referrals -> {
+			parses.incrementAndGet();
+			return XMLResourceParser.getResources(xml);
+		});
+		assertThat(binary).isFile();
+		List<Resource> second = BinaryResourceIndex.getResources(xml, xml.toURI(), binary, referrals -> {
+			parses.incrementAndGet();
+			return XMLResourceParser.getResources(xml);
+		});
+		assertThat(parses).hasValue(1);
+		assertThat(toXML(second)).isEqualTo(toXML(first));
+
+		// a changed source must be parsed again
+		new SimpleIndexer().files(Arrays.asList(IO.getFile("jar/osgi.jar")))
+			.index(xml);
+		List<Resource> third = BinaryResourceIndex.getResources(xml, xml.toURI(), binary, referrals -> {
+			parses.incrementAndGet();
+			return XMLResourceParser.getResources(xml);
+		});
+		assertThat(parses).hasValue(2);
+		assertThat(third).hasSize(1);
+
+		// nothing is cached when the parser declines
+		IO.delete(binary);
+		BinaryResourceIndex.getResources(xml, xml.toURI(), binary, referrals -> null);
+		assertThat(binary).doesNotExist();
+	}
+
+	@Test
+	public void testReferralsAreNotCached(@InjectTemporaryDirectory
+	File tmp) throws Exception {
+		File xml = index(tmp);
+		File top = new File(tmp, "top.xml");
+		IO.store("<repository xmlns='http://www.osgi.org/xmlns/repository/v1.0.0' name='top'>"
+			+ "<referral url='index.xml'/></repository>", top);
+		File binary = new File(tmp, "top.bin");
+
+		List<Resource> resources = BinaryResourceIndex.getResources(top, top.toURI(), binary, referrals -> {
+			try (XMLResourceParser parser = new XMLResourceParser(IO.stream(top), "top", 100, referrals,
+				top.toURI())) {
+				return parser.parse();
+			}
+		});
+		assertThat(toXML(resources)).isEqualTo(toXML(XMLResourceParser.getResources(xml)));
+		// the referred index can change without changing the top index
+		assertThat(binary).doesNotExist();
+	}
+
+	@Test
+	public void testKeyHasBndVersion(@InjectTemporaryDirectory
+	File tmp) throws Exception {
+		File xml = index(tmp);
+		assertThat(BinaryResourceIndex.key(xml, xml.toURI())).endsWith(" " + About.getBndVersion());
+	}
+
+	private static File index(File tmp) throws Exception {
+		File xml = new File(tmp, "index.xml");
+		new SimpleIndexer().files(Arrays.asList(IO.getFile("jar/osgi.jar"), IO.getFile("jar/ds.jar")))
+			.base(tmp.toURI())
+			.index(xml);
+		return xml;
+	}
+
+	private static String toXML(List<Resource> resources) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new XMLResourceGenerator().resources(resources)
+			.save(out);
+		return out.toString("UTF-8");
+	}
+}
@@ -0,0 +1,101 @@
+package aQute.bnd.osgi.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.osgi.resource.ResourceBuilder;
+import aQute.bnd.osgi.resource.ResourceUtils;
+import aQute.bnd.version.Version;
+
+public class ResourcesRepositoryTest {
+	private ResourcesRepository repository;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		repository = new ResourcesRepository();
+		for (int i = 0; i < 200; i++) {
+			String bsn = "bsn." + (i % 10);
+			Version version = new Version(i / 10);
+			ResourceBuilder rb = new ResourceBuilder();
+			rb.addCapability(new CapReqBuilder("osgi.identity").addAttribute("osgi.identity", bsn)
+				.addAttribute("version", version));
+			rb.addCapability(new CapReqBuilder("osgi.wiring.bundle").addAttribute("osgi.wiring.bundle", bsn)
+				.addAttribute("bundle-version", version));
+			for (int j = 0; j < 5; j++) {
+				rb.addCapability(
+					new CapReqBuilder("osgi.wiring.package").addAttribute("osgi.wiring.package", "pkg." + ((i + j) % 20))
+						.addAttribute("version", new Version(i % 7)));
+			}
+			if (i % 50 == 0) {
+				// multi valued and missing primary attributes
+				rb.addCapability(new CapReqBuilder("osgi.wiring.package").addAttribute("osgi.wiring.package",
+					Arrays.asList("pkg.3", "multi." + i)));
+				rb.addCapability(new CapReqBuilder("osgi.wiring.package").addAttribute("version", new Version(3)));
+			}
+			repository.add(rb.build());
+		}
+		// adding a resource twice must not duplicate its capabilities
+		repository.add(repository.getResources()
+			.get(0));
+	}
+
+	@ParameterizedTest
+	@CsvSource(delimiter = ';', value = {
+		"osgi.wiring.package;(osgi.wiring.package=pkg.3)", //
+		"osgi.wiring.package;(&(osgi.wiring.package=pkg.3)(version>=2.0.0)(!(version>=5.0.0)))", //
+		"osgi.wiring.package;(&(version>=2.0.0)(osgi.wiring.package=pkg.7))", //
+		"osgi.wiring.package;(osgi.wiring.package=multi.50)", //
+		"osgi.wiring.package;(osgi.wiring.package=pkg.1*)", //
+		"osgi.wiring.package;(|(osgi.wiring.package=pkg.1)(osgi.wiring.package=pkg.2))", //
+		"osgi.wiring.package;(!(osgi.wiring.package=pkg.1))", //
+		"osgi.wiring.package;(version=3.0.0)", //
+		"osgi.wiring.package;(osgi.wiring.package=unknown)", //
+		"osgi.identity;(osgi.identity=bsn.4)", //
+		"osgi.identity;(&(osgi.identity=bsn.4)(version>=3.0.0))", //
+		"osgi.wiring.bundle;(&(osgi.wiring.bundle=bsn.4)(bundle-version>=3.0.0))", //
+		"osgi.wiring.bundle;(osgi.identity=bsn.4)", //
+		"osgi.wiring.bundle;(osgi.wiring.bundle=bsn.4", //
+	})
+	public void testFindProviderMatchesScan(String namespace, String filter) throws Exception {
+		Requirement requirement = new CapReqBuilder(namespace).addDirective("filter", filter)
+			.buildSyntheticRequirement();
+
+		List<Capability> expected = repository.getResources()
+			.stream()
+			.flatMap(resource -> ResourceUtils.capabilityStream(resource, namespace))
+			.filter(ResourceUtils.matcher(requirement))
+			.collect(Collectors.toList());
+
+		assertThat(repository.findProvider(requirement)).containsExactlyElementsOf(expected);
+	}
+
+	@ParameterizedTest
+	@CsvSource(delimiter = ';', value = {
+		"osgi.wiring.package;(osgi.wiring.package=pkg.3)", //
+		"osgi.identity;(osgi.identity=bsn.4)"
+	})
+	public void testSetResetsIndex(String namespace, String filter) throws Exception {
+		Requirement requirement = new CapReqBuilder(namespace).addDirective("filter", filter)
+			.buildSyntheticRequirement();
+		Resource first = repository.getResources()
+			.get(3);
+		assertThat(repository.findProvider(requirement)).isNotEmpty();
+
+		repository.set(List.of(first));
+		assertThat(repository.findProvider(requirement)).containsExactlyElementsOf(
+			ResourceUtils.capabilityStream(first, namespace)
+				.filter(ResourceUtils.matcher(requirement))
+				.collect(Collectors.toList()));
+	}
+}
@@ -0,0 +1,53 @@
+package aQute.bnd.osgi.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.resource.Resource;
+
+import aQute.lib.io.IO;
+
+public class SimpleIndexerTest {
+
+	@Test
+	public void testParallelIndexKeepsFileOrder() throws Exception {
+		List<File> files = Arrays.asList(IO.getFile("jar/ds.jar"), IO.getFile("jar/asm.jar"),
+			IO.getFile("jar/osgi.jar"), IO.getFile("jar/missing.jar"), IO.getFile("jar/easymock.jar"),
+			IO.getFile("jar/osgi.core-4.3.0.jar"));
+
+		List<Resource> sequential = new SimpleIndexer().files(files)
+			.parallelism(1)
+			.getResources();
+		List<Resource> parallel = new SimpleIndexer().files(files)
+			.parallelism(4)
+			.getResources();
+
+		assertThat(sequential).hasSizeGreaterThan(1);
+		assertThat(parallel).containsExactlyElementsOf(sequential);
+	}
+
+	@Test
+	public void testAnalyzerIsCalledSerially() throws Exception {
+		List<File> files = Arrays.asList(IO.getFile("jar/ds.jar"), IO.getFile("jar/asm.jar"),
+			IO.getFile("jar/osgi.jar"), IO.getFile("jar/easymock.jar"));
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		List<Resource> resources = new SimpleIndexer().files(files)
+			.analyzer((file, builder) -> threads.add(Thread.currentThread()))
+			.getResources();
+
+		assertThat(resources).hasSizeGreaterThan(1);
+		assertThat(threads).containsExactly(Thread.currentThread());
+	}
+
+	@Test
+	public void testInvalidParallelism() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new SimpleIndexer().parallelism(0));
+	}
+}
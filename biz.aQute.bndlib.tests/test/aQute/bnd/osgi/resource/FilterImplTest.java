@@ -0,0 +1,60 @@
+package aQute.bnd.osgi.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.osgi.framework.Version;
+
+public class FilterImplTest {
+
+	@Test
+	public void testSharedFilter() throws Exception {
+		String filter = "(&(osgi.wiring.package=a.b)(version>=1.2.0)(!(version>=2.0.0)))";
+		FilterImpl shared = FilterImpl.getFilter(filter);
+		assertThat(FilterImpl.getFilter(filter)).isSameAs(shared);
+		assertThat(FilterImpl.createFilter(filter)).isNotSameAs(shared)
+			.isEqualTo(shared);
+	}
+
+	@Test
+	public void testVersionComparison() throws Exception {
+		FilterImpl filter = FilterImpl.getFilter("(&(osgi.wiring.package=a.b)(version>=1.2.0)(!(version>=2.0.0)))");
+		assertThat(filter.matches(Map.of("osgi.wiring.package", "a.b", "version", new Version(1, 2, 0)))).isTrue();
+		assertThat(filter.matches(Map.of("osgi.wiring.package", "a.b", "version", new Version(1, 9, 9)))).isTrue();
+		assertThat(filter.matches(Map.of("osgi.wiring.package", "a.b", "version", new Version(2, 0, 0)))).isFalse();
+		assertThat(filter.matches(Map.of("osgi.wiring.package", "a.b", "version", new Version(1, 1, 0)))).isFalse();
+		assertThat(filter.matches(Map.of("osgi.wiring.package", "a.c", "version", new Version(1, 5, 0)))).isFalse();
+
+		// a string version is compared as a string
+		assertThat(filter.matches(Map.of("osgi.wiring.package", "a.b", "version", "1.10.0"))).isFalse();
+		assertThat(filter.matches(Map.of("osgi.wiring.package", "a.b", "version", "1.5"))).isTrue();
+	}
+
+	@Test
+	public void testMixedValueTypes() throws Exception {
+		FilterImpl filter = FilterImpl.getFilter("(x>=10)");
+		// alternate the value types so the converted filter value changes
+		for (int i = 0; i < 3; i++) {
+			assertThat(filter.matches(Map.of("x", 11L))).isTrue();
+			assertThat(filter.matches(Map.of("x", 9))).isFalse();
+			assertThat(filter.matches(Map.of("x", 10.5d))).isTrue();
+			assertThat(filter.matches(Map.of("x", "2"))).isTrue(); // string comparison
+			assertThat(filter.matches(Map.of("x", new aQute.bnd.version.Version(11)))).isTrue();
+			assertThat(filter.matches(Map.of("x", new aQute.bnd.version.Version(9)))).isFalse();
+			assertThat(filter.matches(Map.of("x", Arrays.asList(1, 2, 12)))).isTrue();
+		}
+	}
+
+	@Test
+	public void testComparableValues() throws Exception {
+		FilterImpl filter = FilterImpl.getFilter("(version=1.2.3)");
+		assertThat(filter.matches(Map.of("version", new aQute.bnd.version.Version(1, 2, 3)))).isTrue();
+		assertThat(filter.matches(Map.of("version", new aQute.bnd.version.Version(1, 2, 4)))).isFalse();
+		assertThat(filter.matches(Map.of("version", new Version(1, 2, 3)))).isTrue();
+		assertThat(filter.matches(Map.of("version", "1.2.3"))).isTrue();
+		assertThat(filter.matches(Map.of("version", "1.2.3.qualifier"))).isFalse();
+	}
+}
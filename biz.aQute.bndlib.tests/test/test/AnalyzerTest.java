@@ -11,10 +11,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
 import java.util.jar.Attributes;
@@ -27,13 +29,16 @@ import aQute.bnd.header.Parameters;
 import aQute.bnd.osgi.About;
 import aQute.bnd.osgi.Analyzer;
 import aQute.bnd.osgi.Builder;
+import aQute.bnd.osgi.ClassDataCollector;
 import aQute.bnd.osgi.Clazz;
 import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Descriptors.TypeRef;
 import aQute.bnd.osgi.Domain;
 import aQute.bnd.osgi.FileResource;
 import aQute.bnd.osgi.Jar;
 import aQute.bnd.osgi.Packages;
 import aQute.bnd.osgi.Processor;
+import aQute.bnd.service.classparser.ClassParser;
 import aQute.lib.io.IO;
 
 class T0 {}
@@ -591,6 +596,75 @@ public class AnalyzerTest {
 
 	}
 
+	@Test
+	public void testParallelAnalysis() throws Exception {
+		Manifest serial = calcManifest(false);
+		Manifest parallel = calcManifest(true);
+		assertThat(parallel.getMainAttributes()
+			.getValue(Constants.EXPORT_PACKAGE)).isNotEmpty()
+				.isEqualTo(serial.getMainAttributes()
+					.getValue(Constants.EXPORT_PACKAGE));
+		assertThat(parallel.getMainAttributes()).isEqualTo(serial.getMainAttributes());
+	}
+
+	private Manifest calcManifest(boolean parallel) throws Exception {
+		try (Analyzer a = new Analyzer()) {
+			a.setJar(IO.getFile("jar/osgi.jar"));
+			a.setProperty(Constants.EXPORT_PACKAGE, "*");
+			a.setProperty(Constants.IMPORT_PACKAGE, "*");
+			a.setProperty(Constants.NOEXTRAHEADERS, "true");
+			a.setProperty(Constants.PARALLELANALYSIS, Boolean.toString(parallel));
+			Manifest manifest = a.calcManifest();
+			assertTrue(a.check());
+			return manifest;
+		}
+	}
+
+	@Test
+	public void testClassParserAnnotationFilter() throws Exception {
+		Set<TypeRef> all = new HashSet<>();
+		Set<TypeRef> annotated = new HashSet<>();
+		try (Builder b = new Builder()) {
+			b.addClasspath(IO.getFile("bin_test"));
+			b.setProperty(Constants.INCLUDEPACKAGE, "test.component.ds14");
+			b.addBasicPlugin(classParser(all, Collections.emptySet()));
+			b.addBasicPlugin(
+				classParser(annotated, Collections.singleton("org.osgi.service.component.annotations.Component")));
+			b.build();
+			assertTrue(b.check());
+
+			assertThat(annotated).isNotEmpty()
+				.contains(b.getTypeRefFromFQN("test.component.ds14.AnComponentDSFourteen"));
+			assertThat(all).hasSize(b.getClassspace()
+				.size())
+				.containsAll(annotated)
+				.hasSizeGreaterThan(annotated.size());
+			for (TypeRef type : annotated) {
+				assertThat(b.findClass(type)
+					.annotations()).contains(b.getTypeRefFromFQN("org.osgi.service.component.annotations.Component"));
+			}
+		}
+	}
+
+	private static ClassParser classParser(Set<TypeRef> visited, Set<String> annotations) {
+		return new ClassParser() {
+			@Override
+			public ClassDataCollector getClassDataCollector(Analyzer analyzer) {
+				return new ClassDataCollector() {
+					@Override
+					public void classBegin(int access, TypeRef name) {
+						visited.add(name);
+					}
+				};
+			}
+
+			@Override
+			public Set<String> getAnnotations() {
+				return annotations;
+			}
+		};
+	}
+
 	@Test
 	public void testClassQuery() throws Exception {
 		try (Analyzer a = new Analyzer()) {
@@ -0,0 +1,90 @@
+package test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.jar.Manifest;
+
+import org.junit.jupiter.api.Test;
+
+import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.ClassFileCache;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Processor;
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+import aQute.lib.io.IO;
+
+public class ClassFileCacheTest {
+
+	@Test
+	public void testCacheRestoresAnalysis(@InjectTemporaryDirectory
+	File tmp) throws Exception {
+		Manifest expected = calcManifest(null);
+
+		int misses;
+		try (ClassFileCache cache = new ClassFileCache(tmp, ClassFileCache.DEFAULT_MAX_ENTRIES)) {
+			assertThat(calcManifest(cache).getMainAttributes()).isEqualTo(expected.getMainAttributes());
+			assertThat(cache.hits()).isZero();
+			misses = cache.misses();
+			assertThat(misses).isPositive();
+			assertThat(cache.size()).isEqualTo(misses);
+		}
+		assertThat(IO.getFile(tmp, "summaries")).isFile();
+
+		try (ClassFileCache cache = new ClassFileCache(tmp, ClassFileCache.DEFAULT_MAX_ENTRIES)) {
+			assertThat(calcManifest(cache).getMainAttributes()).isEqualTo(expected.getMainAttributes());
+			assertThat(cache.misses()).isZero();
+			assertThat(cache.hits()).isEqualTo(misses);
+		}
+	}
+
+	@Test
+	public void testClassQueriesOnCachedClasses(@InjectTemporaryDirectory
+	File tmp) throws Exception {
+		try (ClassFileCache cache = new ClassFileCache(tmp, ClassFileCache.DEFAULT_MAX_ENTRIES)) {
+			calcManifest(cache);
+		}
+		try (ClassFileCache cache = new ClassFileCache(tmp, ClassFileCache.DEFAULT_MAX_ENTRIES);
+			Analyzer a = new Analyzer()) {
+			a.addBasicPlugin(cache);
+			a.setJar(IO.getFile("jar/osgi.jar"));
+			a.analyze();
+			assertThat(cache.hits()).isPositive();
+
+			String result = a._classes("cmd", "named", "org.osgi.service.http.*", "abstract");
+			assertThat(new TreeSet<>(Processor.split(result)))
+				.isEqualTo(new TreeSet<>(
+					Arrays.asList("org.osgi.service.http.HttpContext", "org.osgi.service.http.HttpService")));
+		}
+	}
+
+	@Test
+	public void testBoundedSize(@InjectTemporaryDirectory
+	File tmp) throws Exception {
+		try (ClassFileCache cache = new ClassFileCache(tmp, 10)) {
+			calcManifest(cache);
+			assertThat(cache.misses()).isGreaterThan(10);
+			assertThat(cache.size()).isEqualTo(10);
+		}
+		try (ClassFileCache cache = new ClassFileCache(tmp, 10)) {
+			assertThat(cache.size()).isEqualTo(10);
+		}
+	}
+
+	private Manifest calcManifest(ClassFileCache cache) throws Exception {
+		try (Analyzer a = new Analyzer()) {
+			if (cache != null) {
+				a.addBasicPlugin(cache);
+			}
+			a.setJar(IO.getFile("jar/osgi.jar"));
+			a.setProperty(Constants.EXPORT_PACKAGE, "*");
+			a.setProperty(Constants.IMPORT_PACKAGE, "*");
+			a.setProperty(Constants.NOEXTRAHEADERS, "true");
+			Manifest manifest = a.calcManifest();
+			assertThat(a.check()).isTrue();
+			return manifest;
+		}
+	}
+}
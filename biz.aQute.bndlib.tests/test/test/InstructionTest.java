@@ -7,6 +7,8 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.junit.jupiter.api.Test;
@@ -354,4 +356,70 @@ public class InstructionTest {
 		assertThat(i.matches("com/foo/bar/baz")).isTrue();
 		assertThat(i.matches("com/bar")).isFalse();
 	}
+
+	@Test
+	public void testCompiledMatcher() {
+		Instructions instructions = new Instructions(
+			"!com.foo.impl.*,com.foo.*,=com.bar,com.bar.*:i,org.*.api,org.x?z,*.internal,!org.example,org.*,\"net.{a,b}.*\"");
+		assertThat(instructions.size()).isGreaterThanOrEqualTo(8);
+		String[] values = {
+			"com.foo", "com.foo.impl", "com.foo.impl.x", "com.foobar", "com.foo.bar", "com.bar", "COM.BAR.x",
+			"com.bar.y", "org.a.api", "org.xyz", "org.example", "org.example.internal", "a.internal", "net.a",
+			"net.b.c", "net.c", "", "x"
+		};
+		for (String value : values) {
+			Instruction expected = null;
+			for (Instruction instruction : instructions.keySet()) {
+				if (instruction.matches(value)) {
+					expected = instruction;
+					break;
+				}
+			}
+			assertThat(instructions.matcher(value)).as(value)
+				.isSameAs(expected);
+		}
+		assertThat(instructions.matches("com.foo.bar")).isTrue();
+		assertThat(instructions.matches("com.foo.impl.x")).isFalse();
+		assertThat(instructions.matches("org.example")).isFalse();
+		assertThat(instructions.matches("org.example.internal")).isTrue();
+		assertThat(instructions.matches("x")).isFalse();
+
+		assertThat(instructions.matchesStream("com.bar")
+			.keys()
+			.map(Instruction::getInput)).containsExactly("=com.bar", "com.bar.*:i");
+		assertThat(instructions.matchesStream("org.example.internal")
+			.keys()
+			.map(Instruction::getInput)).containsExactly("*.internal", "org.*");
+		assertThat(instructions.matchesStream("com.foo.impl")
+			.keys()).isEmpty();
+	}
+
+	@Test
+	public void testCompiledSelect() {
+		Instructions instructions = new Instructions("!b.x,a,b.*,c*,d,e,f,g,h,unused");
+		Set<Instruction> unused = new HashSet<>();
+		assertThat(instructions.select(Arrays.asList("c2", "b.y", "a", "b.x", "c1", "z", "b"), unused, false))
+			.containsExactly("a", "b.y", "b", "c2", "c1");
+		assertThat(unused).extracting(Instruction::getInput)
+			.containsExactlyInAnyOrder("d", "e", "f", "g", "h", "unused");
+	}
+
+	@Test
+	public void testCompiledChanges() {
+		Instructions instructions = new Instructions("a,b,c,d,e,f,g,h");
+		assertThat(instructions.matcher("a")).isNotNull();
+		assertThat(instructions.matcher("i")).isNull();
+
+		instructions.put(new Instruction("i"), null);
+		assertThat(instructions.matcher("i")).isNotNull();
+
+		instructions.keySet()
+			.removeIf(i -> i.getInput()
+				.equals("a"));
+		assertThat(instructions.matcher("a")).isNull();
+
+		instructions.remove(instructions.matcher("b"));
+		assertThat(instructions.matcher("b")).isNull();
+		assertThat(instructions.matcher("c")).isNotNull();
+	}
 }
@@ -14,10 +14,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import org.junit.jupiter.api.Test;
@@ -338,4 +342,82 @@ public class JarTest {
 			assertThat(jar.exists("ok.txt")).isTrue();
 		}
 	}
+
+	@Test
+	public void testCopyDeflatedEntries(@InjectTemporaryDirectory
+	File tmp) throws Exception {
+		// entries deflated without compression can tell a copy from a
+		// recompressed entry
+		File source = new File(tmp, "source.jar");
+		byte[] data = "Hello World ".repeat(1000)
+			.getBytes(StandardCharsets.UTF_8);
+		try (JarOutputStream jout = new JarOutputStream(IO.outputStream(source))) {
+			jout.setLevel(Deflater.NO_COMPRESSION);
+			jout.putNextEntry(new ZipEntry("a/hello.txt"));
+			jout.write(data);
+		}
+
+		byte[] first;
+		byte[] second;
+		try (Jar jar = new Jar(source)) {
+			jar.setReproducible("true");
+			ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			jar.write(bout);
+			first = bout.toByteArray();
+			bout = new ByteArrayOutputStream();
+			jar.write(bout);
+			second = bout.toByteArray();
+		}
+		assertThat(first).isEqualTo(second);
+
+		File target = new File(tmp, "target.jar");
+		IO.copy(first, target);
+		try (ZipFile zip = new ZipFile(target)) {
+			ZipEntry entry = zip.getEntry("a/hello.txt");
+			assertThat(entry.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+			assertThat(entry.getCompressedSize()).isGreaterThan(data.length);
+			assertThat(IO.read(zip.getInputStream(entry))).isEqualTo(data);
+		}
+
+		try (Jar jar = new Jar(source)) {
+			jar.setCompression(Jar.Compression.STORE);
+			ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			jar.write(bout);
+			try (ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(bout.toByteArray()))) {
+				for (ZipEntry entry; (entry = zin.getNextEntry()) != null;) {
+					assertThat(entry.getMethod()).isEqualTo(ZipEntry.STORED);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testParallelCompression() throws Exception {
+		try (Jar jar = new Jar(IO.getFile("jar/asm.jar"))) {
+			jar.setReproducible("true");
+			ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+			jar.write(deflated);
+
+			jar.setCompression(Jar.Compression.PARALLEL);
+			jar.setCalculateFileDigest(true);
+			ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+			jar.write(parallel);
+			assertThat(jar.getSHA256()).get()
+				.isEqualTo(SHA256.digest(parallel.toByteArray())
+					.digest());
+			assertThat(jar.getLength()).isEqualTo(parallel.size());
+
+			try (ZipInputStream expected = new ZipInputStream(new ByteArrayInputStream(deflated.toByteArray()));
+				ZipInputStream actual = new ZipInputStream(new ByteArrayInputStream(parallel.toByteArray()))) {
+				for (ZipEntry entry; (entry = expected.getNextEntry()) != null;) {
+					ZipEntry next = actual.getNextEntry();
+					assertThat(next).isNotNull();
+					assertThat(next.getName()).isEqualTo(entry.getName());
+					assertThat(next.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+					assertThat(actual.readAllBytes()).isEqualTo(expected.readAllBytes());
+				}
+				assertThat(actual.getNextEntry()).isNull();
+			}
+		}
+	}
 }
@@ -2186,4 +2186,97 @@ public class MacroTest {
 				.process("${format;%,6d;100000}"));
 		}
 	}
+
+	public static class Counter {
+		int count;
+
+		public String _count(String[] args) {
+			return Integer.toString(++count);
+		}
+	}
+
+	@Test
+	public void testExpansionFollowsDependencies() throws IOException {
+		try (Processor parent = new Processor(); Processor p = new Processor(parent)) {
+			parent.setProperty("v", "1");
+			p.setProperty("a", "${b}-${v}");
+			p.setProperty("b", "${toupper;x}");
+			assertThat(p.getProperty("a")).isEqualTo("X-1");
+			assertThat(p.getProperty("a")).isEqualTo("X-1");
+
+			p.setProperty("b", "y");
+			assertThat(p.getProperty("a")).isEqualTo("y-1");
+			p.getProperties()
+				.put("b", "z");
+			assertThat(p.getProperty("a")).isEqualTo("z-1");
+			parent.setProperty("v", "2");
+			assertThat(p.getProperty("a")).isEqualTo("z-2");
+			p.setProperty("v", "3");
+			assertThat(p.getProperty("a")).isEqualTo("z-3");
+
+			p.setProperty("c", "${d}");
+			assertThat(p.getProperty("c")).isEqualTo("${d}");
+			p.setProperty("d", "D");
+			assertThat(p.getProperty("c")).isEqualTo("D");
+
+			p.setProperty("w.1", "A");
+			p.setProperty("w.2", "B");
+			p.setProperty("ws", "${w.*}");
+			assertThat(p.getProperty("ws")).isEqualTo("A,B");
+			p.setProperty("w.3", "C");
+			assertThat(p.getProperty("ws")).isEqualTo("A,B,C");
+
+			p.setProperty("f", "<${1}>");
+			p.setProperty("g", "${f;${v}}");
+			assertThat(p.getProperty("g")).isEqualTo("<3>");
+			p.setProperty("v", "4");
+			assertThat(p.getProperty("g")).isEqualTo("<4>");
+
+			p.setProperty("[dev]h", "dev");
+			p.setProperty("h2", "${h}");
+			assertThat(p.getProperty("h2")).isEqualTo("${h}");
+			p.setProperty(Constants.PROFILE, "dev");
+			assertThat(p.getProperty("h2")).isEqualTo("dev");
+
+			p.setProperty("m", "${def;b}");
+			assertThat(p.getProperty("m")).isEqualTo("z");
+			p.setProperty("b", "q");
+			assertThat(p.getProperty("m")).isEqualTo("q");
+
+			p.setProperty("rep", "${replace;a,b;(.);$1x}");
+			assertThat(p.getProperty("rep")).isEqualTo("ax,bx");
+			assertThat(p.getProperty("rep")).isEqualTo("ax,bx");
+		}
+	}
+
+	@Test
+	public void testUncacheableExpansion() throws IOException {
+		Counter counter = new Counter();
+		try (Processor p = new Processor() {
+			@Override
+			protected Object[] getMacroDomains() {
+				return new Object[] {
+					counter
+				};
+			}
+		}) {
+			p.setProperty("counted", "${count}");
+			assertThat(p.getProperty("counted")).isEqualTo("1");
+			assertThat(p.getProperty("counted")).isEqualTo("2");
+
+			p.setProperty("missing", "${missing.macro}");
+			p.getProperty("missing");
+			assertThat(p.getWarnings()).hasSize(1);
+			p.clear();
+			p.getProperty("missing");
+			assertThat(p.getWarnings()).hasSize(1);
+
+			File base = IO.getFile("generated");
+			p.setBase(base);
+			p.setProperty("dot", "./foo");
+			assertThat(p.getProperty("dot")).isEqualTo(IO.absolutePath(base) + "/foo");
+			p.setBase(base.getParentFile());
+			assertThat(p.getProperty("dot")).isEqualTo(IO.absolutePath(base.getParentFile()) + "/foo");
+		}
+	}
 }
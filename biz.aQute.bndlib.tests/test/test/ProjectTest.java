@@ -1,6 +1,7 @@
 package test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -14,8 +15,10 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.jar.Manifest;
 import java.util.regex.Pattern;
@@ -530,6 +533,64 @@ public class ProjectTest {
 		// assertFalse(bottom.isStale());
 	}
 
+	/**
+	 * Check isStale with -staleness: digest, only a changed input makes a
+	 * project stale
+	 */
+
+	@Test
+	public void testIsStaleByDigest() throws Exception {
+		Workspace ws = getWorkspace("testresources/ws");
+		Project top = ws.getProject("p-stale");
+		assertNotNull(top);
+		top.setProperty(Constants.STALENESS, "digest");
+		Project bottom = ws.getProject("p-stale-dep");
+		assertNotNull(bottom);
+		bottom.setProperty(Constants.STALENESS, "digest");
+		bottom.build();
+		top.build();
+		assertTrue(bottom.check());
+		assertTrue(top.check());
+		assertFalse(top.isStale());
+		assertFalse(bottom.isStale());
+
+		// touching the files does not make the projects stale
+		top.getPropertiesFile()
+			.setLastModified(bottom.lastModified() + 1000);
+		stale(top, true);
+		stale(bottom, true);
+		assertFalse(top.isStale());
+		assertFalse(bottom.isStale());
+
+		// neither does a rebuild with the same content
+		bottom.build();
+		assertFalse(top.isStale());
+
+		// a changed upstream bundle
+		File bnd = bottom.getPropertiesFile();
+		IO.store(IO.collect(bnd)
+			.replace("hello", "world"), bnd);
+		bnd.setLastModified(bottom.lastModified() + 2000);
+		bottom.refresh();
+		bottom.setProperty(Constants.STALENESS, "digest");
+		bottom.build();
+		assertFalse(bottom.isStale());
+		assertTrue(top.isStale());
+		top.build();
+		assertFalse(top.isStale());
+
+		// a changed input
+		IO.store("changed", new File(top.getBase(), "src/changed.txt"));
+		assertTrue(top.isStale());
+		assertFalse(bottom.isStale());
+		top.build();
+		assertFalse(top.isStale());
+
+		// no recorded digests
+		IO.delete(new File(top.getTarget(), "buildfiles.digests"));
+		assertTrue(top.isStale());
+	}
+
 	private void stale(Project project, boolean b) throws Exception {
 		File file = project.getBuildFiles(false)[0];
 		if (b)
@@ -608,6 +669,47 @@ public class ProjectTest {
 
 	}
 
+	/**
+	 * Check that building the sub-bundles concurrently gives the same result
+	 * as building them one after the other.
+	 */
+
+	@Test
+	public void testParallelSubBuilders() throws Exception {
+		Workspace ws = getWorkspace("testresources/ws");
+		try (Project project = ws.getProject("p4-sub")) {
+			project.setProperty(Constants.REPRODUCIBLE, "true");
+			File[] serial = project.build();
+			assertTrue(project.check());
+			assertNotNull(serial);
+			List<Manifest> expected = new ArrayList<>();
+			for (File file : serial) {
+				try (Jar jar = new Jar(file)) {
+					expected.add(jar.getManifest());
+				}
+			}
+			Map<String, Version> versions = new HashMap<>(project.getVersions());
+
+			project.clean();
+			project.setProperty(Constants.PARALLELSUB, "true");
+			File[] parallel = project.build();
+			assertTrue(project.check());
+			assertArrayEquals(serial, parallel);
+			for (int i = 0; i < parallel.length; i++) {
+				try (Jar jar = new Jar(parallel[i])) {
+					assertEquals(expected.get(i), jar.getManifest());
+				}
+			}
+			assertEquals(versions, project.getVersions());
+			assertEquals(12, project.getExports()
+				.size());
+			assertEquals(33, project.getImports()
+				.size());
+			assertEquals(12, project.getContained()
+				.size());
+		}
+	}
+
 	/**
 	 * Tests the handling of the -sub facility
 	 *
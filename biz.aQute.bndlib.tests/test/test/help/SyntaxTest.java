@@ -28,7 +28,7 @@ public class SyntaxTest {
 	public void testBasicAdding() {
 		Syntax syntax = Syntax.HELP.get("-compression");
 		assertNotNull(syntax);
-		assertEquals("DEFLATE,STORE", syntax.getValues());
+		assertEquals("DEFLATE,STORE,PARALLEL", syntax.getValues());
 	}
 
 	@Test
@@ -0,0 +1,484 @@
+package aQute.bnd.build;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.bnd.build.BuildDigests.FileState;
+import aQute.bnd.build.BuildDigests.UpstreamState;
+import aQute.bnd.build.ProjectBuilder.ArtifactInfoImpl;
+import aQute.bnd.build.ProjectBuilder.BuildInfoImpl;
+import aQute.bnd.exceptions.Exceptions;
+import aQute.bnd.header.Attrs;
+import aQute.bnd.header.Parameters;
+import aQute.bnd.memoize.Memoize;
+import aQute.bnd.osgi.About;
+import aQute.bnd.osgi.Builder;
+import aQute.bnd.osgi.BundleId;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Descriptors;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Packages;
+import aQute.bnd.osgi.Processor;
+import aQute.bnd.osgi.resource.ResourceBuilder;
+import aQute.bnd.version.Version;
+import aQute.lib.io.IO;
+import aQute.lib.json.JSONCodec;
+import aQute.libg.cryptography.Digester;
+import aQute.libg.cryptography.SHA256;
+
+/**
+ * A content addressed cache of the files built by projects. The key is a
+ * digest over all inputs of a build: the bnd version, the expanded properties
+ * of the project, the digests of the files in the project directory and on the
+ * build path and the content of the bundles of the upstream projects. On a
+ * hit, the built files are copied from the cache instead of building them.
+ * <p>
+ * An entry is a directory named by the key that holds the built files and the
+ * information of the build. Entries are stored by an atomic rename so several
+ * processes can share the cache directory. When the size of the cache exceeds
+ * its maximum, the least recently used entries are removed.
+ */
+class BuildCache implements Closeable {
+	private final static Logger		logger				= LoggerFactory.getLogger(BuildCache.class);
+	private final static JSONCodec	codec				= new JSONCodec();
+	final static long				DEFAULT_MAX_SIZE	= 1024L * 1024L * 1024L;
+	private final static String		INFO				= "info.json";
+	private final static String		FILES				= "files";
+	private final static String		DIGESTS				= "buildcache.digests";
+
+	private final File				dir;
+	private final long				maxSize;
+	private final AtomicInteger		hits				= new AtomicInteger();
+	private final AtomicInteger		misses				= new AtomicInteger();
+
+	public static class Info {
+		public List<String>			files		= new ArrayList<>();
+		public List<ArtifactDTO>	artifacts	= new ArrayList<>();
+		public Map<String, String>	versions	= new LinkedHashMap<>();
+		public String				exports;
+		public String				imports;
+		public String				contained;
+		public List<String>			warnings	= new ArrayList<>();
+	}
+
+	public static class ArtifactDTO {
+		public String	file;
+		public String	bsn;
+		public String	version;
+		public String	exports;
+		public String	imports;
+		public String	contained;
+	}
+
+	/**
+	 * The result of a cache hit.
+	 */
+	static class Restored {
+		final List<File>	files;
+		final BuildInfoImpl	buildInfo;
+
+		Restored(List<File> files, BuildInfoImpl buildInfo) {
+			this.files = files;
+			this.buildInfo = buildInfo;
+		}
+	}
+
+	/**
+	 * Create a build cache.
+	 *
+	 * @param dir the directory to store the entries in
+	 * @param maxSize the maximum size of the cache in bytes
+	 */
+	BuildCache(File dir, long maxSize) {
+		this.dir = dir;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Calculate the key of the build of a project. The absolute path of the
+	 * workspace is replaced so checkouts in different directories share the
+	 * entries.
+	 *
+	 * @return the key or null when the build cannot be cached because it
+	 *         includes resources that are not files
+	 */
+	String key(Project project, ProjectBuilder builder, boolean underTest) throws Exception {
+		String workspace = IO.absolutePath(project.getWorkspace()
+			.getBase());
+		File digestsFile = new File(project.getTarget(), DIGESTS);
+		BuildDigests.State previous = BuildDigests.read(digestsFile);
+		BuildDigests.State state = new BuildDigests.State();
+		state.inputs = BuildDigests.inputs(project, previous);
+		if (!resources(project, builder, (previous != null) ? previous.inputs : Map.of(), state.inputs)) {
+			project.trace("Build cache not used, a resource is included by a command");
+			return null;
+		}
+
+		Set<Project> dependencies = new HashSet<>(project.getDependson());
+		for (Container container : Container.flatten(project.getBuildpath())) {
+			if (container.getType() == Container.TYPE.PROJECT) {
+				dependencies.add(container.getProject());
+			}
+		}
+		dependencies.remove(project);
+		for (Project dependency : dependencies) {
+			if (!dependency.isNoBundles()) {
+				String name = dependency.getName();
+				UpstreamState old = (previous != null) ? previous.upstream.get(name) : null;
+				state.upstream.put(name, BuildDigests.upstream(dependency, old, null));
+			}
+		}
+		BuildDigests.write(state, digestsFile);
+
+		Digester<SHA256> digester = SHA256.getDigester();
+		try (Writer w = new OutputStreamWriter(digester, UTF_8); Processor expander = new Processor(project)) {
+			w.write(About.CURRENT.toString());
+			w.write('\n');
+			w.write(Boolean.toString(underTest));
+			w.write('\n');
+			for (String key : new TreeSet<>(project.getPropertyKeys(true))) {
+				if (key.equals(Constants.TSTAMP)) {
+					continue;
+				}
+				String value = expander.getProperty(key);
+				w.write(key);
+				w.write('=');
+				w.write(relative(value, workspace));
+				w.write('\n');
+			}
+			for (Map.Entry<String, FileState> e : state.inputs.entrySet()) {
+				w.write(relative(e.getKey(), workspace));
+				w.write('=');
+				w.write(e.getValue().digest);
+				w.write('\n');
+			}
+			for (Map.Entry<String, UpstreamState> e : state.upstream.entrySet()) {
+				w.write(e.getKey());
+				w.write('=');
+				w.write(e.getValue().fingerprint);
+				w.write('\n');
+			}
+		}
+		return digester.digest()
+			.asHex();
+	}
+
+	/**
+	 * Add the files that {@code -includeresource}, {@code -wab} and
+	 * {@code -wablib} take from outside the project directory. The inputs of
+	 * the project only cover the project directory, the workspace bnd files
+	 * and the build path.
+	 *
+	 * @return false if a resource is the output of a command
+	 */
+	private static boolean resources(Project project, ProjectBuilder builder, Map<String, FileState> old,
+		Map<String, FileState> inputs) throws Exception {
+		Path base = project.getBase()
+			.toPath();
+		for (Builder sub : builder.getSubBuilders()) {
+			Parameters clauses = sub.decorated(Constants.INCLUDERESOURCE);
+			clauses.putAll(sub.getMergedParameters(Constants.INCLUDE_RESOURCE));
+			clauses.putAll(sub.parseHeader(sub.getProperty(Constants.WAB)));
+			for (Map.Entry<String, Attrs> clause : clauses.entrySet()) {
+				Attrs attrs = clause.getValue();
+				if (attrs.containsKey("cmd")) {
+					return false;
+				}
+				if (attrs.containsKey(Constants.LITERAL_ATTRIBUTE) || attrs.containsKey(Constants.CLASS_ATTRIBUTE)) {
+					continue;
+				}
+				String source = source(Processor.removeDuplicateMarker(clause.getKey()));
+				external(sub.getFile(source), base, old, inputs);
+			}
+			for (String lib : sub.parseHeader(sub.getProperty(Constants.WABLIB))
+				.keySet()) {
+				external(sub.getFile(Processor.removeDuplicateMarker(lib)), base, old, inputs);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Answer the source file or directory of an include resource clause, in
+	 * the way the Builder finds it.
+	 */
+	static String source(String clause) {
+		if (clause.startsWith("{") && clause.endsWith("}")) {
+			clause = clause.substring(1, clause.length() - 1)
+				.trim();
+		}
+		String[] parts = clause.split("\\s*=\\s*");
+		String source = (parts.length == 2) ? parts[1] : parts[0];
+		if (source.startsWith("-")) {
+			source = source.substring(1);
+		}
+		if (source.startsWith("@")) {
+			source = source.substring(1);
+			int n = source.indexOf("!/");
+			if (n >= 0) {
+				source = source.substring(0, n);
+			}
+		}
+		return source;
+	}
+
+	private static void external(File file, Path base, Map<String, FileState> old, Map<String, FileState> inputs)
+		throws IOException {
+		Path path = file.toPath();
+		if (path.startsWith(base)) {
+			return;
+		}
+		if (file.isDirectory()) {
+			List<Path> files;
+			try (Stream<Path> paths = Files.walk(path)) {
+				files = paths.filter(Files::isRegularFile)
+					.toList();
+			}
+			for (Path p : files) {
+				BuildDigests.add(p.toFile(), old, inputs);
+			}
+		} else {
+			BuildDigests.add(file, old, inputs);
+		}
+	}
+
+	private static String relative(String value, String workspace) {
+		return (value == null) ? "" : value.replace(workspace, "${workspace}");
+	}
+
+	/**
+	 * Copy the files of a cache entry to the target directory of the project
+	 * and restore the build information.
+	 *
+	 * @return the restored build or null when the key is not in the cache
+	 */
+	Restored restore(Project project, String key) {
+		File entry = new File(dir, key);
+		File infoFile = new File(entry, INFO);
+		if (!infoFile.isFile()) {
+			misses.incrementAndGet();
+			return null;
+		}
+		try {
+			Info info = codec.dec()
+				.from(infoFile)
+				.get(Info.class);
+			File target = project.getTarget();
+			long now = System.currentTimeMillis();
+			List<File> files = new ArrayList<>();
+			for (String name : info.files) {
+				File to = IO.getFile(target, name);
+				IO.mkdirs(to.getParentFile());
+				IO.copy(IO.getFile(entry, FILES + "/" + name), to);
+				to.setLastModified(now);
+				files.add(to);
+			}
+			entry.setLastModified(now);
+
+			Descriptors descriptors = new Descriptors();
+			BuildInfoImpl buildInfo = new BuildInfoImpl(project);
+			for (ArtifactDTO dto : info.artifacts) {
+				Manifest manifest = null;
+				File file = (dto.file != null) ? IO.getFile(target, dto.file) : null;
+				if (file != null) {
+					try (Jar jar = new Jar(file)) {
+						manifest = jar.getManifest();
+					}
+				}
+				ArtifactInfoImpl artifact = new ArtifactInfoImpl(new BundleId(dto.bsn, dto.version), manifest,
+					packages(descriptors, dto.exports), packages(descriptors, dto.imports),
+					packages(descriptors, dto.contained));
+				if (file != null) {
+					artifact.file = file;
+					artifact.indexer = indexer(project, file);
+				}
+				buildInfo.artifacts.add(artifact);
+			}
+
+			project.exportedPackages.clear();
+			project.exportedPackages.putAll(packages(descriptors, info.exports));
+			project.importedPackages.clear();
+			project.importedPackages.putAll(packages(descriptors, info.imports));
+			project.containedPackages.clear();
+			project.containedPackages.putAll(packages(descriptors, info.contained));
+			project.versionMap.clear();
+			info.versions.forEach((bsn, version) -> project.versionMap.put(bsn, new Version(version)));
+			for (String warning : info.warnings) {
+				project.warning("%s", warning);
+			}
+			hits.incrementAndGet();
+			project.trace("Build cache hit %s", key);
+			return new Restored(files, buildInfo);
+		} catch (Exception e) {
+			logger.debug("Ignoring unreadable build cache entry {}", entry, e);
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Store the files of a successful build. Builds with files outside the
+	 * target directory or with symbolic links are not stored.
+	 */
+	void store(Project project, String key, Set<File> files, BuildInfoImpl buildInfo) {
+		File entry = new File(dir, key);
+		if (entry.isDirectory()) {
+			return;
+		}
+		File tmp = null;
+		try {
+			Path target = project.getTarget()
+				.toPath();
+			Map<File, String> names = new LinkedHashMap<>();
+			for (File file : files) {
+				Path path = file.toPath();
+				if (!path.startsWith(target) || Files.isSymbolicLink(path)) {
+					project.trace("Build cache not used, %s is not a file in the target directory", file);
+					return;
+				}
+				names.put(file, target.relativize(path)
+					.toString()
+					.replace(File.separatorChar, '/'));
+			}
+
+			Info info = new Info();
+			info.files.addAll(names.values());
+			for (ArtifactInfoImpl artifact : buildInfo.artifacts) {
+				ArtifactDTO dto = new ArtifactDTO();
+				dto.file = names.get(artifact.file);
+				dto.bsn = artifact.bundleId.getBsn();
+				dto.version = artifact.bundleId.getVersion();
+				dto.exports = artifact.exports.toString();
+				dto.imports = artifact.imports.toString();
+				dto.contained = artifact.contained.toString();
+				info.artifacts.add(dto);
+			}
+			project.versionMap.forEach((bsn, version) -> info.versions.put(bsn, version.toString()));
+			info.exports = project.exportedPackages.toString();
+			info.imports = project.importedPackages.toString();
+			info.contained = project.containedPackages.toString();
+			info.warnings.addAll(project.getWarnings());
+
+			IO.mkdirs(dir);
+			tmp = Files.createTempDirectory(dir.toPath(), ".tmp")
+				.toFile();
+			for (Map.Entry<File, String> e : names.entrySet()) {
+				File to = IO.getFile(tmp, FILES + "/" + e.getValue());
+				IO.mkdirs(to.getParentFile());
+				IO.copy(e.getKey(), to);
+			}
+			codec.enc()
+				.to(new File(tmp, INFO))
+				.put(info);
+			try {
+				Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				// stored concurrently by another build
+				logger.debug("Build cache entry {} not stored", entry, e);
+			}
+			evict();
+		} catch (Exception e) {
+			logger.debug("Build cache entry {} not stored", entry, e);
+		} finally {
+			if (tmp != null) {
+				IO.delete(tmp);
+			}
+		}
+	}
+
+	/**
+	 * Remove the least recently used entries until the size of the cache is
+	 * below its maximum.
+	 */
+	private void evict() throws IOException {
+		File[] entries = dir.listFiles(f -> f.isDirectory() && !f.getName()
+			.startsWith("."));
+		if (entries == null) {
+			return;
+		}
+		Map<File, Long> sizes = new TreeMap<>(Comparator.comparingLong(File::lastModified)
+			.thenComparing(Comparator.naturalOrder()));
+		long total = 0L;
+		for (File entry : entries) {
+			long size = size(entry);
+			sizes.put(entry, size);
+			total += size;
+		}
+		for (Map.Entry<File, Long> e : sizes.entrySet()) {
+			if (total <= maxSize) {
+				break;
+			}
+			IO.delete(e.getKey());
+			total -= e.getValue();
+		}
+	}
+
+	private static long size(File entry) throws IOException {
+		try (Stream<Path> paths = Files.walk(entry.toPath())) {
+			return paths.map(Path::toFile)
+				.filter(File::isFile)
+				.mapToLong(File::length)
+				.sum();
+		}
+	}
+
+	private static Packages packages(Descriptors descriptors, String header) {
+		Packages packages = new Packages();
+		new Parameters(header).forEach((name, attrs) -> packages
+			.put(descriptors.getPackageRef(Processor.removeDuplicateMarker(name)), attrs));
+		return packages;
+	}
+
+	private static Supplier<org.osgi.resource.Resource> indexer(Project project, File file) {
+		return Memoize.supplier(() -> {
+			try {
+				ResourceBuilder rb = new ResourceBuilder();
+				rb.addFile(file, file.toURI());
+				rb.addWorkspaceNamespace(project.getName());
+				return rb.build();
+			} catch (Exception e) {
+				throw Exceptions.duck(e);
+			}
+		});
+	}
+
+	int hits() {
+		return hits.get();
+	}
+
+	int misses() {
+		return misses.get();
+	}
+
+	@Override
+	public void close() {}
+
+	@Override
+	public String toString() {
+		return "BuildCache [dir=" + dir + ", hits=" + hits + ", misses=" + misses + "]";
+	}
+}
@@ -0,0 +1,449 @@
+package aQute.bnd.build;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.bnd.classfile.ClassFile;
+import aQute.bnd.header.Parameters;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Processor;
+import aQute.bnd.osgi.Resource;
+import aQute.lib.io.IO;
+import aQute.lib.json.JSONCodec;
+import aQute.libg.cryptography.Digester;
+import aQute.libg.cryptography.SHA256;
+
+/**
+ * The digests of the inputs of the last build of a project, used by
+ * {@link Project#isStale()} when {@code -staleness: digest} is set. A project
+ * is stale when the digest of one of its inputs changed, touching a file does
+ * not make it stale.
+ * <p>
+ * The inputs are the files in the project directory, except the target and
+ * test directories, the bnd files of the workspace, the files on the build
+ * path and the upstream projects. An upstream project on the build path is
+ * represented by the API of its exported packages plus the content of the
+ * packages the project's own bundles also contain, so a change in the
+ * implementation of an upstream project does not make its downstream projects
+ * stale. An upstream project that is only in {@code -dependson} is represented
+ * by the content of its bundles.
+ * <p>
+ * A digest is only recalculated when the size or the last modified time of
+ * the file changed.
+ */
+class BuildDigests {
+	private final static Logger		logger	= LoggerFactory.getLogger(BuildDigests.class);
+	private final static JSONCodec	codec	= new JSONCodec();
+	final static String				FILE	= "buildfiles.digests";
+
+	public static class State {
+		public Map<String, FileState>		inputs		= new TreeMap<>();
+		public List<String>					packages	= new ArrayList<>();
+		public Map<String, UpstreamState>	upstream	= new TreeMap<>();
+	}
+
+	public static class FileState {
+		public long		size;
+		public long		modified;
+		public String	digest;
+	}
+
+	public static class UpstreamState {
+		public Map<String, FileState>	files	= new TreeMap<>();
+		public String					fingerprint;
+	}
+
+	private BuildDigests() {}
+
+	/**
+	 * Answer if the digests of the inputs differ from the digests recorded
+	 * by the last build. When the digests are the same, the recorded time
+	 * stamps are updated so the next check does not have to digest again.
+	 */
+	static boolean isChanged(Project project) throws Exception {
+		File stateFile = stateFile(project);
+		State previous = read(stateFile);
+		if (previous == null) {
+			return true;
+		}
+		State current = new State();
+		current.inputs = inputs(project, previous);
+		current.packages = previous.packages;
+		current.upstream = upstream(project, previous);
+		if (!sameDigests(previous, current)) {
+			logger.debug("{} inputs changed", project);
+			return true;
+		}
+		if (!sameTimes(previous.inputs, current.inputs) || !previous.upstream.keySet()
+			.stream()
+			.allMatch(k -> sameTimes(previous.upstream.get(k).files, current.upstream.get(k).files))) {
+			write(current, stateFile);
+		}
+		return false;
+	}
+
+	/**
+	 * Record the digests after a successful build.
+	 *
+	 * @param project the project that was built
+	 * @param inputs the digests of the inputs at the start of the build
+	 * @param built the bundles that were built
+	 */
+	static void record(Project project, Map<String, FileState> inputs, Collection<File> built) throws Exception {
+		File stateFile = stateFile(project);
+		State previous = read(stateFile);
+		State state = new State();
+		state.inputs = inputs;
+		Set<String> packages = new TreeSet<>();
+		for (File file : built) {
+			try (Jar jar = new Jar(file)) {
+				jar.getDirectories()
+					.keySet()
+					.stream()
+					.filter(dir -> !dir.equals("META-INF") && !dir.startsWith("META-INF/"))
+					.forEach(packages::add);
+			}
+		}
+		state.packages.addAll(packages);
+		if ((previous != null) && !previous.packages.equals(state.packages)) {
+			previous = null;
+		}
+		state.upstream = upstream(project, previous);
+		write(state, stateFile);
+	}
+
+	/**
+	 * Answer the digests of the files of the project and the workspace that
+	 * are input to the build.
+	 */
+	static Map<String, FileState> inputs(Project project, State previous) throws Exception {
+		Map<String, FileState> old = (previous != null) ? previous.inputs : Map.of();
+		Map<String, FileState> inputs = new TreeMap<>();
+
+		Set<Path> excluded = new HashSet<>();
+		excluded.add(project.getTarget()
+			.toPath());
+		excluded.add(project.getTestSrc()
+			.toPath());
+		excluded.add(project.getTestOutput()
+			.toPath());
+		Path base = project.getBase()
+			.toPath();
+		if (Files.isDirectory(base)) {
+			Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+					if (!dir.equals(base) && (excluded.contains(dir) || dir.getFileName()
+						.toString()
+						.startsWith("."))) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if (attrs.isRegularFile()) {
+						add(file.toFile(), attrs, old, inputs);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+
+		Workspace workspace = project.getWorkspace();
+		add(workspace.getPropertiesFile(), old, inputs);
+		List<File> included = workspace.getIncluded();
+		if (included != null) {
+			for (File file : included) {
+				add(file, old, inputs);
+			}
+		}
+		included = project.getIncluded();
+		if (included != null) {
+			for (File file : included) {
+				add(file, old, inputs);
+			}
+		}
+
+		for (Container container : Container.flatten(project.getBuildpath())) {
+			if (container.getType() == Container.TYPE.PROJECT) {
+				continue;
+			}
+			File file = container.getFile();
+			if (file.isDirectory()) {
+				Path root = file.toPath();
+				List<Path> files;
+				try (Stream<Path> paths = Files.walk(root)) {
+					files = paths.filter(Files::isRegularFile)
+						.toList();
+				}
+				for (Path p : files) {
+					add(p.toFile(), old, inputs);
+				}
+			} else {
+				add(file, old, inputs);
+			}
+		}
+		return inputs;
+	}
+
+	/**
+	 * Answer the fingerprints of the upstream projects.
+	 */
+	private static Map<String, UpstreamState> upstream(Project project, State previous) throws Exception {
+		Set<Project> onBuildpath = new HashSet<>();
+		for (Container container : Container.flatten(project.getBuildpath())) {
+			if (container.getType() == Container.TYPE.PROJECT) {
+				onBuildpath.add(container.getProject());
+			}
+		}
+		Set<Project> dependencies = new HashSet<>(project.getDependson());
+		dependencies.addAll(onBuildpath);
+		dependencies.remove(project);
+
+		Map<String, UpstreamState> upstream = new TreeMap<>();
+		for (Project dependency : dependencies) {
+			if (dependency.isNoBundles()) {
+				continue;
+			}
+			boolean api = onBuildpath.contains(dependency);
+			String name = (api ? "api:" : "content:") + dependency.getName();
+			UpstreamState old = (previous != null) ? previous.upstream.get(name) : null;
+			Collection<String> packages = null;
+			if (api) {
+				packages = (previous != null) ? previous.packages : List.of();
+			}
+			upstream.put(name, upstream(dependency, old, packages));
+		}
+		return upstream;
+	}
+
+	/**
+	 * Answer the fingerprint of an upstream project. The fingerprint is
+	 * recalculated when the size or last modified time of its bundles changed.
+	 *
+	 * @param dependency the upstream project
+	 * @param old the previous fingerprint or null
+	 * @param packages the packages to include in an API fingerprint, or null
+	 *            for a content fingerprint
+	 */
+	static UpstreamState upstream(Project dependency, UpstreamState old, Collection<String> packages)
+		throws Exception {
+		UpstreamState state = new UpstreamState();
+		File[] files = dependency.getBuildFiles(false);
+		if (files == null) {
+			state.fingerprint = "";
+			return state;
+		}
+		for (File file : files) {
+			add(file, (old != null) ? old.files : Map.of(), state.files);
+		}
+		if ((old != null) && sameTimes(old.files, state.files)) {
+			state.fingerprint = old.fingerprint;
+		} else if (packages != null) {
+			state.fingerprint = api(files, packages);
+		} else {
+			state.fingerprint = content(files);
+		}
+		return state;
+	}
+
+	/**
+	 * A digest over the exported packages of the bundles with the API of
+	 * their classes, and the content of the given packages.
+	 */
+	static String api(File[] bundles, Collection<String> packages) throws Exception {
+		Digester<SHA256> digester = SHA256.getDigester();
+		for (File bundle : bundles) {
+			try (Jar jar = new Jar(bundle)) {
+				Manifest manifest = jar.getManifest();
+				Parameters exports = new Parameters(
+					(manifest != null) ? manifest.getMainAttributes()
+						.getValue(Constants.EXPORT_PACKAGE) : null);
+				Set<String> exported = new HashSet<>();
+				Map<String, String> sorted = new TreeMap<>();
+				exports.forEach((key, attrs) -> {
+					String packageName = Processor.removeDuplicateMarker(key);
+					exported.add(packageName.replace('.', '/'));
+					sorted.put(packageName, String.valueOf(attrs.get(Constants.VERSION_ATTRIBUTE)));
+				});
+				digester.write(sorted.toString()
+					.getBytes(UTF_8));
+				for (Map.Entry<String, Resource> e : new TreeMap<>(jar.getResources()).entrySet()) {
+					String path = e.getKey();
+					int n = path.lastIndexOf('/');
+					String dir = (n < 0) ? "" : path.substring(0, n);
+					if (packages.contains(dir)) {
+						digester.write(path.getBytes(UTF_8));
+						e.getValue()
+							.write(digester);
+					} else if (exported.contains(dir) && path.endsWith(".class")) {
+						digester.write(path.getBytes(UTF_8));
+						try (InputStream in = e.getValue()
+							.openInputStream()) {
+							digester.write(InProcessJavac.api(ClassFile.parseClassFile(new DataInputStream(in)))
+								.getBytes(UTF_8));
+						}
+					}
+				}
+			}
+		}
+		return digester.digest()
+			.asHex();
+	}
+
+	/**
+	 * A digest over the manifest and the resources of the bundles. The last
+	 * modified header is ignored so an unchanged rebuild has the same digest.
+	 */
+	static String content(File[] bundles) throws Exception {
+		Digester<SHA256> digester = SHA256.getDigester();
+		for (File bundle : bundles) {
+			try (Jar jar = new Jar(bundle)) {
+				Manifest manifest = jar.getManifest();
+				if (manifest != null) {
+					Map<String, String> sorted = new TreeMap<>();
+					manifest.getMainAttributes()
+						.forEach((key, value) -> sorted.put(key.toString(), value.toString()));
+					sorted.remove(Constants.BND_LASTMODIFIED);
+					digester.write(sorted.toString()
+						.getBytes(UTF_8));
+				}
+				for (Map.Entry<String, Resource> e : new TreeMap<>(jar.getResources()).entrySet()) {
+					if (e.getKey()
+						.equals(JarFile.MANIFEST_NAME)) {
+						continue;
+					}
+					digester.write(e.getKey()
+						.getBytes(UTF_8));
+					e.getValue()
+						.write(digester);
+				}
+			}
+		}
+		return digester.digest()
+			.asHex();
+	}
+
+	private static boolean sameDigests(State a, State b) {
+		if (!a.inputs.keySet()
+			.equals(b.inputs.keySet())
+			|| !a.upstream.keySet()
+				.equals(b.upstream.keySet())) {
+			return false;
+		}
+		for (Map.Entry<String, FileState> e : a.inputs.entrySet()) {
+			if (!Objects.equals(e.getValue().digest, b.inputs.get(e.getKey()).digest)) {
+				return false;
+			}
+		}
+		for (Map.Entry<String, UpstreamState> e : a.upstream.entrySet()) {
+			if (!Objects.equals(e.getValue().fingerprint, b.upstream.get(e.getKey()).fingerprint)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean sameTimes(Map<String, FileState> a, Map<String, FileState> b) {
+		if (!a.keySet()
+			.equals(b.keySet())) {
+			return false;
+		}
+		for (Map.Entry<String, FileState> e : a.entrySet()) {
+			FileState fa = e.getValue();
+			FileState fb = b.get(e.getKey());
+			if ((fa.size != fb.size) || (fa.modified != fb.modified)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static void add(File file, Map<String, FileState> old, Map<String, FileState> inputs) throws IOException {
+		if (file != null && file.isFile()) {
+			add(file, Files.readAttributes(file.toPath(), BasicFileAttributes.class), old, inputs);
+		}
+	}
+
+	private static void add(File file, BasicFileAttributes attrs, Map<String, FileState> old,
+		Map<String, FileState> inputs) throws IOException {
+		String key = IO.absolutePath(file);
+		if (inputs.containsKey(key)) {
+			return;
+		}
+		FileState state = new FileState();
+		state.size = attrs.size();
+		state.modified = attrs.lastModifiedTime()
+			.toMillis();
+		FileState cached = old.get(key);
+		if ((cached != null) && (cached.size == state.size) && (cached.modified == state.modified)) {
+			state.digest = cached.digest;
+		} else {
+			try {
+				state.digest = SHA256.digest(file)
+					.asHex();
+			} catch (Exception e) {
+				throw new IOException("cannot digest " + file, e);
+			}
+		}
+		inputs.put(key, state);
+	}
+
+	private static File stateFile(Project project) throws Exception {
+		return new File(project.getTarget(), FILE);
+	}
+
+	static State read(File stateFile) {
+		if (!stateFile.isFile()) {
+			return null;
+		}
+		try {
+			return codec.dec()
+				.from(stateFile)
+				.get(State.class);
+		} catch (Exception e) {
+			logger.debug("cannot read build digests {}", stateFile, e);
+			return null;
+		}
+	}
+
+	static State read(Project project) throws Exception {
+		return read(stateFile(project));
+	}
+
+	static void write(State state, File stateFile) throws Exception {
+		IO.mkdirs(stateFile.getParentFile());
+		File tmp = IO.createTempFile(stateFile.getParentFile(), stateFile.getName(), ".tmp");
+		codec.enc()
+			.to(tmp)
+			.put(state);
+		IO.rename(tmp, stateFile);
+	}
+}
@@ -0,0 +1,521 @@
+package aQute.bnd.build;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.bnd.classfile.AnnotationDefaultAttribute;
+import aQute.bnd.classfile.AnnotationsAttribute;
+import aQute.bnd.classfile.Attribute;
+import aQute.bnd.classfile.ClassFile;
+import aQute.bnd.classfile.ConstantPool;
+import aQute.bnd.classfile.ConstantValueAttribute;
+import aQute.bnd.classfile.ExceptionsAttribute;
+import aQute.bnd.classfile.FieldInfo;
+import aQute.bnd.classfile.MemberInfo;
+import aQute.bnd.classfile.MethodInfo;
+import aQute.bnd.classfile.ParameterAnnotationsAttribute;
+import aQute.bnd.classfile.SignatureAttribute;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Resource;
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+import aQute.lib.json.JSONCodec;
+
+/**
+ * Compiles the sources of a project with the system Java compiler in the
+ * current process. There is one instance per {@link Workspace}, it keeps the
+ * API hashes of the class path files across compilations. The file manager is
+ * closed after each compilation so the class path jars are not kept open.
+ * <p>
+ * The compilation is incremental. A state file records for each source file
+ * the classes it produced and for each class a hash of its API and the
+ * classes of the same compilation it uses. Only the changed sources are
+ * compiled, followed by the sources that use a class whose API changed. A
+ * change in the options or in the API of the class path leads to a full
+ * compilation.
+ */
+class InProcessJavac implements Closeable {
+	private final static Logger			logger		= LoggerFactory.getLogger(InProcessJavac.class);
+	private final static JSONCodec		codec		= new JSONCodec();
+	private final static Pattern		REFERENCE	= Pattern.compile("L([\\p{javaJavaIdentifierPart}/$]+)[;<]");
+	private final static int			API_ACCESS	= 0x0001 | 0x0004 | 0x0008 | 0x0010 | 0x0200 | 0x0400 | 0x2000
+		| 0x4000;
+
+	private final JavaCompiler			compiler;
+	private StandardJavaFileManager		fileManager;
+	/**
+	 * The API hash of class path files by fingerprint.
+	 */
+	private final Map<File, String[]>	apis		= new HashMap<>();
+
+	public static class State {
+		public String						options;
+		public Map<String, String>			classpath	= new TreeMap<>();
+		public Map<String, SourceState>		sources		= new TreeMap<>();
+		public Map<String, ClassState>		classes		= new TreeMap<>();
+	}
+
+	public static class SourceState {
+		public String		fingerprint;
+		public List<String>	classes	= new ArrayList<>();
+	}
+
+	public static class ClassState {
+		public String		api;
+		public boolean		constants;
+		public List<String>	uses	= new ArrayList<>();
+	}
+
+	InProcessJavac() {
+		compiler = ToolProvider.getSystemJavaCompiler();
+	}
+
+	static boolean isAvailable() {
+		return ToolProvider.getSystemJavaCompiler() != null;
+	}
+
+	/**
+	 * Compile the sources into the output directory.
+	 *
+	 * @param project the project to report to
+	 * @param options the compiler options, without class path, source path or
+	 *            output directory
+	 * @param classpath the class path
+	 * @param output the output directory
+	 * @param sources the source files
+	 * @param stateFile the file that holds the state of the previous
+	 *            compilation
+	 * @return {@code true} if the compilation succeeded
+	 */
+	synchronized boolean compile(Project project, List<String> options, List<File> classpath, File output,
+		Collection<File> sources, File stateFile) throws Exception {
+		IO.mkdirs(output);
+		State old = read(stateFile);
+		State state = new State();
+		state.options = String.join(" ", options);
+		for (File file : classpath) {
+			state.classpath.put(IO.absolutePath(file), api(file));
+		}
+		Map<String, File> current = new TreeMap<>();
+		for (File source : sources) {
+			current.put(IO.absolutePath(source), source);
+		}
+
+		Set<String> dirty = new LinkedHashSet<>();
+		if ((old == null) || !state.options.equals(old.options) || !state.classpath.equals(old.classpath)) {
+			if (old != null) {
+				logger.debug("full compilation of {}, options or class path changed", output);
+				old.classes.keySet()
+					.forEach(c -> IO.delete(classFile(output, c)));
+			}
+			old = new State();
+			dirty.addAll(current.keySet());
+		} else {
+			// removed sources take their classes with them
+			Set<String> changedApi = new HashSet<>();
+			for (String path : new ArrayList<>(old.sources.keySet())) {
+				if (!current.containsKey(path)) {
+					changedApi.addAll(remove(old, path, output));
+				}
+			}
+			for (Map.Entry<String, File> e : current.entrySet()) {
+				SourceState s = old.sources.get(e.getKey());
+				if ((s == null) || !s.fingerprint.equals(fingerprint(e.getValue())) || s.classes.stream()
+					.anyMatch(c -> !classFile(output, c).isFile())) {
+					dirty.add(e.getKey());
+				}
+			}
+			dirty.addAll(dependents(old, changedApi));
+		}
+		state.sources = old.sources;
+		state.classes = old.classes;
+
+		Set<String> compiled = new HashSet<>();
+		try {
+			while (!dirty.isEmpty()) {
+				logger.debug("compiling {} sources into {}", dirty.size(), output);
+				Map<String, ClassState> previous = new HashMap<>();
+				for (String path : dirty) {
+					SourceState s = state.sources.get(path);
+					if (s != null) {
+						for (String c : s.classes) {
+							ClassState cs = state.classes.get(c);
+							if (cs != null) {
+								previous.put(c, cs);
+							}
+						}
+						remove(state, path, output);
+					}
+				}
+
+				Map<String, List<String>> produced = new HashMap<>();
+				if (!run(project, options, classpath, output, dirty, produced)) {
+					IO.delete(stateFile);
+					return false;
+				}
+				compiled.addAll(dirty);
+
+				Set<String> changedApi = new HashSet<>(previous.keySet());
+				for (String path : dirty) {
+					SourceState s = new SourceState();
+					s.fingerprint = fingerprint(current.get(path));
+					s.classes = produced.getOrDefault(path, new ArrayList<>());
+					state.sources.put(path, s);
+					for (String c : s.classes) {
+						ClassState cs = analyze(classFile(output, c));
+						state.classes.put(c, cs);
+						ClassState before = previous.get(c);
+						if ((before != null) && cs.api.equals(before.api)) {
+							changedApi.remove(c);
+						} else {
+							changedApi.add(c);
+						}
+					}
+				}
+				boolean constants = changedApi.stream()
+					.anyMatch(c -> Stream.of(previous.get(c), state.classes.get(c))
+						.anyMatch(cs -> (cs != null) && cs.constants));
+				// constants are inlined, so the users cannot be found
+				Set<String> next = constants ? new LinkedHashSet<>(current.keySet()) : dependents(state, changedApi);
+				next.removeAll(compiled);
+				dirty = next;
+			}
+		} finally {
+			closeFileManager();
+		}
+
+		// keep only the uses of classes of this compilation
+		for (ClassState cs : state.classes.values()) {
+			cs.uses.retainAll(state.classes.keySet());
+		}
+		write(state, stateFile);
+		return true;
+	}
+
+	private boolean run(Project project, List<String> options, List<File> classpath, File output,
+		Collection<String> sources, Map<String, List<String>> produced) throws Exception {
+		if (fileManager == null) {
+			fileManager = compiler.getStandardFileManager(null, Locale.ROOT, UTF_8);
+		}
+		StandardJavaFileManager standard = fileManager;
+		List<File> path = new ArrayList<>();
+		path.add(output);
+		path.addAll(classpath);
+		standard.setLocation(StandardLocation.CLASS_PATH, path);
+		standard.setLocation(StandardLocation.CLASS_OUTPUT, List.of(output));
+		standard.setLocation(StandardLocation.SOURCE_PATH, List.of());
+
+		JavaFileManager recording = new ForwardingJavaFileManager<>(standard) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind,
+				FileObject sibling) throws IOException {
+				if ((kind == Kind.CLASS) && (sibling != null)) {
+					URI uri = sibling.toUri();
+					if ("file".equals(uri.getScheme())) {
+						produced.computeIfAbsent(IO.absolutePath(new File(uri)), k -> new ArrayList<>())
+							.add(className);
+					}
+				}
+				return super.getJavaFileForOutput(location, className, kind, sibling);
+			}
+		};
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		Iterable<? extends JavaFileObject> units = standard.getJavaFileObjectsFromFiles(sources.stream()
+			.map(File::new)
+			.collect(Collectors.toList()));
+		boolean success = compiler.getTask(null, recording, diagnostics, options, null, units)
+			.call();
+
+		String messages = diagnostics.getDiagnostics()
+			.stream()
+			.map(d -> d.getKind() + ": " + message(d))
+			.collect(Collectors.joining("\n"));
+		logger.debug("javac diagnostics: {}", messages);
+		for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+			if ((d.getKind() == Diagnostic.Kind.WARNING) || (d.getKind() == Diagnostic.Kind.MANDATORY_WARNING)) {
+				project.warning("javac %s", message(d));
+			}
+		}
+		if (!success) {
+			project.error("javac failed %s", diagnostics.getDiagnostics()
+				.stream()
+				.filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+				.map(InProcessJavac::message)
+				.collect(Collectors.joining("\n")));
+		}
+		return success;
+	}
+
+	private static String message(Diagnostic<? extends JavaFileObject> d) {
+		return d.getMessage(Locale.ROOT) + (d.getSource() == null ? ""
+			: " (" + d.getSource()
+				.getName() + ":" + d.getLineNumber() + ")");
+	}
+
+	/**
+	 * Remove the classes of a source.
+	 *
+	 * @return the removed classes
+	 */
+	private static List<String> remove(State state, String path, File output) {
+		SourceState s = state.sources.remove(path);
+		if (s == null) {
+			return List.of();
+		}
+		for (String c : s.classes) {
+			state.classes.remove(c);
+			IO.delete(classFile(output, c));
+		}
+		return s.classes;
+	}
+
+	/**
+	 * The sources that have a class that uses one of the classes.
+	 */
+	private static Set<String> dependents(State state, Set<String> classes) {
+		Set<String> dependents = new LinkedHashSet<>();
+		if (classes.isEmpty()) {
+			return dependents;
+		}
+		for (Map.Entry<String, SourceState> e : state.sources.entrySet()) {
+			for (String c : e.getValue().classes) {
+				ClassState cs = state.classes.get(c);
+				if ((cs != null) && cs.uses.stream()
+					.anyMatch(classes::contains)) {
+					dependents.add(e.getKey());
+					break;
+				}
+			}
+		}
+		return dependents;
+	}
+
+	private static File classFile(File output, String className) {
+		return new File(output, className.replace('.', '/') + ".class");
+	}
+
+	private static String fingerprint(File file) {
+		return file.lastModified() + ":" + file.length();
+	}
+
+	/**
+	 * The API hash of a class path entry. It is recalculated when the
+	 * fingerprint of the file changed.
+	 */
+	private String api(File file) throws Exception {
+		if (!file.exists()) {
+			return "";
+		}
+		String fingerprint = fingerprint(file);
+		String[] cached = apis.get(file);
+		if (!file.isDirectory() && (cached != null) && cached[0].equals(fingerprint)) {
+			return cached[1];
+		}
+		MessageDigest digest = MessageDigest.getInstance("SHA-1");
+		if (file.isDirectory()) {
+			Path root = file.toPath();
+			try (Stream<Path> paths = Files.walk(root)) {
+				for (Path p : paths.filter(p -> p.toString()
+					.endsWith(".class"))
+					.sorted()
+					.collect(Collectors.toList())) {
+					digest.update(root.relativize(p)
+						.toString()
+						.getBytes(UTF_8));
+					digest.update(analyze(p.toFile()).api.getBytes(UTF_8));
+				}
+			}
+		} else {
+			try (Jar jar = new Jar(file)) {
+				for (Map.Entry<String, Resource> e : new TreeMap<>(jar.getResources()).entrySet()) {
+					if (e.getKey()
+						.endsWith(".class")) {
+						digest.update(e.getKey()
+							.getBytes(UTF_8));
+						try (InputStream in = e.getValue()
+							.openInputStream()) {
+							digest.update(api(ClassFile.parseClassFile(new DataInputStream(in))).getBytes(UTF_8));
+						}
+					}
+				}
+			}
+		}
+		String api = Hex.toHexString(digest.digest());
+		apis.put(file, new String[] {
+			fingerprint, api
+		});
+		return api;
+	}
+
+	static ClassState analyze(File classFile) throws Exception {
+		ClassFile cf;
+		try (DataInputStream in = new DataInputStream(IO.stream(classFile))) {
+			cf = ClassFile.parseClassFile(in);
+		}
+		ClassState cs = new ClassState();
+		cs.api = api(cf);
+		cs.constants = Arrays.stream(cf.fields)
+			.anyMatch(f -> f.getAttribute(ConstantValueAttribute.class)
+				.isPresent());
+		Set<String> uses = new TreeSet<>();
+		ConstantPool pool = cf.constant_pool;
+		for (int i = 1; i < pool.size(); i++) {
+			int tag = pool.tag(i);
+			if (tag == ConstantPool.CONSTANT_Class) {
+				String name = pool.className(i);
+				if (name.startsWith("[")) {
+					reference(name, uses);
+				} else {
+					uses.add(name.replace('/', '.'));
+				}
+			} else if (tag == ConstantPool.CONSTANT_Utf8) {
+				reference(pool.utf8(i), uses);
+			}
+		}
+		uses.remove(cf.this_class.replace('/', '.'));
+		cs.uses.addAll(uses);
+		return cs;
+	}
+
+	private static void reference(String descriptor, Set<String> uses) {
+		Matcher m = REFERENCE.matcher(descriptor);
+		while (m.find()) {
+			uses.add(m.group(1)
+				.replace('/', '.'));
+		}
+	}
+
+	/**
+	 * A hash over the parts of a class that other classes compile against,
+	 * including the annotations, since annotations like
+	 * {@code @ProviderType} or the {@code @Version} of a package-info class
+	 * change how the class is used.
+	 */
+	static String api(ClassFile cf) throws Exception {
+		if (((cf.access & 0x1000) != 0) && !cf.this_class.endsWith("package-info")) {
+			return "synthetic";
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(cf.access & API_ACCESS)
+			.append(' ')
+			.append(cf.this_class)
+			.append(' ')
+			.append(cf.super_class)
+			.append(' ')
+			.append(Arrays.toString(cf.interfaces))
+			.append(' ');
+		api(cf.attributes, sb);
+		sb.append('\n');
+		Stream.concat(Arrays.stream(cf.fields), Arrays.stream(cf.methods))
+			.filter(m -> (m.access & 0x0002) == 0 && (m.access & 0x1000) == 0)
+			.map(InProcessJavac::api)
+			.sorted()
+			.forEachOrdered(s -> sb.append(s)
+				.append('\n'));
+		MessageDigest digest = MessageDigest.getInstance("SHA-1");
+		return Hex.toHexString(digest.digest(sb.toString()
+			.getBytes(UTF_8)));
+	}
+
+	private static String api(MemberInfo member) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(member instanceof FieldInfo ? "F " : member instanceof MethodInfo ? "M " : "? ")
+			.append(member.access & API_ACCESS)
+			.append(' ')
+			.append(member.name)
+			.append(member.descriptor);
+		api(member.attributes, sb);
+		return sb.toString();
+	}
+
+	private static void api(Attribute[] attributes, StringBuilder sb) {
+		for (Attribute attribute : attributes) {
+			if ((attribute instanceof ConstantValueAttribute) || (attribute instanceof ExceptionsAttribute)
+				|| (attribute instanceof SignatureAttribute) || (attribute instanceof AnnotationsAttribute)
+				|| (attribute instanceof ParameterAnnotationsAttribute)
+				|| (attribute instanceof AnnotationDefaultAttribute)) {
+				sb.append(' ')
+					.append(attribute);
+			}
+		}
+	}
+
+	private static State read(File stateFile) {
+		if (!stateFile.isFile()) {
+			return null;
+		}
+		try {
+			return codec.dec()
+				.from(stateFile)
+				.get(State.class);
+		} catch (Exception e) {
+			logger.debug("cannot read javac state {}", stateFile, e);
+			return null;
+		}
+	}
+
+	private static void write(State state, File stateFile) throws Exception {
+		IO.mkdirs(stateFile.getParentFile());
+		File tmp = IO.createTempFile(stateFile.getParentFile(), stateFile.getName(), ".tmp");
+		codec.enc()
+			.to(tmp)
+			.put(state);
+		IO.rename(tmp, stateFile);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		closeFileManager();
+	}
+
+	private void closeFileManager() throws IOException {
+		if (fileManager != null) {
+			try {
+				fileManager.close();
+			} finally {
+				fileManager = null;
+			}
+		}
+	}
+}
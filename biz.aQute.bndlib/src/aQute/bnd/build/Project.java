@@ -31,6 +31,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.Properties;
@@ -1772,6 +1773,15 @@ public class Project extends Processor {
 		if (files == null)
 			return true;
 
+		if (isDigestStaleness()) {
+			for (Project dependency : getDependson()) {
+				if ((dependency != this) && !dependency.isNoBundles() && dependency.isStale(visited)) {
+					return true;
+				}
+			}
+			return BuildDigests.isChanged(this);
+		}
+
 		for (File f : files) {
 			if (f.lastModified() < lastModified())
 				return true;
@@ -1806,6 +1816,10 @@ public class Project extends Processor {
 		return false;
 	}
 
+	private boolean isDigestStaleness() {
+		return STALENESS_DIGEST.equalsIgnoreCase(getProperty(STALENESS, STALENESS_TIMESTAMP).trim());
+	}
+
 	/**
 	 * This method must only be called when it is sure that the project has been
 	 * build before in the same session. It is a bit yucky, but ant creates
@@ -1869,6 +1883,12 @@ public class Project extends Processor {
 		File bfs = new File(getTarget(), BUILDFILES);
 		files = null;
 
+		// digest the inputs before the build, a change during the build must
+		// make the project stale
+		Map<String, BuildDigests.FileState> inputs = isDigestStaleness()
+			? BuildDigests.inputs(this, BuildDigests.read(this))
+			: null;
+
 		//
 		// #761 tstamp can vary between invocations in one build
 		// Macro can handle a @tstamp time so we freeze the time at
@@ -1882,10 +1902,33 @@ public class Project extends Processor {
 			tstamp = true;
 		}
 
+		BuildCache buildCache = getWorkspace().getBuildCache();
 		try (ProjectBuilder builder = getBuilder(null)) {
 			if (underTest)
 				builder.setProperty(Constants.UNDERTEST, "true");
 
+			String cacheKey = null;
+			if (buildCache != null) {
+				cacheKey = buildCache.key(this, builder, underTest);
+			}
+			if (cacheKey != null) {
+				BuildCache.Restored restored = buildCache.restore(this, cacheKey);
+				if (restored != null) {
+					Set<File> buildFilesSet = new LinkedHashSet<>(restored.files);
+					builtFiles(buildfiles, bfs, true, buildFilesSet, restored.buildInfo.artifacts.stream()
+						.map(artifact -> artifact.indexer)
+						.filter(Objects::nonNull)
+						.collect(Collectors.toSet()));
+					if (inputs != null) {
+						BuildDigests.record(this, inputs, buildFilesSet);
+					}
+					bfs = null; // avoid delete in finally block
+					restored.buildInfo.getInfo(this);
+					workspace.notifier.build(restored.buildInfo);
+					return files = buildFilesSet.toArray(new File[0]);
+				}
+			}
+
 			Jar jars[] = builder.builds();
 
 			getInfo(builder);
@@ -1989,35 +2032,14 @@ public class Project extends Processor {
 
 
 				boolean bfsWrite = !bfs.exists() || (lastModified > bfs.lastModified());
-				if (buildfiles != null) {
-					Set<File> removed = Create.set(buildfiles);
-					if (!removed.equals(buildFilesSet)) {
-						bfsWrite = true;
-						removed.removeAll(buildFilesSet);
-						for (File remove : removed) {
-							IO.delete(remove);
-							getWorkspace().changedFile(remove);
-						}
-					}
+				builtFiles(buildfiles, bfs, bfsWrite, buildFilesSet, resourceBuilders);
+				if (inputs != null && isOk()) {
+					BuildDigests.record(this, inputs, buildFilesSet);
 				}
-
-				this.resources = Memoize.supplier(() -> resourceBuilders.stream()
-					.map(Supplier::get)
-					.collect(Collectors.toList()));
-
-				// Write out the filenames in the buildfiles file
-				// so we can get them later even in another process
-				if (bfsWrite) {
-					try (PrintWriter fw = IO.writer(bfs)) {
-						for (File f : buildFilesSet) {
-							fw.write(IO.absolutePath(f));
-							fw.write('\n');
-						}
-					}
-					getWorkspace().changedFile(bfs);
+				if (cacheKey != null && isOk()) {
+					buildCache.store(this, cacheKey, buildFilesSet, buildInfo);
 				}
 				bfs = null; // avoid delete in finally block
-				builtFiles(buildFilesSet);
 
 				return files = buildFilesSet.toArray(new File[0]);
 			} finally {
@@ -2034,6 +2056,42 @@ public class Project extends Processor {
 		}
 	}
 
+	/**
+	 * Remove the files of the previous build that were not built again, write
+	 * the buildfiles file and notify the listeners.
+	 */
+	private void builtFiles(File[] previous, File bfs, boolean bfsWrite, Set<File> buildFilesSet,
+		Collection<Supplier<org.osgi.resource.Resource>> resourceBuilders) throws Exception {
+		if (previous != null) {
+			Set<File> removed = Create.set(previous);
+			if (!removed.equals(buildFilesSet)) {
+				bfsWrite = true;
+				removed.removeAll(buildFilesSet);
+				for (File remove : removed) {
+					IO.delete(remove);
+					getWorkspace().changedFile(remove);
+				}
+			}
+		}
+
+		this.resources = Memoize.supplier(() -> resourceBuilders.stream()
+			.map(Supplier::get)
+			.collect(Collectors.toList()));
+
+		// Write out the filenames in the buildfiles file
+		// so we can get them later even in another process
+		if (bfsWrite) {
+			try (PrintWriter fw = IO.writer(bfs)) {
+				for (File f : buildFilesSet) {
+					fw.write(IO.absolutePath(f));
+					fw.write('\n');
+				}
+			}
+			getWorkspace().changedFile(bfs);
+		}
+		builtFiles(buildFilesSet);
+	}
+
 	private void builtFiles(Collection<File> files) {
 		List<BndListener> listeners = getWorkspace().getPlugins(BndListener.class);
 		for (BndListener l : listeners)
@@ -2541,7 +2599,9 @@ public class Project extends Processor {
 			logger.error("Tests not run because project has errors");
 			return;
 		}
-		int errors = tester.test();
+		int shards = getTestShards();
+		int errors = (shards > 1 && !tester.getContinuous()) ? new TestShards(this, tester, shards).test()
+			: tester.test();
 		if (errors == 0) {
 			logger.info("No Errors");
 		} else {
@@ -2553,6 +2613,22 @@ public class Project extends Processor {
 		}
 	}
 
+	/**
+	 * Answer the number of frameworks to run the tests in as set with
+	 * {@link Constants#TESTSHARDS}.
+	 */
+	private int getTestShards() {
+		String testshards = getProperty(TESTSHARDS);
+		if (testshards == null || (testshards = testshards.trim()).isEmpty()) {
+			return 1;
+		}
+		if (!Verifier.isNumber(testshards)) {
+			error("%s must be a number of shards: %s", TESTSHARDS, testshards);
+			return 1;
+		}
+		return Math.max(1, Integer.parseInt(testshards));
+	}
+
 	/**
 	 * Run JUnit
 	 *
@@ -3147,6 +3223,13 @@ public class Project extends Processor {
 	// TODO test format parametsr
 
 	public void compile(boolean test) throws Exception {
+		if (is(JAVAC_INPROCESS)) {
+			if (InProcessJavac.isAvailable()) {
+				compileInProcess(test);
+				return;
+			}
+			warning("%s is set but there is no system Java compiler, forking javac", JAVAC_INPROCESS);
+		}
 
 		Command javac = getCommonJavac(false);
 		javac.add("-d", IO.absolutePath(getOutput()));
@@ -3220,6 +3303,42 @@ public class Project extends Processor {
 		}
 	}
 
+	/**
+	 * Compile with the system Java compiler in this process. Only the changed
+	 * sources and the sources that depend on them are compiled.
+	 */
+	private void compileInProcess(boolean test) throws Exception {
+		InProcessJavac javac = getWorkspace().getInProcessJavac();
+		Glob javaFiles = new Glob("*.java");
+
+		List<File> classpath = new ArrayList<>();
+		Container.flatten(getBuildpath())
+			.forEach(c -> classpath.add(c.getFile()));
+
+		List<File> files = new ArrayList<>();
+		getSourcePath().forEach(src -> javaFiles.getFiles(src, files, true, false));
+		if (files.isEmpty()) {
+			logger.debug("Not compiled, no source files");
+		} else if (!javac.compile(this, getJavacOptions(false), classpath, getOutput(), files,
+			new File(getTarget(), "javac-src.state"))) {
+			return;
+		}
+
+		if (test) {
+			classpath.add(0, getOutput());
+			Container.flatten(getTestpath())
+				.forEach(c -> classpath.add(c.getFile()));
+			List<File> testFiles = new ArrayList<>();
+			javaFiles.getFiles(getTestSrc(), testFiles, true, false);
+			if (testFiles.isEmpty()) {
+				logger.debug("Not compiled for test, no test src files");
+			} else {
+				javac.compile(this, getJavacOptions(true), classpath, getTestOutput(), testFiles,
+					new File(getTarget(), "javac-test.state"));
+			}
+		}
+	}
+
 	private void compile(Command javac, String what) throws Exception {
 		logger.debug("compile {} {}", what, javac);
 
@@ -3285,6 +3404,14 @@ public class Project extends Processor {
 		return javac;
 	}
 
+	/**
+	 * The options of {@link #getCommonJavac(boolean)} without the executable.
+	 */
+	private List<String> getJavacOptions(boolean test) throws Exception {
+		List<String> arguments = getCommonJavac(test).getArguments();
+		return new ArrayList<>(arguments.subList(1, arguments.size()));
+	}
+
 	public String _ide(String[] args) throws IOException {
 		if (args.length < 2) {
 			error("The ${ide;<>} macro needs an argument");
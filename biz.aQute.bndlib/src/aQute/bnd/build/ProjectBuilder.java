@@ -118,6 +118,18 @@ public class ProjectBuilder extends Builder {
 			getInfo(builder);
 		}
 
+		/**
+		 * An artifact restored from the build cache.
+		 */
+		ArtifactInfoImpl(BundleId bundleId, Manifest manifest, Packages exports, Packages imports,
+			Packages contained) {
+			this.bundleId = bundleId;
+			this.manifest = manifest;
+			this.exports = exports;
+			this.imports = imports;
+			this.contained = contained;
+		}
+
 		@Override
 		public BundleId getBundleId() {
 			return bundleId;
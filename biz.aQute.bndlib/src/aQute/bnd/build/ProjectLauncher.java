@@ -310,6 +310,17 @@ public abstract class ProjectLauncher extends Processor {
 		return storageDir;
 	}
 
+	/**
+	 * Set the storage directory of the framework. It is reset to the
+	 * {@link Constants#RUNSTORAGE} of the project when the launcher is updated
+	 * from the project.
+	 *
+	 * @param storageDir the storage directory or null for the default
+	 */
+	public void setStorageDir(File storageDir) {
+		this.storageDir = storageDir;
+	}
+
 	public abstract String getMainTypeName();
 
 	public void update() throws Exception {
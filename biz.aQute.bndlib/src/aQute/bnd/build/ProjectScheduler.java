@@ -0,0 +1,466 @@
+package aQute.bnd.build;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Formatter;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.bnd.exceptions.ConsumerWithException;
+import aQute.bnd.exceptions.Exceptions;
+import aQute.bnd.osgi.Processor;
+
+/**
+ * Run an action, for example a build, on a set of projects and the projects
+ * they depend on. A project is started as soon as the action has finished for
+ * all the projects it depends on, so projects that do not depend on each
+ * other run concurrently.
+ * <p>
+ * The action runs while holding the workspace read lock. When the action
+ * fails for a project, either by throwing an exception or by reporting an
+ * error on the project, the projects that depend on it are skipped and an
+ * error is reported on them. Reports are made on the projects, the caller is
+ * expected to collect them after {@link #run(Collection, ConsumerWithException)}
+ * returns.
+ */
+public class ProjectScheduler {
+	private final static Logger	logger				= LoggerFactory.getLogger(ProjectScheduler.class);
+	/**
+	 * A rough estimate of the heap needed to build a project, used to limit the
+	 * number of concurrent builds on small heaps.
+	 */
+	final static long			MEMORY_PER_PROJECT	= 256L * 1024L * 1024L;
+
+	private final Workspace		workspace;
+	private int					parallelism			= defaultParallelism();
+
+	public ProjectScheduler(Workspace workspace) {
+		this.workspace = workspace;
+	}
+
+	/**
+	 * The default number of concurrently running projects. This is the number
+	 * of processors, limited by the maximum heap size.
+	 */
+	public static int defaultParallelism() {
+		Runtime runtime = Runtime.getRuntime();
+		long memory = runtime.maxMemory() / MEMORY_PER_PROJECT;
+		return (int) Math.max(1L, Math.min(runtime.availableProcessors(), memory));
+	}
+
+	/**
+	 * Set the maximum number of projects the action runs on concurrently.
+	 *
+	 * @param parallelism the maximum number of concurrent projects, 1 runs the
+	 *            projects one after the other in build order
+	 * @return this
+	 */
+	public ProjectScheduler parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Run the action on the given projects and all the projects they depend
+	 * on.
+	 *
+	 * @param projects the projects to run the action on
+	 * @param action the action, must be safe to run concurrently for
+	 *            different projects
+	 * @return the timings of the run
+	 * @throws CircularDependencyException if the projects depend on each other
+	 */
+	public Report run(Collection<Project> projects, ConsumerWithException<Project> action) throws Exception {
+		// Calculate the graph on the calling thread since preparing a
+		// project is not thread safe
+		Set<Project> closure = new HashSet<>();
+		Deque<Project> todo = new ArrayDeque<>(projects);
+		while (!todo.isEmpty()) {
+			Project project = todo.removeFirst();
+			if (closure.add(project)) {
+				todo.addAll(project.getDependson());
+			}
+		}
+		// order the nodes in build order, so predecessors come first
+		Map<Project, Node> nodes = new LinkedHashMap<>();
+		for (Project project : workspace.getBuildOrder()) {
+			if (closure.remove(project)) {
+				nodes.put(project, new Node(project));
+			}
+		}
+		for (Project project : closure) {
+			nodes.put(project, new Node(project));
+		}
+		int index = 0;
+		for (Node node : nodes.values()) {
+			node.index = index++;
+		}
+		for (Node node : nodes.values()) {
+			for (Project dependency : node.project.getDependson()) {
+				Node predecessor = nodes.get(dependency);
+				if (predecessor != null && predecessor != node && !node.predecessors.contains(predecessor)) {
+					node.predecessors.add(predecessor);
+					predecessor.successors.add(node);
+				}
+			}
+			node.remaining = node.predecessors.size();
+		}
+		checkCycles(nodes.values());
+
+		new Run(nodes.values(), action).execute();
+		return new Report(new ArrayList<>(nodes.values()));
+	}
+
+	private static void checkCycles(Collection<Node> nodes) throws CircularDependencyException {
+		Map<Node, Integer> remaining = new LinkedHashMap<>();
+		Deque<Node> ready = new ArrayDeque<>();
+		for (Node node : nodes) {
+			remaining.put(node, node.predecessors.size());
+			if (node.predecessors.isEmpty()) {
+				ready.add(node);
+			}
+		}
+		while (!ready.isEmpty()) {
+			Node node = ready.removeFirst();
+			remaining.remove(node);
+			for (Node successor : node.successors) {
+				if (remaining.merge(successor, -1, Integer::sum) == 0) {
+					ready.add(successor);
+				}
+			}
+		}
+		if (!remaining.isEmpty()) {
+			throw new CircularDependencyException("Circular dependency between " + remaining.keySet());
+		}
+	}
+
+	/**
+	 * A single run over the graph. The calling thread is one of the workers.
+	 */
+	private final class Run {
+		private final Lock								lock	= new ReentrantLock();
+		private final Condition							changed	= lock.newCondition();
+		private final PriorityQueue<Node>				ready	= new PriorityQueue<>(
+			(a, b) -> Integer.compare(a.index, b.index));
+		private final int								size;
+		private final ConsumerWithException<Project>	action;
+		private final long								begin	= System.nanoTime();
+		private int										finished;
+
+		Run(Collection<Node> nodes, ConsumerWithException<Project> action) {
+			this.size = nodes.size();
+			this.action = action;
+			for (Node node : nodes) {
+				if (node.remaining == 0) {
+					node.ready = 0L;
+					ready.add(node);
+				}
+			}
+		}
+
+		void execute() throws Exception {
+			int workers = Math.min(parallelism, size);
+			if (workers > 1) {
+				PromiseFactory promiseFactory = Processor.getPromiseFactory();
+				List<Promise<Void>> promises = new ArrayList<>(workers - 1);
+				for (int i = 1; i < workers; i++) {
+					promises.add(promiseFactory.submit(() -> {
+						work();
+						return null;
+					}));
+				}
+				Throwable failure = null;
+				try {
+					work();
+				} catch (Throwable t) {
+					failure = t;
+				}
+				for (Promise<Void> promise : promises) {
+					Throwable t = promise.getFailure();
+					if (failure == null) {
+						failure = t;
+					}
+				}
+				if (failure != null) {
+					throw Exceptions.duck(failure);
+				}
+			} else {
+				work();
+			}
+		}
+
+		private void work() throws InterruptedException {
+			for (Node node; (node = next()) != null;) {
+				Project project = node.project;
+				node.start = now();
+				try {
+					if (node.skippedFor != null) {
+						project.error("Not run because dependency %s failed", node.skippedFor.project);
+					} else {
+						workspace.readLocked(() -> {
+							action.accept(project);
+							return null;
+						});
+						node.failed = !project.isOk();
+					}
+				} catch (Exception e) {
+					node.failed = true;
+					project.exception(e, "Failed on project %s", project);
+				} catch (Throwable t) {
+					// complete the node so the other workers do not wait
+					// forever, then let the error end this worker
+					node.failed = true;
+					throw t;
+				} finally {
+					node.end = now();
+					logger.debug("finished {} in {} ms", project, node.duration());
+					done(node);
+				}
+			}
+		}
+
+		private Node next() throws InterruptedException {
+			lock.lock();
+			try {
+				Node node;
+				while ((node = ready.poll()) == null) {
+					if (finished == size) {
+						return null;
+					}
+					changed.await();
+				}
+				return node;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void done(Node node) {
+			lock.lock();
+			try {
+				finished++;
+				for (Node successor : node.successors) {
+					if (successor.skippedFor == null && (node.failed || node.skippedFor != null)) {
+						successor.skippedFor = node.skippedFor != null ? node.skippedFor : node;
+					}
+					if (--successor.remaining == 0) {
+						successor.ready = now();
+						ready.add(successor);
+					}
+				}
+				changed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private long now() {
+			return System.nanoTime() - begin;
+		}
+	}
+
+	/**
+	 * A project in the graph. The fields are guarded by the lock of the run
+	 * or only touched by the worker running the project.
+	 */
+	private static final class Node {
+		final Project		project;
+		final List<Node>	predecessors	= new ArrayList<>();
+		final List<Node>	successors		= new ArrayList<>();
+		int					index;
+		int					remaining;
+		Node				skippedFor;
+		boolean				failed;
+		long				ready;
+		long				start;
+		long				end;
+
+		Node(Project project) {
+			this.project = project;
+		}
+
+		long duration() {
+			return TimeUnit.NANOSECONDS.toMillis(end - start);
+		}
+	}
+
+	/**
+	 * The timing of a single project in a run.
+	 */
+	public static final class Timing {
+		private final Project	project;
+		private final long		ready;
+		private final long		start;
+		private final long		end;
+		private final long		criticalPath;
+		private final Project	criticalPredecessor;
+		private final boolean	failed;
+		private final boolean	skipped;
+
+		Timing(Node node, long criticalPath, Project criticalPredecessor) {
+			this.project = node.project;
+			this.ready = node.ready;
+			this.start = node.start;
+			this.end = node.end;
+			this.criticalPath = criticalPath;
+			this.criticalPredecessor = criticalPredecessor;
+			this.failed = node.failed;
+			this.skipped = node.skippedFor != null;
+		}
+
+		public Project getProject() {
+			return project;
+		}
+
+		/**
+		 * @return the milliseconds from the start of the run until the project
+		 *         started
+		 */
+		public long getStart() {
+			return TimeUnit.NANOSECONDS.toMillis(start);
+		}
+
+		/**
+		 * @return the milliseconds the project waited for a free worker after
+		 *         its dependencies had finished
+		 */
+		public long getWaiting() {
+			return TimeUnit.NANOSECONDS.toMillis(start - ready);
+		}
+
+		/**
+		 * @return the milliseconds the action ran for this project
+		 */
+		public long getDuration() {
+			return TimeUnit.NANOSECONDS.toMillis(end - start);
+		}
+
+		/**
+		 * @return the milliseconds of the longest chain of dependencies ending
+		 *         with this project, this is the earliest this project could
+		 *         have finished with unlimited workers
+		 */
+		public long getCriticalPath() {
+			return TimeUnit.NANOSECONDS.toMillis(criticalPath);
+		}
+
+		/**
+		 * @return the dependency on the critical path of this project or null
+		 */
+		public Project getCriticalPredecessor() {
+			return criticalPredecessor;
+		}
+
+		public boolean isFailed() {
+			return failed;
+		}
+
+		public boolean isSkipped() {
+			return skipped;
+		}
+
+		@Override
+		public String toString() {
+			return project.getName();
+		}
+	}
+
+	/**
+	 * The timings of a run.
+	 */
+	public static final class Report {
+		private final Map<Project, Timing>	timings	= new LinkedHashMap<>();
+		private final List<Timing>			criticalPath;
+		private final long					elapsed;
+
+		Report(List<Node> nodes) {
+			// nodes are in build order so predecessors come first
+			long elapsed = 0L;
+			Timing last = null;
+			for (Node node : nodes) {
+				long longest = 0L;
+				Project predecessor = null;
+				for (Node p : node.predecessors) {
+					Timing t = timings.get(p.project);
+					if (t != null && t.criticalPath > longest) {
+						longest = t.criticalPath;
+						predecessor = p.project;
+					}
+				}
+				Timing timing = new Timing(node, longest + (node.end - node.start), predecessor);
+				timings.put(node.project, timing);
+				if (last == null || timing.criticalPath > last.criticalPath) {
+					last = timing;
+				}
+				elapsed = Math.max(elapsed, node.end);
+			}
+			this.elapsed = TimeUnit.NANOSECONDS.toMillis(elapsed);
+
+			List<Timing> path = new ArrayList<>();
+			for (Timing t = last; t != null; t = timings.get(t.criticalPredecessor)) {
+				path.add(t);
+			}
+			Collections.reverse(path);
+			this.criticalPath = Collections.unmodifiableList(path);
+		}
+
+		/**
+		 * @return the timings of all projects in build order
+		 */
+		public Collection<Timing> getTimings() {
+			return Collections.unmodifiableCollection(timings.values());
+		}
+
+		public Timing getTiming(Project project) {
+			return timings.get(project);
+		}
+
+		/**
+		 * @return the longest chain of dependent projects, from the first to
+		 *         the last project
+		 */
+		public List<Timing> getCriticalPath() {
+			return criticalPath;
+		}
+
+		/**
+		 * @return the milliseconds from the start of the run until the last
+		 *         project finished
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+
+		@Override
+		public String toString() {
+			try (Formatter f = new Formatter()) {
+				f.format("%-40s %8s %8s %8s %8s%n", "Project", "Start", "Wait", "Time", "Critical");
+				for (Timing t : timings.values()) {
+					f.format("%-40s %8d %8d %8d %8d%s%n", t.project.getName(), t.getStart(), t.getWaiting(),
+						t.getDuration(), t.getCriticalPath(), t.failed ? " failed" : t.skipped ? " skipped" : "");
+				}
+				f.format("Elapsed %d ms, critical path %s", elapsed, criticalPath);
+				return f.toString();
+			}
+		}
+	}
+}
@@ -0,0 +1,382 @@
+package aQute.bnd.build;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import aQute.bnd.exceptions.Exceptions;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Processor;
+import aQute.lib.io.IO;
+import aQute.lib.strings.Strings;
+import aQute.lib.utf8properties.UTF8Properties;
+import aQute.lib.xml.XML;
+
+/**
+ * Runs the tests of a project in several frameworks at the same time, see
+ * {@link Constants#TESTSHARDS}.
+ * <p>
+ * The test classes are split over the shards so that every shard takes about
+ * the same time. The time of a test class is taken from the reports of the
+ * previous run, classes without a time count as the average time. Every shard
+ * is a separate tester with its own launcher that runs its classes in a
+ * framework with its own storage and writes its reports in its own directory.
+ * When all shards are done the reports with the same name are merged into the
+ * report directory of the tester and the times of the test classes are kept
+ * for the next run.
+ */
+class TestShards {
+	private final static Logger					logger		= LoggerFactory.getLogger(TestShards.class);
+	private final static DocumentBuilderFactory	dbf			= XML.newDocumentBuilderFactory();
+	private final static String[]				COUNTERS	= {
+		"tests", "skipped", "failures", "errors"
+	};
+	final static String							TIMINGS		= "test-timings.properties";
+	final static String							SHARD		= "shard-";
+	final static String							STORAGE		= "test-storage";
+
+	private final Project						project;
+	private final ProjectTester					tester;
+	private final int							shards;
+
+	TestShards(Project project, ProjectTester tester, int shards) {
+		this.project = project;
+		this.tester = tester;
+		this.shards = shards;
+	}
+
+	/**
+	 * Run the tests in the shards.
+	 *
+	 * @return the number of errors of all shards or the first negative result
+	 *         of a shard that failed to run
+	 */
+	int test() throws Exception {
+		Map<String, List<String>> classes = testClasses();
+		if (classes.size() < 2) {
+			logger.debug("Not sharding {} test classes", classes.size());
+			return tester.test();
+		}
+		File timingsFile = IO.getFile(project.getTarget(), TIMINGS);
+		Map<String, Double> timings = loadTimings(timingsFile);
+		List<List<String>> partition = partition(classes, timings, shards);
+
+		File reportDir = tester.getReportDir();
+		List<File> shardDirs = new ArrayList<>(partition.size());
+		List<ProjectTester> testers = new ArrayList<>(partition.size());
+		for (List<String> tests : partition) {
+			File shardDir = new File(reportDir, SHARD + testers.size());
+			IO.delete(shardDir);
+			ProjectTester shard = project.getProjectTester();
+			storage(shard.getProjectLauncher(), testers.size());
+			shard.setReportDir(shardDir);
+			shard.setContinuous(false);
+			shard.setTerminate(tester.getTerminate());
+			shard.setCwd(tester.getCwd());
+			tests.forEach(shard::addTest);
+			shard.prepare();
+			shardDirs.add(shardDir);
+			testers.add(shard);
+		}
+		logger.info("Running {} test classes in {} shards", classes.size(), testers.size());
+
+		PromiseFactory promiseFactory = Processor.getPromiseFactory();
+		List<Promise<Integer>> promises = new ArrayList<>(testers.size());
+		for (ProjectTester shard : testers) {
+			promises.add(promiseFactory.submit(shard::test));
+		}
+		List<Integer> results;
+		try {
+			results = promiseFactory.all(promises)
+				.getValue();
+		} catch (InvocationTargetException e) {
+			throw Exceptions.duck(e.getCause());
+		}
+
+		merge(reportDir, shardDirs, timings);
+		shardDirs.forEach(IO::delete);
+		saveTimings(timingsFile, timings);
+
+		int errors = 0;
+		for (int result : results) {
+			if (result < 0) {
+				return result;
+			}
+			errors += result;
+		}
+		return errors;
+	}
+
+	/**
+	 * Give the framework of a shard its own storage directory. The shards run
+	 * at the same time and a framework deletes its storage on start unless it
+	 * is kept. With {@link Constants#RUNSTORAGE} the shard uses a directory
+	 * in that directory. A kept framework without a storage directory uses a
+	 * directory in the target directory. Otherwise every framework already
+	 * uses its own temporary directory.
+	 *
+	 * @param launcher the launcher of the shard
+	 * @param shard the index of the shard
+	 */
+	static void storage(ProjectLauncher launcher, int shard) throws Exception {
+		File storage = launcher.getStorageDir();
+		if (storage != null) {
+			storage = new File(storage, SHARD + shard);
+		} else if (launcher.isKeep()) {
+			storage = IO.getFile(launcher.getProject()
+				.getTarget(), STORAGE + "/" + SHARD + shard);
+		} else {
+			return;
+		}
+		File dir = storage;
+		launcher.setStorageDir(dir);
+		launcher.onUpdate(() -> launcher.setStorageDir(dir));
+	}
+
+	/**
+	 * Answer the tests to run grouped by their test class. These are the tests
+	 * set on the tester or else the tests in the {@link Constants#TESTCASES}
+	 * headers of the run bundles.
+	 */
+	private Map<String, List<String>> testClasses() throws Exception {
+		List<String> tests = new ArrayList<>(tester.getTests());
+		if (tests.isEmpty()) {
+			for (String path : tester.getProjectLauncher()
+				.getRunBundles()) {
+				File file = new File(path);
+				if (!file.isFile()) {
+					continue;
+				}
+				try (JarFile jar = new JarFile(file)) {
+					Manifest manifest = jar.getManifest();
+					if (manifest != null) {
+						Strings.splitQuotedAsStream(manifest.getMainAttributes()
+							.getValue(Constants.TESTCASES), false)
+							.forEach(tests::add);
+					}
+				}
+			}
+		}
+		Map<String, List<String>> classes = new LinkedHashMap<>();
+		for (String test : tests) {
+			classes.computeIfAbsent(className(test), k -> new ArrayList<>())
+				.add(test);
+		}
+		return classes;
+	}
+
+	static String className(String test) {
+		for (int i = 0, length = test.length(); i < length; i++) {
+			char c = test.charAt(i);
+			if (c == ':' || c == '#') {
+				return test.substring(0, i);
+			}
+		}
+		return test;
+	}
+
+	/**
+	 * Split the test classes over the shards. The classes are assigned from the
+	 * longest to the shortest, each to the shard with the least time so far.
+	 *
+	 * @param classes the tests grouped by their test class
+	 * @param timings the time of a test class in seconds
+	 * @param shards the number of shards
+	 * @return the tests of every shard, without empty shards
+	 */
+	static List<List<String>> partition(Map<String, List<String>> classes, Map<String, Double> timings,
+		int shards) {
+		double average = classes.keySet()
+			.stream()
+			.map(timings::get)
+			.filter(t -> t != null)
+			.mapToDouble(Double::doubleValue)
+			.average()
+			.orElse(1.0);
+		List<String> names = new ArrayList<>(classes.keySet());
+		Map<String, Double> times = new HashMap<>();
+		names.forEach(name -> times.put(name, timings.getOrDefault(name, average)));
+		names.sort(Comparator.comparing((String name) -> times.get(name))
+			.reversed());
+
+		int n = Math.min(shards, names.size());
+		List<List<String>> partition = new ArrayList<>(n);
+		double[] loads = new double[n];
+		for (int i = 0; i < n; i++) {
+			partition.add(new ArrayList<>());
+		}
+		for (String name : names) {
+			int least = 0;
+			for (int i = 1; i < n; i++) {
+				if (loads[i] < loads[least]) {
+					least = i;
+				}
+			}
+			loads[least] += times.get(name);
+			partition.get(least)
+				.addAll(classes.get(name));
+		}
+		return partition;
+	}
+
+	/**
+	 * Merge the reports of the shards into the report directory. Reports with
+	 * the same name are combined into a single report that holds the test
+	 * cases of all of them and the sums of their counters. The time of every
+	 * test class found in the reports is put in the timings.
+	 *
+	 * @param reportDir the report directory
+	 * @param shardDirs the report directories of the shards
+	 * @param timings the time of a test class in seconds
+	 */
+	static void merge(File reportDir, List<File> shardDirs, Map<String, Double> timings) throws Exception {
+		Map<String, List<File>> reports = new TreeMap<>();
+		for (File shardDir : shardDirs) {
+			for (File report : IO.listFiles(shardDir, (dir, name) -> name.endsWith(".xml"))) {
+				String name = report.getName();
+				// a report named after the report directory of the shard
+				if (name.equals("TEST-" + shardDir.getName() + ".xml")) {
+					name = "TEST-" + reportDir.getName() + ".xml";
+				}
+				reports.computeIfAbsent(name, k -> new ArrayList<>())
+					.add(report);
+			}
+		}
+		Map<String, Double> times = new HashMap<>();
+		DocumentBuilder db = dbf.newDocumentBuilder();
+		for (Map.Entry<String, List<File>> entry : reports.entrySet()) {
+			Document merged = null;
+			for (File report : entry.getValue()) {
+				Document document;
+				try (InputStream in = IO.stream(report)) {
+					document = db.parse(in);
+				} catch (Exception e) {
+					logger.warn("Unable to merge the test report {}", report, e);
+					continue;
+				}
+				NodeList testcases = document.getElementsByTagName("testcase");
+				for (int i = 0; i < testcases.getLength(); i++) {
+					Element testcase = (Element) testcases.item(i);
+					String classname = testcase.getAttribute("classname");
+					if (!classname.isEmpty()) {
+						times.merge(classname, seconds(testcase.getAttribute("time")), Double::sum);
+					}
+				}
+				if (merged == null) {
+					merged = document;
+				} else {
+					append(merged.getDocumentElement(), document.getDocumentElement());
+				}
+			}
+			if (merged != null) {
+				write(merged, new File(reportDir, entry.getKey()));
+			}
+		}
+		timings.putAll(times);
+	}
+
+	private static void append(Element to, Element from) {
+		for (String counter : COUNTERS) {
+			if (to.hasAttribute(counter) || from.hasAttribute(counter)) {
+				long sum = count(to.getAttribute(counter)) + count(from.getAttribute(counter));
+				to.setAttribute(counter, Long.toString(sum));
+			}
+		}
+		if (to.hasAttribute("time") || from.hasAttribute("time")) {
+			double sum = seconds(to.getAttribute("time")) + seconds(from.getAttribute("time"));
+			to.setAttribute("time", String.format(Locale.ROOT, "%.3f", sum));
+		}
+		Document document = to.getOwnerDocument();
+		for (Node child = from.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child.getNodeType() != Node.ELEMENT_NODE || "properties".equals(child.getNodeName())) {
+				continue;
+			}
+			to.appendChild(document.importNode(child, true));
+		}
+	}
+
+	private static void write(Document document, File file) throws Exception {
+		IO.mkdirs(file.getParentFile());
+		Transformer transformer = XML.newTransformerFactory()
+			.newTransformer();
+		transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+		try (OutputStream out = IO.outputStream(file)) {
+			transformer.transform(new DOMSource(document), new StreamResult(out));
+		}
+	}
+
+	private static long count(String value) {
+		try {
+			return value.isEmpty() ? 0L : Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return 0L;
+		}
+	}
+
+	private static double seconds(String value) {
+		try {
+			return value.isEmpty() ? 0.0 : Double.parseDouble(value.trim()
+				.replace(",", ""));
+		} catch (NumberFormatException e) {
+			return 0.0;
+		}
+	}
+
+	static Map<String, Double> loadTimings(File file) {
+		Map<String, Double> timings = new HashMap<>();
+		if (!file.isFile()) {
+			return timings;
+		}
+		try {
+			UTF8Properties properties = new UTF8Properties();
+			properties.load(file, null);
+			for (String name : properties.stringPropertyNames()) {
+				double time = seconds(properties.getProperty(name));
+				if (time > 0.0) {
+					timings.put(name, time);
+				}
+			}
+		} catch (Exception e) {
+			logger.debug("Ignoring invalid test timings {}", file, e);
+		}
+		return timings;
+	}
+
+	static void saveTimings(File file, Map<String, Double> timings) {
+		UTF8Properties properties = new UTF8Properties();
+		timings.forEach((name, time) -> properties.setProperty(name, String.format(Locale.ROOT, "%.3f", time)));
+		try {
+			IO.mkdirs(file.getParentFile());
+			properties.store(file);
+		} catch (Exception e) {
+			logger.debug("Unable to store the test timings {}", file, e);
+		}
+	}
+}
@@ -71,6 +71,7 @@ import aQute.bnd.memoize.CloseableMemoize;
 import aQute.bnd.memoize.Memoize;
 import aQute.bnd.osgi.About;
 import aQute.bnd.osgi.BundleId;
+import aQute.bnd.osgi.ClassFileCache;
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.Descriptors;
 import aQute.bnd.osgi.Jar;
@@ -135,12 +136,19 @@ public class Workspace extends Processor {
 		final CloseableMemoize<WorkspaceClassIndex>				classIndex;
 		final CloseableMemoize<WorkspaceExternalPluginHandler>	externalPlugins;
 		final CloseableMemoize<LibraryHandler>					libraryHandler;
+		final CloseableMemoize<ClassFileCache>					classFileCache;
+		final CloseableMemoize<InProcessJavac>					javac;
+		final CloseableMemoize<BuildCache>						buildCache;
 		final Memoize<Parameters>								gestalt;
 
 		WorkspaceData() {
 			repositories = Memoize.supplier(Workspace.this::initRepositories);
 			libraryHandler = CloseableMemoize.closeableSupplier(() -> new LibraryHandler(Workspace.this));
 			classIndex = CloseableMemoize.closeableSupplier(() -> new WorkspaceClassIndex(Workspace.this));
+			classFileCache = CloseableMemoize.closeableSupplier(
+				() -> new ClassFileCache(getCache("classfiles"), ClassFileCache.DEFAULT_MAX_ENTRIES));
+			javac = CloseableMemoize.closeableSupplier(InProcessJavac::new);
+			buildCache = CloseableMemoize.closeableSupplier(Workspace.this::createBuildCache);
 			externalPlugins = CloseableMemoize
 				.closeableSupplier(() -> new WorkspaceExternalPluginHandler(Workspace.this));
 			gestalt = Memoize.supplier(() -> {
@@ -165,6 +173,13 @@ public class Workspace extends Processor {
 			IO.close(remoteServer);
 			IO.close(classIndex);
 			IO.close(externalPlugins);
+			classFileCache.ifPresent(
+				cache -> trace("Class file cache: %s hits, %s misses, %s entries", cache.hits(), cache.misses(),
+					cache.size()));
+			IO.close(classFileCache);
+			IO.close(javac);
+			buildCache.ifPresent(cache -> trace("Build cache: %s hits, %s misses", cache.hits(), cache.misses()));
+			IO.close(buildCache);
 		}
 	}
 
@@ -782,6 +797,10 @@ public class Workspace extends Processor {
 				pluginsContainer.add(repo);
 			}
 
+			if (is(CLASSFILECACHE)) {
+				pluginsContainer.add(data.classFileCache.get());
+			}
+
 			resourceRepositoryImpl = new ResourceRepositoryImpl();
 			String cachedir = getProperty(CACHEDIR);
 			if (cachedir == null) {
@@ -1816,6 +1835,46 @@ public class Workspace extends Processor {
 		return data.externalPlugins.get();
 	}
 
+	/**
+	 * The in process Java compiler shared by the projects of this workspace.
+	 */
+	InProcessJavac getInProcessJavac() {
+		return data.javac.get();
+	}
+
+	/**
+	 * The build cache of this workspace or null when {@code -buildcache} is
+	 * not set.
+	 */
+	BuildCache getBuildCache() {
+		String buildcache = getProperty(BUILDCACHE);
+		if (buildcache == null || !isTrue(buildcache)) {
+			return null;
+		}
+		return data.buildCache.get();
+	}
+
+	private BuildCache createBuildCache() {
+		Parameters parameters = new Parameters(getProperty(BUILDCACHE), this);
+		Map.Entry<String, Attrs> entry = parameters.entrySet()
+			.iterator()
+			.next();
+		String key = removeDuplicateMarker(entry.getKey());
+		File dir = key.equalsIgnoreCase("true") ? getCache("builds") : getFile(key);
+		long maxSize = BuildCache.DEFAULT_MAX_SIZE;
+		String size = entry.getValue()
+			.get("maxsize");
+		if (size != null) {
+			if (Verifier.isNumber(size.trim())) {
+				maxSize = Long.parseLong(size.trim()) * 1024L * 1024L;
+			} else {
+				error("%s maxsize must be a number of megabytes: %s", BUILDCACHE, size)
+					.header(BUILDCACHE);
+			}
+		}
+		return new BuildCache(dir, maxSize);
+	}
+
 	public Result<File> getBundle(org.osgi.resource.Resource resource) {
 		return getBundle(resource, ResourceRepositoryStrategy.ALL);
 	}
@@ -1,6 +1,6 @@
 /**
  */
-@Version("4.5.0")
+@Version("4.6.0")
 package aQute.bnd.build;
 
 import org.osgi.annotation.versioning.Version;
@@ -199,7 +199,7 @@ public class Syntax implements Constants {
 			BASELINE + ": jar/foo.jar, jar/bar.jar", null, null),
 
 		new Syntax(COMPRESSION, "Set the compression for writing JARs. Default is deflate", COMPRESSION + "=store",
-			"deflate,store", Pattern.compile("deflate|store")),
+			"deflate,store,parallel", Pattern.compile("deflate|store|parallel")),
 
 		new Syntax(DYNAMICIMPORT_PACKAGE, "The " + DYNAMICIMPORT_PACKAGE
 			+ " header contains a comma-separated list of package names that should be dynamically imported when needed.",
@@ -519,6 +519,9 @@ public class Syntax implements Constants {
 		new Syntax(JAVAC_PROFILE, "When using compact profiles, this option specifies the profile name when compiling.",
 			JAVAC_PROFILE + ": compact1", null, null),
 		new Syntax(JAVAC_TARGET, "Sets the Java target compatibility version.", JAVAC_TARGET + ": 1.8", null, null),
+		new Syntax(JAVAC_INPROCESS,
+			"Compile the project with the system Java compiler in the bnd process instead of forking javac. Only the changed sources and the sources that depend on them are compiled.",
+			JAVAC_INPROCESS + ": true", "true,false", Verifier.TRUEORFALSEPATTERN),
 
 		new Syntax(MAKE,
 			"Set patterns for make plugins. These patterns are used to find a plugin that can make a resource that can not be found.",
@@ -539,6 +542,10 @@ public class Syntax implements Constants {
 		new Syntax(NOBUILDINCACHE, "Do not use a build in cache for the launcher and JUnit.", NOBUILDINCACHE + "=true",
 			"true,false", Verifier.TRUEORFALSEPATTERN),
 
+		new Syntax(CLASSFILECACHE,
+			"Cache the analysis of class files in the workspace cache directory, keyed by the SHA-256 digest of the class file.",
+			CLASSFILECACHE + "=true", "true,false", Verifier.TRUEORFALSEPATTERN),
+
 		new Syntax(NOBUNDLES, "Do not create a target JAR for the project", NOBUNDLES + "=true", "true,false",
 			Verifier.TRUEORFALSEPATTERN),
 
@@ -565,6 +572,22 @@ public class Syntax implements Constants {
 			NOCLASSFORNAME + "=true", "true,false", Verifier.TRUEORFALSEPATTERN),
 		new Syntax(NOIMPORTJAVA, "Do not calculate " + IMPORT_PACKAGE + " references for java.* packages.",
 			NOIMPORTJAVA + "=true", "true,false", Verifier.TRUEORFALSEPATTERN),
+		new Syntax(PARALLELANALYSIS,
+			"Parse the class files of the bundle in parallel. The analysis results are merged in the original order.",
+			PARALLELANALYSIS + "=true", "true,false", Verifier.TRUEORFALSEPATTERN),
+		new Syntax(PARALLELSUB,
+			"Build the sub-bundles of a " + SUB
+				+ " project concurrently. The value is true or the maximum number of sub-bundles built at the same time.",
+			PARALLELSUB + "=4", "true,false,<n>", Pattern.compile("true|false|TRUE|FALSE|\\d+")),
+		new Syntax(STALENESS,
+			"Decide if a project is stale by the time stamps of its files or by the digests of its inputs and the API of its upstream projects.",
+			STALENESS + "=digest", STALENESS_TIMESTAMP + "," + STALENESS_DIGEST,
+			Pattern.compile(STALENESS_TIMESTAMP + "|" + STALENESS_DIGEST)),
+		new Syntax(BUILDCACHE,
+			"Restore the built files of a project from a content addressed cache when the inputs of the build did not change. The value is true for a cache in the workspace or the directory of a cache shared by several workspaces.",
+			BUILDCACHE + "=/var/cache/bnd;maxsize=2048", "true,false,<directory>", null,
+			new Syntax("maxsize", "The maximum size of the cache in megabytes, the default is 1024.", "maxsize=2048",
+				null, Verifier.NUMBERPATTERN)),
 
 		new Syntax(NOEE, "Do not calculate the osgi.ee name space Execution Environment from the class file version.",
 			NOEE + "=true", "true,false", Verifier.TRUEORFALSEPATTERN),
@@ -712,6 +735,9 @@ public class Syntax implements Constants {
 		new Syntax(TESTCONTINUOUS,
 			"Do not exit after running the test suites but keep watching the bundles and rerun the test cases if the bundle is updated.",
 			TESTCONTINUOUS + "=true", "true,false", Verifier.TRUEORFALSEPATTERN),
+		new Syntax(TESTSHARDS,
+			"Split the test classes over the given number of frameworks that run at the same time. The classes are balanced by the times of the previous run and the test reports of the frameworks are merged.",
+			TESTSHARDS + "=4", null, Verifier.NUMBERPATTERN),
 		new Syntax(TESTSOURCES,
 			"Specification to find JUnit test cases by traversing the test src directory and looking for java classes.",
 			TESTSOURCES + "=*.java", "REGEX ( ',' REGEX )*", null),
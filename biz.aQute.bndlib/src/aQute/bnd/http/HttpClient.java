@@ -27,14 +27,21 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -95,6 +102,10 @@ public class HttpClient implements Closeable, URLConnector {
 	int											retries					= 3;
 	long										retryDelay				= 0L;
 	final Map<URLConnectionHandler, Semaphore>	blocker					= new HashMap<>();
+	private boolean								pooled					= true;
+	private int									maxConnectionsPerHost	= 8;
+	private HttpTransport						transport;
+	private final Set<File>						revalidating			= ConcurrentHashMap.newKeySet();
 
 	public HttpClient() {
 		promiseFactory = Processor.getPromiseFactory();
@@ -118,6 +129,9 @@ public class HttpClient implements Closeable, URLConnector {
 	@Override
 	public void close() {
 		Authenticator.setDefault(null);
+		synchronized (this) {
+			transport = null;
+		}
 	}
 
 	@Override
@@ -143,6 +157,27 @@ public class HttpClient implements Closeable, URLConnector {
 		return new HttpRequest<>(this);
 	}
 
+	/*
+	 * Check for a newer version of a stale cache entry in the background. The
+	 * check is a normal cached request, so it shares a download with requests
+	 * for the same entry. Only one check per entry is scheduled at a time.
+	 */
+	private void revalidate(HttpRequest<?> stale, URI uri, File file) {
+		if (!revalidating.add(file)) {
+			return;
+		}
+		HttpRequest<TaggedData> request = build().headers(stale.headers)
+			.retries(stale.retries)
+			.useCache(file)
+			.asTag();
+		request.timeout = stale.timeout;
+		request.reporter = stale.reporter;
+		logger.debug("Revalidating {} {}", uri, file);
+		request.async(uri)
+			.onFailure(failure -> logger.debug("Revalidating {} failed", uri, failure))
+			.onResolve(() -> revalidating.remove(file));
+	}
+
 	<T> Promise<T> sendAsync(HttpRequest<T> request) {
 		int retries = request.isIdemPotent ? request.retries : 0;
 		long delay = (request.retryDelay == 0L) ? 1000L : request.retryDelay;
@@ -192,6 +227,63 @@ public class HttpClient implements Closeable, URLConnector {
 			});
 	}
 
+	/**
+	 * Fetch a set of URIs into the cache in parallel. Each URI is downloaded
+	 * into its given file, or into the default cache file when the file is
+	 * {@code null}, with the same ETag and If-Modified-Since handling as
+	 * {@link HttpRequest#useCache(File, long)}. This is intended to prefetch a
+	 * whole set of artifacts before they are used one by one.
+	 * <p>
+	 * A download that fails does not fail the returned promise, its state is
+	 * {@link State#OTHER}.
+	 *
+	 * @param files the URIs to fetch mapped to their cache file or
+	 *            {@code null}
+	 * @param maxStale the maximum age in ms of a cached file before the server
+	 *            is asked for a newer one, or -1 to always ask
+	 * @return a promise resolved with the state of each URI when all
+	 *         downloads have finished
+	 */
+	public Promise<Map<URI, State>> fetchAll(Map<URI, File> files, long maxStale) {
+		return fetchAll(files, maxStale, Collections.emptyMap());
+	}
+
+	/**
+	 * Fetch a set of URIs into the cache in parallel with additional request
+	 * headers.
+	 *
+	 * @see #fetchAll(Map, long)
+	 */
+	public Promise<Map<URI, State>> fetchAll(Map<URI, File> files, long maxStale, Map<String, String> headers) {
+		List<URI> uris = new ArrayList<>(files.size());
+		List<Promise<State>> promises = new ArrayList<>(files.size());
+		for (Entry<URI, File> entry : files.entrySet()) {
+			URI uri = entry.getKey();
+			Promise<State> promise = build().headers(headers)
+				.useCache(entry.getValue(), maxStale)
+				.asTag()
+				.async(uri)
+				.map(tag -> {
+					IO.close(tag);
+					return tag.getState();
+				})
+				.recover(failed -> {
+					logger.debug("Failed to prefetch {}", uri, failed.getFailure());
+					return State.OTHER;
+				});
+			uris.add(uri);
+			promises.add(promise);
+		}
+		return promiseFactory().all(promises)
+			.map(states -> {
+				Map<URI, State> result = new LinkedHashMap<>();
+				for (int i = 0; i < states.size(); i++) {
+					result.put(uris.get(i), states.get(i));
+				}
+				return result;
+			});
+	}
+
 	public <T> T send(HttpRequest<T> request) throws Exception {
 		Promise<T> promise = sendAsync(request);
 		Throwable failure = promise.getFailure(); // wait for completion
@@ -355,6 +447,23 @@ public class HttpClient implements Closeable, URLConnector {
 		if (connectionSettings != null) {
 			connectionSettings.report(out);
 		}
+		out.format("Cache downloads      %s run, %s coalesced%n", getDownloads(), getCoalescedDownloads());
+	}
+
+	/**
+	 * Answer the number of cache downloads run by all clients in this process.
+	 */
+	public static long getDownloads() {
+		return SingleFlight.flights();
+	}
+
+	/**
+	 * Answer the number of cached requests of all clients in this process that
+	 * waited for a download of the same entry in progress instead of running
+	 * their own.
+	 */
+	public static long getCoalescedDownloads() {
+		return SingleFlight.coalesced();
 	}
 
 	public HttpClient retries(int retries) {
@@ -367,6 +476,48 @@ public class HttpClient implements Closeable, URLConnector {
 		return this;
 	}
 
+	/**
+	 * Send http(s) requests over pooled keep-alive connections, HTTP/2 when
+	 * the server supports it. Requests that are decorated by a
+	 * {@link URLConnectionHandler}, go through a proxy or upload content always
+	 * use a {@link URLConnection}. The default is {@code true}.
+	 *
+	 * @param pooled {@code false} to use a {@link URLConnection} per request
+	 * @return this
+	 */
+	public synchronized HttpClient pooled(boolean pooled) {
+		this.pooled = pooled;
+		return this;
+	}
+
+	/**
+	 * Limit the number of open pooled requests to the same host. A request is
+	 * open until the body of its response is received or closed. The default
+	 * is 8.
+	 *
+	 * @param max the maximum number of concurrent requests per host or 0 for
+	 *            no limit
+	 * @return this
+	 */
+	public synchronized HttpClient maxConnectionsPerHost(int max) {
+		if (max != maxConnectionsPerHost) {
+			this.maxConnectionsPerHost = max;
+			this.transport = null;
+		}
+		return this;
+	}
+
+	synchronized HttpTransport transport() {
+		if (!pooled) {
+			return null;
+		}
+		HttpTransport t = transport;
+		if (t == null) {
+			transport = t = new HttpTransport(maxConnectionsPerHost);
+		}
+		return t;
+	}
+
 	class HttpConnection<T> implements Callable<T> {
 		// These are not in HttpURLConnection
 		private static final int		HTTP_TEMPORARY_REDIRECT			= 307;	// https://developer.mozilla.org/en-US/docs/Web/HTTP/Status/307
@@ -376,6 +527,7 @@ public class HttpClient implements Closeable, URLConnector {
 		private final HttpRequest<T>	request;
 		private volatile Thread			requestThread;
 		private volatile TaggedData		connected;
+		private boolean					revalidate;
 
 		HttpConnection(HttpRequest<T> request) {
 			this.request = requireNonNull(request);
@@ -431,8 +583,22 @@ public class HttpClient implements Closeable, URLConnector {
 			}
 		}
 
-		@SuppressWarnings("unchecked")
 		private T doCached() throws Exception {
+			try {
+				return doCached2();
+			} finally {
+				//
+				// Check a stale entry once its file was read
+				//
+
+				if (revalidate) {
+					revalidate(request, request.url.toURI(), request.useCacheFile);
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private T doCached2() throws Exception {
 			TaggedData tag = doCached0();
 			if (request.download == TaggedData.class) {
 				return (T) tag;
@@ -451,6 +617,26 @@ public class HttpClient implements Closeable, URLConnector {
 		}
 
 		private TaggedData doCached0() throws Exception {
+			final URI uri = request.url.toURI();
+			final File file = (request.useCacheFile != null) ? request.useCacheFile : cache().getCacheFileFor(uri);
+			SingleFlight.Result result = SingleFlight.run(uri, file, promiseFactory().deferred(), this::doCached1);
+			if (!result.shared) {
+				return result.tag;
+			}
+
+			//
+			// Another request downloaded the entry while we waited, so the
+			// cache is as fresh as it gets
+			//
+
+			request.useCacheFile = file;
+			return switch (result.tag.getState()) {
+				case UPDATED, UNMODIFIED -> new TaggedData(uri, HTTP_NOT_MODIFIED, file, result.tag.getTag());
+				default -> new TaggedData(uri, result.tag.getResponseCode(), file);
+			};
+		}
+
+		private TaggedData doCached1() throws Exception {
 			final URL url = request.url;
 			final URI uri = url.toURI();
 			logger.debug("cached {}", url);
@@ -484,6 +670,15 @@ public class HttpClient implements Closeable, URLConnector {
 
 					if (!isOffline() && (request.maxStale < 0
 						|| info.jsonFile.lastModified() + request.maxStale < System.currentTimeMillis())) {
+						if (request.staleWhileRevalidate) {
+							//
+							// Answer the stale file, it is checked after we
+							// released the entry
+							//
+
+							revalidate = true;
+							return new TaggedData(uri, HTTP_NOT_MODIFIED, info.file, info.getETag());
+						}
 						//
 						// Ok, expired. So check if there is a newer one on the
 						// server
@@ -544,11 +739,39 @@ public class HttpClient implements Closeable, URLConnector {
 		private TaggedData connect() throws Exception {
 			final ProxySetup proxy = getProxySetup(request.url);
 			final URLConnectionHandler matching = findMatchingHandler(request.url);
+
+			setConditionalHeaders();
+
+			if (proxy == null && matching == null && request.upload == null) {
+				final URI uri = request.url.toURI();
+				final HttpTransport transport = HttpTransport.supports(uri) ? transport() : null;
+				if (transport != null) {
+					TaggedData tag = doConnect(transport, uri);
+					logger.debug("result {}", tag);
+					return connected = tag;
+				}
+			}
+
 			Semaphore semaphore = getConnectionBlocker(matching);
 
 			final URLConnection con = getProxiedAndConfiguredConnection(request.url, proxy, matching);
 			final HttpURLConnection hcon = (con instanceof HttpURLConnection hc) ? hc : null;
 
+			setHeaders(request.headers, con);
+
+			configureHttpConnection(request.verb, hcon);
+
+			try {
+				semaphore.acquire();
+				TaggedData tag = connectWithProxy(proxy, () -> doConnect(request.upload, request.download, con, hcon));
+				logger.debug("result {}", tag);
+				return connected = tag;
+			} finally {
+				semaphore.release();
+			}
+		}
+
+		private void setConditionalHeaders() {
 			if (request.ifNoneMatch != null) {
 				request.headers.put("If-None-Match", entitytag(request.ifNoneMatch));
 			}
@@ -566,19 +789,6 @@ public class HttpClient implements Closeable, URLConnector {
 				request.headers.put("If-Unmodified-Since",
 					Dates.formatMillis(Dates.RFC_7231_DATE_TIME, request.ifUnmodifiedSince));
 			}
-
-			setHeaders(request.headers, con);
-
-			configureHttpConnection(request.verb, hcon);
-
-			try {
-				semaphore.acquire();
-				TaggedData tag = connectWithProxy(proxy, () -> doConnect(request.upload, request.download, con, hcon));
-				logger.debug("result {}", tag);
-				return connected = tag;
-			} finally {
-				semaphore.release();
-			}
 		}
 
 		/*
@@ -598,6 +808,72 @@ public class HttpClient implements Closeable, URLConnector {
 			}
 		}
 
+		private TaggedData doConnect(HttpTransport transport, URI uri) throws Exception {
+			final ProgressPlugin.Task task = getTask();
+			logger.debug("{} {} over {}", request.verb, uri, transport);
+			try {
+				long readTimeout = (request.timeout > 0) ? Math.min(request.timeout, 5000L) : 60000L;
+				HttpResponse<InputStream> response = transport.send(request.verb, uri, request.headers, readTimeout);
+				int code = response.statusCode();
+
+				if (code == HTTP_MOVED_TEMP || code == HTTP_MOVED_PERM || code == HTTP_SEE_OTHER
+					|| code == HTTP_TEMPORARY_REDIRECT || code == HTTP_PERMANENT_REDIRECT) {
+					if (request.redirects-- > 0) {
+						IO.close(response.body()); // hand the connection back
+						String location = response.headers()
+							.firstValue("Location")
+							.orElse(null);
+						request.url = new URL(request.url, location);
+						requestThread().setName(toString());
+						task.done("Redirected " + code + " " + location, null);
+						return connect();
+					}
+				}
+
+				if ((code / 100) != 2) {
+					String message = "Finished " + code + " " + response.uri();
+					task.done(message, null);
+					TaggedData tag = new TaggedData(response, null, request.useCacheFile);
+					if ((code / 100) == 5) {
+						throw new RetryException(tag, message);
+					}
+					return tag;
+				}
+
+				InputStream body = response.body();
+				try {
+					InputStream in = handleContentEncoding(body, response.headers()
+						.firstValue("Content-Encoding")
+						.orElse(null));
+					int length = (int) response.headers()
+						.firstValueAsLong("Content-Length")
+						.orElse(-1L);
+					in = createProgressWrappedStream(in, uri.toString(), length, task, request.timeout);
+					return new TaggedData(response, in, request.useCacheFile);
+				} catch (Throwable t) {
+					IO.close(body); // hand the connection back
+					throw t;
+				}
+			} catch (HttpTimeoutException e) {
+				task.done(e.toString(), null);
+				TaggedData tag = new TaggedData(uri, HTTP_GATEWAY_TIMEOUT, request.useCacheFile);
+				throw new RetryException(tag, e);
+			} catch (javax.net.ssl.SSLHandshakeException e) {
+				task.done(Exceptions.causes(e), null);
+				TaggedData tag = new TaggedData(uri, HTTP_INVALID_SSL_CERTIFICATE, request.useCacheFile);
+				throw new RetryException(tag, e);
+			} catch (IOException e) {
+				task.done(e.toString(), null);
+				TaggedData tag = new TaggedData(uri, HTTP_UNKNOWN_ERROR, request.useCacheFile);
+				throw new RetryException(tag, e);
+			} catch (RetryException e) {
+				throw e;
+			} catch (Throwable t) {
+				task.done("Failed " + t, t);
+				throw t;
+			}
+		}
+
 		private TaggedData doConnect(Object put, Type ref, URLConnection con, HttpURLConnection hcon) throws Exception {
 			final ProgressPlugin.Task task = getTask();
 			if (put != null) {
@@ -678,7 +954,7 @@ public class HttpClient implements Closeable, URLConnector {
 				// later
 
 				InputStream xin = con.getInputStream();
-				InputStream in = handleContentEncoding(xin, hcon);
+				InputStream in = handleContentEncoding(xin, hcon.getHeaderField("Content-Encoding"));
 				in = createProgressWrappedStream(in, con.toString(), con.getContentLength(), task, request.timeout);
 				return new TaggedData(con, in, request.useCacheFile);
 			} catch (javax.net.ssl.SSLHandshakeException e) {
@@ -862,12 +1138,7 @@ public class HttpClient implements Closeable, URLConnector {
 			return task;
 		}
 
-		private InputStream handleContentEncoding(InputStream in, HttpURLConnection hcon) throws IOException {
-			if (hcon == null) {
-				return in;
-			}
-
-			String encoding = hcon.getHeaderField("Content-Encoding");
+		private InputStream handleContentEncoding(InputStream in, String encoding) throws IOException {
 			if (encoding != null) {
 				if (encoding.equalsIgnoreCase("deflate")) {
 					in = new InflaterInputStream(in);
@@ -37,6 +37,7 @@ public class HttpRequest<T> {
 	String				ifMatch;
 	boolean				cached;
 	long				maxStale;
+	boolean				staleWhileRevalidate;
 	Reporter			reporter;
 	File				useCacheFile;
 	boolean				updateTag;
@@ -269,6 +270,18 @@ public class HttpRequest<T> {
 		return useCache(maxStale);
 	}
 
+	/**
+	 * When the cached file is older than the accepted stale period, answer it
+	 * anyway and check for a newer version in the background. Later requests
+	 * see the result of the check.
+	 *
+	 * @return this
+	 */
+	public HttpRequest<T> staleWhileRevalidate() {
+		this.staleWhileRevalidate = true;
+		return this;
+	}
+
 	public HttpRequest<T> report(Reporter reporter) {
 		this.reporter = reporter;
 		return this;
@@ -0,0 +1,280 @@
+package aQute.bnd.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends requests over a shared {@link java.net.http.HttpClient}. The JDK
+ * client keeps connections alive in a pool and negotiates HTTP/2 for https so
+ * that parallel requests to the same host are multiplexed over a single
+ * connection. The number of open requests to a host is limited by a semaphore
+ * per host. A request holds its permit until the body of the response is
+ * received completely or closed.
+ */
+class HttpTransport {
+	private final static Logger					logger				= LoggerFactory.getLogger(HttpTransport.class);
+	static final long							CONNECT_TIMEOUT		= TimeUnit.MINUTES.toMillis(2);
+
+	/*
+	 * Headers the JDK client sets itself and refuses to accept from the
+	 * caller.
+	 */
+	private static final Set<String>			RESTRICTED_HEADERS	= Set.of("connection", "content-length", "expect",
+		"host", "upgrade");
+
+	private final java.net.http.HttpClient		client;
+	private final int							maxConnectionsPerHost;
+	private final ConcurrentMap<String, Semaphore>	hosts			= new ConcurrentHashMap<>();
+
+	HttpTransport(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.client = java.net.http.HttpClient.newBuilder()
+			.version(Version.HTTP_2)
+			.followRedirects(Redirect.NEVER) // we handle it
+			.connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT))
+			.build();
+	}
+
+	/**
+	 * Answer if the given uri can be sent over this transport.
+	 */
+	static boolean supports(URI uri) {
+		String scheme = uri.getScheme();
+		return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme);
+	}
+
+	/**
+	 * Send a request without a body and wait for the response headers. The
+	 * body of the response must be read or closed by the caller, this releases
+	 * the host for the next request.
+	 *
+	 * @param verb the method
+	 * @param uri the uri
+	 * @param headers the request headers
+	 * @param readTimeout the time in ms to wait for the response headers and
+	 *            for each read of the body, a read that times out throws a
+	 *            {@link SocketTimeoutException} like a {@link java.net.Socket}
+	 */
+	HttpResponse<InputStream> send(String verb, URI uri, Map<String, String> headers, long readTimeout)
+		throws IOException, InterruptedException {
+		java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(uri)
+			.method(verb, BodyPublishers.noBody())
+			.timeout(Duration.ofMillis(readTimeout));
+		if ("http".equalsIgnoreCase(uri.getScheme())) {
+			// no h2c upgrade dance over plain connections
+			builder.version(Version.HTTP_1_1);
+		}
+		headers.forEach((k, v) -> {
+			if (RESTRICTED_HEADERS.contains(k.toLowerCase(Locale.ROOT))) {
+				logger.debug("skip restricted header {}={}", k, v);
+			} else {
+				builder.setHeader(k, v);
+			}
+		});
+		builder.setHeader("Accept-Encoding", "deflate, gzip");
+
+		Semaphore semaphore = getHostBlocker(uri);
+		semaphore.acquire();
+		AtomicBoolean released = new AtomicBoolean();
+		Runnable release = () -> {
+			if (released.compareAndSet(false, true)) {
+				semaphore.release();
+			}
+		};
+		try {
+			return client.send(builder.build(), info -> new BodyStream(readTimeout, release));
+		} catch (Throwable t) {
+			release.run();
+			throw t;
+		}
+	}
+
+	/*
+	 * Returns the blocker for the host of the uri. With no limit a fresh
+	 * semaphore is returned that will thus never block.
+	 */
+	private Semaphore getHostBlocker(URI uri) {
+		if (maxConnectionsPerHost <= 0) {
+			return new Semaphore(1);
+		}
+		String host = uri.getScheme()
+			.toLowerCase(Locale.ROOT) + "://" + uri.getRawAuthority();
+		return hosts.computeIfAbsent(host, h -> new Semaphore(maxConnectionsPerHost));
+	}
+
+	/*
+	 * The body of a response as an InputStream. Unlike the JDK's own stream a
+	 * read that does not get data within the read timeout throws a
+	 * SocketTimeoutException so that callers can check for cancellation and
+	 * retry the read. The release action is run when the body is received
+	 * completely, fails or the stream is closed.
+	 */
+	static final class BodyStream extends InputStream implements BodySubscriber<InputStream> {
+		private static final List<ByteBuffer>			EOF			= Collections.unmodifiableList(new ArrayList<>());
+		private final BlockingQueue<List<ByteBuffer>>	queue		= new LinkedBlockingQueue<>();
+		private final long								readTimeout;
+		private final Runnable							release;
+		private volatile Flow.Subscription				subscription;
+		private volatile Throwable						failure;
+		private volatile boolean						closed;
+		private Iterator<ByteBuffer>					buffers		= Collections.emptyIterator();
+		private ByteBuffer								current;
+		private boolean									eof;
+
+		BodyStream(long readTimeout, Runnable release) {
+			this.readTimeout = readTimeout;
+			this.release = release;
+		}
+
+		@Override
+		public CompletionStage<InputStream> getBody() {
+			return CompletableFuture.completedStage(this);
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (closed) {
+				subscription.cancel();
+			} else {
+				subscription.request(1);
+			}
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> item) {
+			queue.offer(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			failure = throwable;
+			queue.offer(EOF);
+			release.run();
+		}
+
+		@Override
+		public void onComplete() {
+			queue.offer(EOF);
+			release.run();
+		}
+
+		@Override
+		public int read() throws IOException {
+			ByteBuffer buffer = current();
+			if (buffer == null) {
+				return -1;
+			}
+			return buffer.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			ByteBuffer buffer = current();
+			if (buffer == null) {
+				return -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			ByteBuffer buffer = current;
+			return (buffer == null) ? 0 : buffer.remaining();
+		}
+
+		private ByteBuffer current() throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			while (current == null || !current.hasRemaining()) {
+				if (buffers.hasNext()) {
+					current = buffers.next();
+					continue;
+				}
+				if (eof) {
+					return null;
+				}
+				List<ByteBuffer> next;
+				try {
+					next = queue.poll(readTimeout, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread()
+						.interrupt();
+					throw new InterruptedIOException("Interrupted reading body");
+				}
+				if (next == null) {
+					throw new SocketTimeoutException("Read timed out");
+				}
+				if (next == EOF) {
+					eof = true;
+					Throwable t = failure;
+					if (t != null) {
+						throw (t instanceof IOException e) ? e : new IOException(t);
+					}
+					return null;
+				}
+				buffers = next.iterator();
+				subscription.request(1);
+			}
+			return current;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				Flow.Subscription s = subscription;
+				if (s != null) {
+					s.cancel();
+				}
+				queue.clear();
+			} finally {
+				release.run();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "HttpTransport[" + client.version() + ", maxConnectionsPerHost=" + maxConnectionsPerHost + "]";
+	}
+}
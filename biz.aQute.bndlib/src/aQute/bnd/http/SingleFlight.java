@@ -0,0 +1,95 @@
+package aQute.bnd.http;
+
+import java.io.File;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.bnd.exceptions.Exceptions;
+import aQute.bnd.exceptions.SupplierWithException;
+import aQute.bnd.service.url.TaggedData;
+
+/**
+ * Process wide registry of the cache downloads in progress. A download is
+ * keyed by its URI and the file it is cached in, so it is shared by all
+ * {@link HttpClient} and {@link URLCache} instances. A thread that needs an
+ * entry that another thread is already downloading waits for that download
+ * instead of starting its own.
+ */
+final class SingleFlight {
+	private final static Logger								logger		= LoggerFactory.getLogger(SingleFlight.class);
+	private static final ConcurrentMap<String, Promise<TaggedData>>	inflight	= new ConcurrentHashMap<>();
+	private static final LongAdder							flights		= new LongAdder();
+	private static final LongAdder							coalesced	= new LongAdder();
+
+	private SingleFlight() {}
+
+	/**
+	 * Run the download for the given key unless one is in progress. The first
+	 * caller runs the download, other callers that arrive before it completes
+	 * get its result without running their own.
+	 *
+	 * @param uri the uri of the download
+	 * @param file the file the download is cached in
+	 * @param deferred the deferred to publish the result through
+	 * @param download the download
+	 * @return the result and whether it is shared with another caller
+	 */
+	static Result run(URI uri, File file, Deferred<TaggedData> deferred,
+		SupplierWithException<TaggedData> download) throws Exception {
+		String key = file.getAbsolutePath() + "\n" + uri.toASCIIString();
+		Promise<TaggedData> promise = deferred.getPromise();
+		Promise<TaggedData> running = inflight.putIfAbsent(key, promise);
+		if (running != null) {
+			coalesced.increment();
+			logger.debug("Joining download in progress {} {}", uri, file);
+			Throwable failure = running.getFailure(); // wait for completion
+			if (failure != null) {
+				throw Exceptions.duck(failure);
+			}
+			return new Result(running.getValue(), true);
+		}
+		flights.increment();
+		try {
+			TaggedData tag = download.get();
+			deferred.resolve(tag);
+			return new Result(tag, false);
+		} catch (Throwable t) {
+			deferred.fail(t);
+			throw t;
+		} finally {
+			inflight.remove(key, promise);
+		}
+	}
+
+	/**
+	 * Answer the number of downloads that were run.
+	 */
+	static long flights() {
+		return flights.sum();
+	}
+
+	/**
+	 * Answer the number of requests that joined a download in progress
+	 * instead of running their own.
+	 */
+	static long coalesced() {
+		return coalesced.sum();
+	}
+
+	static final class Result {
+		final TaggedData	tag;
+		final boolean		shared;
+
+		Result(TaggedData tag, boolean shared) {
+			this.tag = tag;
+			this.shared = shared;
+		}
+	}
+}
@@ -7,7 +7,9 @@ import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -22,14 +24,27 @@ import aQute.lib.io.IO;
 import aQute.lib.json.JSONCodec;
 import aQute.libg.cryptography.SHA1;
 import aQute.libg.cryptography.SHA256;
-
+import aQute.libg.filelock.LockFile;
+
+/**
+ * A cache of downloaded files. The cache directory can be shared between
+ * processes. Updates of an entry are guarded by a lock in this process and by
+ * a lock file next to the entry for other processes.
+ * <p>
+ * The in memory information about the entries is bounded. Entries that were
+ * not used for a while are forgotten and read again from disk when needed.
+ */
 public class URLCache {
-	private final static Logger			logger	= LoggerFactory.getLogger(URLCache.class);
-	private final static JSONCodec		codec	= new JSONCodec();
+	private final static Logger			logger		= LoggerFactory.getLogger(URLCache.class);
+	private final static JSONCodec		codec		= new JSONCodec();
+	private final static long			LOCK_TIMEOUT	= TimeUnit.MINUTES.toMillis(5);
+	final static int					MAX_INFOS	= 1000;
+	final static long					IDLE		= TimeUnit.MINUTES.toMillis(10);
 
 	private final File					root;
 
-	private ConcurrentMap<File, Info>	infos	= new ConcurrentHashMap<>();
+	private ConcurrentMap<File, Info>	infos		= new ConcurrentHashMap<>();
+	private volatile long				swept		= System.currentTimeMillis();
 
 	public static class InfoDTO {
 		public String	etag;
@@ -45,11 +60,25 @@ public class URLCache {
 		InfoDTO			dto;
 		URI				url;
 		ReentrantLock	lock	= new ReentrantLock();
+		final LockFile	lockFile;
+		volatile long	used	= System.currentTimeMillis();
+		long			jsonModified;
+		long			jsonLength;
 
 		public Info(File content, URI url) throws Exception {
 			this.file = content;
 			this.url = url;
 			this.jsonFile = new File(content.getParentFile(), content.getName() + ".json");
+			this.lockFile = new LockFile(new File(content.getParentFile(), content.getName() + ".lock"));
+			load();
+		}
+
+		/*
+		 * Read the information from disk, another process may have updated it.
+		 */
+		void load() {
+			this.jsonModified = jsonFile.lastModified();
+			this.jsonLength = jsonFile.length();
 			if (this.jsonFile.isFile()) {
 				try {
 					this.dto = codec.dec()
@@ -57,7 +86,7 @@ public class URLCache {
 						.get(InfoDTO.class);
 				} catch (Exception e) {
 					this.dto = new InfoDTO();
-					logger.error("URLCache Failed to load data for {} from {}", content, jsonFile);
+					logger.error("URLCache Failed to load data for {} from {}", file, jsonFile);
 				}
 			} else {
 				this.dto = new InfoDTO();
@@ -65,17 +94,38 @@ public class URLCache {
 			this.dto.uri = url;
 		}
 
+		boolean isChanged() {
+			return jsonFile.lastModified() != jsonModified || jsonFile.length() != jsonLength;
+		}
+
 		@Override
 		public void close() throws IOException {
 			logger.debug("Unlocking url cache {}", url);
-			lock.unlock();
+			used = System.currentTimeMillis();
+			if (lock.isHeldByCurrentThread()) {
+				if (lock.getHoldCount() == 1) {
+					lockFile.release();
+				}
+				lock.unlock();
+			}
 		}
 
+		/*
+		 * The content is written to a temporary file next to the cache file
+		 * and then renamed so readers never see a partial download.
+		 */
 		public void update(InputStream inputStream, String etag, long modified) throws Exception {
-			IO.mkdirs(this.file.getParentFile());
-			IO.copy(inputStream, this.file);
-			if (modified > 0) {
-				this.file.setLastModified(modified);
+			File dir = this.file.getParentFile();
+			IO.mkdirs(dir);
+			File tmp = IO.createTempFile(dir, this.file.getName(), ".tmp");
+			try {
+				IO.copy(inputStream, tmp);
+				if (modified > 0) {
+					tmp.setLastModified(modified);
+				}
+				IO.rename(tmp, this.file);
+			} finally {
+				IO.delete(tmp);
 			}
 			update(etag);
 		}
@@ -87,9 +137,17 @@ public class URLCache {
 				.asHex();
 			this.dto.etag = etag;
 			this.dto.modified = file.lastModified();
-			codec.enc()
-				.to(jsonFile)
-				.put(this.dto);
+			File tmp = IO.createTempFile(jsonFile.getParentFile(), jsonFile.getName(), ".tmp");
+			try {
+				codec.enc()
+					.to(tmp)
+					.put(this.dto);
+				IO.rename(tmp, jsonFile);
+			} finally {
+				IO.delete(tmp);
+			}
+			this.jsonModified = jsonFile.lastModified();
+			this.jsonLength = jsonFile.length();
 		}
 
 		public boolean isPresent() {
@@ -140,26 +198,91 @@ public class URLCache {
 		if (file == null)
 			file = getCacheFileFor(uri);
 
-		// Unfortunately, the Info constructor throws Exception, making
-		// ConcurrentMap.computeIfAbsent() impossible. So we do it the
-		// hard(er) way
-		Info info = infos.get(file);
-		if (info == null) {
-			Info candidate = new Info(file, uri);
-			info = infos.putIfAbsent(file, candidate);
+		Info info;
+		while (true) {
+			// Unfortunately, the Info constructor throws Exception, making
+			// ConcurrentMap.computeIfAbsent() impossible. So we do it the
+			// hard(er) way
+			info = infos.get(file);
 			if (info == null) {
-				info = candidate;
+				Info candidate = new Info(file, uri);
+				info = infos.putIfAbsent(file, candidate);
+				if (info == null) {
+					info = candidate;
+				}
+			}
+
+			// FIXME: 5 minutes is a bit excessive, no?
+			if (!info.lock.tryLock(LOCK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				logger.debug("Could not lock URL cache for {} - {}", uri, info);
+				return info;
+			}
+			if (infos.get(file) == info) {
+				break;
 			}
+			// evicted while we waited for the lock
+			info.lock.unlock();
 		}
 
-		// FIXME: 5 minutes is a bit excessive, no?
-		if (!info.lock.tryLock(5, TimeUnit.MINUTES)) {
-			logger.debug("Could not lock URL cache for {} - {}", uri, info);
+		//
+		// Exclude other processes that share the cache directory. They may
+		// have updated the entry since we read it.
+		//
+
+		if (info.lock.getHoldCount() == 1) {
+			try {
+				if (!info.lockFile.lock(LOCK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+					logger.debug("Could not lock URL cache file for {} - {}", uri, info);
+				}
+			} catch (IOException e) {
+				logger.debug("Could not lock URL cache file for {} - {}", uri, info, e);
+			}
+			if (info.isChanged()) {
+				info.load();
+			}
 		}
+		info.used = System.currentTimeMillis();
 
+		sweep(info);
 		return info;
 	}
 
+	/*
+	 * Forget the entries that were not used for a while and, when there are
+	 * still too many, the least recently used ones. An entry is only removed
+	 * while we hold its lock, a thread that waited for the lock of a removed
+	 * entry will see it is gone and create a new one.
+	 */
+	private void sweep(Info current) {
+		long now = System.currentTimeMillis();
+		if (infos.size() <= MAX_INFOS && now - swept < IDLE) {
+			return;
+		}
+		swept = now;
+		List<Map.Entry<Long, Info>> candidates = new ArrayList<>(infos.size());
+		infos.values()
+			.forEach(info -> candidates.add(Map.entry(info.used, info)));
+		candidates.sort(Map.Entry.comparingByKey());
+		int excess = infos.size() - MAX_INFOS;
+		for (Map.Entry<Long, Info> candidate : candidates) {
+			Info info = candidate.getValue();
+			boolean idle = now - candidate.getKey() > IDLE;
+			if (!idle && excess <= 0) {
+				break;
+			}
+			if (info != current && info.lock.tryLock()) {
+				try {
+					// not when this thread is using it
+					if (info.lock.getHoldCount() == 1 && infos.remove(info.file, info)) {
+						excess--;
+					}
+				} finally {
+					info.lock.unlock();
+				}
+			}
+		}
+	}
+
 	public static String toName(URI uri) throws Exception {
 		return SHA1.digest(uri.toASCIIString()
 			.getBytes(StandardCharsets.UTF_8))
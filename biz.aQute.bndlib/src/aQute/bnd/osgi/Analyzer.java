@@ -40,6 +40,7 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.StringJoiner;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
@@ -62,6 +63,7 @@ import aQute.bnd.header.Attrs;
 import aQute.bnd.header.OSGiHeader;
 import aQute.bnd.header.Parameters;
 import aQute.bnd.http.HttpClient;
+import aQute.bnd.memoize.Memoize;
 import aQute.bnd.osgi.Clazz.JAVA;
 import aQute.bnd.osgi.Clazz.QUERY;
 import aQute.bnd.osgi.Descriptors.Descriptor;
@@ -147,6 +149,8 @@ public class Analyzer extends Processor {
 	private Set<PackageRef>							nonClassReferences		= new HashSet<>();
 	private Set<Check>								checks;
 	private final Map<TypeRef, String>				bcpTypes				= map();
+	private final Memoize<ClassFileCache>			classFileCache			= Memoize
+		.supplier(() -> getPlugin(ClassFileCache.class));
 
 	public enum Check {
 		ALL,
@@ -205,8 +209,16 @@ public class Analyzer extends Processor {
 
 		if (!analyzed) {
 			analyzed = true;
+			ClassFileCache cache = getClassFileCache();
+			int hits = (cache != null) ? cache.hits() : 0;
+			int misses = (cache != null) ? cache.misses() : 0;
+
 			analyzeContent();
 
+			if (cache != null) {
+				trace("Class file cache: %s hits, %s misses", cache.hits() - hits, cache.misses() - misses);
+			}
+
 			doPlugins();
 
 			//
@@ -221,7 +233,12 @@ public class Analyzer extends Processor {
 			try (ClassDataCollectors cds = new ClassDataCollectors(this)) {
 				List<ClassParser> parsers = getPlugins(ClassParser.class);
 				for (ClassParser cp : parsers) {
-					cds.add(cp.getClassDataCollector(this));
+					Set<String> names = cp.getAnnotations();
+					if (names.isEmpty()) {
+						cds.add(cp.getClassDataCollector(this));
+					} else {
+						cds.add(cp.getClassDataCollector(this), annotation -> names.contains(annotation.getFQN()));
+					}
 				}
 
 				//
@@ -230,7 +247,8 @@ public class Analyzer extends Processor {
 
 				Instructions instructions = new Instructions(
 					OSGiHeader.parseHeader(getProperty(Constants.BUNDLEANNOTATIONS, "*")));
-				cds.add(annotationHeaders = new AnnotationHeaders(this, instructions));
+				// only annotated classes can have bundle annotations
+				cds.add(annotationHeaders = new AnnotationHeaders(this, instructions), annotation -> true);
 
 				for (Clazz c : classspace.values()) {
 					cds.parse(c);
@@ -1587,6 +1605,15 @@ public class Analyzer extends Processor {
 		return dot;
 	}
 
+	/**
+	 * Return the cache of class file summaries or {@code null} if there is no
+	 * such cache. The cache is provided as a plugin, for example by the
+	 * workspace.
+	 */
+	ClassFileCache getClassFileCache() {
+		return classFileCache.get();
+	}
+
 	public Packages getReferred() {
 		return referred;
 	}
@@ -2658,6 +2685,10 @@ public class Analyzer extends Processor {
 			.map(Domain::getImportPackage)
 			.orElseGet(() -> new Parameters());
 
+		Map<String, Clazz> parsed = new ConcurrentHashMap<>();
+		Map<String, Exception> failed = new ConcurrentHashMap<>();
+		parseClasses(jar, prefix, parsed, failed);
+
 		next: for (String path : jar.getResources()
 			.keySet()) {
 			if (path.startsWith(prefix)) {
@@ -2678,13 +2709,9 @@ public class Analyzer extends Processor {
 
 				// Check class resources, we need to analyze them
 				if (path.endsWith(".class")) {
-					Resource resource = jar.getResource(path);
-					Clazz clazz;
-
-					try {
-						clazz = new Clazz(this, path, resource);
-						clazz.parseClassFile();
-					} catch (Exception e) {
+					Clazz clazz = parsed.get(path);
+					if (clazz == null) {
+						Exception e = failed.get(path);
 						exception(e, "Invalid class file %s (%s)", relativePath, e);
 						continue next;
 					}
@@ -2734,6 +2761,34 @@ public class Analyzer extends Processor {
 		return true;
 	}
 
+	/**
+	 * Parse the class files in the jar under the prefix. When
+	 * {@link Constants#PARALLELANALYSIS} is set, the class files are parsed in
+	 * parallel. Parsing only touches the class file and the (thread safe)
+	 * descriptors, so the results can be merged afterwards in the order of the
+	 * jar's resources.
+	 */
+	private void parseClasses(Jar jar, String prefix, Map<String, Clazz> parsed, Map<String, Exception> failed) {
+		Stream<String> paths = jar.getResources()
+			.keySet()
+			.stream()
+			.filter(path -> path.startsWith(prefix) && path.endsWith(".class")
+				&& !path.startsWith("META-INF/", prefix.length()));
+		if (is(PARALLELANALYSIS)) {
+			paths = paths.collect(toList())
+				.parallelStream();
+		}
+		paths.forEach(path -> {
+			try {
+				Clazz clazz = new Clazz(this, path, jar.getResource(path));
+				clazz.parseClassFile();
+				parsed.put(path, clazz);
+			} catch (Exception e) {
+				failed.put(path, e);
+			}
+		});
+	}
+
 	/**
 	 * Clean up version parameters. Other builders use more fuzzy definitions of
 	 * the version syntax. This method cleans up such a version to match an OSGi
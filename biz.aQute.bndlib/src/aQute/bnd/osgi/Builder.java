@@ -9,6 +9,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -23,6 +24,7 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -31,12 +33,15 @@ import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.zip.ZipException;
 
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import aQute.bnd.cdi.CDIAnnotations;
 import aQute.bnd.component.DSAnnotations;
 import aQute.bnd.differ.DiffPluginImpl;
+import aQute.bnd.exceptions.Exceptions;
 import aQute.bnd.header.Attrs;
 import aQute.bnd.header.OSGiHeader;
 import aQute.bnd.header.Parameters;
@@ -1452,6 +1457,12 @@ public class Builder extends Analyzer {
 
 		builders = getSubBuilders();
 
+		int parallelism = getParallelSub(builders.size());
+		if (parallelism > 1) {
+			buildsParallel(builders, parallelism, result);
+			return result.toArray(new Jar[0]);
+		}
+
 		for (Builder builder : builders) {
 			try {
 				startBuild(builder);
@@ -1469,6 +1480,110 @@ public class Builder extends Analyzer {
 		return result.toArray(new Jar[0]);
 	}
 
+	/**
+	 * Answer the number of sub-builders that may be built at the same time as
+	 * set with {@link Constants#PARALLELSUB}.
+	 */
+	private int getParallelSub(int size) {
+		String parallelsub = getProperty(PARALLELSUB);
+		if (size < 2 || !isTrue(parallelsub)) {
+			return 1;
+		}
+		parallelsub = parallelsub.trim();
+		int width;
+		if (Verifier.isNumber(parallelsub)) {
+			width = Integer.parseInt(parallelsub);
+		} else {
+			width = Runtime.getRuntime()
+				.availableProcessors();
+		}
+		return Math.max(1, Math.min(width, size));
+	}
+
+	/**
+	 * Build the sub-builders concurrently. The sub-builders only share the
+	 * read-only classpath jars and the parent's properties. Everything else
+	 * that is shared, the {@link #startBuild(Builder)} and
+	 * {@link #doneBuild(Builder)} callbacks and the reporting to this builder,
+	 * is done on the calling thread in the order of the sub-builders so the
+	 * result does not depend on the scheduling.
+	 */
+	private void buildsParallel(List<Builder> builders, int parallelism, List<Jar> result) throws Exception {
+		int size = builders.size();
+		Jar[] jars = new Jar[size];
+		boolean[] started = new boolean[size];
+
+		for (int i = 0; i < size; i++) {
+			Builder builder = builders.get(i);
+			try {
+				startBuild(builder);
+				// initialize lazy state before it gets shared
+				builder.getPlugins();
+				for (Jar jar : builder.getClasspath()) {
+					jar.getManifest();
+				}
+				started[i] = true;
+			} catch (Exception e) {
+				builder.exception(e, "Exception Building %s", builder.getBsn());
+			}
+		}
+		getReplacer();
+
+		AtomicInteger next = new AtomicInteger();
+		Runnable worker = () -> {
+			for (int i; (i = next.getAndIncrement()) < size;) {
+				if (!started[i]) {
+					continue;
+				}
+				Builder builder = builders.get(i);
+				// all reports on this thread go to the sub-builder
+				Processor previous = builder.beginHandleErrors(builder.getBsn());
+				try {
+					jars[i] = builder.build();
+				} catch (Exception e) {
+					builder.exception(e, "Exception Building %s", builder.getBsn());
+					started[i] = false;
+				} finally {
+					builder.endHandleErrors(previous);
+				}
+			}
+		};
+
+		// the calling thread is one of the workers
+		PromiseFactory promiseFactory = getPromiseFactory();
+		List<Promise<Void>> promises = new ArrayList<>(parallelism - 1);
+		for (int i = 1; i < parallelism; i++) {
+			promises.add(promiseFactory.submit(() -> {
+				worker.run();
+				return null;
+			}));
+		}
+		worker.run();
+		try {
+			promiseFactory.all(promises)
+				.getValue();
+		} catch (InvocationTargetException e) {
+			throw Exceptions.duck(e.getCause());
+		}
+
+		for (int i = 0; i < size; i++) {
+			Builder builder = builders.get(i);
+			if (started[i]) {
+				try {
+					Jar jar = jars[i];
+					jar.setName(builder.getBsn());
+
+					result.add(jar);
+					doneBuild(builder);
+				} catch (Exception e) {
+					builder.exception(e, "Exception Building %s", builder.getBsn());
+				}
+			}
+			if (builder != this)
+				getInfo(builder, builder.getBsn() + ": ");
+		}
+	}
+
 	/**
 	 * Called when we start to build a builder
 	 */
@@ -2,8 +2,11 @@ package aQute.bnd.osgi;
 
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 
 import aQute.bnd.osgi.Clazz.FieldDef;
 import aQute.bnd.osgi.Clazz.MethodDef;
@@ -16,10 +19,18 @@ import aQute.service.reporter.Reporter;
  * looking for annotations and other stuff. In the early days, the parser tried
  * to not do full parsing to minimize the cost but basically we are now parsing
  * more than necessary because different places began parsing on their own.
+ * <p>
+ * All collectors are fed from a single visit of the parsed class file. A
+ * collector can be added with an annotation filter. Such a collector is only
+ * called for classes that carry at least one annotation matched by the filter.
+ * When no collector is interested in a class, the class is not visited at all
+ * so a class restored from the {@link ClassFileCache} does not need to be
+ * parsed again.
  */
 class ClassDataCollectors implements Closeable {
-	final List<ClassDataCollector>	delegates	= new ArrayList<>();
-	final Reporter					reporter;
+	final List<ClassDataCollector>						delegates	= new ArrayList<>();
+	final Map<ClassDataCollector, Predicate<TypeRef>>	filters		= new IdentityHashMap<>();
+	final Reporter										reporter;
 
 	ClassDataCollectors(Reporter reporter) {
 		this.reporter = reporter;
@@ -29,8 +40,42 @@ class ClassDataCollectors implements Closeable {
 		delegates.add(cd);
 	}
 
+	/**
+	 * Add a collector that is only interested in classes that carry an
+	 * annotation accepted by the annotation filter. The annotation can be
+	 * anywhere in the class: on the class, a member or a parameter.
+	 *
+	 * @param cd the collector
+	 * @param annotationFilter the filter on the annotation type
+	 */
+	void add(ClassDataCollector cd, Predicate<TypeRef> annotationFilter) {
+		delegates.add(cd);
+		filters.put(cd, annotationFilter);
+	}
+
 	void parse(Clazz clazz) throws Exception {
-		clazz.parseClassFileWithCollector(new Collectors(clazz));
+		List<ClassDataCollector> shortlist = shortlist(clazz);
+		if (shortlist.isEmpty()) {
+			return;
+		}
+		clazz.parseClassFileWithCollector(new Collectors(clazz, shortlist));
+	}
+
+	private List<ClassDataCollector> shortlist(Clazz clazz) throws Exception {
+		if (filters.isEmpty()) {
+			return new ArrayList<>(delegates);
+		}
+		clazz.parseClassFile(); // make sure the annotations are known
+		List<ClassDataCollector> shortlist = new ArrayList<>(delegates.size());
+		for (ClassDataCollector cd : delegates) {
+			Predicate<TypeRef> filter = filters.get(cd);
+			if ((filter == null) || clazz.annotations()
+				.stream()
+				.anyMatch(filter)) {
+				shortlist.add(cd);
+			}
+		}
+		return shortlist;
 	}
 
 	void with(Clazz clazz, ClassDataCollector cd) throws Exception {
@@ -53,15 +98,16 @@ class ClassDataCollectors implements Closeable {
 			}
 		}
 		delegates.clear();
+		filters.clear();
 	}
 
 	private class Collectors extends ClassDataCollector {
 		private final Clazz						clazz;
 		private final List<ClassDataCollector>	shortlist;
 
-		Collectors(Clazz clazz) {
+		Collectors(Clazz clazz, List<ClassDataCollector> shortlist) {
 			this.clazz = clazz;
-			this.shortlist = new ArrayList<>(delegates);
+			this.shortlist = shortlist;
 		}
 
 		@Override
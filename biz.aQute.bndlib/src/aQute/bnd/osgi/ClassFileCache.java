@@ -0,0 +1,285 @@
+package aQute.bnd.osgi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.lib.io.IO;
+
+/**
+ * A persistent cache of the analysis summaries of class files. The summary
+ * holds what a {@link Clazz} exposes after parsing: the class name, access
+ * flags, class file version, super class, interfaces, referred types, API
+ * packages and annotations. The key is the SHA-256 digest of the class file
+ * bytes so a class file with the same content will not be parsed again, even
+ * across builds. The full bnd version is part of the key since another bnd,
+ * including a snapshot build of the same release, may analyze a class file
+ * differently.
+ * <p>
+ * The cache is kept in memory as an LRU map bounded by a maximum number of
+ * entries and is written to a single file in the cache directory on close.
+ */
+public class ClassFileCache implements Closeable {
+	private final static Logger				logger				= LoggerFactory.getLogger(ClassFileCache.class);
+	private final static int				MAGIC				= 0xBDCF0002;
+	private final static String				FILE_NAME			= "summaries";
+	private final static byte[]				VERSION				= About.getBndVersion()
+		.getBytes(UTF_8);
+	public final static int					DEFAULT_MAX_ENTRIES	= 100_000;
+
+	private final File						dir;
+	private final int						maxEntries;
+	private final Map<ByteBuffer, Entry>	entries;
+	private final AtomicInteger				hits				= new AtomicInteger();
+	private final AtomicInteger				misses				= new AtomicInteger();
+	private boolean							loaded;
+	private boolean							dirty;
+
+	/**
+	 * The summary of a parsed class file. Type and package names are binary
+	 * names.
+	 */
+	static final class Entry {
+		final String	className;
+		final int		access;
+		final int		major;
+		final int		minor;
+		final boolean	innerClass;
+		final boolean	deprecated;
+		final boolean	defaultConstructor;
+		final boolean	runtimeAnnotations;
+		final boolean	classAnnotations;
+		final String	superClass;
+		final String[]	interfaces;
+		final String[]	xref;
+		final String[]	api;
+		final String[]	annotations;
+
+		Entry(String className, int access, int major, int minor, boolean innerClass, boolean deprecated,
+			boolean defaultConstructor, boolean runtimeAnnotations, boolean classAnnotations, String superClass,
+			String[] interfaces, String[] xref, String[] api, String[] annotations) {
+			this.className = className;
+			this.access = access;
+			this.major = major;
+			this.minor = minor;
+			this.innerClass = innerClass;
+			this.deprecated = deprecated;
+			this.defaultConstructor = defaultConstructor;
+			this.runtimeAnnotations = runtimeAnnotations;
+			this.classAnnotations = classAnnotations;
+			this.superClass = superClass;
+			this.interfaces = interfaces;
+			this.xref = xref;
+			this.api = api;
+			this.annotations = annotations;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeUTF(className);
+			out.writeInt(access);
+			out.writeShort(major);
+			out.writeShort(minor);
+			int flags = (innerClass ? 0x01 : 0) | (deprecated ? 0x02 : 0) | (defaultConstructor ? 0x04 : 0)
+				| (runtimeAnnotations ? 0x08 : 0) | (classAnnotations ? 0x10 : 0);
+			out.writeByte(flags);
+			writeString(out, superClass);
+			writeStrings(out, interfaces);
+			writeStrings(out, xref);
+			writeStrings(out, api);
+			writeStrings(out, annotations);
+		}
+
+		static Entry read(DataInputStream in) throws IOException {
+			String className = in.readUTF();
+			int access = in.readInt();
+			int major = in.readUnsignedShort();
+			int minor = in.readUnsignedShort();
+			int flags = in.readUnsignedByte();
+			String superClass = readString(in);
+			String[] interfaces = readStrings(in);
+			String[] xref = readStrings(in);
+			String[] api = readStrings(in);
+			String[] annotations = readStrings(in);
+			return new Entry(className, access, major, minor, (flags & 0x01) != 0, (flags & 0x02) != 0,
+				(flags & 0x04) != 0, (flags & 0x08) != 0, (flags & 0x10) != 0, superClass, interfaces, xref, api,
+				annotations);
+		}
+
+		private static void writeString(DataOutputStream out, String s) throws IOException {
+			out.writeBoolean(s != null);
+			if (s != null) {
+				out.writeUTF(s);
+			}
+		}
+
+		private static String readString(DataInputStream in) throws IOException {
+			return in.readBoolean() ? in.readUTF() : null;
+		}
+
+		private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+			if (strings == null) {
+				out.writeInt(-1);
+				return;
+			}
+			out.writeInt(strings.length);
+			for (String s : strings) {
+				out.writeUTF(s);
+			}
+		}
+
+		private static String[] readStrings(DataInputStream in) throws IOException {
+			int length = in.readInt();
+			if (length < 0) {
+				return null;
+			}
+			String[] strings = new String[length];
+			for (int i = 0; i < length; i++) {
+				strings[i] = in.readUTF();
+			}
+			return strings;
+		}
+	}
+
+	/**
+	 * Create a class file cache.
+	 *
+	 * @param dir the directory to store the cache in
+	 * @param maxEntries the maximum number of summaries to keep
+	 */
+	public ClassFileCache(File dir, int maxEntries) {
+		this.dir = dir;
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<>(1024, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Entry> eldest) {
+				return size() > ClassFileCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Calculate the key for the class file content. The key includes the bnd
+	 * version and the options that influence the summary.
+	 */
+	static byte[] key(ByteBuffer bb, boolean noClassForName) throws Exception {
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		md.update(bb.duplicate());
+		md.update(VERSION);
+		md.update((byte) (noClassForName ? 1 : 0));
+		return md.digest();
+	}
+
+	synchronized Entry get(byte[] key) {
+		load();
+		Entry entry = entries.get(ByteBuffer.wrap(key));
+		if (entry == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return entry;
+	}
+
+	synchronized void put(byte[] key, Entry entry) {
+		load();
+		entries.put(ByteBuffer.wrap(key), entry);
+		dirty = true;
+	}
+
+	public int hits() {
+		return hits.get();
+	}
+
+	public int misses() {
+		return misses.get();
+	}
+
+	public synchronized int size() {
+		load();
+		return entries.size();
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		File file = new File(dir, FILE_NAME);
+		if (!file.isFile()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(IO.stream(file)))) {
+			if (in.readInt() != MAGIC) {
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				byte[] key = new byte[in.readUnsignedByte()];
+				in.readFully(key);
+				entries.put(ByteBuffer.wrap(key), Entry.read(in));
+			}
+		} catch (IOException e) {
+			logger.debug("Ignoring unreadable class file cache {}", file, e);
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Write the cache to disk if it was modified. The entries are written
+	 * least recently used first so that the LRU order is retained. The file is
+	 * replaced atomically so concurrent readers see either the old or the new
+	 * content.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+		IO.mkdirs(dir);
+		File tmp = File.createTempFile(FILE_NAME, ".tmp", dir);
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(IO.outputStream(tmp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(entries.size());
+				for (Map.Entry<ByteBuffer, Entry> e : entries.entrySet()) {
+					ByteBuffer key = e.getKey()
+						.duplicate();
+					out.writeByte(key.remaining());
+					while (key.hasRemaining()) {
+						out.writeByte(key.get());
+					}
+					e.getValue()
+						.write(out);
+				}
+			}
+			Files.move(tmp.toPath(), new File(dir, FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			IO.delete(tmp);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ClassFileCache [dir=" + dir + ", hits=" + hits + ", misses=" + misses + "]";
+	}
+}
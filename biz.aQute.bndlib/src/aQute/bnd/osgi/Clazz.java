@@ -326,7 +326,7 @@ public class Clazz {
 		}
 
 		public TypeRef getOwnerType() {
-			return classDef.getType();
+			return getClassName();
 		}
 
 		public abstract String getName();
@@ -724,8 +724,10 @@ public class Clazz {
 		}
 	}
 
-	public static final Comparator<Clazz>	NAME_COMPARATOR					= (Clazz a,
-		Clazz b) -> a.classFile.this_class.compareTo(b.classFile.this_class);
+	public static final Comparator<Clazz>	NAME_COMPARATOR					= (Clazz a, Clazz b) -> a.getClassName()
+		.getBinary()
+		.compareTo(b.getClassName()
+			.getBinary());
 
 	private boolean							hasRuntimeAnnotations;
 	private boolean							hasClassAnnotations;
@@ -746,6 +748,13 @@ public class Clazz {
 
 	private Map<TypeRef, Integer>			referred						= null;
 
+	/**
+	 * Set when the class was restored from the {@link ClassFileCache} and not
+	 * (yet) parsed.
+	 */
+	private ClassFileCache.Entry			summary;
+	private TypeRef							className;
+
 	final Analyzer							analyzer;
 	final String							path;
 	final Resource							resource;
@@ -770,6 +779,12 @@ public class Clazz {
 	public Set<TypeRef> parseClassFileWithCollector(ClassDataCollector cd) throws Exception {
 		ByteBuffer bb = resource.buffer();
 		if (bb != null) {
+			if (cd == null) {
+				ClassFileCache cache = analyzer.getClassFileCache();
+				if (cache != null) {
+					return parseClassFileData(bb, cache);
+				}
+			}
 			return parseClassFileData(ByteBufferDataInput.wrap(bb), cd);
 		}
 		return parseClassFile(resource.openInputStream(), cd);
@@ -787,6 +802,115 @@ public class Clazz {
 		return xref;
 	}
 
+	/**
+	 * Restore the class from the cache when the summary of the class file is
+	 * known. Otherwise parse the class file and add its summary to the cache.
+	 * If a collector is used later, the class file is parsed then.
+	 */
+	private synchronized Set<TypeRef> parseClassFileData(ByteBuffer bb, ClassFileCache cache) throws Exception {
+		if ((classFile != null) || (summary != null)) {
+			return xref;
+		}
+		byte[] key = ClassFileCache.key(bb, analyzer.is(Constants.NOCLASSFORNAME));
+		ClassFileCache.Entry entry = cache.get(key);
+		if (entry != null) {
+			restore(entry);
+			return xref;
+		}
+		parseClassFileData(ByteBufferDataInput.wrap(bb));
+		cache.put(key, summarize());
+		return xref;
+	}
+
+	private ClassFileCache.Entry summarize() {
+		return new ClassFileCache.Entry(classDef.getType()
+			.getBinary(), classFile.access, classFile.major_version, classFile.minor_version, classDef.isInnerClass(),
+			classDef.isDeprecated(), hasDefaultConstructor, hasRuntimeAnnotations, hasClassAnnotations,
+			(superClass != null) ? superClass.getBinary() : null, binaries(interfaces), binaries(xref),
+			(api != null) ? api.stream()
+				.map(PackageRef::getBinary)
+				.toArray(String[]::new) : null,
+			binaries(annotations));
+	}
+
+	private static String[] binaries(TypeRef[] types) {
+		return (types != null) ? binaries(Arrays.asList(types)) : null;
+	}
+
+	private static String[] binaries(Collection<TypeRef> types) {
+		return (types != null) ? types.stream()
+			.map(TypeRef::getBinary)
+			.toArray(String[]::new) : null;
+	}
+
+	private void restore(ClassFileCache.Entry entry) {
+		summary = entry;
+		className = analyzer.getTypeRef(entry.className);
+		if (entry.superClass != null) {
+			superClass = analyzer.getTypeRef(entry.superClass);
+		}
+		if (entry.interfaces != null) {
+			interfaces = Arrays.stream(entry.interfaces)
+				.map(analyzer::getTypeRef)
+				.toArray(TypeRef[]::new);
+		}
+		for (String binary : entry.xref) {
+			TypeRef typeRef = analyzer.getTypeRef(binary);
+			xref.add(typeRef);
+			if (!typeRef.isPrimitive()) {
+				PackageRef packageRef = typeRef.getPackageRef();
+				if (!packageRef.isPrimitivePackage()) {
+					imports.add(packageRef);
+				}
+			}
+		}
+		if (entry.api != null) {
+			api = Arrays.stream(entry.api)
+				.map(analyzer::getPackageRef)
+				.collect(toSet());
+		}
+		if (entry.annotations != null) {
+			annotations = Arrays.stream(entry.annotations)
+				.map(analyzer::getTypeRef)
+				.collect(toSet());
+		}
+		hasDefaultConstructor = entry.defaultConstructor;
+		hasRuntimeAnnotations = entry.runtimeAnnotations;
+		hasClassAnnotations = entry.classAnnotations;
+	}
+
+	/**
+	 * Parse the class file if the class was restored from the cache and we
+	 * need more than the summary.
+	 */
+	private void expand() {
+		if ((classFile != null) || (summary == null)) {
+			return;
+		}
+		try {
+			ByteBuffer bb = resource.buffer();
+			if (bb != null) {
+				parseClassFileData(ByteBufferDataInput.wrap(bb));
+			} else {
+				try (DataInputStream din = new DataInputStream(resource.openInputStream())) {
+					parseClassFileData(din);
+				}
+			}
+		} catch (Exception e) {
+			throw Exceptions.duck(e);
+		}
+	}
+
+	private ClassDef classDef() {
+		expand();
+		return classDef;
+	}
+
+	private ClassFile classFile() {
+		expand();
+		return classFile;
+	}
+
 	private synchronized Set<TypeRef> parseClassFileData(DataInput in) throws Exception {
 		if (classFile != null) {
 			return xref;
@@ -928,12 +1052,12 @@ public class Clazz {
 	}
 
 	public Stream<FieldDef> fields() {
-		return Arrays.stream(classFile.fields)
+		return Arrays.stream(classFile().fields)
 			.map(FieldDef::new);
 	}
 
 	public Stream<MethodDef> methods() {
-		return Arrays.stream(classFile.methods)
+		return Arrays.stream(classFile().methods)
 			.map(MethodDef::new);
 	}
 
@@ -1773,7 +1897,8 @@ public class Clazz {
 			}
 			case VERSION -> {
 				requireNonNull(instr);
-				String v = classFile.major_version + "." + classFile.minor_version;
+				String v = (summary != null) ? summary.major + "." + summary.minor
+					: classFile.major_version + "." + classFile.minor_version;
 				yield instr.matches(v) ^ instr.isNegated();
 			}
 			case IMPLEMENTS -> {
@@ -1840,15 +1965,18 @@ public class Clazz {
 
 	@Override
 	public String toString() {
-		return (classDef != null) ? classDef.getName() : resource.toString();
+		if (classDef != null) {
+			return classDef.getName();
+		}
+		return (className != null) ? className.getFQN() : resource.toString();
 	}
 
 	public boolean isPublic() {
-		return classDef.isPublic();
+		return Modifier.isPublic(getAccess());
 	}
 
 	public boolean isProtected() {
-		return classDef.isProtected();
+		return Modifier.isProtected(getAccess());
 	}
 
 	public boolean isEnum() {
@@ -1856,12 +1984,12 @@ public class Clazz {
 		 * The additional check for superClass name avoids stating that an
 		 * anonymous inner class of an enum is an enum class.
 		 */
-		return classDef.isEnum() && superClass.getBinary()
+		return isEnum(getAccess()) && superClass.getBinary()
 			.equals("java/lang/Enum");
 	}
 
 	public boolean isSynthetic() {
-		return classDef.isSynthetic();
+		return isSynthetic(getAccess());
 	}
 
 	static boolean isSynthetic(int access) {
@@ -1869,11 +1997,12 @@ public class Clazz {
 	}
 
 	public boolean isModule() {
-		return classDef.isModule();
+		return isModule(getAccess());
 	}
 
 	public boolean isPackageInfo() {
-		return classDef.isPackageInfo();
+		return getClassName().getBinary()
+			.endsWith("/package-info");
 	}
 
 	static boolean isModule(int access) {
@@ -1885,8 +2014,7 @@ public class Clazz {
 	}
 
 	public JAVA getFormat() {
-		return JAVA.format(classFile.major_version);
-
+		return JAVA.format((summary != null) ? summary.major : classFile.major_version);
 	}
 
 	public static String objectDescriptorToFQN(String string) {
@@ -1948,11 +2076,11 @@ public class Clazz {
 	}
 
 	public boolean isInterface() {
-		return classDef.isInterface();
+		return Modifier.isInterface(getAccess());
 	}
 
 	public boolean isAbstract() {
-		return classDef.isAbstract();
+		return Modifier.isAbstract(getAccess());
 	}
 
 	public boolean hasPublicNoArgsConstructor() {
@@ -1960,23 +2088,23 @@ public class Clazz {
 	}
 
 	public int getAccess() {
-		return classDef.getAccess();
+		return (summary != null) ? summary.access : classDef.getAccess();
 	}
 
 	public Stream<Annotation> annotations(String binaryNameFilter) {
-		return classDef.annotations(binaryNameFilter);
+		return classDef().annotations(binaryNameFilter);
 	}
 
 	public Stream<TypeAnnotation> typeAnnotations(String binaryNameFilter) {
-		return classDef.typeAnnotations(binaryNameFilter);
+		return classDef().typeAnnotations(binaryNameFilter);
 	}
 
 	public TypeRef getClassName() {
-		return classDef.getType();
+		return (summary != null) ? className : classDef.getType();
 	}
 
 	public boolean isInnerClass() {
-		return classDef.isInnerClass();
+		return (summary != null) ? summary.innerClass : classDef.isInnerClass();
 	}
 
 	public TypeRef getSuper() {
@@ -1984,7 +2112,7 @@ public class Clazz {
 	}
 
 	public String getFQN() {
-		return classDef.getName();
+		return getClassName().getFQN();
 	}
 
 	public TypeRef[] getInterfaces() {
@@ -2000,15 +2128,15 @@ public class Clazz {
 	}
 
 	public boolean isFinal() {
-		return classDef.isFinal();
+		return Modifier.isFinal(getAccess());
 	}
 
 	public boolean isDeprecated() {
-		return classDef.isDeprecated();
+		return (summary != null) ? summary.deprecated : classDef.isDeprecated();
 	}
 
 	public boolean isAnnotation() {
-		return classDef.isAnnotation();
+		return isAnnotation(getAccess());
 	}
 
 	static boolean isAnnotation(int access) {
@@ -2042,16 +2170,16 @@ public class Clazz {
 	}
 
 	public String getClassSignature() {
-		return classDef.getSignature();
+		return classDef().getSignature();
 	}
 
 	public String getSourceFile() {
-		return classDef.getSourceFile();
+		return classDef().getSourceFile();
 	}
 
 	public Map<String, Object> getDefaults() throws Exception {
 		parseClassFile();
-		if (!classDef.isAnnotation()) {
+		if (!isAnnotation()) {
 			return emptyMap();
 		}
 		Map<String, Object> map = methods().filter(m -> m.attribute(AnnotationDefaultAttribute.class)
@@ -0,0 +1,209 @@
+package aQute.bnd.osgi;
+
+import java.util.Arrays;
+
+/**
+ * An index over the ordered instructions of an {@link Instructions} that finds
+ * the instructions matching a value without trying every instruction.
+ * <p>
+ * The instructions are placed in a trie of characters. A literal instruction
+ * is placed at the node of its literal, a {@code com.foo.*} package
+ * instruction at the node of {@code com.foo} and any other wildcard instruction
+ * at the node of the literal prefix of its glob. Walking the trie along a value
+ * therefore visits every instruction that can match the value. Literal and
+ * package instructions are decided during the walk, the wildcard instructions
+ * found during the walk are then tried in instruction order. Wildcard
+ * instructions without a known prefix are placed at the root and are always
+ * tried.
+ * <p>
+ * Instances are immutable and answer the same instructions, in the same order,
+ * as trying every instruction in turn.
+ */
+final class CompiledInstructions {
+	private static final int[]	NONE	= new int[0];
+
+	private final Instruction[]	instructions;
+	private final Node			root	= new Node();
+	private final int			any;
+
+	private static final class Node {
+		char[]	keys		= new char[0];
+		Node[]	children	= new Node[0];
+		int[]	literals	= NONE;
+		int[]	packages	= NONE;
+		int[]	wildcards	= NONE;
+
+		Node child(char c) {
+			char[] keys = this.keys;
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		Node add(String path) {
+			Node node = this;
+			for (int i = 0, length = path.length(); i < length; i++) {
+				char c = path.charAt(i);
+				Node next = node.child(c);
+				if (next == null) {
+					next = new Node();
+					int n = node.keys.length;
+					node.keys = Arrays.copyOf(node.keys, n + 1);
+					node.children = Arrays.copyOf(node.children, n + 1);
+					node.keys[n] = c;
+					node.children[n] = next;
+				}
+				node = next;
+			}
+			return node;
+		}
+	}
+
+	CompiledInstructions(Instruction[] instructions) {
+		this.instructions = instructions;
+		int any = Integer.MAX_VALUE;
+		for (int i = 0; i < instructions.length; i++) {
+			Instruction instruction = instructions[i];
+			if (instruction.isAny()) {
+				if (any == Integer.MAX_VALUE) {
+					any = i;
+				}
+			} else if (instruction.isLiteral() && !instruction.isCaseInsensitive()) {
+				Node node = root.add(instruction.getLiteral());
+				node.literals = append(node.literals, i);
+			} else if (instruction.isPackagePrefix()) {
+				Node node = root.add(instruction.getPrefix());
+				node.packages = append(node.packages, i);
+			} else {
+				String prefix = instruction.getPrefix();
+				Node node = (prefix == null) ? root : root.add(prefix);
+				node.wildcards = append(node.wildcards, i);
+			}
+		}
+		this.any = any;
+	}
+
+	int size() {
+		return instructions.length;
+	}
+
+	Instruction get(int index) {
+		return instructions[index];
+	}
+
+	/**
+	 * Answer the index of the first instruction that matches the value.
+	 *
+	 * @param value the value to match
+	 * @return the index or -1 if no instruction matches
+	 */
+	int first(String value) {
+		int best = any;
+		int[] candidates = NONE;
+		int count = 0;
+		Node node = root;
+		final int length = value.length();
+		for (int k = 0;; k++) {
+			if (node.packages.length > 0 && node.packages[0] < best
+				&& (k == length || value.charAt(k) == '.')) {
+				best = node.packages[0];
+			}
+			for (int index : node.wildcards) {
+				if (index >= best) {
+					break;
+				}
+				if (count == candidates.length) {
+					candidates = Arrays.copyOf(candidates, Math.max(8, count * 2));
+				}
+				candidates[count++] = index;
+			}
+			if (k == length) {
+				if (node.literals.length > 0 && node.literals[0] < best) {
+					best = node.literals[0];
+				}
+				break;
+			}
+			node = node.child(value.charAt(k));
+			if (node == null) {
+				break;
+			}
+		}
+		if (count > 1) {
+			Arrays.sort(candidates, 0, count);
+		}
+		for (int i = 0; i < count; i++) {
+			int index = candidates[i];
+			if (index >= best) {
+				break;
+			}
+			if (instructions[index].matches(value)) {
+				return index;
+			}
+		}
+		return (best == Integer.MAX_VALUE) ? -1 : best;
+	}
+
+	/**
+	 * Answer the indexes of all instructions that match the value, in
+	 * instruction order.
+	 *
+	 * @param value the value to match
+	 * @return the indexes
+	 */
+	int[] all(String value) {
+		int[] matches = NONE;
+		int count = 0;
+		Node node = root;
+		final int length = value.length();
+		for (int k = 0;; k++) {
+			if (k == length || value.charAt(k) == '.') {
+				for (int index : node.packages) {
+					matches = add(matches, count++, index);
+				}
+			}
+			for (int index : node.wildcards) {
+				if (instructions[index].matches(value)) {
+					matches = add(matches, count++, index);
+				}
+			}
+			if (k == length) {
+				for (int index : node.literals) {
+					matches = add(matches, count++, index);
+				}
+				break;
+			}
+			node = node.child(value.charAt(k));
+			if (node == null) {
+				break;
+			}
+		}
+		if (any != Integer.MAX_VALUE) {
+			for (int index = any; index < instructions.length; index++) {
+				if (instructions[index].isAny()) {
+					matches = add(matches, count++, index);
+				}
+			}
+		}
+		matches = Arrays.copyOf(matches, count);
+		Arrays.sort(matches);
+		return matches;
+	}
+
+	private static int[] add(int[] array, int count, int value) {
+		if (count == array.length) {
+			array = Arrays.copyOf(array, Math.max(8, count * 2));
+		}
+		array[count] = value;
+		return array;
+	}
+
+	private static int[] append(int[] array, int value) {
+		int n = array.length;
+		array = Arrays.copyOf(array, n + 1);
+		array[n] = value;
+		return array;
+	}
+}
@@ -164,6 +164,7 @@ public interface Constants {
 	String		JAVAC_SOURCE								= "javac.source";
 	String		JAVAC_TARGET								= "javac.target";
 	String		JAVAC_PROFILE								= "javac.profile";
+	String		JAVAC_INPROCESS								= "javac.inprocess";
 	String		JAVAC										= "javac";
 	String		JAVA										= "java";
 	String		JAVA_DEBUG									= "java.debug";
@@ -183,6 +184,7 @@ public interface Constants {
 	String		SAVEMANIFEST								= "-savemanifest";
 	String		NAMESECTION									= "-namesection";
 	String		NOBUILDINCACHE								= "-nobuildincache";
+	String		CLASSFILECACHE								= "-classfilecache";
 	String		NODEFAULTVERSION							= "-nodefaultversion";
 	String		NOEXTRAHEADERS								= "-noextraheaders";
 	String		NOJUNIT										= "-nojunit";
@@ -193,6 +195,12 @@ public interface Constants {
 	String		MANIFEST_NAME								= "-manifest-name";
 	String		NOUSES										= "-nouses";
 	String		NOCLASSFORNAME								= "-noclassforname";
+	String		PARALLELANALYSIS							= "-parallelanalysis";
+	String		PARALLELSUB									= "-parallelsub";
+	String		STALENESS									= "-staleness";
+	String		BUILDCACHE									= "-buildcache";
+	String		STALENESS_TIMESTAMP							= "timestamp";
+	String		STALENESS_DIGEST							= "digest";
 	String		NOIMPORTJAVA								= "-noimportjava";
 	String		NOBUNDLES									= "-nobundles";
 	String		OUTPUTMASK									= "-outputmask";																																						// default
@@ -286,6 +294,7 @@ public interface Constants {
 	String		TESTPATH									= "-testpath";
 	String		TESTCONTINUOUS								= "-testcontinuous";
 	String		TESTTERMINATE								= "-testterminate";
+	String		TESTSHARDS									= "-testshards";
 	String		TESTSOURCES									= "-testsources";
 	String		TESTUNRESOLVED								= "-testunresolved";
 	String		TESTER										= "-tester";
@@ -315,12 +324,13 @@ public interface Constants {
 		NOBUILDINCACHE, EXTENSION, NOJUNIT, NOJUNITOSGI, PREPROCESSMATCHERS, UPTO, INVALIDFILENAMES, FIXUPMESSAGES,
 		PRIVATEPACKAGE, CONDITIONALPACKAGE, NOEE, OUTPUTMASK, TESTUNRESOLVED, RUNJDB, RUNENV, RUNEE, EEPROFILE,
 		RUNREQUIRES, EXPORT, GESTALT, BNDDRIVER, CHECK, DISTRO, METATYPE_ANNOTATIONS, METATYPE_ANNOTATIONS_OPTIONS,
-		PACKAGEINFOTYPE, JAVAC_SOURCE, JAVAC_TARGET, JAVAC_PROFILE, JAVAC, JAVA, JAVA_DEBUG, EXPORTTYPE, RUNREMOTE,
+		PACKAGEINFOTYPE, JAVAC_SOURCE, JAVAC_TARGET, JAVAC_PROFILE, JAVAC_INPROCESS, JAVAC, JAVA, JAVA_DEBUG, EXPORTTYPE, RUNREMOTE,
 		TESTER, AUGMENT, REQUIRE_BND, GROUPID, STANDALONE, IGNORE_STANDALONE, RUNREPOS, INIT, MAVEN_RELEASE, BUILDREPO,
 		CONNECTION_SETTINGS, RUNPROVIDEDCAPABILITIES, WORKINGSET, RUNSTORAGE, REPRODUCIBLE, INCLUDEPACKAGE,
 		CDIANNOTATIONS, REMOTEWORKSPACE, MAVEN_DEPENDENCIES, BUILDERIGNORE, STALECHECK, MAVEN_SCOPE, RUNSTARTLEVEL,
 		RUNOPTIONS, NOCLASSFORNAME, EXPORT_APIGUARDIAN, RESOLVE, DEFINE_CONTRACT, GENERATE, RUNFRAMEWORKRESTART,
-		NOIMPORTJAVA, VERSIONDEFAULTS, LIBRARY);
+		NOIMPORTJAVA, VERSIONDEFAULTS, LIBRARY, PARALLELANALYSIS, PARALLELSUB,
+		CLASSFILECACHE, STALENESS, BUILDCACHE, TESTSHARDS);
 
 	// Ignore bundle specific headers. These headers do not make a lot of sense
 	// to inherit
@@ -3,9 +3,9 @@ package aQute.bnd.osgi;
 import static java.util.Objects.requireNonNull;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.osgi.annotation.versioning.ProviderType;
 
@@ -15,13 +15,17 @@ import aQute.bnd.signatures.FieldSignature;
 import aQute.bnd.signatures.MethodSignature;
 import aQute.libg.generics.Create;
 
+/**
+ * The caches are concurrent so that class files can be parsed in parallel
+ * against the same descriptors, see {@link Constants#PARALLELANALYSIS}.
+ */
 public class Descriptors {
-	private final Map<String, TypeRef>			typeRefCache			= new HashMap<>();
-	private final Map<String, Descriptor>		descriptorCache			= new HashMap<>();
-	private final Map<String, PackageRef>		packageRefCache			= new HashMap<>();
-	private final Map<String, ClassSignature>	classSignatureCache		= new HashMap<>();
-	private final Map<String, MethodSignature>	methodSignatureCache	= new HashMap<>();
-	private final Map<String, FieldSignature>	fieldSignatureCache		= new HashMap<>();
+	private final Map<String, TypeRef>			typeRefCache			= new ConcurrentHashMap<>();
+	private final Map<String, Descriptor>		descriptorCache			= new ConcurrentHashMap<>();
+	private final Map<String, PackageRef>		packageRefCache			= new ConcurrentHashMap<>();
+	private final Map<String, ClassSignature>	classSignatureCache		= new ConcurrentHashMap<>();
+	private final Map<String, MethodSignature>	methodSignatureCache	= new ConcurrentHashMap<>();
+	private final Map<String, FieldSignature>	fieldSignatureCache		= new ConcurrentHashMap<>();
 
 	// MUST BE BEFORE PRIMITIVES, THEY USE THE DEFAULT PACKAGE!!
 	final static PackageRef						DEFAULT_PACKAGE			= new PackageRef();
@@ -455,7 +459,10 @@ public class Descriptors {
 			TypeRef ref = typeRefCache.get(binaryClassName);
 			if (ref == null) {
 				ref = new ArrayRef(getTypeRef(binaryClassName.substring(1)));
-				typeRefCache.put(binaryClassName, ref);
+				TypeRef existing = typeRefCache.putIfAbsent(binaryClassName, ref);
+				if (existing != null) {
+					ref = existing;
+				}
 			}
 			return ref;
 		}
@@ -66,6 +66,13 @@ public class Instruction {
 	private final int				matchFlags;
 	private Pattern					pattern;
 	private boolean					optional;
+	/*
+	 * A literal prefix of all values a wildcard instruction can match and if
+	 * the instruction matches the prefix as a package, see
+	 * CompiledInstructions.
+	 */
+	private String					prefix;
+	private boolean					packagePrefix;
 
 	public Instruction(String input) {
 
@@ -127,8 +134,12 @@ public class Instruction {
 		// also include the last full package. I.e.
 		// com.foo.* includes com.foo (unlike OSGi)
 		if (s.regionMatches(end - 2, ".*", 0, 2)) {
-			s = s.substring(start, end - 2)
-				.concat("(?:.*)?");
+			s = s.substring(start, end - 2);
+			if (flags == 0 && literalPrefix(s) == s.length()) {
+				prefix = s;
+				packagePrefix = true;
+			}
+			s = s.concat("(?:.*)?");
 			literal = false;
 		} else {
 			s = s.substring(start, end);
@@ -145,7 +156,25 @@ public class Instruction {
 			pattern = Glob.toPattern(s, flags);
 			match = s;
 			matchFlags = flags;
+			if (prefix == null && flags == 0 && s.indexOf('|') < 0) {
+				prefix = s.substring(0, literalPrefix(s));
+			}
+		}
+	}
+
+	/*
+	 * The length of the leading part of a glob that Glob.toPattern turns into
+	 * plain literal characters.
+	 */
+	private static int literalPrefix(String glob) {
+		final int length = glob.length();
+		for (int i = 0; i < length; i++) {
+			char c = glob.charAt(i);
+			if (!Character.isLetterOrDigit(c) && "._-/$@%:".indexOf(c) < 0) {
+				return i;
+			}
 		}
+		return length;
 	}
 
 	public static Instruction legacy(String input) {
@@ -312,6 +341,29 @@ public class Instruction {
 		return any;
 	}
 
+	/**
+	 * Answer the literal prefix of all values this wildcard instruction can
+	 * match.
+	 *
+	 * @return the prefix or {@code null} if not known
+	 */
+	String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Answer if this instruction matches exactly its prefix and the values
+	 * that start with its prefix followed by a '.'. This is the common
+	 * {@code com.foo.*} package instruction.
+	 */
+	boolean isPackagePrefix() {
+		return packagePrefix;
+	}
+
+	boolean isCaseInsensitive() {
+		return (matchFlags & Pattern.CASE_INSENSITIVE) != 0;
+	}
+
 	public boolean finds(String value) {
 		return getMatcher(value).find();
 	}
@@ -5,6 +5,7 @@ import static java.util.stream.Collectors.toSet;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -24,7 +25,13 @@ import aQute.lib.collections.MultiMap;
 import aQute.lib.io.IO;
 
 public class Instructions implements Map<Instruction, Attrs> {
+	/*
+	 * Below this size trying every instruction is as fast as the compiled
+	 * index.
+	 */
+	private static final int					COMPILE_THRESHOLD	= 8;
 	private LinkedHashMap<Instruction, Attrs>	map;
+	private volatile CompiledInstructions		compiled;
 	public static Instructions					ALWAYS	= new Instructions();
 	static Map<Instruction, Attrs>				EMPTY	= Collections.emptyMap();
 
@@ -54,6 +61,7 @@ public class Instructions implements Map<Instruction, Attrs> {
 	@Override
 	public void clear() {
 		map.clear();
+		compiled = null;
 	}
 
 	public boolean containsKey(Instruction name) {
@@ -137,6 +145,7 @@ public class Instructions implements Map<Instruction, Attrs> {
 		if (map == null)
 			map = new LinkedHashMap<>();
 
+		compiled = null;
 		return map.put(key, value);
 	}
 
@@ -147,6 +156,7 @@ public class Instructions implements Map<Instruction, Attrs> {
 				return;
 			this.map = new LinkedHashMap<>();
 		}
+		compiled = null;
 		this.map.putAll(map);
 	}
 
@@ -157,12 +167,14 @@ public class Instructions implements Map<Instruction, Attrs> {
 		if (map == null)
 			return null;
 
+		compiled = null;
 		return map.remove(var0);
 	}
 
 	public Attrs remove(Instruction var0) {
 		if (map == null)
 			return null;
+		compiled = null;
 		return map.remove(var0);
 	}
 
@@ -212,6 +224,11 @@ public class Instructions implements Map<Instruction, Attrs> {
 		if (emptyIsAll && isEmpty())
 			return input;
 
+		CompiledInstructions compiled = compiled();
+		if (compiled != null) {
+			return select(compiled, input, unused);
+		}
+
 		List<T> result = new ArrayList<>();
 
 		for (Instruction instruction : keySet()) {
@@ -232,6 +249,54 @@ public class Instructions implements Map<Instruction, Attrs> {
 		return result;
 	}
 
+	/*
+	 * Select with the compiled index. Each element is only matched until its
+	 * first matching instruction. The result is ordered by instruction and then
+	 * by input order, as when the instructions are tried in turn.
+	 */
+	private static <T> Collection<T> select(CompiledInstructions compiled, List<T> input, Set<Instruction> unused) {
+		final int size = compiled.size();
+		int[] first = new int[input.size()];
+		int[] counts = new int[size + 1];
+		for (int i = 0; i < first.length; i++) {
+			int index = compiled.first(input.get(i)
+				.toString());
+			first[i] = index;
+			if (index >= 0) {
+				counts[index + 1]++;
+			}
+		}
+		int[] offsets = new int[size + 1];
+		for (int index = 0; index < size; index++) {
+			offsets[index + 1] = offsets[index] + counts[index + 1];
+		}
+		Object[] ordered = new Object[offsets[size]];
+		int[] next = Arrays.copyOf(offsets, size);
+		for (int i = 0; i < first.length; i++) {
+			int index = first[i];
+			if (index >= 0) {
+				ordered[next[index]++] = input.get(i);
+			}
+		}
+		List<T> result = new ArrayList<>(ordered.length);
+		for (int index = 0; index < size; index++) {
+			Instruction instruction = compiled.get(index);
+			if (counts[index + 1] == 0) {
+				if (unused != null)
+					unused.add(instruction);
+				continue;
+			}
+			if (instruction.isNegated())
+				continue;
+			for (int i = offsets[index]; i < offsets[index + 1]; i++) {
+				@SuppressWarnings("unchecked")
+				T element = (T) ordered[i];
+				result.add(element);
+			}
+		}
+		return result;
+	}
+
 	public <T> Collection<T> reject(Collection<T> set) {
 		List<T> input = new ArrayList<>(set);
 		List<T> result = new ArrayList<>();
@@ -253,6 +318,11 @@ public class Instructions implements Map<Instruction, Attrs> {
 	}
 
 	public Instruction matcher(String value) {
+		CompiledInstructions compiled = compiled();
+		if (compiled != null) {
+			int index = compiled.first(value);
+			return (index < 0) ? null : compiled.get(index);
+		}
 		for (Instruction i : keySet()) {
 			if (i.matches(value)) {
 				return i;
@@ -282,6 +352,18 @@ public class Instructions implements Map<Instruction, Attrs> {
 
 	public MapStream<Instruction, Attrs> matchesStream(String value) {
 		requireNonNull(value);
+		CompiledInstructions compiled = compiled();
+		if (compiled != null) {
+			List<Instruction> matches = new ArrayList<>();
+			for (int index : compiled.all(value)) {
+				Instruction instruction = compiled.get(index);
+				if (instruction.isNegated()) {
+					break;
+				}
+				matches.add(instruction);
+			}
+			return MapStream.ofEntries(matches.stream(), i -> MapStream.entry(i, get(i)));
+		}
 		AtomicBoolean negated = new AtomicBoolean(false);
 		return stream().filterKey(instruction -> {
 			if (negated.get() || !instruction.matches(value)) {
@@ -295,6 +377,25 @@ public class Instructions implements Map<Instruction, Attrs> {
 		});
 	}
 
+	/*
+	 * Answer the compiled index of the instructions or null when they are too
+	 * few to benefit. Changes through the map methods discard the index. The
+	 * views of the map only support removal, so a change through a view shows
+	 * as a size that differs from the size of the index.
+	 */
+	private CompiledInstructions compiled() {
+		LinkedHashMap<Instruction, Attrs> map = this.map;
+		if (map == null || map.size() < COMPILE_THRESHOLD) {
+			return null;
+		}
+		CompiledInstructions compiled = this.compiled;
+		if (compiled == null || compiled.size() != map.size()) {
+			this.compiled = compiled = new CompiledInstructions(map.keySet()
+				.toArray(new Instruction[0]));
+		}
+		return compiled;
+	}
+
 	/**
 	 * Turn this Instructions into a map of File -> Attrs. You can specify a
 	 * base directory, which will match all files in that directory against the
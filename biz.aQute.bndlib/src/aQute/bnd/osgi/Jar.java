@@ -42,7 +42,6 @@ import java.util.function.Predicate;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -53,7 +52,6 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 import aQute.bnd.exceptions.Exceptions;
 import aQute.bnd.stream.MapStream;
@@ -65,7 +63,11 @@ import aQute.lib.io.ByteBufferOutputStream;
 import aQute.lib.io.IO;
 import aQute.lib.io.IOConstants;
 import aQute.lib.manifest.ManifestUtil;
+import aQute.lib.zip.MappedZipFile;
+import aQute.lib.zip.ParallelZipWriter;
+import aQute.lib.zip.RawZipFile;
 import aQute.lib.zip.ZipUtil;
+import aQute.lib.zip.ZipWriter;
 import aQute.libg.cryptography.Digester;
 import aQute.libg.cryptography.SHA256;
 import aQute.libg.glob.PathSet;
@@ -89,9 +91,21 @@ public class Jar implements Closeable {
 	 */
 	private static final long	ZIP_ENTRY_CONSTANT_TIME	= 318211200000L;
 
+	/**
+	 * Read zip files with a memory mapped {@link MappedZipFile} instead of a
+	 * {@link ZipFile}. Mapped files cannot be deleted on Windows until the
+	 * mapping is garbage collected so this is not the default.
+	 */
+	private static final boolean	MAPPED_ZIP				= Boolean.getBoolean("bnd.zip.mapped");
+
 	public enum Compression {
 		DEFLATE,
-		STORE
+		STORE,
+		/**
+		 * Deflate the entries on multiple threads. Large entries are deflated
+		 * in chunks so their compressed bytes differ from DEFLATE.
+		 */
+		PARALLEL
 	}
 
 	private static final Pattern								DEFAULT_DO_NOT_COPY		= Pattern
@@ -106,6 +120,9 @@ public class Jar implements Closeable {
 	private String												name;
 	private File												source;
 	private ZipFile												zipFile;
+	private MappedZipFile										mappedZipFile;
+	private RawZipFile											rawZipFile;
+	private boolean												rawZipFileFailed;
 	private long												lastModified;
 	private String												lastModifiedReason;
 	private boolean												doNotTouchManifest;
@@ -296,13 +313,16 @@ public class Jar implements Closeable {
 	}
 
 	private Jar buildFromZip(File file) throws IOException {
+		if (MAPPED_ZIP && buildFromMappedZip(file)) {
+			return this;
+		}
 		try {
 			zipFile = new ZipFile(file);
 			for (ZipEntry entry : Iterables.iterable(zipFile.entries())) {
 				if (entry.isDirectory()) {
 					continue;
 				}
-				putResource(entry.getName(), new ZipResource(zipFile, entry), true);
+				putResource(entry.getName(), new ZipResource(zipFile, entry, this::getRawZipFile), true);
 			}
 			return this;
 		} catch (ZipException e) {
@@ -320,6 +340,43 @@ public class Jar implements Closeable {
 		}
 	}
 
+	/**
+	 * Answer false if the file cannot be mapped so the caller can fall back to
+	 * a ZipFile which also reports the errors.
+	 */
+	private boolean buildFromMappedZip(File file) {
+		try {
+			MappedZipFile zip = new MappedZipFile(file.toPath());
+			for (MappedZipFile.Entry entry : zip.entries()) {
+				if (entry.isDirectory()) {
+					continue;
+				}
+				putResource(entry.getName(), new MappedZipResource(zip, entry), true);
+			}
+			mappedZipFile = zip;
+			return true;
+		} catch (IOException | RuntimeException e) {
+			resources.clear();
+			directories.clear();
+			return false;
+		}
+	}
+
+	/**
+	 * Answer the zip file this jar was read from for reading the compressed
+	 * data of its entries, or null if not available.
+	 */
+	private synchronized RawZipFile getRawZipFile() {
+		if (rawZipFile == null && !rawZipFileFailed && zipFile != null && source != null) {
+			try {
+				rawZipFile = new RawZipFile(source.toPath());
+			} catch (IOException e) {
+				rawZipFileFailed = true;
+			}
+		}
+		return rawZipFile;
+	}
+
 	private Jar buildFromResource(Resource resource) throws Exception {
 		return buildFromInputStream(resource.openInputStream());
 	}
@@ -554,15 +611,22 @@ public class Jar implements Closeable {
 			out = digester = SHA256.getDigester(out);
 		}
 
-		ZipOutputStream jout = nomanifest || doNotTouchManifest ? new ZipOutputStream(out) : new JarOutputStream(out);
-
+		ZipWriter jout;
 		switch (compression) {
 			case STORE :
-				jout.setMethod(ZipOutputStream.STORED);
+				jout = new ZipWriter(out, !(nomanifest || doNotTouchManifest));
+				jout.setMethod(ZipEntry.STORED);
+				break;
+
+			case PARALLEL :
+				jout = new ParallelZipWriter(out, !(nomanifest || doNotTouchManifest), Processor.getPromiseFactory(),
+					Runtime.getRuntime()
+						.availableProcessors());
 				break;
 
 			default :
 				// default is DEFLATED
+				jout = new ZipWriter(out, !(nomanifest || doNotTouchManifest));
 		}
 
 		Set<String> done = new HashSet<>();
@@ -696,7 +760,7 @@ public class Jar implements Closeable {
 		return new String(cs);
 	}
 
-	private void doManifest(ZipOutputStream jout, Set<String> directories, String manifestName) throws Exception {
+	private void doManifest(ZipWriter jout, Set<String> directories, String manifestName) throws Exception {
 		check();
 		createDirectories(directories, jout, manifestName);
 		JarEntry ze = new JarEntry(manifestName);
@@ -716,7 +780,7 @@ public class Jar implements Closeable {
 		putEntry(jout, ze, r);
 	}
 
-	private void putEntry(ZipOutputStream jout, ZipEntry entry, Resource r) throws Exception {
+	private void putEntry(ZipWriter jout, ZipEntry entry, Resource r) throws Exception {
 
 		if (compression == Compression.STORE) {
 			ByteBuffer buffer = r.buffer();
@@ -724,7 +788,7 @@ public class Jar implements Closeable {
 				buffer = IO.copy(r.openInputStream(), new ByteBufferOutputStream())
 					.toByteBuffer();
 			}
-			entry.setMethod(ZipOutputStream.STORED);
+			entry.setMethod(ZipEntry.STORED);
 			CRC32 crc = new CRC32();
 			buffer.mark();
 			crc.update(buffer);
@@ -735,6 +799,18 @@ public class Jar implements Closeable {
 			jout.putNextEntry(entry);
 			IO.copy(buffer, jout);
 		} else {
+			// copy deflated entries from another zip file without
+			// inflating and deflating them again
+			ByteBuffer deflated = null;
+			if (r instanceof ZipResource zipResource) {
+				deflated = zipResource.deflated(entry);
+			} else if (r instanceof MappedZipResource mappedZipResource) {
+				deflated = mappedZipResource.deflated(entry);
+			}
+			if (deflated != null) {
+				jout.putRawEntry(entry, deflated);
+				return;
+			}
 			jout.putNextEntry(entry);
 			r.write(jout);
 		}
@@ -829,7 +905,7 @@ public class Jar implements Closeable {
 			return s;
 	}
 
-	private void writeResource(ZipOutputStream jout, Set<String> directories, String path, Resource resource)
+	private void writeResource(ZipWriter jout, Set<String> directories, String path, Resource resource)
 		throws Exception {
 		if (resource == null)
 			return;
@@ -858,7 +934,7 @@ public class Jar implements Closeable {
 		}
 	}
 
-	void createDirectories(Set<String> directories, ZipOutputStream zip, String name) throws IOException {
+	void createDirectories(Set<String> directories, ZipWriter zip, String name) throws IOException {
 		int index = name.lastIndexOf('/');
 		if (index > 0) {
 			String path = name.substring(0, index);
@@ -868,7 +944,7 @@ public class Jar implements Closeable {
 			ZipEntry ze = new ZipEntry(path + '/');
 			ZipUtil.setModifiedTime(ze, isReproducible() ? zipEntryConstantTime : lastModified());
 			if (compression == Compression.STORE) {
-				ze.setMethod(ZipOutputStream.STORED);
+				ze.setMethod(ZipEntry.STORED);
 				ze.setCrc(0L);
 				ze.setSize(0L);
 				ze.setCompressedSize(0L);
@@ -918,10 +994,15 @@ public class Jar implements Closeable {
 		this.closed = true;
 		if (closeResources) {
 			IO.close(zipFile);
+			synchronized (this) {
+				IO.close(rawZipFile);
+				rawZipFile = null;
+			}
 			resources.values()
 				.forEach(IO::close);
 		}
 		zipFile = null;
+		mappedZipFile = null;
 		resources.clear();
 		directories.clear();
 		manifest = null;
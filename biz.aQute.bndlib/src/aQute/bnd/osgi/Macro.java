@@ -31,6 +31,7 @@ import java.util.Date;
 import java.util.Deque;
 import java.util.Formatter;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
@@ -94,6 +95,28 @@ public class Macro {
 	private final static Pattern													NUMERIC_P		= Pattern
 		.compile("[-+]?(\\d*\\.?\\d+|\\d+\\.)(e[-+]?[0-9]+)?");
 
+	/*
+	 * The commands of this class that only depend on their arguments. A
+	 * property expansion that uses any other command is not cached.
+	 */
+	private final static Set<String>												PURE			= Set.of("uniq",
+		"removeall", "retainall", "pathseparator", "separator", "filter", "select", "filterout", "reject", "sort",
+		"nsort", "join", "sjoin", "replace", "replacelist", "replacestring", "toclasspath", "startswith", "endswith",
+		"extension", "basenameext", "stem", "substring", "length", "get", "sublist", "first", "last", "max", "min",
+		"nmax", "nmin", "vmax", "vmin", "sum", "average", "reverse", "indexof", "lastindexof", "find", "findlast",
+		"split", "toupper", "tolower", "compare", "ncompare", "vcompare", "matches", "subst", "trim", "isempty",
+		"isnumber", "unescape", "version_cleanup");
+	private final static int														MAX_PATTERNS	= 256;
+	private final static Map<String, Pattern>										patterns		= new LinkedHashMap<>(
+		64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+			return size() > MAX_PATTERNS;
+		}
+	};
+
 	Processor																		domain;
 	Reporter																		reporter;
 	Object																			targets[];
@@ -118,6 +141,9 @@ public class Macro {
 	}
 
 	String process(CharSequence line, Link link) {
+		if (isPlain(line)) {
+			return line.toString();
+		}
 		StringBuilder sb = new StringBuilder();
 		process(line, 0, '\u0000', '\u0000', sb, link, false);
 		return sb.toString();
@@ -127,7 +153,7 @@ public class Macro {
 		if (org == null) { // treat null like empty string
 			return index;
 		}
-		StringBuilder line = new StringBuilder(org);
+		CharSequence line = org;
 		int nesting = 1;
 		boolean first;
 
@@ -164,6 +190,7 @@ public class Macro {
 				if (index == 1 || Character.isWhitespace(line.charAt(index - 2))) {
 					// make sure it is preceded by whitespace or starts at begin
 					index++;
+					MacroCache.uncacheable();
 					variable.append(IO.absolutePath(domain.getBase()));
 					variable.append('/');
 					continue outer;
@@ -178,6 +205,46 @@ public class Macro {
 		return index;
 	}
 
+	/*
+	 * A line without macros, escapes and ./ sequences is its own expansion.
+	 */
+	private static boolean isPlain(CharSequence line) {
+		if (line == null) {
+			return false;
+		}
+		for (int i = 0, length = line.length(); i < length; i++) {
+			switch (line.charAt(i)) {
+				case '$' :
+				case '\\' :
+				case '\u0000' :
+					return false;
+				case '.' :
+					if (i + 1 < length && line.charAt(i + 1) == '/') {
+						return false;
+					}
+					break;
+				default :
+					break;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Answer the compiled regular expression, the same expressions are used
+	 * over and over by the commands.
+	 */
+	private static Pattern pattern(String regex) {
+		synchronized (patterns) {
+			Pattern pattern = patterns.get(regex);
+			if (pattern == null) {
+				pattern = Pattern.compile(regex);
+				patterns.put(regex, pattern);
+			}
+			return pattern;
+		}
+	}
+
 	public static char getTerminator(char c) {
 		return switch (c) {
 			case '(' -> ')';
@@ -197,8 +264,10 @@ public class Macro {
 	}
 
 	private String getMacro(String key, List<String> args2, Link link, char begin, char end) {
-		if (link != null && link.contains(key))
+		if (link != null && link.contains(key)) {
+			MacroCache.uncacheable();
 			return "${infinite:" + link.toString() + "}";
+		}
 
 		if (key != null) {
 			key = key.trim();
@@ -226,6 +295,7 @@ public class Macro {
 				if (args.length == 1) {
 					Instruction ins = new Instruction(args[0]);
 					if (!ins.isLiteral()) {
+						MacroCache.uncacheable();
 						String keyname = key;
 						return domain.stream()
 							.filter(ins::matches)
@@ -249,6 +319,7 @@ public class Macro {
 				//
 
 				String value = domain.getUnexpandedProperty(args[0]);
+				MacroCache.lookup(domain, args[0], value);
 				if (value != null) {
 					Link next = new Link(domain, link, key);
 					if (args.length > 1) {
@@ -277,6 +348,7 @@ public class Macro {
 				//
 
 				if (args.length == 1) {
+					MacroCache.uncacheable();
 					value = System.getProperty(args[0]);
 					if (value != null)
 						return value;
@@ -290,11 +362,13 @@ public class Macro {
 				if (!args[0].startsWith("[")) {
 
 					String profile = domain.getUnexpandedProperty(Constants.PROFILE);
+					MacroCache.lookup(domain, Constants.PROFILE, profile);
 
 					if (profile != null) {
 						profile = process(profile, link);
 						String profiledKey = "[" + profile + "]" + args[0];
 						value = domain.getUnexpandedProperty(profiledKey);
+						MacroCache.lookup(domain, profiledKey, value);
 						if (value != null) {
 							Link next = new Link(domain, link, key);
 							if (args.length > 1) {
@@ -321,6 +395,7 @@ public class Macro {
 	 */
 
 	private String processWithArgs(String template, String[] args, Link next) {
+		MacroCache.uncacheable();
 		try (Processor custom = new Processor(domain)) {
 
 			for (int i = 0; i < 16; i++) {
@@ -347,6 +422,7 @@ public class Macro {
 		if (value != LITERALVALUE) {
 			if (value != null)
 				return value;
+			MacroCache.uncacheable();
 			if (!flattening && !key.startsWith("@"))
 				reporter.warning("No translation found for macro: %s", key);
 		}
@@ -376,6 +452,7 @@ public class Macro {
 			}
 
 		if (args[0].startsWith("^")) {
+			MacroCache.uncacheable();
 			String varname = args[0].substring(1)
 				.trim();
 
@@ -462,18 +539,24 @@ public class Macro {
 			if (invoker == null) {
 				return null;
 			}
+			if (target != this || !PURE.contains(macro)) {
+				MacroCache.uncacheable();
+			}
 			try {
 				Object result = invoker.apply(target, args);
 				return result == null ? NULLVALUE : result.toString();
 			} catch (Error e) {
 				throw e;
 			} catch (WrongMethodTypeException e) {
+				MacroCache.uncacheable();
 				reporter.warning("Exception in replace: method=%s %s ", method, Exceptions.toString(e));
 				return NULLVALUE;
 			} catch (Exception e) {
+				MacroCache.uncacheable();
 				reporter.error("%s, for cmd: %s, arguments; %s", e.getMessage(), method, Arrays.toString(args));
 				return NULLVALUE;
 			} catch (Throwable e) {
+				MacroCache.uncacheable();
 				reporter.warning("Exception in replace: method=%s %s ", method, Exceptions.toString(e));
 				return NULLVALUE;
 			}
@@ -558,7 +641,7 @@ public class Macro {
 	String filter(String[] args, boolean include) {
 		verifyCommand(args, String.format(_filterHelp, args[0]), null, 3, 3);
 
-		Pattern pattern = Pattern.compile(args[2]);
+		Pattern pattern = pattern(args[2]);
 		String result = Strings.splitQuotedAsStream(args[1])
 			.filter(s -> pattern.matcher(s)
 				.matches() != include)
@@ -733,7 +816,7 @@ public class Macro {
 
 	private String replace0(String help, Function<String, Stream<String>> splitter, String[] args) {
 		verifyCommand(args, help, null, 3, 5);
-		Pattern regex = Pattern.compile(args[2]);
+		Pattern regex = pattern(args[2]);
 		String replace = (args.length > 3) ? args[3] : "";
 		Collector<CharSequence, ?, String> joining = (args.length > 4) ? Collectors.joining(args[4])
 			: Strings.joining();
@@ -749,7 +832,7 @@ public class Macro {
 
 	public String _replacestring(String[] args) {
 		verifyCommand(args, _replacestringHelp, null, 3, 4);
-		Pattern regex = Pattern.compile(args[2]);
+		Pattern regex = pattern(args[2]);
 		String replace = (args.length > 3) ? args[3] : "";
 		String result = regex.matcher(args[1])
 			.replaceAll(replace);
@@ -1897,7 +1980,7 @@ public class Macro {
 	public String _split(String[] args) throws Exception {
 		verifyCommand(args, _splitHelp, null, 2, Integer.MAX_VALUE);
 
-		Pattern regex = Pattern.compile(args[1]);
+		Pattern regex = pattern(args[1]);
 		String result = Arrays.stream(args, 2, args.length)
 			.flatMap(regex::splitAsStream)
 			.filter(element -> !element.isEmpty())
@@ -2008,7 +2091,8 @@ public class Macro {
 	public boolean _matches(String[] args) throws Exception {
 		verifyCommand(args, _matchesHelp, null, 3, 3);
 
-		return args[1].matches(args[2]);
+		return pattern(args[2]).matcher(args[1])
+			.matches();
 	}
 
 	static final String _substHelp = "${subst;<target>;<regex>[;<replace>[;count]]}";
@@ -2016,7 +2100,7 @@ public class Macro {
 	public StringBuffer _subst(String[] args) throws Exception {
 		verifyCommand(args, _substHelp, null, 3, 5);
 
-		Pattern p = Pattern.compile(args[2]);
+		Pattern p = pattern(args[2]);
 		Matcher matcher = p.matcher(args[1]);
 		String replace = (args.length > 3) ? args[3] : "";
 		int count = (args.length > 4) ? Integer.parseInt(args[4]) : Integer.MAX_VALUE;
@@ -0,0 +1,170 @@
+package aQute.bnd.osgi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The expanded values of the properties of a {@link Processor}.
+ * <p>
+ * While a property value is expanded, the {@link Macro} records the raw
+ * properties it looks up and whether it used anything else, like a file, the
+ * time or a command of a plugin. A value that only depends on raw properties
+ * is remembered together with these properties and their raw values. The value
+ * is reused as long as the raw value of the property itself and of every
+ * property it depends on are unchanged. Changing a property, directly or by
+ * reading a changed file, therefore only affects the values that depend on it.
+ */
+final class MacroCache {
+	private static final ThreadLocal<Recorder>	recording	= new ThreadLocal<>();
+
+	private final Map<String, Entry>			entries		= new ConcurrentHashMap<>();
+
+	private static final class Entry {
+		final String		raw;
+		final Processor		source;
+		final String		value;
+		final Processor[]	domains;
+		final String[]		keys;
+		final String[]		values;
+
+		Entry(String raw, Processor source, String value, Recorder recorder) {
+			this.raw = raw;
+			this.source = source;
+			this.value = value;
+			this.domains = recorder.domains.toArray(new Processor[0]);
+			this.keys = recorder.keys.toArray(new String[0]);
+			this.values = recorder.values.toArray(new String[0]);
+		}
+
+		boolean isValid(String raw, Processor source) {
+			if (this.source != source || !this.raw.equals(raw)) {
+				return false;
+			}
+			for (int i = 0; i < keys.length; i++) {
+				if (!Objects.equals(domains[i].getUnexpandedProperty(keys[i]), values[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * The lookups of an expansion in progress.
+	 */
+	static final class Recorder {
+		final Recorder			outer;
+		final List<Processor>	domains		= new ArrayList<>();
+		final List<String>		keys		= new ArrayList<>();
+		final List<String>		values		= new ArrayList<>();
+		boolean					uncacheable;
+
+		Recorder(Recorder outer) {
+			this.outer = outer;
+		}
+
+		void add(Processor domain, String key, String value) {
+			domains.add(domain);
+			keys.add(key);
+			values.add(value);
+		}
+	}
+
+	/**
+	 * Answer the remembered expansion of a property.
+	 *
+	 * @param key the property key
+	 * @param raw the raw value of the property
+	 * @param source the processor that defines the raw value
+	 * @return the expanded value or {@code null} if it must be expanded
+	 */
+	String get(String key, String raw, Processor source) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (!entry.isValid(raw, source)) {
+			entries.remove(key, entry);
+			return null;
+		}
+		Recorder recorder = recording.get();
+		if (recorder != null) {
+			for (int i = 0; i < entry.keys.length; i++) {
+				recorder.add(entry.domains[i], entry.keys[i], entry.values[i]);
+			}
+		}
+		return entry.value;
+	}
+
+	/**
+	 * Start recording the lookups of the expansion of a property.
+	 */
+	static Recorder begin() {
+		Recorder recorder = new Recorder(recording.get());
+		recording.set(recorder);
+		return recorder;
+	}
+
+	/**
+	 * Stop recording and remember the expansion if it only depends on raw
+	 * properties. The lookups are also added to the expansion this expansion
+	 * is part of.
+	 */
+	void end(Recorder recorder, String key, String raw, Processor source, String value) {
+		Recorder outer = recorder.outer;
+		if (outer == null) {
+			recording.remove();
+		} else {
+			recording.set(outer);
+			outer.domains.addAll(recorder.domains);
+			outer.keys.addAll(recorder.keys);
+			outer.values.addAll(recorder.values);
+			outer.uncacheable |= recorder.uncacheable;
+		}
+		if (!recorder.uncacheable && value != null) {
+			entries.put(key, new Entry(raw, source, value, recorder));
+		}
+	}
+
+	/**
+	 * Stop recording without remembering the expansion, for example because it
+	 * failed.
+	 */
+	static void abort(Recorder recorder) {
+		Recorder outer = recorder.outer;
+		if (outer == null) {
+			recording.remove();
+		} else {
+			recording.set(outer);
+			outer.uncacheable = true;
+		}
+	}
+
+	/**
+	 * Record the lookup of a raw property by the expansion in progress.
+	 */
+	static void lookup(Processor domain, String key, String value) {
+		Recorder recorder = recording.get();
+		if (recorder != null) {
+			recorder.add(domain, key, value);
+		}
+	}
+
+	/**
+	 * Record that the expansion in progress depends on more than raw
+	 * properties.
+	 */
+	static void uncacheable() {
+		Recorder recorder = recording.get();
+		if (recorder != null) {
+			recorder.uncacheable = true;
+		}
+	}
+
+	void clear() {
+		entries.clear();
+	}
+}
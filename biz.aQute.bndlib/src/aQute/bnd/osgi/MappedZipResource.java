@@ -0,0 +1,128 @@
+package aQute.bnd.osgi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.ZipEntry;
+
+import aQute.lib.io.IO;
+import aQute.lib.zip.MappedZipFile;
+import aQute.lib.zip.ZipUtil;
+
+/**
+ * A resource in a memory mapped zip file. The data of stored entries is not
+ * copied, deflated entries are inflated when they are read.
+ */
+public class MappedZipResource implements Resource {
+	private final MappedZipFile			zip;
+	private final MappedZipFile.Entry	entry;
+	// lazily inflated, classpath jars can be shared by concurrent sub-builders
+	private volatile ByteBuffer			buffer;
+	private ZipEntry					zipEntry;
+	private long						lastModified	= -11L;
+	private boolean						extraSet;
+	private String						extra;
+
+	MappedZipResource(MappedZipFile zip, MappedZipFile.Entry entry) {
+		this.zip = zip;
+		this.entry = entry;
+	}
+
+	@Override
+	public ByteBuffer buffer() throws Exception {
+		return getBuffer().duplicate();
+	}
+
+	private ByteBuffer getBuffer() throws IOException {
+		ByteBuffer bb = buffer;
+		if (bb != null) {
+			return bb;
+		}
+		return buffer = zip.getData(entry);
+	}
+
+	@Override
+	public InputStream openInputStream() throws Exception {
+		if (buffer != null || entry.getMethod() == ZipEntry.STORED) {
+			return IO.stream(buffer());
+		}
+		return zip.getInputStream(entry);
+	}
+
+	@Override
+	public void write(OutputStream out) throws Exception {
+		if (buffer != null || entry.getMethod() == ZipEntry.STORED) {
+			IO.copy(buffer(), out);
+		} else {
+			try (InputStream in = zip.getInputStream(entry)) {
+				IO.copy(in, out);
+			}
+		}
+	}
+
+	/**
+	 * Answer the deflated data of this resource as stored in the zip file, or
+	 * null if the entry is not deflated. The method, sizes and CRC-32 of the
+	 * given entry are set to match the returned data.
+	 */
+	ByteBuffer deflated(ZipEntry target) throws IOException {
+		if (entry.getMethod() != ZipEntry.DEFLATED || entry.isEncrypted()) {
+			return null;
+		}
+		ByteBuffer data = zip.getCompressedData(entry);
+		target.setMethod(ZipEntry.DEFLATED);
+		target.setCrc(entry.getCrc());
+		target.setSize(entry.getSize());
+		target.setCompressedSize(data.remaining());
+		return data;
+	}
+
+	private synchronized ZipEntry getZipEntry() {
+		if (zipEntry == null) {
+			zipEntry = entry.toZipEntry();
+		}
+		return zipEntry;
+	}
+
+	@Override
+	public long lastModified() {
+		if (lastModified != -11L) {
+			return lastModified;
+		}
+		return lastModified = ZipUtil.getModifiedTime(getZipEntry());
+	}
+
+	@Override
+	public String getExtra() {
+		if (!extraSet) {
+			byte[] bytes = entry.getExtra();
+			extra = bytes != null ? Resource.encodeExtra(bytes) : null;
+			extraSet = true;
+		}
+		return extra;
+	}
+
+	@Override
+	public void setExtra(String extra) {
+		this.extra = extra;
+		this.extraSet = true;
+	}
+
+	@Override
+	public long size() throws Exception {
+		long size = entry.getSize();
+		if (size >= 0L) {
+			return size;
+		}
+		return getBuffer().limit();
+	}
+
+	@Override
+	public void close() throws IOException {}
+
+	@Override
+	public String toString() {
+		return ":" + zip + "(" + entry.getName() + "):";
+	}
+}
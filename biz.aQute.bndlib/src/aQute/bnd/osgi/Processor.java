@@ -126,6 +126,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 	Properties									properties;
 	String										profile;
 	private Macro								replacer;
+	private final MacroCache					expanded		= new MacroCache();
 	private long								lastModified;
 	private File								propertiesFile;
 	private boolean								fixup			= true;
@@ -552,6 +553,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 	}
 
 	public void setBase(File base) {
+		expanded.clear();
 		if (base == null) {
 			this.base = null;
 			baseURI = null;
@@ -941,6 +943,7 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 	}
 
 	public void propertiesChanged() {
+		expanded.clear();
 		Processor p = getParent();
 		if (p != null) {
 			updateModified(p.lastModified(), "propertiesChanged");
@@ -1099,13 +1102,33 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 		}
 
 		if (value != null)
-			return getReplacer().process(value, source);
+			return expand(key, value, source);
 		else if (deflt != null)
 			return getReplacer().process(deflt, this);
 		else
 			return null;
 	}
 
+	/*
+	 * Expand the raw value of a property, reusing the previous expansion when
+	 * none of the properties it depends on changed.
+	 */
+	private String expand(String key, String value, Processor source) {
+		String result = expanded.get(key, value, source);
+		if (result != null) {
+			return result;
+		}
+		MacroCache.Recorder recorder = MacroCache.begin();
+		try {
+			result = getReplacer().process(value, source);
+		} catch (Throwable t) {
+			MacroCache.abort(recorder);
+			throw t;
+		}
+		expanded.end(recorder, key, value, source, result);
+		return result;
+	}
+
 	/**
 	 * Helper to load a properties file from disk.
 	 *
@@ -59,6 +59,10 @@ class URLResource implements Resource {
 			TaggedData tag = client.connectTagged(url);
 			conn = tag.getConnection();
 			in = tag.getInputStream();
+			if (conn == null) {
+				lastModified = tag.getModified();
+				return in;
+			}
 		} else {
 			conn = url.openConnection();
 			conn.connect();
@@ -6,20 +6,24 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.function.Supplier;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import aQute.lib.io.IO;
+import aQute.lib.zip.RawZipFile;
 import aQute.lib.zip.ZipUtil;
 
 public class ZipResource implements Resource {
-	private ByteBuffer		buffer;
-	private final ZipFile	zip;
-	private final ZipEntry	entry;
-	private final boolean	closeZipFile;
-	private long			lastModified;
-	private long			size;
-	private String			extra;
+	// lazily read, classpath jars can be shared by concurrent sub-builders
+	private volatile ByteBuffer			buffer;
+	private final ZipFile				zip;
+	private final ZipEntry				entry;
+	private final boolean				closeZipFile;
+	private final Supplier<RawZipFile>	rawZipFile;
+	private long						lastModified;
+	private long						size;
+	private String						extra;
 
 	ZipResource(Path path, String entryName) throws IOException {
 		this(new ZipFile(path.toFile()), entryName);
@@ -34,13 +38,22 @@ public class ZipResource implements Resource {
 	}
 
 	ZipResource(ZipFile zip, ZipEntry entry) {
-		this(zip, entry, false);
+		this(zip, entry, false, null);
+	}
+
+	ZipResource(ZipFile zip, ZipEntry entry, Supplier<RawZipFile> rawZipFile) {
+		this(zip, entry, false, rawZipFile);
 	}
 
 	private ZipResource(ZipFile zip, ZipEntry entry, boolean closeZipFile) {
+		this(zip, entry, closeZipFile, null);
+	}
+
+	private ZipResource(ZipFile zip, ZipEntry entry, boolean closeZipFile, Supplier<RawZipFile> rawZipFile) {
 		this.zip = zip;
 		this.entry = entry;
 		this.closeZipFile = closeZipFile;
+		this.rawZipFile = rawZipFile;
 		this.lastModified = -11L;
 		this.size = entry.getSize();
 		byte[] extra = entry.getExtra();
@@ -85,6 +98,32 @@ public class ZipResource implements Resource {
 		}
 	}
 
+	/**
+	 * Answer the deflated data of this resource as stored in the zip file, or
+	 * null if the entry is not deflated or the zip file cannot be read
+	 * directly. The method, sizes and CRC-32 of the given entry are set to
+	 * match the returned data.
+	 */
+	ByteBuffer deflated(ZipEntry target) throws IOException {
+		if (rawZipFile == null || entry.getMethod() != ZipEntry.DEFLATED) {
+			return null;
+		}
+		RawZipFile raw = rawZipFile.get();
+		if (raw == null) {
+			return null;
+		}
+		RawZipFile.Entry rawEntry = raw.getEntry(entry.getName());
+		if (rawEntry == null || rawEntry.isEncrypted() || !rawEntry.matches(entry)) {
+			return null;
+		}
+		ByteBuffer data = raw.readCompressed(rawEntry);
+		target.setMethod(ZipEntry.DEFLATED);
+		target.setCrc(rawEntry.getCrc());
+		target.setSize(rawEntry.getSize());
+		target.setCompressedSize(data.remaining());
+		return data;
+	}
+
 	@Override
 	public long lastModified() {
 		if (lastModified != -11L) {
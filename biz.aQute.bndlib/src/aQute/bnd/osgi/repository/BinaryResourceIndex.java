@@ -0,0 +1,393 @@
+package aQute.bnd.osgi.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.osgi.framework.Version;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.bnd.exceptions.FunctionWithException;
+import aQute.bnd.osgi.About;
+import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.osgi.resource.ResourceBuilder;
+import aQute.bnd.service.resource.SupportingResource;
+import aQute.lib.io.IO;
+import aQute.libg.cryptography.SHA256;
+
+/**
+ * A compact binary form of a list of resources. It is used as a cache of a
+ * parsed XML repository index so the index does not have to be parsed again
+ * when a repository is opened.
+ * <p>
+ * The file starts with a source key, a table with all the strings used in the
+ * resources and a table with the offset of each resource. Versions are stored
+ * pre-parsed. The file is read into memory, a large file is mapped, and a
+ * resource is only decoded when it is accessed.
+ * <p>
+ * The source key identifies what the resources were read from, typically the
+ * digest of the XML index, its base URI and the bnd version that parsed it. A
+ * binary index with a different source key is ignored.
+ */
+public class BinaryResourceIndex {
+	private final static Logger	logger			= LoggerFactory.getLogger(BinaryResourceIndex.class);
+	private final static int	MAGIC			= 0x424E4458;
+	private final static int	FORMAT			= 1;
+
+	private final static byte	STRING_TYPE		= 1;
+	private final static byte	LONG_TYPE		= 2;
+	private final static byte	DOUBLE_TYPE		= 3;
+	private final static byte	VERSION_TYPE	= 4;
+	private final static byte	LIST_TYPE		= 5;
+
+	private BinaryResourceIndex() {}
+
+	/**
+	 * Get the resources from the binary index file if it was created from the
+	 * same source. Otherwise get the resources from the parser and, if it
+	 * returns resources, store them in the binary index file for the next
+	 * time.
+	 * <p>
+	 * The parser adds the URIs of the indexes the source refers to to the
+	 * given set. The resources of a source with referrals are not stored since
+	 * the key does not cover the referred indexes.
+	 *
+	 * @param source the file the resources are parsed from
+	 * @param base the base URI used to resolve relative URIs in the source
+	 * @param binary the binary index file
+	 * @param parser parses the source, may return {@code null} if the source
+	 *            must not be cached
+	 * @return the resources
+	 */
+	public static List<Resource> getResources(File source, URI base, File binary,
+		FunctionWithException<Set<URI>, List<Resource>> parser) throws Exception {
+		String key = key(source, base);
+		List<Resource> resources = read(binary, key);
+		if (resources != null) {
+			return resources;
+		}
+		Set<URI> referrals = new LinkedHashSet<>();
+		resources = parser.apply(referrals);
+		if (!referrals.isEmpty()) {
+			logger.debug("Not caching {}, it refers to {}", source, referrals);
+			IO.delete(binary);
+		} else if (resources != null) {
+			try {
+				write(resources, key, binary);
+			} catch (IOException | IllegalArgumentException e) {
+				logger.debug("Unable to write binary index {}", binary, e);
+				IO.delete(binary);
+			}
+		}
+		return resources;
+	}
+
+	/**
+	 * The source key for a file and the base URI used to resolve relative URIs
+	 * in that file. The key includes the bnd version since another version may
+	 * parse the file differently.
+	 */
+	public static String key(File source, URI base) throws Exception {
+		return SHA256.digest(source)
+			.asHex() + " " + base + " " + About.getBndVersion();
+	}
+
+	/**
+	 * Read the resources from a binary index file.
+	 *
+	 * @param file the binary index file
+	 * @param key the expected source key
+	 * @return the resources or {@code null} if the file does not exist, is not
+	 *         valid or has another source key.
+	 */
+	public static List<Resource> read(File file, String key) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			ByteBuffer bb = IO.read(file.toPath());
+			if ((bb.getInt() != MAGIC) || (bb.getInt() != FORMAT) || !key.equals(string(bb))) {
+				return null;
+			}
+			String[] strings = new String[bb.getInt()];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = string(bb);
+			}
+			int[] offsets = new int[bb.getInt()];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = bb.getInt();
+			}
+			return new LazyResources(bb.slice(), strings, offsets);
+		} catch (RuntimeException | IOException e) {
+			logger.debug("Ignoring invalid binary index {}", file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write the resources to a binary index file. Supporting resources are
+	 * written as separate resources, like in the XML index.
+	 *
+	 * @param resources the resources
+	 * @param key the source key
+	 * @param file the binary index file
+	 * @throws IllegalArgumentException if a list attribute has elements of
+	 *             different types
+	 */
+	public static void write(Collection<? extends Resource> resources, String key, File file) throws IOException {
+		Set<Resource> all = new LinkedHashSet<>();
+		for (Resource resource : resources) {
+			all.add(resource);
+			if (resource instanceof SupportingResource s) {
+				all.addAll(s.getSupportingResources());
+			}
+		}
+
+		Map<String, Integer> strings = new LinkedHashMap<>();
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		DataOutputStream dout = new DataOutputStream(data);
+		List<Integer> offsets = new ArrayList<>(all.size());
+		for (Resource resource : all) {
+			offsets.add(dout.size());
+			List<Capability> capabilities = resource.getCapabilities(null);
+			dout.writeInt(capabilities.size());
+			for (Capability capability : capabilities) {
+				writeCapReq(dout, strings, capability.getNamespace(), capability.getDirectives(),
+					capability.getAttributes());
+			}
+			List<Requirement> requirements = resource.getRequirements(null);
+			dout.writeInt(requirements.size());
+			for (Requirement requirement : requirements) {
+				writeCapReq(dout, strings, requirement.getNamespace(), requirement.getDirectives(),
+					requirement.getAttributes());
+			}
+		}
+		dout.flush();
+
+		IO.mkdirs(file.getParentFile());
+		File tmp = IO.createTempFile(file.getParentFile(), "index", ".bin");
+		try (OutputStream out = IO.outputStream(tmp); DataOutputStream hout = new DataOutputStream(out)) {
+			hout.writeInt(MAGIC);
+			hout.writeInt(FORMAT);
+			writeString(hout, key);
+			hout.writeInt(strings.size());
+			for (String s : strings.keySet()) {
+				writeString(hout, s);
+			}
+			hout.writeInt(offsets.size());
+			for (int offset : offsets) {
+				hout.writeInt(offset);
+			}
+			data.writeTo(hout);
+		}
+		IO.rename(tmp, file);
+	}
+
+	private static void writeCapReq(DataOutputStream out, Map<String, Integer> strings, String namespace,
+		Map<String, String> directives, Map<String, Object> attributes) throws IOException {
+		out.writeInt(index(strings, namespace));
+		out.writeInt(directives.size());
+		for (Map.Entry<String, String> e : directives.entrySet()) {
+			out.writeInt(index(strings, e.getKey()));
+			out.writeInt(index(strings, e.getValue()));
+		}
+		int count = 0;
+		for (Object value : attributes.values()) {
+			if (value != null) {
+				count++;
+			}
+		}
+		out.writeInt(count);
+		for (Map.Entry<String, Object> e : attributes.entrySet()) {
+			Object value = e.getValue();
+			if (value == null) {
+				continue;
+			}
+			out.writeInt(index(strings, e.getKey()));
+			if (value instanceof List<?> list) {
+				byte type = list.isEmpty() ? STRING_TYPE : type(list.get(0));
+				out.writeByte(LIST_TYPE);
+				out.writeByte(type);
+				out.writeInt(list.size());
+				for (Object element : list) {
+					if (type(element) != type) {
+						throw new IllegalArgumentException("Mixed list attribute " + e.getKey());
+					}
+					writeValue(out, strings, type, element);
+				}
+			} else {
+				byte type = type(value);
+				out.writeByte(type);
+				writeValue(out, strings, type, value);
+			}
+		}
+	}
+
+	/*
+	 * Attributes are typed like in the XML index, see TypedAttribute. Values
+	 * of other types are stored in their string form.
+	 */
+	private static byte type(Object value) {
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return LONG_TYPE;
+		}
+		if (value instanceof Double || value instanceof Float) {
+			return DOUBLE_TYPE;
+		}
+		if (value instanceof Version || value instanceof aQute.bnd.version.Version) {
+			return VERSION_TYPE;
+		}
+		return STRING_TYPE;
+	}
+
+	private static void writeValue(DataOutputStream out, Map<String, Integer> strings, byte type, Object value)
+		throws IOException {
+		switch (type) {
+			case STRING_TYPE -> out.writeInt(index(strings, value.toString()));
+			case LONG_TYPE -> out.writeLong(((Number) value).longValue());
+			case DOUBLE_TYPE -> out.writeDouble(((Number) value).doubleValue());
+			case VERSION_TYPE -> {
+				Version version = (value instanceof aQute.bnd.version.Version v)
+					? new Version(v.getMajor(), v.getMinor(), v.getMicro(), v.getQualifier())
+					: (Version) value;
+				out.writeInt(version.getMajor());
+				out.writeInt(version.getMinor());
+				out.writeInt(version.getMicro());
+				out.writeInt(index(strings, version.getQualifier()));
+			}
+			default -> throw new IllegalArgumentException("Unsupported attribute type " + type);
+		}
+	}
+
+	private static int index(Map<String, Integer> strings, String s) {
+		return strings.computeIfAbsent(s, k -> strings.size());
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String string(ByteBuffer bb) {
+		int length = bb.getInt();
+		String s;
+		if (bb.hasArray()) {
+			s = new String(bb.array(), bb.arrayOffset() + bb.position(), length, StandardCharsets.UTF_8);
+			bb.position(bb.position() + length);
+		} else {
+			byte[] bytes = new byte[length];
+			bb.get(bytes);
+			s = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return s;
+	}
+
+	/**
+	 * The resources of a binary index. A resource is decoded when it is first
+	 * accessed.
+	 */
+	private static final class LazyResources extends AbstractList<Resource> {
+		private final ByteBuffer						data;
+		private final String[]							strings;
+		private final int[]								offsets;
+		private final AtomicReferenceArray<Resource>	resources;
+		private final Map<Version, Version>				versions	= new HashMap<>();
+
+		LazyResources(ByteBuffer data, String[] strings, int[] offsets) {
+			this.data = data;
+			this.strings = strings;
+			this.offsets = offsets;
+			this.resources = new AtomicReferenceArray<>(offsets.length);
+		}
+
+		@Override
+		public Resource get(int index) {
+			Resource resource = resources.get(index);
+			if (resource == null) {
+				resource = decode(offsets[index]);
+				if (!resources.compareAndSet(index, null, resource)) {
+					resource = resources.get(index);
+				}
+			}
+			return resource;
+		}
+
+		@Override
+		public int size() {
+			return offsets.length;
+		}
+
+		private Resource decode(int offset) {
+			ByteBuffer bb = data.duplicate();
+			bb.position(offset);
+			ResourceBuilder rb = new ResourceBuilder();
+			for (int i = bb.getInt(); i > 0; i--) {
+				rb.addCapability(decodeCapReq(bb));
+			}
+			for (int i = bb.getInt(); i > 0; i--) {
+				rb.addRequirement(decodeCapReq(bb));
+			}
+			return rb.build();
+		}
+
+		private CapReqBuilder decodeCapReq(ByteBuffer bb) {
+			CapReqBuilder builder = new CapReqBuilder(strings[bb.getInt()]);
+			for (int i = bb.getInt(); i > 0; i--) {
+				builder.addDirective(strings[bb.getInt()], strings[bb.getInt()]);
+			}
+			for (int i = bb.getInt(); i > 0; i--) {
+				String name = strings[bb.getInt()];
+				byte type = bb.get();
+				if (type == LIST_TYPE) {
+					byte elementType = bb.get();
+					int size = bb.getInt();
+					List<Object> list = new ArrayList<>(size);
+					for (int j = 0; j < size; j++) {
+						list.add(decodeValue(bb, elementType));
+					}
+					builder.addAttribute(name, list);
+				} else {
+					builder.addAttribute(name, decodeValue(bb, type));
+				}
+			}
+			return builder;
+		}
+
+		private Object decodeValue(ByteBuffer bb, byte type) {
+			return switch (type) {
+				case STRING_TYPE -> strings[bb.getInt()];
+				case LONG_TYPE -> bb.getLong();
+				case DOUBLE_TYPE -> bb.getDouble();
+				case VERSION_TYPE -> version(bb.getInt(), bb.getInt(), bb.getInt(), strings[bb.getInt()]);
+				default -> throw new IllegalArgumentException("Invalid attribute type " + type);
+			};
+		}
+
+		private Version version(int major, int minor, int micro, String qualifier) {
+			Version version = new Version(major, minor, micro, qualifier);
+			synchronized (versions) {
+				return versions.computeIfAbsent(version, v -> v);
+			}
+		}
+	}
+}
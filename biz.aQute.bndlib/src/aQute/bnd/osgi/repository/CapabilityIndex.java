@@ -0,0 +1,191 @@
+package aQute.bnd.osgi.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.osgi.framework.namespace.BundleNamespace;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.osgi.resource.FilterParser;
+import aQute.bnd.osgi.resource.FilterParser.And;
+import aQute.bnd.osgi.resource.FilterParser.BundleExpression;
+import aQute.bnd.osgi.resource.FilterParser.Expression;
+import aQute.bnd.osgi.resource.FilterParser.IdentityExpression;
+import aQute.bnd.osgi.resource.FilterParser.Op;
+import aQute.bnd.osgi.resource.FilterParser.PackageExpression;
+import aQute.bnd.osgi.resource.FilterParser.SimpleExpression;
+
+/**
+ * An index of the capabilities of the resources in a
+ * {@link ResourcesRepository}. The capabilities in the package, identity and
+ * bundle namespaces are indexed on their primary attribute, which has the name
+ * of the namespace. A requirement with a filter that has an equality clause on
+ * the primary attribute only needs to be matched against the capabilities with
+ * that value. The index returns the candidates in the order the resources were
+ * added so the result is the same as scanning all resources.
+ */
+class CapabilityIndex {
+	private final static Set<String>		INDEXED		= Set.of(PackageNamespace.PACKAGE_NAMESPACE,
+		IdentityNamespace.IDENTITY_NAMESPACE, BundleNamespace.BUNDLE_NAMESPACE);
+
+	private final Map<String, Partition>	partitions	= new HashMap<>();
+	private int								ordinal;
+
+	/**
+	 * The capabilities of a namespace keyed by the value of the primary
+	 * attribute. Capabilities without a usable primary attribute are kept
+	 * apart since they must be considered for every requirement.
+	 */
+	private static final class Partition {
+		final String						namespace;
+		final Map<String, List<Entry>>		byKey	= new HashMap<>();
+		final List<Entry>					unkeyed	= new ArrayList<>();
+		final Map<String, Optional<String>>	keys	= new ConcurrentHashMap<>();
+
+		Partition(String namespace) {
+			this.namespace = namespace;
+		}
+
+		void add(Entry entry) {
+			Object value = entry.capability.getAttributes()
+				.get(namespace);
+			if (value instanceof String key) {
+				byKey.computeIfAbsent(key, k -> new ArrayList<>())
+					.add(entry);
+			} else if (value instanceof Collection<?> collection && !collection.isEmpty()
+				&& collection.stream()
+					.allMatch(String.class::isInstance)) {
+				for (Object key : collection) {
+					List<Entry> entries = byKey.computeIfAbsent((String) key, k -> new ArrayList<>());
+					if (entries.isEmpty() || (entries.get(entries.size() - 1) != entry)) {
+						entries.add(entry);
+					}
+				}
+			} else {
+				unkeyed.add(entry);
+			}
+		}
+
+		/**
+		 * The candidates for the filter or {@code null} if the filter has no
+		 * equality clause on the primary attribute.
+		 */
+		List<Capability> candidates(String filter) {
+			Optional<String> key = keys.computeIfAbsent(filter, this::key);
+			if (key.isEmpty()) {
+				return null;
+			}
+			List<Entry> keyed = byKey.getOrDefault(key.get(), Collections.emptyList());
+			Stream<Entry> entries = unkeyed.isEmpty() ? keyed.stream()
+				: Stream.concat(keyed.stream(), unkeyed.stream())
+					.sorted((a, b) -> Integer.compare(a.ordinal, b.ordinal));
+			return entries.map(e -> e.capability)
+				.toList();
+		}
+
+		/**
+		 * Find the value of a top level equality clause on the primary
+		 * attribute. Values with escapes or wildcards are never indexed, we
+		 * then fall back to scanning.
+		 */
+		private Optional<String> key(String filter) {
+			try {
+				Expression expression = new FilterParser().parse(filter);
+				if (expression instanceof And and) {
+					for (Expression e : and.getExpressions()) {
+						String key = key(e);
+						if (key != null) {
+							return Optional.of(key);
+						}
+					}
+					return Optional.empty();
+				}
+				return Optional.ofNullable(key(expression));
+			} catch (RuntimeException e) {
+				return Optional.empty();
+			}
+		}
+
+		private String key(Expression expression) {
+			String key = null;
+			if (expression instanceof PackageExpression pe) {
+				key = namespace.equals(PackageNamespace.PACKAGE_NAMESPACE) ? pe.getPackageName() : null;
+			} else if (expression instanceof BundleExpression be) {
+				key = namespace.equals(BundleNamespace.BUNDLE_NAMESPACE) ? be.printExcludingRange() : null;
+			} else if (expression instanceof IdentityExpression ie) {
+				key = namespace.equals(IdentityNamespace.IDENTITY_NAMESPACE) ? ie.getSymbolicName() : null;
+			} else if (expression instanceof SimpleExpression se && (se.getOp() == Op.EQUAL)
+				&& namespace.equals(se.getKey())) {
+				key = se.getValue();
+			}
+			if ((key == null) || (key.indexOf('\\') >= 0) || (key.indexOf('*') >= 0)) {
+				return null;
+			}
+			return key;
+		}
+	}
+
+	private static final class Entry {
+		final int			ordinal;
+		final Capability	capability;
+
+		Entry(int ordinal, Capability capability) {
+			this.ordinal = ordinal;
+			this.capability = capability;
+		}
+	}
+
+	void add(Resource resource) {
+		for (String namespace : INDEXED) {
+			List<Capability> capabilities = resource.getCapabilities(namespace);
+			if (capabilities.isEmpty()) {
+				continue;
+			}
+			Partition partition = partitions.computeIfAbsent(namespace, Partition::new);
+			for (Capability capability : capabilities) {
+				partition.add(new Entry(ordinal++, capability));
+			}
+		}
+	}
+
+	void clear() {
+		partitions.clear();
+		ordinal = 0;
+	}
+
+	/**
+	 * Return the candidate capabilities for the requirement or {@code null}
+	 * if the index cannot be used for the requirement and all capabilities
+	 * must be scanned. The candidates still need to be matched against the
+	 * requirement.
+	 */
+	List<Capability> candidates(Requirement requirement) {
+		String namespace = requirement.getNamespace();
+		if (!INDEXED.contains(namespace)) {
+			return null;
+		}
+		String filter = requirement.getDirectives()
+			.get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
+		if (filter == null) {
+			return null;
+		}
+		Partition partition = partitions.get(namespace);
+		if (partition == null) {
+			return Collections.emptyList();
+		}
+		return partition.candidates(filter);
+	}
+}
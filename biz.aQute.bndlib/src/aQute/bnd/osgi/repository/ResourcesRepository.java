@@ -24,6 +24,7 @@ import aQute.bnd.service.resource.SupportingResource;
 public class ResourcesRepository extends BaseRepository {
 	private final Set<Resource>									resources;
 	private final Map<String, Predicate<Map<String, Object>>>	cache;
+	private final CapabilityIndex								index;
 
 	/**
 	 * Creates a new resources repository with an empty set of resources.
@@ -31,6 +32,7 @@ public class ResourcesRepository extends BaseRepository {
 	public ResourcesRepository() {
 		resources = new LinkedHashSet<>();
 		cache = new ConcurrentHashMap<>();
+		index = new CapabilityIndex();
 	}
 
 	/**
@@ -66,11 +68,22 @@ public class ResourcesRepository extends BaseRepository {
 
 	/**
 	 * Finds the providers of the specified requirement in this repository.
+	 * <p>
+	 * For the package, identity and bundle namespaces, a requirement whose
+	 * filter has an equality clause on the namespace attribute is only matched
+	 * against the capabilities with that attribute value. Otherwise all
+	 * capabilities in the namespace are scanned.
 	 *
 	 * @param requirement The requirement to find providers for.
 	 * @return A list of capabilities that satisfy the requirement.
 	 */
 	public List<Capability> findProvider(Requirement requirement) {
+		List<Capability> candidates = index.candidates(requirement);
+		if (candidates != null) {
+			return candidates.stream()
+				.filter(ResourceUtils.matcher(requirement, this::filterPredicate))
+				.collect(ResourceUtils.toCapabilities());
+		}
 		String namespace = requirement.getNamespace();
 		return resources.stream()
 			.flatMap(resource -> ResourceUtils.capabilityStream(resource, namespace))
@@ -100,9 +113,16 @@ public class ResourcesRepository extends BaseRepository {
 	 */
 	public void add(Resource resource) {
 		if (resource != null) {
-			resources.add(resource);
+			addResource(resource);
 			if (resource instanceof SupportingResource cr)
-				resources.addAll(cr.getSupportingResources());
+				cr.getSupportingResources()
+					.forEach(this::addResource);
+		}
+	}
+
+	private void addResource(Resource resource) {
+		if (resources.add(resource)) {
+			index.add(resource);
 		}
 	}
 
@@ -123,6 +143,7 @@ public class ResourcesRepository extends BaseRepository {
 	 */
 	protected void set(Collection<? extends Resource> resources) {
 		this.resources.clear();
+		index.clear();
 		addAll(resources);
 	}
 
@@ -5,21 +5,28 @@ import static java.util.Objects.requireNonNull;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.osgi.annotation.versioning.ConsumerType;
 import org.osgi.resource.Resource;
+import org.osgi.util.promise.Promise;
+import org.osgi.util.promise.PromiseFactory;
 
 import aQute.bnd.exceptions.Exceptions;
 import aQute.bnd.osgi.Domain;
+import aQute.bnd.osgi.Processor;
 import aQute.bnd.osgi.resource.ResourceBuilder;
 import aQute.lib.io.IO;
 import aQute.libg.reporter.slf4j.Slf4jReporter;
@@ -74,6 +81,7 @@ public class SimpleIndexer {
 	private long			increment	= -1L;
 	private FileAnalyzer	analyzer;
 	private Reporter		reporter	= new Slf4jReporter(SimpleIndexer.class);
+	private int				parallelism;
 
 	public SimpleIndexer() {}
 
@@ -116,7 +124,8 @@ public class SimpleIndexer {
 	}
 
 	/**
-	 * @param analyzer a resource analyzer
+	 * @param analyzer a resource analyzer, it is called for one file at a time
+	 *            unless a {@link #parallelism(int)} greater than 1 is set
 	 */
 	public SimpleIndexer analyzer(FileAnalyzer analyzer) {
 		this.analyzer = analyzer;
@@ -131,6 +140,33 @@ public class SimpleIndexer {
 		return this;
 	}
 
+	/**
+	 * Set the maximum number of files analyzed concurrently. A value of 1
+	 * analyzes the files one after another on the calling thread. When greater
+	 * than 1, the {@link FileAnalyzer} must be thread safe. When not set, the
+	 * files are analyzed one after another if there is a {@link FileAnalyzer}
+	 * and otherwise by as many threads as there are available processors. The
+	 * order of the resources is always the order of the files.
+	 *
+	 * @param parallelism the maximum number of files analyzed concurrently
+	 */
+	public SimpleIndexer parallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	private int parallelism() {
+		if (parallelism > 0) {
+			return parallelism;
+		}
+		// an analyzer is not required to be thread safe
+		return (analyzer == null) ? Runtime.getRuntime()
+			.availableProcessors() : 1;
+	}
+
 	/**
 	 * Generate the index to the specified output stream.
 	 *
@@ -157,12 +193,60 @@ public class SimpleIndexer {
 	 * @return the set of resources handled so far.
 	 */
 	public List<Resource> getResources() {
-		List<Resource> resources = files.stream()
+		List<File> indexable = files.stream()
 			.filter(f -> f.isFile() && !f.isHidden() && f.canRead())
-			.map(this::indexFile)
+			.collect(Collectors.toList());
+		int size = indexable.size();
+		URI[] uris = new URI[size];
+		for (int i = 0; i < size; i++) {
+			uris[i] = relativize(indexable.get(i));
+		}
+		Resource[] resources = new Resource[size];
+		Exception[] failures = new Exception[size];
+		AtomicInteger next = new AtomicInteger();
+		Runnable worker = () -> {
+			for (int i; (i = next.getAndIncrement()) < size;) {
+				try {
+					resources[i] = indexFile(indexable.get(i), uris[i]);
+				} catch (Exception e) {
+					failures[i] = e;
+				}
+			}
+		};
+		int workers = Math.min(parallelism(), size);
+		if (workers > 1) {
+			// the calling thread is one of the workers
+			PromiseFactory promiseFactory = Processor.getPromiseFactory();
+			List<Promise<Void>> promises = new ArrayList<>(workers - 1);
+			for (int i = 1; i < workers; i++) {
+				promises.add(promiseFactory.submit(() -> {
+					worker.run();
+					return null;
+				}));
+			}
+			worker.run();
+			try {
+				promiseFactory.all(promises)
+					.getValue();
+			} catch (InvocationTargetException e) {
+				throw Exceptions.duck(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread()
+					.interrupt();
+				throw Exceptions.duck(e);
+			}
+		} else {
+			worker.run();
+		}
+		// report on the calling thread since reporters need not be thread safe
+		for (int i = 0; i < size; i++) {
+			if (failures[i] != null) {
+				reporter.exception(failures[i], "Could not index file %s", indexable.get(i));
+			}
+		}
+		return Arrays.stream(resources)
 			.filter(Objects::nonNull)
 			.collect(Collectors.toList());
-		return resources;
 	}
 
 	public SimpleIndexer reporter(Reporter reporter) {
@@ -187,17 +271,13 @@ public class SimpleIndexer {
 		return repository;
 	}
 
-	private Resource indexFile(File file) {
-		try {
-			ResourceBuilder resourceBuilder = new ResourceBuilder();
-			if (resourceBuilder.addFile(file, relativize(file))) {
-				if (analyzer != null) {
-					analyzer.analyzeFile(file, resourceBuilder.safeResourceBuilder());
-				}
-				return resourceBuilder.build();
+	private Resource indexFile(File file, URI uri) throws Exception {
+		ResourceBuilder resourceBuilder = new ResourceBuilder();
+		if (resourceBuilder.addFile(file, uri)) {
+			if (analyzer != null) {
+				analyzer.analyzeFile(file, resourceBuilder.safeResourceBuilder());
 			}
-		} catch (Exception e) {
-			reporter.exception(e, "Could not index file %s", file);
+			return resourceBuilder.build();
 		}
 		return null;
 	}
@@ -1,6 +1,6 @@
 /**
  */
-@Version("3.1.0")
+@Version("3.2.0")
 package aQute.bnd.osgi.repository;
 
 import org.osgi.annotation.versioning.Version;
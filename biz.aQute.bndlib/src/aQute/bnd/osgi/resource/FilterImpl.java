@@ -31,6 +31,7 @@ import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import org.osgi.framework.Filter;
@@ -155,8 +156,12 @@ import aQute.bnd.unmodifiable.Maps;
  * will evaluate to {@code false} .
  */
 abstract class FilterImpl implements Filter {
+	/* parsed filters by filter string, see getFilter */
+	private static final Map<String, FilterImpl>	filters		= new ConcurrentHashMap<>();
+	private static final int						MAX_FILTERS	= 10_000;
+
 	/* normalized filter string for Filter object */
-	private transient String filterString;
+	private transient String						filterString;
 
 	/**
 	 * Creates a {@link FilterImpl} object. This filter object may be used to
@@ -173,6 +178,29 @@ abstract class FilterImpl implements Filter {
 		return new Parser(filterString).parse();
 	}
 
+	/**
+	 * Returns a {@link FilterImpl} object for the filter string. The same
+	 * requirement filters are matched against many capabilities, so the parsed
+	 * filters are shared. A parsed filter keeps the filter values converted to
+	 * the type of the attribute values it was last matched against, e.g. a
+	 * version, so sharing also saves converting the filter values again.
+	 *
+	 * @param filterString the filter string.
+	 * @throws InvalidSyntaxException If the filter parameter contains an
+	 *             invalid filter string that cannot be parsed.
+	 */
+	static FilterImpl getFilter(String filterString) throws InvalidSyntaxException {
+		FilterImpl filter = filters.get(filterString);
+		if (filter == null) {
+			filter = createFilter(filterString);
+			if (filters.size() >= MAX_FILTERS) {
+				filters.clear();
+			}
+			filters.putIfAbsent(filterString, filter);
+		}
+		return filter;
+	}
+
 	FilterImpl() {
 		// empty constructor for subclasses
 	}
@@ -688,12 +716,20 @@ abstract class FilterImpl implements Filter {
 	}
 
 	static class Equal extends Item {
-		final String	value;
-		private Object	cached;
+		final String			value;
+		private volatile Object	cached;
 
 		Equal(String attr, String value) {
 			super(attr);
 			this.value = value;
+			if (attr.endsWith("version")) {
+				// version attributes are almost always compared as versions
+				try {
+					cached = Version.valueOf(value.trim());
+				} catch (IllegalArgumentException e) {
+					// not a version after all
+				}
+			}
 		}
 
 		private <T> T convert(Class<T> type, Function<String, ? extends T> converter) {
@@ -706,6 +742,23 @@ abstract class FilterImpl implements Filter {
 			return converted;
 		}
 
+		/**
+		 * Convert the value to the type of the attribute value with the
+		 * reflective valueOf method or constructor of that type. The result is
+		 * cached since looking up the method on every match is expensive.
+		 */
+		private Object convert(Class<?> type) {
+			Object converted = cached;
+			if ((converted != null) && (converted.getClass() == type)) {
+				return converted;
+			}
+			converted = valueOf(type);
+			if (converted != null) {
+				cached = converted;
+			}
+			return converted;
+		}
+
 		boolean comparison(int compare) {
 			return compare == 0;
 		}
@@ -778,7 +831,7 @@ abstract class FilterImpl implements Filter {
 
 		@Override
 		boolean compare_Comparable(Comparable<Object> value1) {
-			Object value2 = valueOf(value1.getClass());
+			Object value2 = convert(value1.getClass());
 			if (value2 == null) {
 				return false;
 			}
@@ -792,7 +845,7 @@ abstract class FilterImpl implements Filter {
 
 		@Override
 		boolean compare_Unknown(Object value1) {
-			Object value2 = valueOf(value1.getClass());
+			Object value2 = convert(value1.getClass());
 			if (value2 == null) {
 				return false;
 			}
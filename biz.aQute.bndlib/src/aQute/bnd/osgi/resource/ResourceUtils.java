@@ -423,7 +423,7 @@ public abstract class ResourceUtils {
 			return m -> true;
 		}
 		try {
-			Filter filter = FilterImpl.createFilter(filterString);
+			Filter filter = FilterImpl.getFilter(filterString);
 			return filter::matches;
 		} catch (InvalidSyntaxException e) {
 			return m -> false;
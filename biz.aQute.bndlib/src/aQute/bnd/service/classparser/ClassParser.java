@@ -1,9 +1,26 @@
 package aQute.bnd.service.classparser;
 
+import java.util.Collections;
+import java.util.Set;
+
 import aQute.bnd.osgi.Analyzer;
 import aQute.bnd.osgi.ClassDataCollector;
 
 public interface ClassParser {
 
 	ClassDataCollector getClassDataCollector(Analyzer analyzer);
+
+	/**
+	 * The fully qualified names of the annotations the class data collector is
+	 * interested in. The collector is then only called for classes that carry
+	 * at least one of these annotations. All classes in the bundle are visited
+	 * in a single pass for all collectors so a narrow set of annotations saves
+	 * visiting classes that the collector would ignore anyway.
+	 *
+	 * @return the annotation names or an empty set if the collector must see
+	 *         all classes
+	 */
+	default Set<String> getAnnotations() {
+		return Collections.emptySet();
+	}
 }
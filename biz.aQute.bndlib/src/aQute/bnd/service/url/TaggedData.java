@@ -9,11 +9,13 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URLConnection;
+import java.net.http.HttpResponse;
 import java.util.Date;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import aQute.bnd.http.HttpRequestException;
+import aQute.lib.date.Dates;
 import aQute.lib.io.IO;
 
 /**
@@ -31,6 +33,7 @@ public class TaggedData implements Closeable {
 	private final URI			url;
 	private final File			file;
 	private final String		message;
+	private final long			modified;
 
 	public TaggedData(URLConnection con, InputStream in) throws Exception {
 		this(con, in, null);
@@ -46,6 +49,46 @@ public class TaggedData implements Closeable {
 		this.url = con.getURL()
 			.toURI();
 		this.message = getMessage(con);
+		this.modified = -1L;
+	}
+
+	public TaggedData(HttpResponse<InputStream> response, InputStream in, File file) throws Exception {
+		this.con = null;
+		this.responseCode = response.statusCode();
+		this.file = file;
+		this.etag = response.headers()
+			.firstValue("ETag")
+			.orElse(null);
+		this.url = response.uri();
+		this.modified = response.headers()
+			.firstValue("Last-Modified")
+			.map(this::getModified)
+			.orElse(0L);
+		if (responseCode / 100 == 2) {
+			this.in = (in != null) ? in : response.body();
+			this.message = null;
+		} else {
+			this.in = in;
+			this.message = getMessage(response);
+		}
+	}
+
+	private long getModified(String lastModified) {
+		try {
+			return Dates.parseMillis(Dates.RFC_7231_DATE_TIME, lastModified);
+		} catch (Exception e) {
+			return 0L;
+		}
+	}
+
+	private String getMessage(HttpResponse<InputStream> response) {
+		try (InputStream body = response.body()) {
+			if (response.statusCode() / 100 < 4)
+				return null;
+			return cleanHtml(IO.collect(body));
+		} catch (Exception e) {
+			return null;
+		}
 	}
 
 	private String getMessage(URLConnection con) {
@@ -129,13 +172,18 @@ public class TaggedData implements Closeable {
 	}
 
 	public TaggedData(URI url, int responseCode, File file) throws Exception {
+		this(url, responseCode, file, "");
+	}
+
+	public TaggedData(URI url, int responseCode, File file, String etag) throws Exception {
 		this.file = file;
 		this.con = null;
 		this.in = null;
-		this.etag = "";
+		this.etag = etag;
 		this.responseCode = responseCode;
 		this.url = url;
 		this.message = null;
+		this.modified = -1L;
 	}
 
 	/**
@@ -162,7 +210,7 @@ public class TaggedData implements Closeable {
 	public long getModified() {
 		if (con != null)
 			return con.getLastModified();
-		return -1;
+		return modified;
 	}
 
 	public boolean hasPayload() throws IOException {
@@ -5,6 +5,7 @@ import static aQute.bnd.exceptions.FunctionWithException.asFunctionOrElse;
 import java.io.File;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -12,6 +13,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.osgi.framework.namespace.IdentityNamespace;
 import org.osgi.resource.Capability;
@@ -26,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import aQute.bnd.exceptions.Exceptions;
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Processor;
 import aQute.bnd.osgi.repository.BaseRepository;
 import aQute.bnd.osgi.repository.BridgeRepository;
 import aQute.bnd.osgi.repository.ResourcesRepository;
@@ -51,11 +54,26 @@ public class FileSetRepository extends BaseRepository implements Plugin, Reposit
 	private volatile Deferred<BridgeRepository>	repository;
 	private Reporter							reporter;
 	private final PromiseFactory				promiseFactory;
+	private final int							parallelism;
 
 	public FileSetRepository(String name, Collection<File> files) throws Exception {
+		this(name, files, Runtime.getRuntime()
+			.availableProcessors());
+	}
+
+	/**
+	 * @param name the name of the repository
+	 * @param files the files of the repository
+	 * @param parallelism the maximum number of files parsed concurrently
+	 */
+	public FileSetRepository(String name, Collection<File> files, int parallelism) throws Exception {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		}
 		this.name = name;
 		this.files = files;
-		promiseFactory = new PromiseFactory(PromiseFactory.inlineExecutor());
+		this.parallelism = parallelism;
+		promiseFactory = Processor.getPromiseFactory();
 		repository = promiseFactory.deferred();
 	}
 
@@ -76,9 +94,33 @@ public class FileSetRepository extends BaseRepository implements Plugin, Reposit
 		return promise.getValue();
 	}
 
+	/**
+	 * Parse the files with at most {@link #parallelism} workers. Each file has
+	 * its own promise so the resources keep the order of the files.
+	 */
 	private Promise<BridgeRepository> readFiles() {
-		Promise<List<Resource>> resources = files().stream()
-			.map(this::parseFile)
+		List<File> files = new ArrayList<>(files());
+		List<Deferred<Resource>> parsed = new ArrayList<>(files.size());
+		for (int i = 0; i < files.size(); i++) {
+			parsed.add(promiseFactory.deferred());
+		}
+		AtomicInteger next = new AtomicInteger();
+		int workers = Math.min(parallelism, files.size());
+		for (int w = 0; w < workers; w++) {
+			promiseFactory.executor()
+				.execute(() -> {
+					for (int i; (i = next.getAndIncrement()) < files.size();) {
+						Deferred<Resource> deferred = parsed.get(i);
+						try {
+							deferred.resolve(parseFile(files.get(i)));
+						} catch (Throwable t) {
+							deferred.fail(t);
+						}
+					}
+				});
+		}
+		Promise<List<Resource>> resources = parsed.stream()
+			.map(Deferred::getPromise)
 			.collect(promiseFactory.toPromise());
 		if (logger.isDebugEnabled()) {
 			resources.onSuccess(l -> l.stream()
@@ -90,8 +132,8 @@ public class FileSetRepository extends BaseRepository implements Plugin, Reposit
 		return bridge;
 	}
 
-	private Promise<Resource> parseFile(File file) {
-		Promise<Resource> resource = promiseFactory.submit(() -> {
+	private Resource parseFile(File file) {
+		try {
 			if (!file.isFile()) {
 				return null;
 			}
@@ -133,11 +175,10 @@ public class FileSetRepository extends BaseRepository implements Plugin, Reposit
 			}
 			logger.debug("{}: parsing {}", getName(), file);
 			return rb.build();
-		});
-		if (logger.isDebugEnabled()) {
-			resource.onFailure(failure -> logger.debug("{}: failed to parse {}", getName(), file, failure));
+		} catch (RuntimeException e) {
+			logger.debug("{}: failed to parse {}", getName(), file, e);
+			throw e;
 		}
-		return resource;
 	}
 
 	@Override
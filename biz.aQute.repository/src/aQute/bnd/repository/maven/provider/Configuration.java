@@ -76,4 +76,11 @@ public interface Configuration {
 	 * Extensions for files that contain multiple JARs
 	 */
 	String multi();
+
+	/**
+	 * Keep the parsed POMs in the workspace cache so they are not parsed again
+	 * by later builds
+	 */
+	// default false
+	boolean pom_cache();
 }
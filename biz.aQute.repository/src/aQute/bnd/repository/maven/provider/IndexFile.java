@@ -55,6 +55,7 @@ import aQute.lib.zip.ZipUtil;
 import aQute.maven.api.Archive;
 import aQute.maven.api.IMavenRepo;
 import aQute.maven.api.Program;
+import aQute.maven.provider.MavenRepository;
 import aQute.service.reporter.Reporter;
 
 /**
@@ -80,6 +81,7 @@ class IndexFile {
 	final Map<Archive, Resource>				archives	= new ConcurrentHashMap<>();
 	final Set<String>							multi;
 	final String								source;
+	private final IndexSnapshot					snapshot;
 
 	private volatile long						lastModified;
 	private long								last		= 0L;
@@ -93,7 +95,16 @@ class IndexFile {
 	 */
 	IndexFile(Processor domain, Reporter reporter, File file, String source, IMavenRepo repo,
 		PromiseFactory promiseFactory, Set<String> multi) throws Exception {
+		this(domain, reporter, file, source, repo, promiseFactory, multi, null);
+	}
+
+	/*
+	 * Constructor with a snapshot file to keep the derived resources in
+	 */
+	IndexFile(Processor domain, Reporter reporter, File file, String source, IMavenRepo repo,
+		PromiseFactory promiseFactory, Set<String> multi, File snapshotFile) throws Exception {
 		this.source = source;
+		this.snapshot = (snapshotFile != null) ? new IndexSnapshot(snapshotFile, multi) : null;
 		this.domain = (domain != null) ? domain : new Processor();
 		this.replacer = this.domain.getReplacer();
 		this.reporter = reporter;
@@ -204,6 +215,9 @@ class IndexFile {
 	 */
 	private boolean removeWithDerived(Archive archive) {
 		Resource remove = archives.remove(archive);
+		if (snapshot != null) {
+			snapshot.remove(archive);
+		}
 		if (remove != null) {
 			archives.keySet()
 				.removeIf(target -> isDerived(target, archive));
@@ -241,16 +255,28 @@ class IndexFile {
 		toBeAdded.removeAll(keySet);
 
 		keySet.removeAll(toBeDeleted);
-		return update(toBeAdded);
+		return update(toBeAdded).thenAccept(b -> saveSnapshot());
 	}
 
 	/*
 	 * Update the set of archives. This will add the given archives and then
-	 * create a new bridge. All newly added archives are scheduled to be
-	 * download and after downloaded are parsed. This method should only be
-	 * called via the serializer.
+	 * create a new bridge. All newly added archives are first prefetched in
+	 * parallel and then parsed. This method should only be called via the
+	 * serializer.
 	 */
 	private Promise<Boolean> update(Set<Archive> toAdd) {
+		if ((toAdd != null) && (repo instanceof MavenRepository mavenRepository)) {
+			return mavenRepository.prefetch(toAdd)
+				.flatMap(v -> parse(toAdd));
+		}
+		return parse(toAdd);
+	}
+
+	/*
+	 * Parse the given archives, downloading them when needed, and create a
+	 * new bridge.
+	 */
+	private Promise<Boolean> parse(Set<Archive> toAdd) {
 		List<Promise<Map<Archive, Resource>>> promises;
 		if (toAdd == null) {
 			promises = Collections.emptyList();
@@ -260,14 +286,14 @@ class IndexFile {
 					if (!archive.isSnapshot()) {
 						File localFile = repo.toLocalFile(archive);
 						if (localFile.isFile() && localFile.length() > 0) {
-							return promiseFactory.submit(() -> parseSingleOrMultiFile(archive, localFile))
+							return promiseFactory.submit(() -> parseOrReuse(archive, localFile))
 								.recover(p -> failed(archive, p.getFailure()));
 						}
 					}
 					try {
 						return repo.get(archive)
 							.map(file -> (file == null) ? failed(archive, "Not found")
-								: parseSingleOrMultiFile(archive, file))
+								: parseOrReuse(archive, file))
 							.recover(p -> failed(archive, p.getFailure()));
 					} catch (Exception e) {
 						return promiseFactory.resolved(failed(archive, e));
@@ -305,6 +331,22 @@ class IndexFile {
 		return failure.getMessage();
 	}
 
+	/*
+	 * Answer the resources derived from the archive file in an earlier run if
+	 * the file did not change since, otherwise parse it.
+	 */
+	private Map<Archive, Resource> parseOrReuse(Archive archive, File file) {
+		if (snapshot == null) {
+			return parseSingleOrMultiFile(archive, file);
+		}
+		Map<Archive, Resource> result = snapshot.get(archive, file);
+		if (result == null) {
+			result = parseSingleOrMultiFile(archive, file);
+			snapshot.put(archive, file, result);
+		}
+		return result;
+	}
+
 	private Map<Archive, Resource> parseSingleOrMultiFile(Archive archive, File file) {
 		try {
 			if (isMulti(file.getName())) {
@@ -396,7 +438,7 @@ class IndexFile {
 					return Boolean.FALSE;
 				}
 				try {
-					Map<Archive, Resource> result = parseSingleOrMultiFile(archive, file);
+					Map<Archive, Resource> result = parseOrReuse(archive, file);
 					archives.putAll(result);
 					return Boolean.TRUE;
 				} catch (Exception e) {
@@ -433,6 +475,27 @@ class IndexFile {
 		return bsn.equals(osgi_wiring_bundle);
 	}
 
+	/*
+	 * Store the snapshot when it changed. This is done at the end of a load of
+	 * the index file and on close, not after every single archive, since the
+	 * whole snapshot is written.
+	 */
+	private void saveSnapshot() {
+		if (snapshot != null) {
+			snapshot.save(archives.keySet());
+		}
+	}
+
+	/*
+	 * Store the snapshot after the pending updates.
+	 */
+	void close() {
+		sync(serialize(() -> {
+			saveSnapshot();
+			return promiseFactory.resolved(Boolean.TRUE);
+		}));
+	}
+
 	private void save(Set<Archive> add, Set<Archive> remove) throws Exception {
 		try (Formatter f = new Formatter()) {
 			if (indexFile.isFile()) {
@@ -0,0 +1,234 @@
+package aQute.bnd.repository.maven.provider;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.osgi.resource.Capability;
+import org.osgi.resource.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.bnd.osgi.About;
+import aQute.bnd.osgi.resource.CapabilityBuilder;
+import aQute.bnd.osgi.resource.ResourceBuilder;
+import aQute.bnd.osgi.resource.ResourceUtils;
+import aQute.bnd.osgi.resource.ResourceUtils.ContentCapability;
+import aQute.bnd.osgi.repository.BinaryResourceIndex;
+import aQute.bnd.service.resource.SupportingResource;
+import aQute.libg.cryptography.SHA256;
+import aQute.maven.api.Archive;
+
+/**
+ * The resources derived from the archives of an {@link IndexFile}, kept in a
+ * file so they do not have to be derived again when the index is opened by a
+ * later JVM.
+ * <p>
+ * The resources of an archive are keyed by the size, the last modified time
+ * and the SHA-256 of the file they were derived from. They are reused when the
+ * size and the last modified time of the file are unchanged. When only the
+ * last modified time changed, for example because the file was downloaded
+ * again, they are reused when the SHA-256 of the file is unchanged.
+ * <p>
+ * The file is a {@link BinaryResourceIndex}. The resources of each archive are
+ * preceded by a header resource that holds the key. The source key of the file
+ * holds the format, the bnd version and the multi extensions of the
+ * repository, since these change how the resources are derived.
+ */
+class IndexSnapshot {
+	private final static Logger			logger		= LoggerFactory.getLogger(IndexSnapshot.class);
+	private final static String			FORMAT		= "bnd.maven.index;1";
+	private final static String			NAMESPACE	= "bnd.maven.index";
+	private final static String			ARCHIVES	= "archives";
+	private final static String			PATH		= "path";
+	private final static String			SIZE		= "size";
+	private final static String			MODIFIED	= "lastmodified";
+	private final static String			SHA			= "sha256";
+
+	private final File					file;
+	private final String				key;
+	private final Map<Archive, Entry>	entries		= new ConcurrentHashMap<>();
+	private boolean						loaded;
+	private volatile boolean			dirty;
+
+	/*
+	 * The resources derived from an archive and the file they were derived
+	 * from.
+	 */
+	private static final class Entry {
+		final String					path;
+		final long						size;
+		final long						lastModified;
+		final String					sha;
+		final Map<Archive, Resource>	resources;
+
+		Entry(String path, long size, long lastModified, String sha, Map<Archive, Resource> resources) {
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.sha = sha;
+			this.resources = resources;
+		}
+	}
+
+	IndexSnapshot(File file, Set<String> multi) {
+		this.file = file;
+		this.key = FORMAT + ";" + About.getBndVersion() + ";multi=" + new TreeSet<>(multi);
+	}
+
+	/**
+	 * Answer the resources derived from an archive if they were derived from
+	 * the same file content.
+	 *
+	 * @param archive the archive
+	 * @param source the file of the archive
+	 * @return the resources or {@code null} if they must be derived again
+	 */
+	Map<Archive, Resource> get(Archive archive, File source) {
+		load();
+		Entry entry = entries.get(archive);
+		if (entry == null || entry.size != source.length() || !entry.path.equals(source.getAbsolutePath())) {
+			return null;
+		}
+		if (entry.lastModified != source.lastModified()) {
+			try {
+				if (entry.sha == null || !entry.sha.equalsIgnoreCase(SHA256.digest(source)
+					.asHex())) {
+					return null;
+				}
+			} catch (Exception e) {
+				return null;
+			}
+			entries.put(archive,
+				new Entry(entry.path, entry.size, source.lastModified(), entry.sha, entry.resources));
+			dirty = true;
+		}
+		return entry.resources;
+	}
+
+	/**
+	 * Remember the resources derived from an archive. Results that hold error
+	 * information instead of content or that have supporting resources are not
+	 * remembered so they are derived again next time.
+	 *
+	 * @param archive the archive
+	 * @param source the file of the archive
+	 * @param resources the resources derived from the file
+	 */
+	void put(Archive archive, File source, Map<Archive, Resource> resources) {
+		Resource primary = resources.get(archive);
+		if (primary == null) {
+			return;
+		}
+		for (Resource resource : resources.values()) {
+			if (ResourceUtils.getContentCapability(resource) == null) {
+				return;
+			}
+			if (resource instanceof SupportingResource s && !s.getSupportingResources()
+				.isEmpty()) {
+				return;
+			}
+		}
+		ContentCapability content = ResourceUtils.getContentCapability(primary);
+		entries.put(archive, new Entry(source.getAbsolutePath(), source.length(), source.lastModified(),
+			content.osgi_content(), resources));
+		dirty = true;
+	}
+
+	/**
+	 * Forget the resources derived from an archive.
+	 */
+	void remove(Archive archive) {
+		if (entries.remove(archive) != null) {
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Store the entries of the given archives if anything changed since the
+	 * last time.
+	 *
+	 * @param archives the archives in the index
+	 */
+	synchronized void save(Collection<Archive> archives) {
+		if (entries.keySet()
+			.retainAll(archives)) {
+			dirty = true;
+		}
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+		List<Resource> resources = new ArrayList<>();
+		entries.forEach((archive, entry) -> {
+			ResourceBuilder header = new ResourceBuilder();
+			CapabilityBuilder cb = new CapabilityBuilder(NAMESPACE);
+			List<String> names = new ArrayList<>(entry.resources.size());
+			names.add(archive.toString());
+			entry.resources.keySet()
+				.stream()
+				.filter(a -> !a.equals(archive))
+				.map(Archive::toString)
+				.forEach(names::add);
+			cb.addAttribute(ARCHIVES, names);
+			cb.addAttribute(PATH, entry.path);
+			cb.addAttribute(SIZE, entry.size);
+			cb.addAttribute(MODIFIED, entry.lastModified);
+			if (entry.sha != null) {
+				cb.addAttribute(SHA, entry.sha);
+			}
+			header.addCapability(cb);
+			resources.add(header.build());
+			resources.add(entry.resources.get(archive));
+			entry.resources.forEach((a, r) -> {
+				if (!a.equals(archive)) {
+					resources.add(r);
+				}
+			});
+		});
+		try {
+			BinaryResourceIndex.write(resources, key, file);
+		} catch (Exception e) {
+			logger.debug("Unable to store the index snapshot {}", file, e);
+		}
+	}
+
+	private synchronized void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		List<Resource> resources = BinaryResourceIndex.read(file, key);
+		if (resources == null) {
+			return;
+		}
+		try {
+			for (Iterator<Resource> it = resources.iterator(); it.hasNext();) {
+				Capability header = it.next()
+					.getCapabilities(NAMESPACE)
+					.get(0);
+				Map<String, Object> attrs = header.getAttributes();
+				@SuppressWarnings("unchecked")
+				List<String> names = (List<String>) attrs.get(ARCHIVES);
+				Map<Archive, Resource> derived = new LinkedHashMap<>();
+				for (String name : names) {
+					derived.put(Archive.valueOf(name), it.next());
+				}
+				Archive archive = Archive.valueOf(names.get(0));
+				entries.put(archive, new Entry((String) attrs.get(PATH), (Long) attrs.get(SIZE),
+					(Long) attrs.get(MODIFIED), (String) attrs.get(SHA), derived));
+			}
+			logger.debug("Loaded {} archives from the index snapshot {}", entries.size(), file);
+		} catch (RuntimeException e) {
+			logger.debug("Ignoring invalid index snapshot {}", file, e);
+			entries.clear();
+		}
+	}
+}
@@ -667,9 +667,15 @@ public class MavenBndRepository extends BaseRepository implements RepositoryPlug
 					}
 				}
 
-			storage = new MavenRepository(localRepo, name, release, staging, snapshot,
+			MavenRepository mavenRepository = new MavenRepository(localRepo, name, release, staging, snapshot,
 				client.promiseFactory()
-				.executor(), reporter);
+					.executor(),
+				reporter);
+			if (configuration.pom_cache()) {
+				mavenRepository.setPomCache(workspace.map(ws -> ws.getCache("maven-poms"))
+					.orElseGet(() -> IO.getFile(base, "maven-poms")));
+			}
+			storage = mavenRepository;
 
 			File indexFile = getIndexFile();
 			Processor domain = (registry != null) ? registry.getPlugin(Processor.class) : null;
@@ -679,7 +685,10 @@ public class MavenBndRepository extends BaseRepository implements RepositoryPlug
 			}
 			Set<String> multi = Strings.splitAsStream(configuration.multi())
 				.collect(Sets.toSet());
-			this.index = new IndexFile(domain, reporter, indexFile, source, storage, client.promiseFactory(), multi);
+			File snapshotFile = workspace.map(ws -> IO.getFile(ws.getCache("maven-index"), name + ".bin"))
+				.orElse(null);
+			this.index = new IndexFile(domain, reporter, indexFile, source, storage, client.promiseFactory(), multi,
+				snapshotFile);
 			this.index.open();
 
 			try (Formatter f = new Formatter()) {
@@ -793,6 +802,8 @@ public class MavenBndRepository extends BaseRepository implements RepositoryPlug
 		if (open.getAndSet(new Exception(this + " closed")) == null) {
 			if (indexPoller != null)
 				indexPoller.cancel(true);
+			if (index != null)
+				index.close();
 			IO.close(storage);
 		}
 	}
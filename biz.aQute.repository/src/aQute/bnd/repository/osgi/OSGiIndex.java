@@ -8,11 +8,13 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -28,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 import aQute.bnd.http.HttpClient;
 import aQute.bnd.http.HttpRequest;
+import aQute.bnd.osgi.repository.BinaryResourceIndex;
 import aQute.bnd.osgi.repository.BridgeRepository;
 import aQute.bnd.osgi.repository.ResourcesRepository;
 import aQute.bnd.osgi.repository.XMLResourceParser;
@@ -41,6 +44,10 @@ import aQute.libg.cryptography.SHA256;
 
 class OSGiIndex {
 	private final static Logger				logger	= LoggerFactory.getLogger(OSGiIndex.class);
+	/**
+	 * The default referral depth of {@link XMLResourceParser}.
+	 */
+	private final static int				DEPTH	= 100;
 	private final Promise<BridgeRepository>	repository;
 	private final HttpClient				client;
 	private final PromiseFactory			promiseFactory;
@@ -100,34 +107,43 @@ class OSGiIndex {
 					this.status = "Not Found " + uri;
 					return Collections.emptyList();
 				}
-				// file could be xml, gzipped xml, OR zip with index.xml or
-				// index.xml.gz entry
-				try (InputStream in = new BufferedInputStream(IO.stream(file))) {
-					in.mark(2);
-					int magic = readUnsignedShort(in);
-					in.reset();
-					if (magic == 0x504b) { // "PK" means a zip file
-						try (ZipInputStream zin = new ZipInputStream(in)) {
-							for (ZipEntry entry; (entry = zin.getNextEntry()) != null;) {
-								switch (entry.getName()) {
-									case "index.xml" :
-									case "index.xml.gz" :
-										try (XMLResourceParser xrp = new XMLResourceParser(zin, name, uri)) {
-											return xrp.parse();
-										}
-									default :
-										break;
+				File binary = new File(cache, "index-" + SHA256.digest(uri.toString()
+					.getBytes(StandardCharsets.UTF_8))
+					.asHex() + ".bin");
+				return BinaryResourceIndex.getResources(file, uri, binary,
+					referrals -> parse(file, uri, referrals));
+			});
+	}
+
+	private List<Resource> parse(File file, URI uri, Set<URI> referrals) throws Exception {
+		// file could be xml, gzipped xml, OR zip with index.xml or
+		// index.xml.gz entry
+		try (InputStream in = new BufferedInputStream(IO.stream(file))) {
+			in.mark(2);
+			int magic = readUnsignedShort(in);
+			in.reset();
+			if (magic == 0x504b) { // "PK" means a zip file
+				try (ZipInputStream zin = new ZipInputStream(in)) {
+					for (ZipEntry entry; (entry = zin.getNextEntry()) != null;) {
+						switch (entry.getName()) {
+							case "index.xml" :
+							case "index.xml.gz" :
+								try (XMLResourceParser xrp = new XMLResourceParser(zin, name, DEPTH, referrals,
+									uri)) {
+									return xrp.parse();
 								}
-							}
-							logger.debug("{}: No index.xml or index.xml.gz entry found in zip file {}", name, uri);
-							return Collections.emptyList();
+							default :
+								break;
 						}
 					}
-					try (XMLResourceParser xrp = new XMLResourceParser(in, name, uri)) {
-						return xrp.parse();
-					}
+					logger.debug("{}: No index.xml or index.xml.gz entry found in zip file {}", name, uri);
+					return Collections.emptyList();
 				}
-			});
+			}
+			try (XMLResourceParser xrp = new XMLResourceParser(in, name, DEPTH, referrals, uri)) {
+				return xrp.parse();
+			}
+		}
 	}
 
 	private static final int readUnsignedShort(InputStream in) throws IOException {
@@ -25,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import aQute.bnd.http.HttpClient;
+import aQute.bnd.osgi.repository.BinaryResourceIndex;
 import aQute.bnd.osgi.repository.BridgeRepository;
 import aQute.bnd.osgi.repository.ResourcesRepository;
 import aQute.bnd.osgi.repository.XMLResourceGenerator;
@@ -133,16 +134,33 @@ class P2Indexer implements Closeable {
 
 	private ResourcesRepository readRepository(File index) throws Exception {
 		if (index.isFile()) {
+			// the index is only valid for the url it was read from
+			File binary = new File(location, "index.bin");
+			String key = BinaryResourceIndex.key(index, index.toURI()) + " " + urlHash;
+			List<Resource> resources = BinaryResourceIndex.read(binary, key);
+			if (resources != null) {
+				return new ResourcesRepository(resources);
+			}
 			try (XMLResourceParser xp = new XMLResourceParser(index.toURI())) {
-				List<Resource> resources = xp.parse();
+				List<Resource> parsed = xp.parse();
 				if (urlHash.equals(xp.name())) {
-					return new ResourcesRepository(resources);
+					writeBinary(parsed, key, binary);
+					return new ResourcesRepository(parsed);
 				}
 			}
 		}
 		return save(readRepository());
 	}
 
+	private void writeBinary(List<Resource> resources, String key, File binary) {
+		try {
+			BinaryResourceIndex.write(resources, key, binary);
+		} catch (IOException | IllegalArgumentException e) {
+			logger.debug("{}: Unable to write binary index {}", name, binary, e);
+			IO.delete(binary);
+		}
+	}
+
 	private ResourcesRepository readRepository() throws Exception {
 		ArtifactProvider p2;
 		if (this.url.getPath()
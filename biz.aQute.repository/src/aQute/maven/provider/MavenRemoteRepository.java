@@ -6,7 +6,11 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -72,31 +76,7 @@ public class MavenRemoteRepository extends MavenBackingRepository {
 				if ((tag.getState() != State.UPDATED) || path.endsWith("/maven-metadata.xml")) {
 					return success;
 				}
-				// https://issues.sonatype.org/browse/NEXUS-4900
-				return client.build()
-					.asString()
-					.timeout(15000)
-					.async(new URL(base + path + ".sha1"))
-					.flatMap(sha -> {
-						if (sha != null) {
-							String fileSha = SHA1.digest(file)
-								.asHex();
-							checkDigest(fileSha, sha, file);
-							return success;
-						}
-						return client.build()
-							.asString()
-							.timeout(15000)
-							.async(new URL(base + path + ".md5"))
-							.flatMap(md5 -> {
-								if (md5 != null) {
-									String fileMD5 = MD5.digest(file)
-										.asHex();
-									checkDigest(fileMD5, md5, file);
-								}
-								return success;
-							});
-					});
+				return verify(path, file, success);
 			})
 				.recoverWith(failed -> {
 					if (retries < 1) {
@@ -111,6 +91,89 @@ public class MavenRemoteRepository extends MavenBackingRepository {
 				}));
 	}
 
+	/*
+	 * Check a downloaded file against the remote digests. The file is deleted
+	 * when it does not match.
+	 */
+	private <T> Promise<T> verify(String path, File file, Promise<T> success) throws Exception {
+		// https://issues.sonatype.org/browse/NEXUS-4900
+		return client.build()
+			.asString()
+			.timeout(15000)
+			.async(new URL(base + path + ".sha1"))
+			.flatMap(sha -> {
+				if (sha != null) {
+					String fileSha = SHA1.digest(file)
+						.asHex();
+					checkDigest(fileSha, sha, file);
+					return success;
+				}
+				return client.build()
+					.asString()
+					.timeout(15000)
+					.async(new URL(base + path + ".md5"))
+					.flatMap(md5 -> {
+						if (md5 != null) {
+							String fileMD5 = MD5.digest(file)
+								.asHex();
+							checkDigest(fileMD5, md5, file);
+						}
+						return success;
+					});
+			});
+	}
+
+	/**
+	 * Fetch a set of remote paths into their local files in parallel. Updated
+	 * files are checked against the remote digests like
+	 * {@link #fetch(String, File, boolean)}. A file that does not match is
+	 * deleted and its state is {@link State#OTHER}.
+	 *
+	 * @param paths the remote paths mapped to their local file
+	 * @param force if {@code true} always ask the server for a newer file
+	 * @return a promise resolved with the state of each path
+	 */
+	public Promise<Map<String, State>> fetchAll(Map<String, File> paths, boolean force) throws Exception {
+		Map<URI, File> files = new LinkedHashMap<>();
+		Map<URI, String> remotePaths = new LinkedHashMap<>();
+		for (Entry<String, File> entry : paths.entrySet()) {
+			URI uri = new URL(base + entry.getKey()).toURI();
+			files.put(uri, entry.getValue());
+			remotePaths.put(uri, entry.getKey());
+		}
+		logger.debug("Fetching {} paths", files.size());
+		return client
+			.fetchAll(files, force ? -1 : DEFAULT_MAX_STALE, Map.of("User-Agent", "Bnd"))
+			.flatMap(states -> {
+				List<String> keys = new ArrayList<>(states.size());
+				List<Promise<State>> checked = new ArrayList<>(states.size());
+				for (Entry<URI, State> entry : states.entrySet()) {
+					String path = remotePaths.get(entry.getKey());
+					State state = entry.getValue();
+					Promise<State> result = client.promiseFactory()
+						.resolved(state);
+					if ((state == State.UPDATED) && !path.endsWith("/maven-metadata.xml")) {
+						result = verify(path, files.get(entry.getKey()), result).recover(failed -> {
+							logger.info("Invalid download: {}", failed.getFailure()
+								.getMessage());
+							return State.OTHER;
+						});
+					}
+					keys.add(path);
+					checked.add(result);
+				}
+				return client.promiseFactory()
+					.all(checked)
+					.map(results -> {
+						Map<String, State> result = new LinkedHashMap<>();
+						for (int i = 0; i < results.size(); i++) {
+							result.put(keys.get(i), results.get(i));
+						}
+						return result;
+					});
+			});
+	}
+
 	@Override
 	public void store(File file, String path) throws Exception {
 
@@ -7,12 +7,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
-import java.util.WeakHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -37,6 +38,7 @@ import aQute.service.reporter.Reporter;
 
 public class MavenRepository implements IMavenRepo, Closeable {
 	final static Logger							logger		= LoggerFactory.getLogger(MavenRepository.class);
+	private final static int					MAX_POMS	= 1000;
 	private final File							base;
 	private final String						id;
 	private final List<MavenBackingRepository>	release		= new ArrayList<>();
@@ -44,8 +46,21 @@ public class MavenRepository implements IMavenRepo, Closeable {
 	private final List<MavenBackingRepository>	snapshot	= new ArrayList<>();
 	private final PromiseFactory				promiseFactory;
 	private final boolean						localOnly;
-	private final Map<Revision, Promise<POM>>	poms		= new WeakHashMap<>();
+	/*
+	 * Access ordered so the least recently used POMs are dropped first. Parent
+	 * and BOM POMs are used by many POMs and thus stay.
+	 */
+	private final Map<Revision, Promise<POM>>	poms		= new LinkedHashMap<Revision, Promise<POM>>(64,
+		0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Revision, Promise<POM>> eldest) {
+			return size() > MAX_POMS;
+		}
+	};
 	private final Reporter						reporter;
+	private volatile File						pomCache;
 
 	public MavenRepository(File base, String id, List<MavenBackingRepository> release,
 		List<MavenBackingRepository> snapshot, Executor executor, Reporter reporter) throws Exception {
@@ -162,6 +177,52 @@ public class MavenRepository implements IMavenRepo, Closeable {
 		});
 	}
 
+	/**
+	 * Download a set of archives in parallel from the first remote release
+	 * repository. Snapshots and archives that are already in the local
+	 * repository are skipped. Archives that could not be fetched are left to
+	 * {@link #get(Archive)}, so the returned promise never fails.
+	 *
+	 * @param archives the archives to prefetch
+	 * @return a promise that is resolved when all downloads have finished
+	 */
+	public Promise<Void> prefetch(Collection<Archive> archives) {
+		if (localOnly) {
+			return promiseFactory.resolved(null);
+		}
+		MavenRemoteRepository remote = release.stream()
+			.filter(MavenRemoteRepository.class::isInstance)
+			.map(MavenRemoteRepository.class::cast)
+			.findFirst()
+			.orElse(null);
+		if (remote == null) {
+			return promiseFactory.resolved(null);
+		}
+		Map<String, File> paths = new LinkedHashMap<>();
+		for (Archive archive : archives) {
+			if (!archive.isSnapshot()) {
+				File file = toLocalFile(archive);
+				if (!file.isFile()) {
+					paths.put(archive.remotePath, file);
+				}
+			}
+		}
+		if (paths.size() < 2) {
+			return promiseFactory.resolved(null);
+		}
+		try {
+			return remote.fetchAll(paths, false)
+				.<Void> map(states -> null)
+				.recoverWith(failed -> {
+					logger.debug("Prefetch failed", failed.getFailure());
+					return promiseFactory.resolved(null);
+				});
+		} catch (Exception e) {
+			logger.debug("Prefetch failed", e);
+			return promiseFactory.resolved(null);
+		}
+	}
+
 	private boolean isFresh(File file) {
 		if (!file.isFile())
 			return false;
@@ -355,6 +416,7 @@ public class MavenRepository implements IMavenRepo, Closeable {
 			poms.put(revision, deferred.getPromise());
 		}
 		Archive pomArchive = revision.getPomArchive();
+		Promise<POM> promise = deferred.getPromise();
 		deferred.resolveWith(get(pomArchive, false, false).map(pomFile -> {
 			if (pomFile == null) {
 				return null;
@@ -366,7 +428,28 @@ public class MavenRepository implements IMavenRepo, Closeable {
 				return null;
 			}
 		}));
-		return deferred.getPromise();
+		// do not hold on to a missing POM, it may be there next time
+		promise.onSuccess(pom -> {
+			if (pom == null) {
+				clear(revision, promise);
+			}
+		})
+			.onFailure(failure -> clear(revision, promise));
+		return promise;
+	}
+
+	/**
+	 * Set the directory to store the parsed POMs in. The parsed POMs are then
+	 * reused by later JVMs as long as the POM files do not change.
+	 *
+	 * @param pomCache the directory or {@code null} to not store parsed POMs
+	 */
+	public void setPomCache(File pomCache) {
+		this.pomCache = pomCache;
+	}
+
+	File getPomCache() {
+		return pomCache;
 	}
 
 	@Override
@@ -402,4 +485,10 @@ public class MavenRepository implements IMavenRepo, Closeable {
 			poms.remove(revision);
 		}
 	}
+
+	private void clear(Revision revision, Promise<POM> promise) {
+		synchronized (poms) {
+			poms.remove(revision, promise);
+		}
+	}
 }
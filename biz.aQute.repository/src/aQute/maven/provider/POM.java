@@ -1,17 +1,12 @@
 package aQute.maven.provider;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
@@ -19,28 +14,14 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import aQute.bnd.unmodifiable.Sets;
 import aQute.bnd.version.MavenVersion;
-import aQute.lib.io.ByteBufferInputStream;
-import aQute.lib.io.ByteBufferOutputStream;
 import aQute.lib.io.IO;
 import aQute.lib.strings.Strings;
-import aQute.lib.xml.XML;
 import aQute.maven.api.Archive;
 import aQute.maven.api.IPom;
 import aQute.maven.api.MavenScope;
@@ -53,15 +34,12 @@ import aQute.maven.api.Revision;
 public class POM implements IPom {
 	static Logger						l						= LoggerFactory.getLogger(POM.class);
 
-	static DocumentBuilderFactory		dbf						= XML.newDocumentBuilderFactory();
-	static XPathFactory					xpf						= XPathFactory.newInstance();
 	private Revision					revision;
 	private String						packaging;
 	private final Properties			properties;
 	private final POM					parent;
 	private Map<Program, Dependency>	dependencies			= new LinkedHashMap<>();
 	private Map<Program, Dependency>	dependencyManagement	= new LinkedHashMap<>();
-	private XPath						xp;
 	private Set<String>					JAR_PACKAGING			= Sets.of("bundle", "eclipse-plugin",
 		"eclipse-test-plugin", Archive.POM_EXTENSION);
 
@@ -88,54 +66,7 @@ public class POM implements IPom {
 	}
 
 	public POM(MavenRepository repo, InputStream in, boolean ignoreParentIfAbsent) throws Exception {
-		this(repo, null, getDocBuilder().parse(processEntities(in)), ignoreParentIfAbsent);
-	}
-
-	private static DocumentBuilder getDocBuilder() throws ParserConfigurationException {
-		DocumentBuilder db = dbf.newDocumentBuilder();
-		return db;
-	}
-
-	private static InputStream processEntities(InputStream in) throws IOException {
-		ByteBuffer bb = IO.copy(in, new ByteBufferOutputStream(in.available() + 1))
-			.toByteBuffer();
-		return processEntities(bb);
-	}
-
-	private static InputStream processEntities(ByteBuffer bb) {
-		final byte[] array = bb.array();
-		final int offset = bb.arrayOffset();
-		final int limit = offset + bb.limit();
-		for (int i = offset; i < limit; i++) {
-			char c = (char) array[i];
-			if (c == '&') {
-				final int jlimit = Math.min(limit, i + 11);
-				for (int j = i + 1; j < jlimit; j++) {
-					c = (char) array[j];
-					if (c == ';') {
-						String entity = new String(array, i + 1, j - (i + 1), StandardCharsets.US_ASCII)
-							.toLowerCase(Locale.ROOT);
-						switch (entity) {
-							case "lt" :
-							case "gt" :
-							case "amp" :
-							case "quot" :
-							case "apos" :
-								break;
-							default :
-								array[i] = '?';
-								break;
-						}
-						i = j;
-						break;
-					}
-					if (!(c >= 'A' && c <= 'Z') && !(c >= 'a' && c <= 'z')) {
-						break;
-					}
-				}
-			}
-		}
-		return new ByteBufferInputStream(bb);
+		this(repo, null, PomModel.read(in), ignoreParentIfAbsent);
 	}
 
 	public POM(MavenRepository repo, File file) throws Exception {
@@ -143,16 +74,8 @@ public class POM implements IPom {
 	}
 
 	public POM(MavenRepository repo, File file, boolean ignoreIfParentAbsent) throws Exception {
-		this(repo, file.getParentFile(), getDocBuilder().parse(processEntities(file)), ignoreIfParentAbsent);
-	}
-
-	private static InputStream processEntities(File file) throws IOException {
-		try (FileChannel in = IO.readChannel(file.toPath())) {
-			ByteBuffer bb = ByteBuffer.allocate((int) in.size());
-			while (in.read(bb) > 0) {}
-			bb.flip();
-			return processEntities(bb);
-		}
+		this(repo, file.getParentFile(), PomModel.read(file, (repo != null) ? repo.getPomCache() : null),
+			ignoreIfParentAbsent);
 	}
 
 	public POM(MavenRepository repo, Document doc) throws Exception {
@@ -160,18 +83,17 @@ public class POM implements IPom {
 	}
 
 	public POM(MavenRepository repo, Document doc, boolean ignoreIfParentAbsent) throws Exception {
-		this(repo, null, doc, ignoreIfParentAbsent);
+		this(repo, null, PomModel.read(doc), ignoreIfParentAbsent);
 	}
 
-	private POM(MavenRepository repo, File base, Document doc, boolean ignoreIfParentAbsent) throws Exception {
+	private POM(MavenRepository repo, File base, PomModel model, boolean ignoreIfParentAbsent) throws Exception {
 		this.repo = repo;
 		this.ignoreParentIfAbsent = ignoreIfParentAbsent;
-		xp = xpf.newXPath();
 
-		String parentGroup = Strings.trim(xp.evaluate("project/parent/groupId", doc));
-		String parentArtifact = Strings.trim(xp.evaluate("project/parent/artifactId", doc));
-		String parentVersion = Strings.trim(xp.evaluate("project/parent/version", doc));
-		String relativePath = Strings.trim(xp.evaluate("project/parent/relativePath", doc));
+		String parentGroup = Strings.trim(Objects.toString(model.parentGroupId, ""));
+		String parentArtifact = Strings.trim(Objects.toString(model.parentArtifactId, ""));
+		String parentVersion = Strings.trim(Objects.toString(model.parentVersion, ""));
+		String relativePath = Strings.trim(Objects.toString(model.parentRelativePath, ""));
 		if (!parentGroup.isEmpty() && !parentArtifact.isEmpty() && !parentVersion.isEmpty()) {
 
 			Program program = Program.valueOf(parentGroup, parentArtifact);
@@ -211,12 +133,8 @@ public class POM implements IPom {
 
 		this.properties = new Properties(this.parent.properties);
 
-		Element project = doc.getDocumentElement();
-		index(project, "project.", "modelVersion", "groupId", "artifactId", "version", "packaging");
-
-		NodeList props = (NodeList) xp.evaluate("properties", project, XPathConstants.NODESET);
-		for (int i = 0; i < props.getLength(); i++)
-			index((Element) props.item(i), "");
+		model.coordinates.forEach((key, value) -> properties.put("project." + key, value));
+		properties.putAll(model.properties);
 
 		String group = getOrSet("project.groupId", parentGroup);
 		String artifact = getOrSetNoInheritance("project.artifactId", null);
@@ -250,37 +168,31 @@ public class POM implements IPom {
 		properties.put("pom.currentVersion", version);
 		properties.put("pom.packaging", this.packaging);
 
-		NodeList dependencies = (NodeList) xp.evaluate("project/dependencies/dependency", doc, XPathConstants.NODESET);
-		for (int i = 0; i < dependencies.getLength(); i++) {
-			Element dependency = (Element) dependencies.item(i);
+		for (PomModel.RawDependency dependency : model.dependencies) {
 			Dependency d = dependency(dependency);
 			this.dependencies.put(d.program, d);
 		}
 
-		NodeList dependencyManagement = (NodeList) xp.evaluate("project/dependencyManagement/dependencies/dependency",
-			doc, XPathConstants.NODESET);
-		for (int i = 0; i < dependencyManagement.getLength(); i++) {
-			Element dependency = (Element) dependencyManagement.item(i);
+		for (PomModel.RawDependency dependency : model.dependencyManagement) {
 			Dependency d = dependency(dependency);
 			this.dependencyManagement.put(d.program, d);
 		}
-		xp = null;
 	}
 
 	private MavenVersion getVersion() {
 		return revision.version;
 	}
 
-	private Dependency dependency(Element dependency) throws Exception {
-		String groupId = get(dependency, "groupId", "<no group>");
-		String artifactId = get(dependency, "artifactId", "<no artifact>");
+	private Dependency dependency(PomModel.RawDependency dependency) throws Exception {
+		String groupId = get(dependency.groupId, "<no group>");
+		String artifactId = get(dependency.artifactId, "<no artifact>");
 		Dependency d = new Dependency();
-		d.optional = isTrue(get(dependency, "optional", "true"));
+		d.optional = isTrue(get(dependency.optional, "true"));
 
-		String version = get(dependency, "version", null);
-		String extension = get(dependency, "type", "jar");
-		String classifier = get(dependency, "classifier", null);
-		String scope = get(dependency, "scope", "compile");
+		String version = get(dependency.version, null);
+		String extension = get(dependency.type, "jar");
+		String classifier = get(dependency.classifier, null);
+		String scope = get(dependency.scope, "compile");
 
 		Program program = Program.valueOf(groupId, artifactId);
 		if (program == null)
@@ -317,8 +229,7 @@ public class POM implements IPom {
 		return "true".equalsIgnoreCase(other);
 	}
 
-	private String get(Element dependency, String name, String deflt) throws XPathExpressionException {
-		String value = xp.evaluate(name, dependency);
+	private String get(String value, String deflt) {
 		if (value == null || value.isEmpty())
 			return Strings.trim(deflt);
 
@@ -390,32 +301,6 @@ public class POM implements IPom {
 				.toString();
 	}
 
-	private void index(Element node, String prefix, String... names) throws XPathExpressionException {
-		String expr = "./*";
-		if (names.length > 0) {
-			StringBuilder sb = new StringBuilder("./*[");
-			String del = "name()=";
-			for (String name : names) {
-				sb.append(del)
-					.append('"')
-					.append(name)
-					.append('"');
-				del = " or name()=";
-			}
-			sb.append("]");
-			expr = sb.toString();
-		}
-
-		NodeList childNodes = (NodeList) xp.evaluate(expr, node, XPathConstants.NODESET);
-		for (int i = 0; i < childNodes.getLength(); i++) {
-			Node child = childNodes.item(i);
-			String key = child.getNodeName();
-			String value = child.getTextContent()
-				.trim();
-			properties.put(prefix + key, value);
-		}
-	}
-
 	@Override
 	public Revision getRevision() {
 		return revision;
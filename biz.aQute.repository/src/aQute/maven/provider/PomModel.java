@@ -0,0 +1,490 @@
+package aQute.maven.provider;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import aQute.bnd.unmodifiable.Sets;
+import aQute.lib.io.ByteBufferInputStream;
+import aQute.lib.io.ByteBufferOutputStream;
+import aQute.lib.io.IO;
+import aQute.lib.xml.XML;
+import aQute.libg.cryptography.SHA1;
+
+/**
+ * The parts of a POM file that are used by {@link POM}. The model is read
+ * with a streaming parser that skips everything else, like the build and
+ * reporting sections that make up most of a large POM.
+ * <p>
+ * A model only holds the raw text of the POM, macros are expanded by the
+ * {@link POM} since they depend on the parent. Models read from files are
+ * kept in a bounded cache for the life of the JVM so that shared parents and
+ * BOMs are only parsed once. Optionally the models are also stored in a
+ * directory so they survive the JVM.
+ */
+final class PomModel {
+	private final static Logger					logger			= LoggerFactory.getLogger(PomModel.class);
+	private final static XMLInputFactory		inputFactory	= newInputFactory();
+	private final static int					FORMAT			= 1;
+	private final static int					MAX_MODELS		= 2000;
+	private final static Set<String>				INDEXED			= Sets.of("modelVersion", "groupId", "artifactId",
+		"version", "packaging");
+
+	/*
+	 * Access ordered so the least recently used models are dropped first.
+	 */
+	private final static Map<String, PomModel>	models			= new LinkedHashMap<String, PomModel>(64, 0.75f,
+		true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PomModel> eldest) {
+			return size() > MAX_MODELS;
+		}
+	};
+	private final static LongAdder				parses			= new LongAdder();
+
+	/**
+	 * The raw text of a dependency. A field is {@code null} when the element
+	 * is absent.
+	 */
+	static final class RawDependency {
+		String	groupId;
+		String	artifactId;
+		String	version;
+		String	type;
+		String	classifier;
+		String	scope;
+		String	optional;
+	}
+
+	/**
+	 * If the document element is {@code project}. The parent and the
+	 * dependencies are only read from a {@code project}.
+	 */
+	boolean						project;
+	String						parentGroupId;
+	String						parentArtifactId;
+	String						parentVersion;
+	String						parentRelativePath;
+	/**
+	 * The coordinates of the POM, without the {@code project.} prefix.
+	 */
+	final Map<String, String>	coordinates				= new LinkedHashMap<>();
+	final Map<String, String>	properties				= new LinkedHashMap<>();
+	final List<RawDependency>	dependencies			= new ArrayList<>();
+	final List<RawDependency>	dependencyManagement	= new ArrayList<>();
+
+	private PomModel() {}
+
+	/**
+	 * Read the model of a POM file. The model is taken from the cache if the
+	 * file has not changed since it was cached.
+	 *
+	 * @param file the POM file
+	 * @param cacheDir the directory to store models in, or {@code null}
+	 */
+	static PomModel read(File file, File cacheDir) throws Exception {
+		String path = file.getAbsolutePath();
+		String key = path + "\n" + file.length() + "\n" + file.lastModified();
+		synchronized (models) {
+			PomModel model = models.get(key);
+			if (model != null) {
+				return model;
+			}
+		}
+		File stored = (cacheDir != null) ? new File(cacheDir, SHA1.digest(path.getBytes(StandardCharsets.UTF_8))
+			.asHex() + ".model") : null;
+		PomModel model = (stored != null) ? load(stored, key) : null;
+		if (model == null) {
+			model = parse(entities(file));
+			if (stored != null) {
+				store(stored, key, model);
+			}
+		}
+		synchronized (models) {
+			models.put(key, model);
+		}
+		return model;
+	}
+
+	/**
+	 * Read the model of a POM from a stream. These models are not cached.
+	 */
+	static PomModel read(InputStream in) throws Exception {
+		ByteBuffer bb = IO.copy(in, new ByteBufferOutputStream(in.available() + 1))
+			.toByteBuffer();
+		return parse(entities(bb));
+	}
+
+	/**
+	 * Read the model of a POM that was already parsed into a DOM.
+	 */
+	static PomModel read(Document doc) throws Exception {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		Transformer transformer = XML.newTransformerFactory()
+			.newTransformer();
+		transformer.transform(new DOMSource(doc), new StreamResult(bout));
+		return parse(new ByteArrayInputStream(bout.toByteArray()));
+	}
+
+	/**
+	 * Answer the number of POMs that were parsed instead of taken from a
+	 * cache.
+	 */
+	static long parses() {
+		return parses.sum();
+	}
+
+	/**
+	 * Drop all cached models from memory.
+	 */
+	static void flush() {
+		synchronized (models) {
+			models.clear();
+		}
+	}
+
+	private static XMLInputFactory newInputFactory() {
+		XMLInputFactory factory = XML.newXMLInputFactory();
+		// POMs declare a default namespace only, match on the raw names
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+
+	private static PomModel parse(InputStream in) throws XMLStreamException {
+		parses.increment();
+		PomModel model = new PomModel();
+		XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+		try {
+			if (!nextElement(reader)) {
+				return model;
+			}
+			model.project = "project".equals(reader.getLocalName());
+			while (nextElement(reader)) {
+				String name = reader.getLocalName();
+				if (INDEXED.contains(name)) {
+					model.coordinates.put(name, text(reader).trim());
+				} else if (name.equals("properties")) {
+					while (nextElement(reader)) {
+						String key = reader.getLocalName();
+						model.properties.put(key, text(reader).trim());
+					}
+				} else if (model.project && name.equals("parent")) {
+					model.parent(reader);
+				} else if (model.project && name.equals("dependencies")) {
+					dependencies(reader, model.dependencies);
+				} else if (model.project && name.equals("dependencyManagement")) {
+					while (nextElement(reader)) {
+						if (reader.getLocalName()
+							.equals("dependencies")) {
+							dependencies(reader, model.dependencyManagement);
+						} else {
+							skip(reader);
+						}
+					}
+				} else {
+					skip(reader);
+				}
+			}
+			return model;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/*
+	 * Like XPath, a value is taken from the first element with the given name
+	 * when there are several.
+	 */
+	private void parent(XMLStreamReader reader) throws XMLStreamException {
+		while (nextElement(reader)) {
+			switch (reader.getLocalName()) {
+				case "groupId" -> parentGroupId = first(parentGroupId, reader);
+				case "artifactId" -> parentArtifactId = first(parentArtifactId, reader);
+				case "version" -> parentVersion = first(parentVersion, reader);
+				case "relativePath" -> parentRelativePath = first(parentRelativePath, reader);
+				default -> skip(reader);
+			}
+		}
+	}
+
+	private static void dependencies(XMLStreamReader reader, List<RawDependency> list) throws XMLStreamException {
+		while (nextElement(reader)) {
+			if (!reader.getLocalName()
+				.equals("dependency")) {
+				skip(reader);
+				continue;
+			}
+			RawDependency d = new RawDependency();
+			while (nextElement(reader)) {
+				switch (reader.getLocalName()) {
+					case "groupId" -> d.groupId = first(d.groupId, reader);
+					case "artifactId" -> d.artifactId = first(d.artifactId, reader);
+					case "version" -> d.version = first(d.version, reader);
+					case "type" -> d.type = first(d.type, reader);
+					case "classifier" -> d.classifier = first(d.classifier, reader);
+					case "scope" -> d.scope = first(d.scope, reader);
+					case "optional" -> d.optional = first(d.optional, reader);
+					default -> skip(reader);
+				}
+			}
+			list.add(d);
+		}
+	}
+
+	/*
+	 * Move to the next child element, or to the end of the current element if
+	 * there is none. Unlike nextTag() any text in between is ignored.
+	 */
+	private static boolean nextElement(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT :
+					return true;
+				case XMLStreamConstants.END_ELEMENT :
+				case XMLStreamConstants.END_DOCUMENT :
+					return false;
+				default :
+					break;
+			}
+		}
+		return false;
+	}
+
+	private static String first(String value, XMLStreamReader reader) throws XMLStreamException {
+		if (value != null) {
+			skip(reader);
+			return value;
+		}
+		return text(reader);
+	}
+
+	/*
+	 * The text content of the current element including the text of nested
+	 * elements, like the DOM's getTextContent(). Leaves the reader on the end
+	 * of the element.
+	 */
+	private static String text(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder sb = new StringBuilder();
+		for (int depth = 1; depth > 0;) {
+			switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT -> depth++;
+				case XMLStreamConstants.END_ELEMENT -> depth--;
+				case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> sb
+					.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				default -> {}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void skip(XMLStreamReader reader) throws XMLStreamException {
+		for (int depth = 1; depth > 0;) {
+			switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT -> depth++;
+				case XMLStreamConstants.END_ELEMENT -> depth--;
+				default -> {}
+			}
+		}
+	}
+
+	private static InputStream entities(File file) throws IOException {
+		try (FileChannel in = IO.readChannel(file.toPath())) {
+			ByteBuffer bb = ByteBuffer.allocate((int) in.size());
+			while (in.read(bb) > 0) {}
+			bb.flip();
+			return entities(bb);
+		}
+	}
+
+	/*
+	 * POMs in the wild use HTML entities that are not defined without a DTD.
+	 * Replace the '&' of any entity that is not predefined by XML so the
+	 * parser does not fail on them.
+	 */
+	private static InputStream entities(ByteBuffer bb) {
+		final byte[] array = bb.array();
+		final int offset = bb.arrayOffset();
+		final int limit = offset + bb.limit();
+		for (int i = offset; i < limit; i++) {
+			char c = (char) array[i];
+			if (c == '&') {
+				final int jlimit = Math.min(limit, i + 11);
+				for (int j = i + 1; j < jlimit; j++) {
+					c = (char) array[j];
+					if (c == ';') {
+						String entity = new String(array, i + 1, j - (i + 1), StandardCharsets.US_ASCII)
+							.toLowerCase(Locale.ROOT);
+						switch (entity) {
+							case "lt" :
+							case "gt" :
+							case "amp" :
+							case "quot" :
+							case "apos" :
+								break;
+							default :
+								array[i] = '?';
+								break;
+						}
+						i = j;
+						break;
+					}
+					if (!(c >= 'A' && c <= 'Z') && !(c >= 'a' && c <= 'z')) {
+						break;
+					}
+				}
+			}
+		}
+		return new ByteBufferInputStream(bb);
+	}
+
+	/*
+	 * The stored form starts with the key of the POM file so a model of a
+	 * changed file is never used.
+	 */
+	private static PomModel load(File stored, String key) {
+		if (!stored.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(IO.stream(stored)))) {
+			if (in.readInt() != FORMAT || !key.equals(in.readUTF())) {
+				return null;
+			}
+			PomModel model = new PomModel();
+			model.project = in.readBoolean();
+			model.parentGroupId = readString(in);
+			model.parentArtifactId = readString(in);
+			model.parentVersion = readString(in);
+			model.parentRelativePath = readString(in);
+			readMap(in, model.coordinates);
+			readMap(in, model.properties);
+			readDependencies(in, model.dependencies);
+			readDependencies(in, model.dependencyManagement);
+			return model;
+		} catch (Exception e) {
+			logger.debug("Ignoring unreadable POM model {}", stored, e);
+			return null;
+		}
+	}
+
+	private static void store(File stored, String key, PomModel model) {
+		try {
+			IO.mkdirs(stored.getParentFile());
+			File tmp = IO.createTempFile(stored.getParentFile(), stored.getName(), ".tmp");
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(IO.outputStream(tmp)))) {
+					out.writeInt(FORMAT);
+					out.writeUTF(key);
+					out.writeBoolean(model.project);
+					writeString(out, model.parentGroupId);
+					writeString(out, model.parentArtifactId);
+					writeString(out, model.parentVersion);
+					writeString(out, model.parentRelativePath);
+					writeMap(out, model.coordinates);
+					writeMap(out, model.properties);
+					writeDependencies(out, model.dependencies);
+					writeDependencies(out, model.dependencyManagement);
+				}
+				IO.rename(tmp, stored);
+			} finally {
+				IO.delete(tmp);
+			}
+		} catch (Exception e) {
+			logger.debug("Failed to store POM model {}", stored, e);
+		}
+	}
+
+	private static void writeDependencies(DataOutputStream out, List<RawDependency> list) throws IOException {
+		out.writeInt(list.size());
+		for (RawDependency d : list) {
+			writeString(out, d.groupId);
+			writeString(out, d.artifactId);
+			writeString(out, d.version);
+			writeString(out, d.type);
+			writeString(out, d.classifier);
+			writeString(out, d.scope);
+			writeString(out, d.optional);
+		}
+	}
+
+	private static void readDependencies(DataInputStream in, List<RawDependency> list) throws IOException {
+		for (int n = in.readInt(); n > 0; n--) {
+			RawDependency d = new RawDependency();
+			d.groupId = readString(in);
+			d.artifactId = readString(in);
+			d.version = readString(in);
+			d.type = readString(in);
+			d.classifier = readString(in);
+			d.scope = readString(in);
+			d.optional = readString(in);
+			list.add(d);
+		}
+	}
+
+	private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<String, String> e : map.entrySet()) {
+			writeString(out, e.getKey());
+			writeString(out, e.getValue());
+		}
+	}
+
+	private static void readMap(DataInputStream in, Map<String, String> map) throws IOException {
+		for (int n = in.readInt(); n > 0; n--) {
+			map.put(readString(in), readString(in));
+		}
+	}
+
+	/*
+	 * Not writeUTF since property values are not limited to 64k.
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -3,7 +3,6 @@ package aQute.maven.provider;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -107,7 +106,7 @@ class Releaser implements Release {
 						break;
 
 					case OTHER :
-						throw new HttpRequestException((HttpURLConnection) tag.getConnection());
+						throw new HttpRequestException(tag);
 
 					case UNMODIFIED :
 					case UPDATED :
@@ -43,4 +43,17 @@ public class FileSetRepositoryTest {
 
 	}
 
+	@Test
+	public void parallelParsingKeepsFileOrder() throws Exception {
+		List<File> files = Arrays.asList(IO.getFile("testresources/demo.jar"), IO.getFile("testresources/release.jar"),
+			IO.getFile("testresources/nanohttpd-2.2.0.jar"), IO.getFile("testresources/jsr250-api-1.0.jar"),
+			IO.getFile("testresources/javafx-base-13-ea+8-linux.jar"), IO.getFile("testresources/missing.jar"));
+
+		FileSetRepository sequential = new FileSetRepository("sequential", files, 1);
+		FileSetRepository parallel = new FileSetRepository("parallel", files, 4);
+
+		assertThat(parallel.getLocation()).isEqualTo(sequential.getLocation());
+		assertThat(parallel.list(null)).containsExactlyElementsOf(sequential.list(null));
+	}
+
 }
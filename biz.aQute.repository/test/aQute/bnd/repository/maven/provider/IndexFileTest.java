@@ -0,0 +1,128 @@
+package aQute.bnd.repository.maven.provider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.osgi.resource.Resource;
+import org.osgi.util.promise.PromiseFactory;
+
+import aQute.bnd.osgi.resource.ResourceBuilder;
+import aQute.bnd.osgi.resource.ResourceUtils;
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+import aQute.lib.io.IO;
+import aQute.libg.reporter.ReporterAdapter;
+import aQute.maven.api.Archive;
+import aQute.maven.provider.MavenRepository;
+
+public class IndexFileTest {
+	@InjectTemporaryDirectory
+	File				tmp;
+	File				local;
+	File				snapshotFile;
+	MavenRepository		storage;
+	PromiseFactory		promiseFactory	= new PromiseFactory(Executors.newCachedThreadPool());
+	ReporterAdapter		reporter		= new ReporterAdapter(System.err);
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		local = IO.getFile(tmp, "local");
+		snapshotFile = IO.getFile(tmp, "cache/index.bin");
+		IO.copy(IO.getFile("testresources/mavenrepo"), local);
+		File demo = IO.getFile(local, "biz/aQute/bnd/demo/1.0.0/demo-1.0.0.jar");
+		IO.mkdirs(demo.getParentFile());
+		IO.copy(IO.getFile("testresources/demo.jar"), demo);
+		storage = new MavenRepository(local, "local", null, null, promiseFactory.executor(), reporter);
+	}
+
+	@Test
+	public void testReopenFromSnapshot() throws Exception {
+		IndexFile index = index();
+		index.open();
+		List<String> contents = contents(index);
+		assertThat(contents).hasSize(2)
+			.doesNotContainNull();
+		assertThat(snapshotFile).isFile();
+
+		IndexFile reopened = index();
+		reopened.open();
+		assertThat(reopened.getArchives()).isEqualTo(index.getArchives());
+		assertThat(contents(reopened)).containsExactlyInAnyOrderElementsOf(contents);
+		assertThat(reopened.getBridge()
+			.versions("demo")).hasSize(1);
+	}
+
+	@Test
+	public void testSnapshotKey() throws Exception {
+		Archive archive = Archive.valueOf("biz.aQute.bnd:demo:1.0.0");
+		File jar = IO.getFile(local, "biz/aQute/bnd/demo/1.0.0/demo-1.0.0.jar");
+		ResourceBuilder rb = new ResourceBuilder();
+		rb.addFile(jar, jar.toURI());
+		Map<Archive, Resource> resources = Collections.singletonMap(archive, rb.build());
+
+		IndexSnapshot snapshot = new IndexSnapshot(snapshotFile, Set.of());
+		assertThat(snapshot.get(archive, jar)).isNull();
+		snapshot.put(archive, jar, resources);
+		snapshot.save(Set.of(archive));
+
+		// unchanged
+		assertThat(new IndexSnapshot(snapshotFile, Set.of()).get(archive, jar)).isEqualTo(resources);
+
+		// touched but same content
+		jar.setLastModified(jar.lastModified() + 10_000);
+		assertThat(new IndexSnapshot(snapshotFile, Set.of()).get(archive, jar)).isEqualTo(resources);
+
+		// changed content
+		byte[] bytes = IO.read(jar);
+		bytes[bytes.length - 1]++;
+		IO.copy(bytes, jar);
+		assertThat(new IndexSnapshot(snapshotFile, Set.of()).get(archive, jar)).isNull();
+
+		// other multi extensions
+		IO.copy(IO.getFile("testresources/demo.jar"), jar);
+		assertThat(new IndexSnapshot(snapshotFile, Set.of()).get(archive, jar)).isEqualTo(resources);
+		assertThat(new IndexSnapshot(snapshotFile, Set.of("zip")).get(archive, jar)).isNull();
+
+		// archives no longer in the index are dropped
+		snapshot.save(Set.of());
+		assertThat(new IndexSnapshot(snapshotFile, Set.of()).get(archive, jar)).isNull();
+	}
+
+	@Test
+	public void testSnapshotSavedOnClose() throws Exception {
+		Archive archive = Archive.valueOf("biz.aQute.bnd:demo:1.0.0");
+		File jar = IO.getFile(local, "biz/aQute/bnd/demo/1.0.0/demo-1.0.0.jar");
+		IndexFile index = index();
+		index.open();
+		assertThat(index.getResources()).hasSize(2);
+		assertThat(new IndexSnapshot(snapshotFile, Set.of()).get(archive, jar)).isNotNull();
+
+		index.remove(archive);
+		assertThat(new IndexSnapshot(snapshotFile, Set.of()).get(archive, jar)).isNotNull();
+
+		index.close();
+		assertThat(new IndexSnapshot(snapshotFile, Set.of()).get(archive, jar)).isNull();
+	}
+
+	private IndexFile index() throws Exception {
+		return new IndexFile(null, reporter, IO.getFile(tmp, "index.mvn"),
+			"commons-cli:commons-cli:1.0\nbiz.aQute.bnd:demo:1.0.0", storage, promiseFactory, Set.of(),
+			snapshotFile);
+	}
+
+	private static List<String> contents(IndexFile index) {
+		return index.getResources()
+			.stream()
+			.map(ResourceUtils::getContentCapability)
+			.map(c -> (c == null) ? null : c.osgi_content())
+			.collect(Collectors.toList());
+	}
+}
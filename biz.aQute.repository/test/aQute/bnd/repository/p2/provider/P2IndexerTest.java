@@ -151,6 +151,39 @@ public class P2IndexerTest {
 		}
 	}
 
+	@Test
+	public void testChangedURL() throws Exception {
+		try (HttpClient client = new HttpClient()) {
+			client.setCache(IO.getFile(tmp, "cache"));
+			File location = IO.getFile(tmp, "location");
+			Version version = new Version("1.0.0.201110100042");
+
+			File input = IO.getFile("testdata/p2/macbadge");
+			try (P2Indexer p2 = new P2Indexer(new Unpack200(), new Slf4jReporter(P2IndexerTest.class), location,
+				client, input.toURI(), getName())) {
+				assertThat(p2.versions("name.njbartlett.eclipse.macbadge")).containsExactly(version);
+			}
+			// the second open reads the index file and writes the binary index
+			try (P2Indexer p2 = new P2Indexer(new Unpack200(), new Slf4jReporter(P2IndexerTest.class), location,
+				client, input.toURI(), getName())) {
+				assertThat(p2.versions("name.njbartlett.eclipse.macbadge")).containsExactly(version);
+			}
+			assertThat(new File(location, "index.bin")).isFile();
+
+			File copy = IO.getFile(tmp, "copy");
+			IO.copy(input, copy);
+			try (P2Indexer p2 = new P2Indexer(new Unpack200(), new Slf4jReporter(P2IndexerTest.class), location,
+				client, copy.toURI(), getName())) {
+				Resource resource = p2.getBridge()
+					.get("name.njbartlett.eclipse.macbadge", version);
+				assertThat(ResourceUtils.getContentCapability(resource)
+					.url()
+					.toString()).startsWith(copy.toURI()
+						.toString());
+			}
+		}
+	}
+
 	@Test
 	public void testRefresh() throws Exception {
 		try (HttpClient client = new HttpClient()) {
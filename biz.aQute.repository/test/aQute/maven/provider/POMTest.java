@@ -0,0 +1,232 @@
+package aQute.maven.provider;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import aQute.bnd.test.jupiter.InjectTemporaryDirectory;
+import aQute.bnd.version.MavenVersion;
+import aQute.lib.io.IO;
+import aQute.maven.api.Archive;
+import aQute.maven.api.IPom.Dependency;
+import aQute.maven.api.MavenScope;
+import aQute.maven.api.Program;
+import aQute.maven.api.Revision;
+
+public class POMTest {
+	@InjectTemporaryDirectory
+	File			tmp;
+	File			local;
+	MavenRepository	storage;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		local = IO.getFile(tmp, "local");
+		storage = new MavenRepository(local, "local", null, null, Executors.newCachedThreadPool(), null);
+		PomModel.flush();
+
+		pom("org.example", "bom", "1.0", """
+			<?xml version="1.0" encoding="UTF-8"?>
+			<project xmlns="http://maven.apache.org/POM/4.0.0">
+			  <!-- the bom -->
+			  <modelVersion>4.0.0</modelVersion>
+			  <groupId>org.example</groupId>
+			  <artifactId>bom</artifactId>
+			  <version>1.0</version>
+			  <packaging>pom</packaging>
+			  <description>Caf&eacute; &amp; more</description>
+			  <properties>
+			    <lib.version>2.${minor}</lib.version>
+			    <minor>3</minor>
+			  </properties>
+			  <dependencyManagement>
+			    <dependencies>
+			      <dependency>
+			        <groupId>org.example</groupId>
+			        <artifactId>lib</artifactId>
+			        <version>${lib.version}</version>
+			      </dependency>
+			    </dependencies>
+			  </dependencyManagement>
+			  <build>
+			    <plugins>
+			      <plugin>
+			        <groupId>org.example</groupId>
+			        <artifactId>plugin</artifactId>
+			        <version>9</version>
+			      </plugin>
+			    </plugins>
+			  </build>
+			</project>
+			""");
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		pom("org.example", "app", "1.0", """
+			<project>
+			  <parent>
+			    <groupId>org.example</groupId>
+			    <artifactId>bom</artifactId>
+			    <version>1.0</version>
+			  </parent>
+			  <artifactId>app</artifactId>
+			  <packaging>bundle</packaging>
+			  <dependencies>
+			    <dependency>
+			      <groupId>org.example</groupId>
+			      <artifactId>lib</artifactId>
+			    </dependency>
+			    <dependency>
+			      <groupId>org.example</groupId>
+			      <artifactId>test</artifactId>
+			      <version><![CDATA[${project.version}]]></version>
+			      <scope>test</scope>
+			      <optional>false</optional>
+			      <classifier>tests</classifier>
+			    </dependency>
+			  </dependencies>
+			</project>
+			""");
+
+		POM pom = storage.getPom(revision("org.example", "app", "1.0"));
+		assertThat(pom).isNotNull();
+		assertThat(pom.getRevision()).isEqualTo(revision("org.example", "app", "1.0"));
+		assertThat(pom.getPackaging()).isEqualTo("bundle");
+		assertThat(pom.binaryArchive()
+			.getName()).isEqualTo("app-1.0.jar");
+		assertThat(pom.getParent()
+			.getRevision()).isEqualTo(revision("org.example", "bom", "1.0"));
+		assertThat(((POM) pom.getParent()).isPomOnly()).isTrue();
+
+		Map<Program, Dependency> compile = pom.getDependencies(MavenScope.compile, false);
+		assertThat(compile).containsOnlyKeys(Program.valueOf("org.example", "lib"));
+		Dependency lib = compile.get(Program.valueOf("org.example", "lib"));
+		assertThat(lib.version).isEqualTo("2.3");
+		assertThat(lib.optional).isTrue();
+		assertThat(lib.type).isEqualTo(Archive.JAR_EXTENSION);
+
+		Dependency test = pom.getDependencies(MavenScope.test, false)
+			.get(Program.valueOf("org.example", "test"));
+		assertThat(test.version).isEqualTo("1.0");
+		assertThat(test.optional).isFalse();
+		assertThat(test.classifier).isEqualTo("tests");
+	}
+
+	@Test
+	public void testParseStream() throws Exception {
+		String xml = """
+			<project>
+			  <groupId> org.example </groupId>
+			  <artifactId>stream</artifactId>
+			  <version>1.0</version>
+			  <dependencies>
+			    some text
+			    <dependency>
+			      <groupId>org.example</groupId>
+			      <artifactId>lib</artifactId>
+			      <version>1</version>
+			    </dependency>
+			  </dependencies>
+			</project>
+			""";
+		POM pom = storage.getPom(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+		assertThat(pom.getRevision()).isEqualTo(revision("org.example", "stream", "1.0"));
+		assertThat(pom.getDependencies(MavenScope.compile, false)).containsOnlyKeys(Program.valueOf("org.example",
+			"lib"));
+	}
+
+	@Test
+	public void testSharedParentParsedOnce() throws Exception {
+		int n = 20;
+		for (int i = 0; i < n; i++) {
+			pom("org.example", "app" + i, "1.0", """
+				<project>
+				  <parent>
+				    <groupId>org.example</groupId>
+				    <artifactId>bom</artifactId>
+				    <version>1.0</version>
+				  </parent>
+				  <artifactId>app%s</artifactId>
+				</project>
+				""".formatted(i));
+		}
+		long before = PomModel.parses();
+		for (int i = 0; i < n; i++) {
+			POM pom = storage.getPom(revision("org.example", "app" + i, "1.0"));
+			assertThat(pom.getParent()).isSameAs(storage.getPom(revision("org.example", "bom", "1.0")));
+		}
+		assertThat(PomModel.parses() - before).isEqualTo(n + 1);
+
+		// a new repository reuses the parsed models of unchanged files
+		MavenRepository other = new MavenRepository(local, "other", null, null, Executors.newCachedThreadPool(),
+			null);
+		assertThat(other.getPom(revision("org.example", "app0", "1.0"))).isNotNull();
+		assertThat(PomModel.parses() - before).isEqualTo(n + 1);
+	}
+
+	@Test
+	public void testPomCache() throws Exception {
+		File cache = IO.getFile(tmp, "cache");
+		storage.setPomCache(cache);
+		POM bom = storage.getPom(revision("org.example", "bom", "1.0"));
+		assertThat(cache.list()).hasSize(1);
+
+		PomModel.flush();
+		long before = PomModel.parses();
+		MavenRepository other = new MavenRepository(local, "other", null, null, Executors.newCachedThreadPool(),
+			null);
+		other.setPomCache(cache);
+		POM stored = other.getPom(revision("org.example", "bom", "1.0"));
+		assertThat(PomModel.parses()).isEqualTo(before);
+		assertThat(stored).isEqualTo(bom)
+			.isNotSameAs(bom);
+		assertThat(stored.getDependencies(MavenScope.compile, false, true)).containsOnlyKeys(Program
+			.valueOf("org.example", "lib"));
+
+		// a changed file is parsed again
+		File file = IO.getFile(local, "org/example/bom/1.0/bom-1.0.pom");
+		IO.store(IO.collect(file)
+			.replace("<minor>3</minor>", "<minor>4</minor>"), file);
+		file.setLastModified(file.lastModified() + 2000);
+		PomModel.flush();
+		other.clear(revision("org.example", "bom", "1.0"));
+		POM changed = other.getPom(revision("org.example", "bom", "1.0"));
+		assertThat(PomModel.parses()).isEqualTo(before + 1);
+		assertThat(changed.getDependencies(MavenScope.compile, false, true)
+			.get(Program.valueOf("org.example", "lib")).version).isEqualTo("2.4");
+	}
+
+	@Test
+	public void testMissingPomNotCached() throws Exception {
+		Revision revision = revision("org.example", "late", "1.0");
+		assertThat(storage.getPom(revision)).isNull();
+		pom("org.example", "late", "1.0", """
+			<project>
+			  <groupId>org.example</groupId>
+			  <artifactId>late</artifactId>
+			  <version>1.0</version>
+			</project>
+			""");
+		assertThat(storage.getPom(revision)).isNotNull();
+	}
+
+	private void pom(String group, String artifact, String version, String content) throws Exception {
+		File file = IO.getFile(local, group.replace('.', '/') + "/" + artifact + "/" + version + "/" + artifact + "-"
+			+ version + ".pom");
+		IO.mkdirs(file.getParentFile());
+		IO.store(content, file);
+	}
+
+	private static Revision revision(String group, String artifact, String version) {
+		return Program.valueOf(group, artifact)
+			.version(MavenVersion.parseMavenString(version));
+	}
+}